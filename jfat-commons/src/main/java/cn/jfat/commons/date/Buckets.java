@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.math.BigInteger;
+
+/**
+ Primitive arithmetic for fixed-size time buckets, used by {@link DateTime#floor} and related methods.
+
+ <P>A moment is a Modified Julian Day number, and the nanoseconds since the start of that day. Buckets are counted from an origin,
+ with bucket 0 starting at the origin itself; moments before the origin are in negative buckets.
+
+ <P>Nothing here creates objects, except in the rare case of moments more than about 270 years from the origin,
+ whose distance in nanoseconds doesn't fit in a <tt>long</tt>.
+*/
+final class Buckets {
+
+  static final long NANOS_PER_DAY = 86400L * 1000 * 1000 * 1000;
+
+  /** Return the nanoseconds since the start of the day for the given time units. Absent units are taken as 0. */
+  static long nanosOfDay(int aHour, int aMinute, int aSecond, int aNanos){
+    return
+      ((Math.max(0, aHour) * 60L + Math.max(0, aMinute)) * 60L + Math.max(0, aSecond)) * 1000000000L +
+      Math.max(0, aNanos)
+    ;
+  }
+
+  /**
+   Return the index of the bucket holding the given moment.
+   @param aDays the day of the moment, less the day of the origin.
+   @param aNanos the nanoseconds-of-day of the moment, less that of the origin; may be negative.
+   @param aBucketNanos the size of each bucket, 1 or more.
+  */
+  static long index(int aDays, long aNanos, long aBucketNanos){
+    long result = 0;
+    if(Math.abs(aDays) <= MAX_SAFE_DAYS){
+      result = floorDiv(aDays * NANOS_PER_DAY + aNanos, aBucketNanos);
+    }
+    else {
+      BigInteger total = BigInteger.valueOf(aDays).multiply(BIG_NANOS_PER_DAY).add(BigInteger.valueOf(aNanos));
+      BigInteger[] division = total.divideAndRemainder(BigInteger.valueOf(aBucketNanos));
+      result = division[0].longValue();
+      if(division[1].signum() < 0){
+        --result;
+      }
+    }
+    return result;
+  }
+
+  /**
+   Return the offset of the start of the given bucket from the origin, in whole days, rounding down.
+   The rest of the offset is given by {@link #startNanos(long, long)}.
+  */
+  static long startDays(long aIndex, long aBucketNanos){
+    long result = 0;
+    if(fitsInLong(aIndex, aBucketNanos)){
+      result = floorDiv(aIndex * aBucketNanos, NANOS_PER_DAY);
+    }
+    else {
+      BigInteger total = bigTotal(aIndex, aBucketNanos);
+      result = total.subtract(total.mod(BIG_NANOS_PER_DAY)).divide(BIG_NANOS_PER_DAY).longValue();
+    }
+    return result;
+  }
+
+  /** Return the offset of the start of the given bucket from the origin, less {@link #startDays(long, long)} whole days : 0..NANOS_PER_DAY-1. */
+  static long startNanos(long aIndex, long aBucketNanos){
+    long result = 0;
+    if(fitsInLong(aIndex, aBucketNanos)){
+      result = floorMod(aIndex * aBucketNanos, NANOS_PER_DAY);
+    }
+    else {
+      result = bigTotal(aIndex, aBucketNanos).mod(BIG_NANOS_PER_DAY).longValue();
+    }
+    return result;
+  }
+
+  /** Integer division, rounding towards negative infinity. */
+  static long floorDiv(long aValue, long aDivisor){
+    long result = aValue / aDivisor;
+    if((aValue % aDivisor != 0) && ((aValue < 0) != (aDivisor < 0))){
+      --result;
+    }
+    return result;
+  }
+
+  /** Remainder of integer division, with the sign of the divisor. */
+  static long floorMod(long aValue, long aDivisor){
+    return aValue - floorDiv(aValue, aDivisor) * aDivisor;
+  }
+
+  // PRIVATE
+
+  /** Days whose distance in nanoseconds, plus up to a day more, still fits in a long. */
+  private static final long MAX_SAFE_DAYS = Long.MAX_VALUE / NANOS_PER_DAY - 1;
+  private static final BigInteger BIG_NANOS_PER_DAY = BigInteger.valueOf(NANOS_PER_DAY);
+
+  private static boolean fitsInLong(long aIndex, long aBucketNanos){
+    return aBucketNanos == 0 || Math.abs(aIndex) <= Long.MAX_VALUE / aBucketNanos;
+  }
+
+  private static BigInteger bigTotal(long aIndex, long aBucketNanos){
+    return BigInteger.valueOf(aIndex).multiply(BigInteger.valueOf(aBucketNanos));
+  }
+
+  private Buckets(){
+    //prevent construction
+  }
+}
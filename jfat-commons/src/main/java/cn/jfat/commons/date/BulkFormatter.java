@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ Formats a whole column of date-times at once, into a single {@link FormattedColumn}.
+
+ <P>This is the bulk form of {@link DateTime#format(String, Locale)}, intended for exporting large
+ numbers of rows. The pattern uses the same <a href="DateTime.html#FormattingLanguage">formatting mini-language</a>,
+ and is interpreted only once, instead of once per row. The output is placed in one contiguous <tt>char</tt> array,
+ so no <tt>String</tt> is created per row.
+
+ <P>Large columns are split into pieces, which are formatted in parallel, and then joined together.
+ By default, the work is done by a shared pool of daemon threads, sized to the number of processors; an
+ explicit <tt>ExecutorService</tt> may be passed to the constructor instead.
+
+ <P>Example :
+ <PRE>
+  BulkFormatter formatter = new BulkFormatter("YYYY-MM-DD hh:mm:ss");
+  FormattedColumn column = formatter.format(dateTimes);
+ </PRE>
+
+ <P>A <tt>null</tt> item in a <tt>DateTime[]</tt> produces an empty row.
+ <P>This class is immutable, and may be shared between threads.
+*/
+public final class BulkFormatter {
+
+  /**
+   Constructor for patterns using only numbers, and no localizable text.
+   @param aFormat uses the <a href="DateTime.html#FormattingLanguage">formatting mini-language</a>.
+  */
+  public BulkFormatter(String aFormat){
+    this(aFormat, null, null);
+  }
+
+  /**
+   Constructor for patterns using numbers and/or localizable text.
+   @param aFormat uses the <a href="DateTime.html#FormattingLanguage">formatting mini-language</a>.
+   @param aLocale used to generate text for Month, Weekday and AM/PM indicator; required only by patterns which return localized
+   text, instead of numeric forms.
+  */
+  public BulkFormatter(String aFormat, Locale aLocale){
+    this(aFormat, aLocale, null);
+  }
+
+  /**
+   Full constructor.
+   @param aFormat uses the <a href="DateTime.html#FormattingLanguage">formatting mini-language</a>.
+   @param aLocale optional; see {@link #BulkFormatter(String, Locale)}.
+   @param aExecutor optional; runs the pieces of large columns. If <tt>null</tt>, a shared pool of daemon threads is used.
+  */
+  public BulkFormatter(String aFormat, Locale aLocale, ExecutorService aExecutor){
+    this(new DateTimeFormatter(aFormat, aLocale), aExecutor);
+  }
+
+  /**
+   Constructor taking an existing formatter, which may use a {@link CustomLocalization}.
+   @param aFormatter formats each row.
+   @param aExecutor optional; runs the pieces of large columns. If <tt>null</tt>, a shared pool of daemon threads is used.
+  */
+  public BulkFormatter(DateTimeFormatter aFormatter, ExecutorService aExecutor){
+    fFormatter = aFormatter;
+    fExecutor = aExecutor;
+  }
+
+  /** Format each item of the given array. <tt>null</tt> items produce an empty row. */
+  public FormattedColumn format(final DateTime[] aDateTimes){
+    return format(new Rows() {
+      public int size() { return aDateTimes.length; }
+      public boolean load(int aRow, DateTimeFields aFields) {
+        boolean result = aDateTimes[aRow] != null;
+        if (result) {
+          aFields.load(aDateTimes[aRow]);
+        }
+        return result;
+      }
+    });
+  }
+
+  /**
+   Format a column of date-times held in the primitive form defined by {@link PackedDateTime}.
+   @param aPacked the packed year..second of each row
+   @param aNanos the nanoseconds of each row; if <tt>null</tt>, the nanoseconds are absent for all rows. If not
+   <tt>null</tt>, its length must match <tt>aPacked</tt>.
+  */
+  public FormattedColumn format(final long[] aPacked, final int[] aNanos){
+    if (aNanos != null && aNanos.length != aPacked.length){
+      throw new IllegalArgumentException("Packed values and nanoseconds have different lengths: " + aPacked.length + ", " + aNanos.length);
+    }
+    return format(new Rows() {
+      public int size() { return aPacked.length; }
+      public boolean load(int aRow, DateTimeFields aFields) {
+        aFields.load(aPacked[aRow], aNanos == null ? PackedDateTime.ABSENT : aNanos[aRow]);
+        return true;
+      }
+    });
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "BulkFormatter formatter:" + fFormatter;
+  }
+
+  // PRIVATE
+  /** Shared by all pieces; formatters are thread-safe. */
+  private final DateTimeFormatter fFormatter;
+  private final ExecutorService fExecutor;
+
+  /** Columns smaller than this are never split. */
+  private static final int MIN_ROWS_PER_TASK = 8 * 1024;
+
+  /** A column whose rows can be loaded by index. */
+  private interface Rows {
+    int size();
+    /** Return <tt>false</tt> only if the row is <tt>null</tt>. */
+    boolean load(int aRow, DateTimeFields aFields);
+  }
+
+  /** The output for a contiguous range of rows. */
+  private static final class Piece {
+    StringBuilder Text;
+    /** The end of each row, relative to the start of Text. */
+    int[] Ends;
+  }
+
+  private FormattedColumn format(final Rows aRows){
+    final int numRows = aRows.size();
+    int numTasks = ParallelTasks.numTasksFor(numRows, MIN_ROWS_PER_TASK);
+    List<Callable<Piece>> tasks = new ArrayList<Callable<Piece>>(numTasks);
+    for(int task = 0; task < numTasks; ++task){
+      final int start = ParallelTasks.startOf(task, numTasks, numRows);
+      final int end = ParallelTasks.startOf(task + 1, numTasks, numRows);
+      tasks.add(new Callable<Piece>() {
+        public Piece call() {
+          return formatRows(aRows, start, end);
+        }
+      });
+    }
+    return join(ParallelTasks.invokeAll(fExecutor, tasks), numRows);
+  }
+
+  private Piece formatRows(Rows aRows, int aStart, int aEnd){
+    DateTimeFields fields = new DateTimeFields();
+    char[] scratch = new char[fFormatter.estimatedLength()];
+    Piece result = new Piece();
+    result.Text = new StringBuilder((aEnd - aStart) * (fFormatter.estimatedLength()));
+    result.Ends = new int[aEnd - aStart];
+    for(int row = aStart; row < aEnd; ++row){
+      if(aRows.load(row, fields)){
+        fFormatter.render(fields, result.Text, scratch);
+      }
+      result.Ends[row - aStart] = result.Text.length();
+    }
+    return result;
+  }
+
+  /** Copy the pieces into a single array, in order. */
+  private FormattedColumn join(List<Piece> aPieces, int aNumRows){
+    int numChars = 0;
+    for(Piece piece : aPieces){
+      numChars = numChars + piece.Text.length();
+    }
+    char[] chars = new char[numChars];
+    int[] offsets = new int[aNumRows + 1];
+    int base = 0;
+    int row = 0;
+    for(Piece piece : aPieces){
+      piece.Text.getChars(0, piece.Text.length(), chars, base);
+      for(int end : piece.Ends){
+        offsets[++row] = base + end;
+      }
+      base = base + piece.Text.length();
+    }
+    return new FormattedColumn(chars, offsets);
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ Business days (working days) over a fixed range of years, with constant-time business-day arithmetic.
+
+ <P>A day is a business day if it's not a weekend day, and not a holiday. Days are identified by their
+ Modified Julian Day number, as returned by {@link DateTime#getModifiedJulianDayNumber()}; each method taking a
+ <tt>DateTime</tt> has a twin taking such a day number, for callers which already hold day numbers.
+
+ <P>All of the work is done when the calendar is built. Afterwards, {@link #isBusinessDay(DateTime)},
+ {@link #businessDaysBetween(DateTime, DateTime)}, and {@link #plusBusinessDays(DateTime, int)} each take the same
+ time, no matter how far apart the days are, and don't examine any of the days in between.
+
+ <P>Calendars can be combined: {@link #and(BusinessCalendar)} gives the days on which both calendars do business
+ (as for a settlement needing two markets to be open), and {@link #or(BusinessCalendar)} gives the days on which
+ either does business.
+
+ <P>Example :
+ <PRE>
+  BusinessCalendar calendar = BusinessCalendar.forMondayToFriday(2000, 2030, holidays);
+  DateTime settlement = calendar.plusBusinessDays(tradeDate, 3);
+ </PRE>
+
+ <P>Passing any day outside the range of years causes an <tt>IllegalArgumentException</tt>.
+ <P>This class is immutable, and may be shared between threads.
+*/
+public final class BusinessCalendar {
+
+  /**
+   Constructor.
+   @param aFromYear first year covered by this calendar, 1..9999.
+   @param aToYear last year covered by this calendar (inclusive), 1..9999, and not less than aFromYear.
+   @param aWeekendDays weekdays on which no business is done, using 1..7 for Sunday..Saturday, as in {@link DateTime#getWeekDay()}.
+   @param aHolidays days on which no business is done. Only the year-month-day is used. Holidays outside the range of years
+   are ignored.
+  */
+  public BusinessCalendar(int aFromYear, int aToYear, Collection<Integer> aWeekendDays, Collection<DateTime> aHolidays){
+    this(firstDayOf(aFromYear, aToYear), numDaysIn(aFromYear, aToYear), businessDays(aFromYear, aToYear, aWeekendDays, aHolidays));
+  }
+
+  /** Calendar having Saturday and Sunday as weekend days. See {@link #BusinessCalendar(int, int, Collection, Collection)}. */
+  public static BusinessCalendar forMondayToFriday(int aFromYear, int aToYear, Collection<DateTime> aHolidays){
+    return new BusinessCalendar(aFromYear, aToYear, Arrays.asList(SUNDAY, SATURDAY), aHolidays);
+  }
+
+  /** Return <tt>true</tt> only if the year-month-day of the given date is a business day. */
+  public boolean isBusinessDay(DateTime aDate){
+    return isBusinessDay(aDate.getModifiedJulianDayNumber().intValue());
+  }
+
+  /** Return <tt>true</tt> only if the given Modified Julian Day is a business day. */
+  public boolean isBusinessDay(int aModifiedJulianDay){
+    return isBusiness(indexOf(aModifiedJulianDay));
+  }
+
+  /**
+   Return the number of business days from <tt>aStart</tt> (inclusive) to <tt>aEnd</tt> (exclusive).
+   Only year-month-day is used. If <tt>aEnd</tt> is before <tt>aStart</tt>, then the result is negative.
+  */
+  public int businessDaysBetween(DateTime aStart, DateTime aEnd){
+    return businessDaysBetween(aStart.getModifiedJulianDayNumber().intValue(), aEnd.getModifiedJulianDayNumber().intValue());
+  }
+
+  /** As {@link #businessDaysBetween(DateTime, DateTime)}, for Modified Julian Day numbers. */
+  public int businessDaysBetween(int aStart, int aEnd){
+    return rankOf(indexOrEnd(aEnd)) - rankOf(indexOrEnd(aStart));
+  }
+
+  /**
+   Return the date which is the given number of business days away from <tt>aDate</tt>. The time portion
+   of <tt>aDate</tt>, if any, is retained, as in {@link DateTime#plusDays(Integer)}.
+
+   <P>If <tt>aDate</tt> is not a business day, then it's first moved forward to the next business day, and
+   that move counts as the first business day, when adding. That is, adding 1 business day to a Saturday
+   gives Monday (not Tuesday), while adding 0 business days to a Saturday also gives Monday; adding -1 business day
+   to a Saturday gives Friday.
+   @param aNumDays can be either sign.
+  */
+  public DateTime plusBusinessDays(DateTime aDate, int aNumDays){
+    int day = aDate.getModifiedJulianDayNumber().intValue();
+    return aDate.plusDays(plusBusinessDays(day, aNumDays) - day);
+  }
+
+  /** As {@link #plusBusinessDays(DateTime, int)}, for Modified Julian Day numbers. */
+  public int plusBusinessDays(int aModifiedJulianDay, int aNumDays){
+    int index = indexOf(aModifiedJulianDay);
+    long target = (long)rankOf(index) + aNumDays;
+    if(aNumDays > 0 && ! isBusiness(index)){
+      --target; //moving to the next business day counts as the first day
+    }
+    if(target < 0 || target >= fBusinessDays.length){
+      throw new IllegalArgumentException(
+        "Adding " + aNumDays + " business days to day " + aModifiedJulianDay + " goes outside the range of this calendar."
+      );
+    }
+    return fFirstDay + fBusinessDays[(int)target];
+  }
+
+  /** Return a calendar whose business days are those of both this calendar and <tt>aThat</tt>, over the years common to both. */
+  public BusinessCalendar and(BusinessCalendar aThat){
+    return combine(aThat, true);
+  }
+
+  /** Return a calendar whose business days are those of either this calendar or <tt>aThat</tt>, over the years common to both. */
+  public BusinessCalendar or(BusinessCalendar aThat){
+    return combine(aThat, false);
+  }
+
+  /** The first day covered by this calendar, as a Modified Julian Day number. */
+  public int getFirstDay(){
+    return fFirstDay;
+  }
+
+  /** The last day covered by this calendar (inclusive), as a Modified Julian Day number. */
+  public int getLastDay(){
+    return fFirstDay + fNumDays - 1;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "BusinessCalendar first day:" + fFirstDay + " num days:" + fNumDays + " num business days:" + fBusinessDays.length;
+  }
+
+  // PRIVATE
+
+  /** First day covered, as a Modified Julian Day number. */
+  private final int fFirstDay;
+  private final int fNumDays;
+  /** One bit per day, starting with fFirstDay; set for business days. */
+  private final long[] fBits;
+  /** The number of business days before the start of each item of fBits; has one extra item, for the total. */
+  private final int[] fRanks;
+  /** The index (relative to fFirstDay) of each business day, in order. */
+  private final int[] fBusinessDays;
+
+  private static final Integer SUNDAY = Integer.valueOf(1);
+  private static final Integer SATURDAY = Integer.valueOf(7);
+
+  private BusinessCalendar(int aFirstDay, int aNumDays, long[] aBits){
+    fFirstDay = aFirstDay;
+    fNumDays = aNumDays;
+    fBits = aBits;
+    fRanks = new int[aBits.length + 1];
+    for(int word = 0; word < aBits.length; ++word){
+      fRanks[word + 1] = fRanks[word] + Long.bitCount(aBits[word]);
+    }
+    fBusinessDays = new int[fRanks[aBits.length]];
+    int count = 0;
+    for(int index = 0; index < aNumDays; ++index){
+      if(isBusiness(index)){
+        fBusinessDays[count++] = index;
+      }
+    }
+  }
+
+  private static int firstDayOf(int aFromYear, int aToYear){
+    if(aFromYear < 1 || aToYear > 9999 || aFromYear > aToYear){
+      throw new IllegalArgumentException("Years must be in the range 1..9999, in order: " + aFromYear + ".." + aToYear);
+    }
+    return DayNumbers.modifiedJulianDay(aFromYear, 1, 1);
+  }
+
+  private static int numDaysIn(int aFromYear, int aToYear){
+    return DayNumbers.modifiedJulianDay(aToYear, 12, 31) + 1 - firstDayOf(aFromYear, aToYear);
+  }
+
+  private static long[] businessDays(int aFromYear, int aToYear, Collection<Integer> aWeekendDays, Collection<DateTime> aHolidays){
+    int firstDay = firstDayOf(aFromYear, aToYear);
+    int numDays = numDaysIn(aFromYear, aToYear);
+    Set<Integer> weekendDays = new HashSet<Integer>(aWeekendDays);
+    boolean[] isWeekend = new boolean[8];
+    for(Integer weekday : weekendDays){
+      if(weekday < 1 || weekday > 7){
+        throw new IllegalArgumentException("Weekend days must be in the range 1..7 (Sunday..Saturday): " + weekday);
+      }
+      isWeekend[weekday] = true;
+    }
+    long[] result = new long[(numDays + 63) / 64];
+    for(int index = 0; index < numDays; ++index){
+      if(! isWeekend[DayNumbers.weekDay(firstDay + index)]){
+        result[index >> 6] |= 1L << index;
+      }
+    }
+    for(DateTime holiday : aHolidays){
+      int index = holiday.getModifiedJulianDayNumber().intValue() - firstDay;
+      if(index >= 0 && index < numDays){
+        result[index >> 6] &= ~(1L << index);
+      }
+    }
+    return result;
+  }
+
+  private BusinessCalendar combine(BusinessCalendar aThat, boolean aBoth){
+    int first = Math.max(fFirstDay, aThat.fFirstDay);
+    int end = Math.min(fFirstDay + fNumDays, aThat.fFirstDay + aThat.fNumDays);
+    if(first >= end){
+      throw new IllegalArgumentException("Calendars have no years in common.");
+    }
+    long[] bits = new long[(end - first + 63) / 64];
+    for(int day = first; day < end; ++day){
+      boolean thisDay = isBusiness(day - fFirstDay);
+      boolean thatDay = aThat.isBusiness(day - aThat.fFirstDay);
+      if(aBoth ? thisDay && thatDay : thisDay || thatDay){
+        int index = day - first;
+        bits[index >> 6] |= 1L << index;
+      }
+    }
+    return new BusinessCalendar(first, end - first, bits);
+  }
+
+  private boolean isBusiness(int aIndex){
+    return (fBits[aIndex >> 6] & (1L << aIndex)) != 0;
+  }
+
+  /** Return the number of business days before the day having the given index; the index may equal fNumDays. */
+  private int rankOf(int aIndex){
+    int word = aIndex >> 6;
+    int result = fRanks[word];
+    int bit = aIndex & 63;
+    if(bit != 0){
+      result = result + Long.bitCount(fBits[word] & ((1L << bit) - 1));
+    }
+    return result;
+  }
+
+  private int indexOf(int aModifiedJulianDay){
+    int result = aModifiedJulianDay - fFirstDay;
+    if(result < 0 || result >= fNumDays){
+      throw new IllegalArgumentException("Day " + aModifiedJulianDay + " is outside the range of this calendar: " + this);
+    }
+    return result;
+  }
+
+  /** As indexOf, but allowing the day just after the last day, for use as an exclusive end. */
+  private int indexOrEnd(int aModifiedJulianDay){
+    return aModifiedJulianDay == fFirstDay + fNumDays ? fNumDays : indexOf(aModifiedJulianDay);
+  }
+}
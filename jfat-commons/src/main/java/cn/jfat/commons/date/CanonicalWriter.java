@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+/**
+ Renders the fixed, ISO-like forms used by {@link DateTime#toString()}.
+
+ <P>The form is chosen by a bit mask of the units that are present, with one bit per {@link DateTime.Unit},
+ indexed by ordinal. The output is identical to calling {@link DateTime#format(String)} with the corresponding
+ pattern (for example, <tt>YYYY-MM-DD hh:mm</tt>), but the text is written directly, without interpreting a pattern.
+*/
+final class CanonicalWriter {
+
+  /* One bit per Unit, by ordinal. Literals are needed here, since these are used as switch labels. */
+  static final int YEAR = 1;
+  static final int MONTH = 1 << 1;
+  static final int DAY = 1 << 2;
+  static final int HOUR = 1 << 3;
+  static final int MINUTE = 1 << 4;
+  static final int SECOND = 1 << 5;
+  static final int NANOSECONDS = 1 << 6;
+
+  static final int DATE = YEAR | MONTH | DAY;
+  static final int TIME = HOUR | MINUTE | SECOND;
+
+  /**
+   Return the canonical text for the given units, or <tt>null</tt> if the combination of units present
+   has no canonical form (for example, hour and second, but no minute).
+   @param aPresent bit mask of the units that are present; absent units are ignored.
+  */
+  static String write(int aPresent, int aYear, int aMonth, int aDay, int aHour, int aMinute, int aSecond, int aNanos){
+    char[] buffer = new char[MAX_LENGTH];
+    int pos = 0;
+    switch(aPresent){
+      case YEAR :
+        pos = Digits.writeUnpadded(buffer, pos, aYear);
+        break;
+      case YEAR | MONTH :
+        pos = Digits.writeUnpadded(buffer, pos, aYear);
+        buffer[pos++] = '-';
+        pos = Digits.writeTwoDigits(buffer, pos, aMonth);
+        break;
+      case DATE :
+        pos = writeDate(buffer, pos, aYear, aMonth, aDay);
+        break;
+      case DATE | HOUR :
+        pos = writeDate(buffer, pos, aYear, aMonth, aDay);
+        buffer[pos++] = ' ';
+        pos = Digits.writeTwoDigits(buffer, pos, aHour);
+        break;
+      case DATE | HOUR | MINUTE :
+        pos = writeDate(buffer, pos, aYear, aMonth, aDay);
+        buffer[pos++] = ' ';
+        pos = writeHourMinute(buffer, pos, aHour, aMinute);
+        break;
+      case DATE | TIME :
+        pos = writeDate(buffer, pos, aYear, aMonth, aDay);
+        buffer[pos++] = ' ';
+        pos = writeTime(buffer, pos, aHour, aMinute, aSecond);
+        break;
+      case DATE | TIME | NANOSECONDS :
+        pos = writeDate(buffer, pos, aYear, aMonth, aDay);
+        buffer[pos++] = ' ';
+        pos = writeTime(buffer, pos, aHour, aMinute, aSecond);
+        pos = writeNanos(buffer, pos, aNanos);
+        break;
+      case HOUR | MINUTE :
+        pos = writeHourMinute(buffer, pos, aHour, aMinute);
+        break;
+      case TIME :
+        pos = writeTime(buffer, pos, aHour, aMinute, aSecond);
+        break;
+      case TIME | NANOSECONDS :
+        pos = writeTime(buffer, pos, aHour, aMinute, aSecond);
+        pos = writeNanos(buffer, pos, aNanos);
+        break;
+      default :
+        return null;
+    }
+    return new String(buffer, 0, pos);
+  }
+
+  // PRIVATE
+
+  /** Length of '9999-12-31 23:59:59.999999999'. */
+  private static final int MAX_LENGTH = 29;
+
+  private CanonicalWriter(){
+    //prevent construction
+  }
+
+  /** The year has no leading zeroes, as in the 'YYYY' format token. */
+  private static int writeDate(char[] aBuffer, int aPos, int aYear, int aMonth, int aDay){
+    int pos = Digits.writeUnpadded(aBuffer, aPos, aYear);
+    aBuffer[pos++] = '-';
+    pos = Digits.writeTwoDigits(aBuffer, pos, aMonth);
+    aBuffer[pos++] = '-';
+    return Digits.writeTwoDigits(aBuffer, pos, aDay);
+  }
+
+  private static int writeHourMinute(char[] aBuffer, int aPos, int aHour, int aMinute){
+    int pos = Digits.writeTwoDigits(aBuffer, aPos, aHour);
+    aBuffer[pos++] = ':';
+    return Digits.writeTwoDigits(aBuffer, pos, aMinute);
+  }
+
+  private static int writeTime(char[] aBuffer, int aPos, int aHour, int aMinute, int aSecond){
+    int pos = writeHourMinute(aBuffer, aPos, aHour, aMinute);
+    aBuffer[pos++] = ':';
+    return Digits.writeTwoDigits(aBuffer, pos, aSecond);
+  }
+
+  private static int writeNanos(char[] aBuffer, int aPos, int aNanos){
+    aBuffer[aPos] = '.';
+    return Digits.writeFraction(aBuffer, aPos + 1, aNanos, 9);
+  }
+}
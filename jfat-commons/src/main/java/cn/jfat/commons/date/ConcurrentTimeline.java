@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ Values keyed by date-time, in order, which may be read and changed by many threads at once.
+
+ <P>This is a thin layer over a <tt>java.util.concurrent.ConcurrentSkipListMap</tt>, a lock-free skip list.
+ No thread ever waits for a lock, so inserts, removals and scans made by different threads proceed in parallel.
+ The keys of the skip list are not <tt>DateTime</tt> objects, but small objects holding the {@link PackedDateTime} form
+ of each date-time; each comparison made while searching the list is a comparison of two primitives, not a call to
+ {@link DateTime#compareTo(DateTime)}.
+
+ <P>Each date-time has at most one value, as in a <tt>Map</tt>. Keys and values may not be <tt>null</tt>.
+ Each value is held in a small holder object, created by each put; removals which must not act on a newer value
+ for the same date-time, such as {@link #pollFirstBefore(DateTime)}, compare holders by identity, not values by <tt>equals</tt>.
+
+ <P>Iteration, as with {@link #range(DateTime, DateTime)}, is <em>weakly consistent</em> : it never throws
+ <tt>ConcurrentModificationException</tt>, and it sees the entries as they were at some point at or after the
+ iterator was created. Likewise, {@link #size()} is not a constant-time operation, and is only an estimate when
+ other threads are making changes.
+
+ <P>Example of expiring old sessions :
+ <PRE>
+  ConcurrentTimeline&lt;Session&gt; sessions = new ConcurrentTimeline&lt;Session&gt;();
+  ...
+  for(Map.Entry&lt;DateTime, Session&gt; expired = sessions.pollFirstBefore(cutoff); expired != null; expired = sessions.pollFirstBefore(cutoff)){
+    expired.getValue().close();
+  }
+ </PRE>
+*/
+public final class ConcurrentTimeline<V> {
+
+  /** Constructor for an empty timeline. */
+  public ConcurrentTimeline(){
+    //empty
+  }
+
+  /** Associate the value with the given date-time. Return the value it replaced, or <tt>null</tt> if none. */
+  public V put(DateTime aDateTime, V aValue){
+    return valueOf(fMap.put(new Key(aDateTime), new Holder<V>(aValue)));
+  }
+
+  /** Associate the value with the given date-time, only if it has no value yet. Return the existing value, or <tt>null</tt> if none. */
+  public V putIfAbsent(DateTime aDateTime, V aValue){
+    return valueOf(fMap.putIfAbsent(new Key(aDateTime), new Holder<V>(aValue)));
+  }
+
+  /** Return the value for the given date-time, or <tt>null</tt> if none. */
+  public V get(DateTime aDateTime){
+    return valueOf(fMap.get(new Key(aDateTime)));
+  }
+
+  /** Remove the value for the given date-time. Return the value removed, or <tt>null</tt> if none. */
+  public V remove(DateTime aDateTime){
+    return valueOf(fMap.remove(new Key(aDateTime)));
+  }
+
+  /** Remove the value for the given date-time, only if its current value equals the given one. Return <tt>true</tt> if removed. */
+  public boolean remove(DateTime aDateTime, V aValue){
+    Key key = new Key(aDateTime);
+    while(true){
+      Holder<V> current = fMap.get(key);
+      if(current == null || ! current.Value.equals(aValue)){
+        return false;
+      }
+      //removes only the holder just read; if it was replaced in the meantime, look again
+      if(fMap.remove(key, current)){
+        return true;
+      }
+    }
+  }
+
+  /**
+   Remove and return the earliest entry, if its date-time is before the given date-time. Otherwise, return <tt>null</tt>.
+   <P>When several threads poll at once, each entry is returned to exactly one of them.
+  */
+  public Map.Entry<DateTime, V> pollFirstBefore(DateTime aLimit){
+    Key limit = new Key(aLimit);
+    while(true){
+      Map.Entry<Key, Holder<V>> first = fMap.firstEntry();
+      if(first == null || first.getKey().compareTo(limit) >= 0){
+        return null;
+      }
+      //another thread may have removed or replaced the entry since it was read; if so, try again.
+      //Holders are compared by identity, so a newer, equal value put for the same date-time is never removed here.
+      if(fMap.remove(first.getKey(), first.getValue())){
+        return entry(first);
+      }
+    }
+  }
+
+  /** Return the earliest entry, or <tt>null</tt> if this timeline is empty. */
+  public Map.Entry<DateTime, V> first(){
+    return entry(fMap.firstEntry());
+  }
+
+  /** Return the latest entry, or <tt>null</tt> if this timeline is empty. */
+  public Map.Entry<DateTime, V> last(){
+    return entry(fMap.lastEntry());
+  }
+
+  /**
+   Return the entries whose date-times are in the given range, in order of date-time. See the class comment regarding
+   the consistency of the iteration. The iterator's <tt>remove</tt> method removes the entry from this timeline.
+   @param aFrom start of the range, inclusive.
+   @param aTo end of the range, exclusive.
+  */
+  public Iterator<Map.Entry<DateTime, V>> range(DateTime aFrom, DateTime aTo){
+    Key from = new Key(aFrom);
+    Key to = new Key(aTo);
+    ConcurrentNavigableMap<Key, Holder<V>> range = from.compareTo(to) < 0 ? fMap.subMap(from, to) : fMap.subMap(from, from);
+    return new Entries<V>(range.entrySet().iterator());
+  }
+
+  /** Return all entries, in order of date-time. See {@link #range(DateTime, DateTime)}. */
+  public Iterator<Map.Entry<DateTime, V>> iterator(){
+    return new Entries<V>(fMap.entrySet().iterator());
+  }
+
+  /** Return <tt>true</tt> only if there are no entries. */
+  public boolean isEmpty(){
+    return fMap.isEmpty();
+  }
+
+  /** Count the entries. This takes time proportional to their number. See the class comment. */
+  public int size(){
+    return fMap.size();
+  }
+
+  /** Remove all entries. */
+  public void clear(){
+    fMap.clear();
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "ConcurrentTimeline size:" + size();
+  }
+
+  // PRIVATE
+
+  private final ConcurrentSkipListMap<Key, Holder<V>> fMap = new ConcurrentSkipListMap<Key, Holder<V>>();
+
+  private static <V> Map.Entry<DateTime, V> entry(Map.Entry<Key, Holder<V>> aEntry){
+    return aEntry == null ? null : new AbstractMap.SimpleImmutableEntry<DateTime, V>(aEntry.getKey().Original, aEntry.getValue().Value);
+  }
+
+  private static <V> V valueOf(Holder<V> aHolder){
+    return aHolder == null ? null : aHolder.Value;
+  }
+
+  /** Holds a value. One is created for each put; equality is identity, by design. */
+  private static final class Holder<V> {
+    Holder(V aValue){
+      if(aValue == null){
+        throw new NullPointerException("Value cannot be null.");
+      }
+      Value = aValue;
+    }
+    final V Value;
+  }
+
+  /**
+   The key of the skip list : the primitive sort key, and the date-time it came from.
+   Only the primitives take part in comparisons and equality.
+  */
+  private static final class Key implements Comparable<Key> {
+    Key(DateTime aDateTime){
+      Packed = PackedDateTime.pack(aDateTime);
+      Nanos = PackedDateTime.nanosOf(aDateTime);
+      Original = aDateTime;
+    }
+    final long Packed;
+    final int Nanos;
+    final DateTime Original;
+
+    public int compareTo(Key aThat){
+      return PackedDateTime.compare(Packed, Nanos, aThat.Packed, aThat.Nanos);
+    }
+    @Override public boolean equals(Object aThat){
+      if (this == aThat) return true;
+      if (! (aThat instanceof Key)) return false;
+      Key that = (Key)aThat;
+      return Packed == that.Packed && Nanos == that.Nanos;
+    }
+    @Override public int hashCode(){
+      return (int)(Packed ^ (Packed >>> 32)) * 31 + Nanos;
+    }
+  }
+
+  /** Iterator over the entries of the skip list, returning date-times in place of keys. */
+  private static final class Entries<V> implements Iterator<Map.Entry<DateTime, V>> {
+    Entries(Iterator<Map.Entry<Key, Holder<V>>> aEntries){
+      fEntries = aEntries;
+    }
+    public boolean hasNext(){
+      return fEntries.hasNext();
+    }
+    public Map.Entry<DateTime, V> next(){
+      if(! hasNext()){
+        throw new NoSuchElementException();
+      }
+      return entry(fEntries.next());
+    }
+    public void remove(){
+      fEntries.remove();
+    }
+    private final Iterator<Map.Entry<Key, Holder<V>>> fEntries;
+  }
+}
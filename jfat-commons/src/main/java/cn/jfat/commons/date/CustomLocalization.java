@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ Text for the names of months, weekdays, and the AM/PM indicator, used when formatting a {@link DateTime}.
+
+ <P>This class exists mostly since <tt>SimpleDateFormat</tt> doesn't support all locales. It's the reusable form of
+ {@link DateTime#format(String, List, List, List)}: the text is validated and copied only once, when this object
+ is built, instead of on every call.
+
+ <P>A localization can be registered under a name, and then retrieved anywhere in the application :
+ <PRE>
+  CustomLocalization.register("humpday", months, weekdays, amPm);
+  ...
+  DateTimeFormatter formatter = CustomLocalization.forName("humpday").formatter("WWWW, MMMM D");
+  String text = formatter.format(dateTime);
+ </PRE>
+
+ <P>This class is immutable, and may be shared between threads.
+*/
+public final class CustomLocalization {
+
+  /**
+   Constructor.
+   @param aMonths contains text for all 12 months, starting with January; size must be 12.
+   @param aWeekdays contains text for all 7 weekdays, starting with Sunday; size must be 7.
+   @param aAmPmIndicators contains text for A.M and P.M. indicators (in that order); size must be 2.
+  */
+  public CustomLocalization(List<String> aMonths, List<String> aWeekdays, List<String> aAmPmIndicators){
+    if(aMonths.size() != 12){
+      throw new IllegalArgumentException("Your List of custom months must have size 12, but its size is " + aMonths.size());
+    }
+    if(aWeekdays.size() != 7){
+      throw new IllegalArgumentException("Your List of custom weekdays must have size 7, but its size is " + aWeekdays.size());
+    }
+    if(aAmPmIndicators.size() != 2){
+      throw new IllegalArgumentException("Your List of custom a.m./p.m. indicators must have size 2, but its size is " + aAmPmIndicators.size());
+    }
+    fMonths = aMonths.toArray(new String[12]);
+    fWeekdays = aWeekdays.toArray(new String[7]);
+    fAmPm = aAmPmIndicators.toArray(new String[2]);
+  }
+
+  /**
+   Build a localization, and register it under the given name, replacing any localization previously registered
+   under that name. Returns the new localization.
+   <P>The params are the same as those of the constructor.
+  */
+  public static CustomLocalization register(String aName, List<String> aMonths, List<String> aWeekdays, List<String> aAmPmIndicators){
+    CustomLocalization result = new CustomLocalization(aMonths, aWeekdays, aAmPmIndicators);
+    REGISTERED.put(aName, result);
+    return result;
+  }
+
+  /**
+   Return the localization registered under the given name.
+   @throws IllegalArgumentException if no localization has been registered with the given name.
+  */
+  public static CustomLocalization forName(String aName){
+    CustomLocalization result = REGISTERED.get(aName);
+    if(result == null){
+      throw new IllegalArgumentException("No custom localization has been registered with the name " + Util.quote(aName));
+    }
+    return result;
+  }
+
+  /**
+   Return a formatter using this localization.
+   @param aFormat uses the <a href="DateTime.html#FormattingLanguage">formatting mini-language</a>.
+  */
+  public DateTimeFormatter formatter(String aFormat){
+    return new DateTimeFormatter(aFormat, this);
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "CustomLocalization months:" + fMonths.length + " weekdays:" + fWeekdays.length;
+  }
+
+  // PACKAGE-PRIVATE
+
+  /** Return the text for the given month 1..12. */
+  String month(int aMonth){
+    return fMonths[aMonth - 1];
+  }
+
+  /** Return the text for the given weekday 1..7, for Sunday..Saturday. */
+  String weekday(int aWeekday){
+    return fWeekdays[aWeekday - 1];
+  }
+
+  /** Return the AM/PM indicator for the given hour 0..23. */
+  String amPm(int aHour){
+    return aHour < 12 ? fAmPm[AM] : fAmPm[PM];
+  }
+
+  /**
+   Return the text used by <tt>SimpleDateFormat</tt> for the given <tt>Locale</tt>.
+   The text is calculated only once per <tt>Locale</tt>.
+  */
+  static CustomLocalization forLocale(Locale aLocale){
+    CustomLocalization result = LOCALES.get(aLocale);
+    if(result == null){
+      result = new CustomLocalization(aLocale);
+      LOCALES.put(aLocale, result);
+    }
+    return result;
+  }
+
+  // PRIVATE
+  private final String[] fMonths;
+  private final String[] fWeekdays;
+  private final String[] fAmPm;
+
+  private static final int AM = 0; //a.m. comes first
+  private static final int PM = 1;
+
+  private static final Map<String, CustomLocalization> REGISTERED = new ConcurrentHashMap<String, CustomLocalization>();
+
+  /** Few distinct Locales are used by any one application, so this is not bounded. */
+  private static final Map<Locale, CustomLocalization> LOCALES = new ConcurrentHashMap<Locale, CustomLocalization>();
+
+  /*
+   The DateFormatSymbols class might be used to grab the locale-specific text, but the arrays it
+   returns are wonky and weird, so it's avoided here.
+  */
+  private CustomLocalization(Locale aLocale){
+    fMonths = new String[12];
+    SimpleDateFormat monthFormat = new SimpleDateFormat("MMMM", aLocale);
+    for(int idx = Calendar.JANUARY; idx <= Calendar.DECEMBER; ++idx){
+      Calendar firstDayOfMonth = new GregorianCalendar();
+      firstDayOfMonth.set(Calendar.YEAR, 2000);
+      firstDayOfMonth.set(Calendar.MONTH, idx);
+      firstDayOfMonth.set(Calendar.DAY_OF_MONTH, 15);
+      fMonths[idx - Calendar.JANUARY] = monthFormat.format(firstDayOfMonth.getTime());
+    }
+    fWeekdays = new String[7];
+    SimpleDateFormat weekdayFormat = new SimpleDateFormat("EEEE", aLocale);
+    //Feb 8, 2009..Feb 14, 2009 runs Sun..Sat
+    for(int idx = 8; idx <= 14; ++idx){
+      Calendar firstDayOfWeek = new GregorianCalendar();
+      firstDayOfWeek.set(Calendar.YEAR, 2009);
+      firstDayOfWeek.set(Calendar.MONTH, 1); //month is 0-based
+      firstDayOfWeek.set(Calendar.DAY_OF_MONTH, idx);
+      fWeekdays[idx - 8] = weekdayFormat.format(firstDayOfWeek.getTime());
+    }
+    fAmPm = new String[2];
+    fAmPm[AM] = getAmPmTextFor(6, aLocale);
+    fAmPm[PM] = getAmPmTextFor(18, aLocale);
+  }
+
+  private static String getAmPmTextFor(int aHour, Locale aLocale){
+    SimpleDateFormat format = new SimpleDateFormat("a", aLocale);
+    Calendar someDay = new GregorianCalendar();
+    someDay.set(Calendar.YEAR, 2000);
+    someDay.set(Calendar.MONTH, 6);
+    someDay.set(Calendar.DAY_OF_MONTH, 15);
+    someDay.set(Calendar.HOUR_OF_DAY, aHour);
+    return format.format(someDay.getTime());
+  }
+}
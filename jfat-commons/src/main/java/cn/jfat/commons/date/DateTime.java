@@ -15,15 +15,14 @@
  */
 package cn.jfat.commons.date;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 /**
  Building block class for an immutable date-time, with no time zone.    
@@ -34,7 +33,8 @@ import java.util.TimeZone;
 <P>This class can hold :
 <ul>   
   <li>a date-and-time : <tt>1958-03-31 18:59:56.123456789</tt>   
-  <li>a date only : <tt>1958-03-31</tt>  <li>a time only : <tt>18:59:56.123456789</tt>
+  <li>a date only : <tt>1958-03-31</tt>
+  <li>a time only : <tt>18:59:56.123456789</tt>
 </ul>
 
  <P>
@@ -323,6 +323,14 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
     YEAR, MONTH, DAY, HOUR, MINUTE, SECOND, NANOSECONDS;
   }
 
+  /** 
+   Calendar periods, for {@link #getStartOf(Period, int)} and {@link #getEndOf(Period, int)}. 
+   Weeks run from Sunday to Saturday, as in {@link #getWeekDay()}, and quarters start in January, April, July and October. 
+  */
+  public enum Period {
+    DAY, WEEK, MONTH, QUARTER, YEAR;
+  }
+
   /**
    Policy for treating 'day-of-the-month overflow' conditions encountered during some date calculations.
    
@@ -378,16 +386,14 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
   /**
    Constructor taking a date-time as a String. The text is trimmed by this class.
    
-   <P> When this constructor is called, the underlying text can be in an absolutely arbitrary
-   form, since it will not, initially, be parsed in any way. This policy of extreme
-   leniency allows you to use dates in an arbitrary format, without concern over possible
-   transformations of the date (time zone in particular), and without concerns over possibly bizarre content, such 
-   as '2005-00-00', as seen in some databases, such as MySQL.
+   <P>The text is parsed by this constructor. If it can't be parsed, the constructor does <i>not</i> fail : 
+   the text is kept as is, along with the fact that it couldn't be parsed. This allows you to pass along dates 
+   in an arbitrary format, without concern over possible transformations of the date (time zone in particular), 
+   and without concerns over possibly bizarre content, such as '2005-00-00', as seen in some databases, such as MySQL.
    
-   <P><i>However</i>, the moment you attempt to call <a href='#TwoSetsOfOperations'>almost any method</a>
-   in this class, an attempt will be made to parse 
-   the given date-time string into its constituent parts. Then, if the date-time string does not match one of the 
-   example formats listed below, a <tt>RuntimeException</tt> will be thrown.
+   <P><i>However</i>, if the text doesn't match one of the example formats listed below, then the first call to 
+   <a href='#TwoSetsOfOperations'>almost any method</a> which needs the parsed units will throw a 
+   <tt>RuntimeException</tt>.
    
    <P>Before calling this constructor, you may wish to call {@link #isParseable(String)} to explicitly test whether a 
    given String is parseable by this class.
@@ -447,11 +453,28 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
     use database format functions to alter the format of dates returned in a <tt>ResultSet</tt>.
    */
   public DateTime(String aDateTime) {
-    fIsAlreadyParsed = false;
     if (aDateTime == null) {
       throw new IllegalArgumentException("String passed to DateTime constructor is null. You can use an empty string, but not a null reference.");
     }
+    /*
+     * The text is parsed right away, so that every field can be final. Text which can't be parsed doesn't cause 
+     * the constructor to fail, as it always could be passed just about anything. Only a flag is kept, not an 
+     * exception : that's cheap for text which is never parsed, and ensureParsed throws a fresh exception 
+     * from the caller's own stack. The units are read from the parser itself, and are validated only once.
+     */
+    DateTimeParser parser = new DateTimeParser();
+    boolean parsed = parser.parseFields(aDateTime);
     fDateTime = aDateTime;
+    fIsAlreadyParsed = parsed;
+    fYear = parsed ? parser.fYear : null;
+    fMonth = parsed ? parser.fMonth : null;
+    fDay = parsed ? parser.fDay : null;
+    fHour = parsed ? parser.fHour : null;
+    fMinute = parsed ? parser.fMinute : null;
+    fSecond = parsed ? parser.fSecond : null;
+    fNanosecond = parsed ? parser.fNanosecond : null;
+    fHashCode = parsed ? hashCodeFor(fYear, fMonth, fDay, fHour, fMinute, fSecond, fNanosecond) : 0;
+    fPresentUnits = parsed ? presentUnitsFor(fYear, fMonth, fDay, fHour, fMinute, fSecond, fNanosecond) : 0;
   }
 
   /**
@@ -462,8 +485,7 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
   public static boolean isParseable(String aCandidateDateTime){
     boolean result = true;
     try {
-      DateTime dt = new DateTime(aCandidateDateTime);
-      dt.ensureParsed();
+      result = new DateTime(aCandidateDateTime).fIsAlreadyParsed;
     }
     catch (RuntimeException ex){
       result = false;
@@ -487,6 +509,12 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
    nanosecond precision).
    */
   public DateTime(Integer aYear, Integer aMonth, Integer aDay, Integer aHour, Integer aMinute, Integer aSecond, Integer aNanoseconds) {
+    this(aYear, aMonth, aDay, aHour, aMinute, aSecond, aNanoseconds, true);
+  }
+
+  /** As the public constructor, but validation can be skipped, when the caller has already validated the units. */
+  private DateTime(Integer aYear, Integer aMonth, Integer aDay, Integer aHour, Integer aMinute, Integer aSecond, Integer aNanoseconds, boolean aValidate) {
+    fDateTime = null;
     fIsAlreadyParsed = true;
     fYear = aYear;
     fMonth = aMonth;
@@ -495,7 +523,11 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
     fMinute = aMinute;
     fSecond = aSecond;
     fNanosecond = aNanoseconds;
-    validateState();
+    if (aValidate) {
+      validateState();
+    }
+    fHashCode = hashCodeFor(aYear, aMonth, aDay, aHour, aMinute, aSecond, aNanoseconds);
+    fPresentUnits = presentUnitsFor(aYear, aMonth, aDay, aHour, aMinute, aSecond, aNanoseconds);
   }
 
   /**
@@ -748,7 +780,7 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
     ensureParsed();
     Boolean result = null;
     if (isPresent(fYear)) {
-      result = isLeapYear(fYear);
+      result = DayNumbers.isLeapYear(fYear);
     }
     else {
       throw new MissingItem("Year is absent. Cannot determine if leap year.");
@@ -785,8 +817,28 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
    <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
    */
   public Integer getWeekIndex() {
-    DateTime start = DateTime.forDateOnly(2000, 1, 2);
-    return getWeekIndex(start);
+    int diff = getModifiedJulianDayNumber() - WEEK_INDEX_START;
+    return (diff / 7) + 1; // integer division
+  }
+
+  /**
+   Return the ISO-8601 week-based year of this <tt>DateTime</tt>.
+   <P>ISO weeks start on Monday, and week 1 is the week holding the first Thursday of the year. The week-based year 
+   is the same as {@link #getYear()}, except for a few days at the start or end of some years. For example, 
+   2014-12-29 is in week 1 of 2015, and 2016-01-01 is in week 53 of 2015.
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public Integer getIsoWeekYear() {
+    return DayNumbers.isoWeekYear(getModifiedJulianDayNumber());
+  }
+
+  /**
+   Return the ISO-8601 week of this <tt>DateTime</tt>, 1..53, within its week-based year.
+   See {@link #getIsoWeekYear()}. 
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public Integer getIsoWeek() {
+    return DayNumbers.isoWeek(getModifiedJulianDayNumber());
   }
 
   /**
@@ -901,52 +953,93 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
     return result;
   }
 
+  /**
+   Return the index of the fixed-size time bucket holding this <tt>DateTime</tt>.
+   
+   <P>Buckets are counted from <tt>aOrigin</tt>: bucket 0 starts at <tt>aOrigin</tt> itself, bucket 1 starts one 
+   bucket size later, and so on. Date-times before the origin are in negative buckets. For example, for 
+   15-minute buckets starting on the hour, or weekly buckets starting on a Monday :
+   <PRE>
+   long quarterHour = dt.bucketIndex(15, TimeUnit.MINUTES, DateTime.forDateOnly(2000, 1, 1));
+   long week = dt.bucketIndex(7, TimeUnit.DAYS, DateTime.forDateOnly(2000, 1, 3));
+   </PRE>
+   
+   <P>The calculation is pure integer arithmetic, on the day number and the nanoseconds of the day.
+   For large numbers of date-times held as primitives, see {@link PackedDateTime#bucketIndex(long, int, long, long, int)}.
+   
+   <P>Requires year-month-day to be present, both here and in <tt>aOrigin</tt>; if not, a runtime exception is thrown.
+   Absent time units are taken as 0.
+   @param aBucketSize the size of each bucket, in units of <tt>aUnit</tt>; 1 or more, and at most 
+   <tt>Long.MAX_VALUE</tt> nanoseconds, about 292 years.
+  */
+  public long bucketIndex(long aBucketSize, TimeUnit aUnit, DateTime aOrigin) {
+    ensureHasYearMonthDay();
+    aOrigin.ensureHasYearMonthDay();
+    return Buckets.index(
+      getModifiedJulianDayNumber() - aOrigin.getModifiedJulianDayNumber(), 
+      nanosOfDay() - aOrigin.nanosOfDay(), 
+      bucketNanos(aBucketSize, aUnit)
+    );
+  }
+
+  /**
+   Return the start of the fixed-size time bucket holding this <tt>DateTime</tt>. See 
+   {@link #bucketIndex(long, TimeUnit, DateTime)} for how buckets are defined.
+   
+   <P>Unlike {@link #truncate(Unit)}, the bucket size is not limited to a single unit, and buckets may be aligned 
+   to any origin. The return value has year..second; it has nanoseconds if this <tt>DateTime</tt> or the origin has 
+   nanoseconds, or if the bucket doesn't start on a whole second.
+   
+   <P>Requires year-month-day to be present, both here and in <tt>aOrigin</tt>; if not, a runtime exception is thrown.
+   Absent time units are taken as 0.
+   @param aBucketSize the size of each bucket, in units of <tt>aUnit</tt>; 1 or more, and at most 
+   <tt>Long.MAX_VALUE</tt> nanoseconds, about 292 years.
+  */
+  public DateTime floor(long aBucketSize, TimeUnit aUnit, DateTime aOrigin) {
+    return bucketStart(bucketIndex(aBucketSize, aUnit, aOrigin), aBucketSize, aUnit, aOrigin);
+  }
+
+  /**
+   Return the end of the fixed-size time bucket holding this <tt>DateTime</tt>, which is the start of the next bucket.
+   If this <tt>DateTime</tt> is exactly at the start of a bucket, then it's returned unchanged (but with the same units
+   as {@link #floor(long, TimeUnit, DateTime)}).
+   
+   <P>Requires year-month-day to be present, both here and in <tt>aOrigin</tt>; if not, a runtime exception is thrown.
+   Absent time units are taken as 0.
+   @param aBucketSize the size of each bucket, in units of <tt>aUnit</tt>; 1 or more, and at most 
+   <tt>Long.MAX_VALUE</tt> nanoseconds, about 292 years.
+  */
+  public DateTime ceil(long aBucketSize, TimeUnit aUnit, DateTime aOrigin) {
+    long index = bucketIndex(aBucketSize, aUnit, aOrigin);
+    DateTime result = bucketStart(index, aBucketSize, aUnit, aOrigin);
+    if (result.getModifiedJulianDayNumber().intValue() != getModifiedJulianDayNumber().intValue() || result.nanosOfDay() != nanosOfDay()) {
+      result = bucketStart(index + 1, aBucketSize, aUnit, aOrigin);
+    }
+    return result;
+  }
+
   /**
    Return <tt>true</tt> only if all of the given units are present in this <tt>DateTime</tt>.
    If a unit is <i>not</i> included in the argument list, then no test is made for its presence or absence
    in this <tt>DateTime</tt> by this method.
    */
   public boolean unitsAllPresent(Unit... aUnits) {
-    boolean result = true;
-    ensureParsed();
-    for (Unit unit : aUnits) {
-      if (Unit.NANOSECONDS == unit) {
-        result = result && fNanosecond != null;
-      }
-      else if (Unit.SECOND == unit) {
-        result = result && fSecond != null;
-      }
-      else if (Unit.MINUTE == unit) {
-        result = result && fMinute != null;
-      }
-      else if (Unit.HOUR == unit) {
-        result = result && fHour != null;
-      }
-      else if (Unit.DAY == unit) {
-        result = result && fDay != null;
-      }
-      else if (Unit.MONTH == unit) {
-        result = result && fMonth != null;
-      }
-      else if (Unit.YEAR == unit) {
-        result = result && fYear != null;
-      }
-    }
-    return result;
+    int units = toMask(aUnits);
+    return (presentUnits() & units) == units;
   }
 
   /**
    Return <tt>true</tt> only if this <tt>DateTime</tt> has a non-null values for year, month, and day.
   */
   public boolean hasYearMonthDay() {
-    return unitsAllPresent(Unit.YEAR, Unit.MONTH, Unit.DAY);
+    return (presentUnits() & CanonicalWriter.DATE) == CanonicalWriter.DATE;
   }
 
   /**
    Return <tt>true</tt> only if this <tt>DateTime</tt> has a non-null values for hour, minute, and second.
   */
   public boolean hasHourMinuteSecond() {
-    return unitsAllPresent(Unit.HOUR, Unit.MINUTE, Unit.SECOND);
+    return (presentUnits() & CanonicalWriter.TIME) == CanonicalWriter.TIME;
   }
 
   /**
@@ -955,32 +1048,7 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
    in this <tt>DateTime</tt> by this method.
    */
   public boolean unitsAllAbsent(Unit... aUnits) {
-    boolean result = true;
-    ensureParsed();
-    for (Unit unit : aUnits) {
-      if (Unit.NANOSECONDS == unit) {
-        result = result && fNanosecond == null;
-      }
-      else if (Unit.SECOND == unit) {
-        result = result && fSecond == null;
-      }
-      else if (Unit.MINUTE == unit) {
-        result = result && fMinute == null;
-      }
-      else if (Unit.HOUR == unit) {
-        result = result && fHour == null;
-      }
-      else if (Unit.DAY == unit) {
-        result = result && fDay == null;
-      }
-      else if (Unit.MONTH == unit) {
-        result = result && fMonth == null;
-      }
-      else if (Unit.YEAR == unit) {
-        result = result && fYear == null;
-      }
-    }
-    return result;
+    return (presentUnits() & toMask(aUnits)) == 0;
   }
 
   /**
@@ -989,7 +1057,7 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
    */
   public DateTime getStartOfDay() {
     ensureHasYearMonthDay();
-    return getStartEndDateTime(fDay, 0, 0, 0, 0);
+    return getStartEndDateTime(fYear, fMonth, fDay, START_OF_DAY);
   }
 
   /**
@@ -998,7 +1066,7 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
    */
   public DateTime getEndOfDay() {
     ensureHasYearMonthDay();
-    return getStartEndDateTime(fDay, 23, 59, 59, 999999999);
+    return getStartEndDateTime(fYear, fMonth, fDay, END_OF_DAY);
   }
 
   /**
@@ -1008,7 +1076,7 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
    */
   public DateTime getStartOfMonth() {
     ensureHasYearMonthDay();
-    return getStartEndDateTime(1, 0, 0, 0, 0);
+    return getStartEndDateTime(fYear, fMonth, 1, START_OF_DAY);
   }
 
   /**
@@ -1018,7 +1086,83 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
    */
   public DateTime getEndOfMonth() {
     ensureHasYearMonthDay();
-    return getStartEndDateTime(getNumDaysInMonth(), 23, 59, 59, 999999999);
+    return getStartEndDateTime(fYear, fMonth, DayNumbers.daysInMonth(fYear, fMonth), END_OF_DAY);
+  }
+
+  /**
+   Return the start of the week holding this <tt>DateTime</tt> (the preceding Sunday, or this day, if it's a Sunday), 
+   with the time portion coerced to '00:00:00.000000000'. 
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public DateTime getStartOfWeek() {
+    return getStartOf(Period.WEEK, 0);
+  }
+
+  /**
+   Return the end of the week holding this <tt>DateTime</tt> (the following Saturday, or this day, if it's a Saturday),
+   with the time portion coerced to '23:59:59.999999999'. 
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public DateTime getEndOfWeek() {
+    return getEndOf(Period.WEEK, 0);
+  }
+
+  /**
+   Return the first day of the calendar quarter holding this <tt>DateTime</tt>, with the time portion coerced 
+   to '00:00:00.000000000'. 
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public DateTime getStartOfQuarter() {
+    return getStartOf(Period.QUARTER, 0);
+  }
+
+  /**
+   Return the last day of the calendar quarter holding this <tt>DateTime</tt>, with the time portion coerced 
+   to '23:59:59.999999999'. 
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public DateTime getEndOfQuarter() {
+    return getEndOf(Period.QUARTER, 0);
+  }
+
+  /**
+   Return January 1 of the year holding this <tt>DateTime</tt>, with the time portion coerced to '00:00:00.000000000'. 
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public DateTime getStartOfYear() {
+    return getStartOf(Period.YEAR, 0);
+  }
+
+  /**
+   Return December 31 of the year holding this <tt>DateTime</tt>, with the time portion coerced to '23:59:59.999999999'. 
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   */
+  public DateTime getEndOfYear() {
+    return getEndOf(Period.YEAR, 0);
+  }
+
+  /**
+   Return the start of a period, a given number of periods away from the one holding this <tt>DateTime</tt>.
+   The time portion is coerced to '00:00:00.000000000'.
+   
+   <P>For example, <tt>getStartOf(Period.MONTH, 1)</tt> returns the first day of the following month, and 
+   <tt>getStartOf(Period.QUARTER, -1)</tt> returns the first day of the previous quarter.
+   The calculation is done directly on the year-month-day; no intermediate <tt>DateTime</tt> objects are created.
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   @param aNumPeriods either sign; 0 for the period holding this <tt>DateTime</tt>.
+   */
+  public DateTime getStartOf(Period aPeriod, int aNumPeriods) {
+    return startOrEndOf(aPeriod, aNumPeriods, START_OF_DAY);
+  }
+
+  /**
+   Return the end of a period, a given number of periods away from the one holding this <tt>DateTime</tt>.
+   The time portion is coerced to '23:59:59.999999999'. See {@link #getStartOf(Period, int)}.
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+   @param aNumPeriods either sign; 0 for the period holding this <tt>DateTime</tt>.
+   */
+  public DateTime getEndOf(Period aPeriod, int aNumPeriods) {
+    return startOrEndOf(aPeriod, aNumPeriods, END_OF_DAY);
   }
 
   /**
@@ -1086,6 +1230,26 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
     return new DateTime(datePortion.getYear(), datePortion.getMonth(), datePortion.getDay(), fHour, fMinute, fSecond, fNanosecond);
   }
 
+  /**
+   Return the date-times from <tt>aStart</tt> (inclusive) up to <tt>aEndExclusive</tt>, at a fixed step.
+   
+   <P>The returned list is lazy: each <tt>DateTime</tt> is created only when requested, directly from the start, 
+   and not by stepping through the preceding items. See {@link DateTimeRange} for details.
+   
+   <P>Example, for each hour of a day :
+   <PRE>
+   for(DateTime hour : DateTime.range(day, day.plusDays(1), 1, Unit.HOUR)) { ... }
+   </PRE>
+   
+   <P>Requires year-month-day to be present in both <tt>aStart</tt> and <tt>aEndExclusive</tt>; if not, a 
+   runtime exception is thrown.
+   @param aStep 1 or more.
+   @param aUnit any unit except nanoseconds.
+  */
+  public static DateTimeRange range(DateTime aStart, DateTime aEndExclusive, int aStep, Unit aUnit) {
+    return new DateTimeRange(aStart, aEndExclusive, aStep, aUnit);
+  }
+
   /**
    Return a new <tt>DateTime</tt> by subtracting an integral number of days from this one.
    
@@ -1168,6 +1332,19 @@ public final class DateTime implements Comparable<DateTime>, Serializable {
     return format.format(this);
   }
 
+  /**
+   Output this <tt>DateTime</tt> as a formatted String using numbers and a previously built {@link CustomLocalization}.
+
+   <P>This is the same as {@link #format(String, List, List, List)}, but the text for months, weekdays, and AM/PM 
+   indicator is validated only once, when the <tt>CustomLocalization</tt> is built. 
+   @param aFormat uses the <a href="#FormattingLanguage">formatting mini-language</a> defined in the class comment.
+   @param aLocalization text for months, weekdays, and AM/PM indicator.
+   */
+  public String format(String aFormat, CustomLocalization aLocalization) {
+    DateTimeFormatter format = new DateTimeFormatter(aFormat, aLocalization);
+    return format.format(this);
+  }
+
   /**
    Return the current date-time.
    <P>Combines the return value of {@link System#currentTimeMillis()} with the given {@link TimeZone}.
@@ -1300,7 +1477,13 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
     if (result == null) {
       DateTime that = (DateTime)aThat;
       that.ensureParsed();
-      result = ModelUtil.equalsFor(this.getSignificantFields(), that.getSignificantFields());
+      //the hash codes are always calculated, and usually settle the question at once
+      result = fHashCode == that.fHashCode &&
+        ModelUtil.areEqual(fYear, that.fYear) && ModelUtil.areEqual(fMonth, that.fMonth) && 
+        ModelUtil.areEqual(fDay, that.fDay) && ModelUtil.areEqual(fHour, that.fHour) && 
+        ModelUtil.areEqual(fMinute, that.fMinute) && ModelUtil.areEqual(fSecond, that.fSecond) && 
+        ModelUtil.areEqual(fNanosecond, that.fNanosecond)
+      ;
     }
     return result;
   }
@@ -1312,10 +1495,7 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
    {@link #equals(Object)}.
    */
   @Override public int hashCode() {
-    if (fHashCode == 0) {
-      ensureParsed();
-      fHashCode = ModelUtil.hashCodeFor(getSignificantFields());
-    }
+    ensureParsed();
     return fHashCode;
   }
 
@@ -1345,26 +1525,30 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
    <PRE>Y:2001 M:1 D:31 h:13 m:null s:59 f:123456789</PRE> 
   */
   @Override public String toString() {
-    String result = "";
-    if (Util.textHasContent(fDateTime)) {
-      result = fDateTime;
-    }
-    else {
-      String format = calcToStringFormat();
-      if(format != null){
-        result = format(calcToStringFormat());
+    String result = fToString;
+    if (result == null) {
+      if (Util.textHasContent(fDateTime)) {
+        result = fDateTime;
       }
       else {
-        StringBuilder builder = new StringBuilder();
-        addToString("Y", fYear, builder);
-        addToString("M", fMonth, builder);
-        addToString("D", fDay, builder);
-        addToString("h", fHour, builder);
-        addToString("m", fMinute, builder);
-        addToString("s", fSecond, builder);
-        addToString("f", fNanosecond, builder);
-        result = builder.toString().trim();
+        int present = presentUnits();
+        result = CanonicalWriter.write(
+          present & ALL_UNITS, valueOf(fYear), valueOf(fMonth), valueOf(fDay), 
+          valueOf(fHour), valueOf(fMinute), valueOf(fSecond), valueOf(fNanosecond)
+        );
+        if (result == null) {
+          StringBuilder builder = new StringBuilder();
+          addToString("Y", fYear, builder);
+          addToString("M", fMonth, builder);
+          addToString("D", fDay, builder);
+          addToString("h", fHour, builder);
+          addToString("m", fMinute, builder);
+          addToString("s", fSecond, builder);
+          addToString("f", fNanosecond, builder);
+          result = builder.toString().trim();
+        }
       }
+      fToString = result;
     }
     return result;
   }
@@ -1385,13 +1569,43 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
     private static final long serialVersionUID = -7359967338896127755L;
   }
 
-  /** Intended as internal tool, for testing only. Note scope is not public! */
+  /** 
+   Return the reason the given units can't make a <tt>DateTime</tt>, or <tt>null</tt> if they can. 
+   The same check as made by {@link #DateTime(Integer, Integer, Integer, Integer, Integer, Integer, Integer)}, 
+   but without an exception.
+  */
+  static String rangeProblem(Integer aYear, Integer aMonth, Integer aDay, Integer aHour, Integer aMinute, Integer aSecond, Integer aNanoseconds) {
+    String result = rangeProblem(aYear, 1, 9999, "Year");
+    if (result == null) result = rangeProblem(aMonth, 1, 12, "Month");
+    if (result == null) result = rangeProblem(aDay, 1, 31, "Day");
+    if (result == null) result = rangeProblem(aHour, 0, 23, "Hour");
+    if (result == null) result = rangeProblem(aMinute, 0, 59, "Minute");
+    if (result == null) result = rangeProblem(aSecond, 0, 59, "Second");
+    if (result == null) result = rangeProblem(aNanoseconds, 0, 999999999, "Nanosecond");
+    if (result == null) result = numDaysInMonthProblem(aYear, aMonth, aDay);
+    return result;
+  }
+
+  /** 
+   Throw the failure to parse the text passed to {@link #DateTime(String)}, if any.
+   Intended as internal tool, for testing only. Note scope is not public! 
+  */
   void ensureParsed() {
     if (!fIsAlreadyParsed) {
-      parseDateTimeText();
+      //parse again, to throw the usual exception, with the caller's stack trace
+      new DateTimeParser().parse(fDateTime);
     }
   }
 
+  /**
+   Return a bit mask of the units present in this <tt>DateTime</tt>, with one bit per {@link Unit}, by ordinal.
+   See {@link CanonicalWriter} for the names of the bits. 
+  */
+  int presentUnits() {
+    ensureParsed();
+    return fPresentUnits;
+  }
+
   /**
    Return the number of days in the given month. The returned value depends on the year as
    well, because of leap years. Returns <tt>null</tt> if either year or month are
@@ -1401,45 +1615,10 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
   static Integer getNumDaysInMonth(Integer aYear, Integer aMonth) {
     Integer result = null;
     if (aYear != null && aMonth != null) {
-      if (aMonth == 1) {
-        result = 31;
-      }
-      else if (aMonth == 2) {
-        result = isLeapYear(aYear) ? 29 : 28;
-      }
-      else if (aMonth == 3) {
-        result = 31;
-      }
-      else if (aMonth == 4) {
-        result = 30;
-      }
-      else if (aMonth == 5) {
-        result = 31;
-      }
-      else if (aMonth == 6) {
-        result = 30;
-      }
-      else if (aMonth == 7) {
-        result = 31;
-      }
-      else if (aMonth == 8) {
-        result = 31;
-      }
-      else if (aMonth == 9) {
-        result = 30;
-      }
-      else if (aMonth == 10) {
-        result = 31;
-      }
-      else if (aMonth == 11) {
-        result = 30;
-      }
-      else if (aMonth == 12) {
-        result = 31;
-      }
-      else {
+      if (aMonth < 1 || aMonth > 12) {
         throw new AssertionError("Month is out of range 1..12:" + aMonth);
       }
+      result = DayNumbers.daysInMonth(aYear, aMonth);
     }
     return result;
   }
@@ -1459,6 +1638,11 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
     return DateTime.forDateOnly(y, m, d);
   }
 
+  /** Return the start of the given bucket, counted from the origin. See {@link #floor(long, TimeUnit, DateTime)}. */
+  static DateTime startOfBucket(long aIndex, long aBucketNanos, DateTime aOrigin) {
+    return aOrigin.bucketStart(aIndex, aBucketNanos, TimeUnit.NANOSECONDS, aOrigin);
+  }
+
   // PRIVATE
 
   /*
@@ -1467,30 +1651,59 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
    forms, and may need to generate the other.
    */
 
+  /*
+   Every field is final, and set by the constructor. So a DateTime can be shared between threads 
+   without synchronization, and one which doesn't escape a method (for example, an intermediate value in 
+   dt.plusDays(1).getStartOfDay()) can be optimized away entirely by the JIT. The text form is parsed 
+   right away, and kept alongside the parsed form.
+   */
+
   /** The text form of a date. @serial */
-  private String fDateTime;
+  private final String fDateTime;
 
   /* The following 7 items represent the parsed form of a DateTime. */
   /**  @serial */
-  private Integer fYear;
+  private final Integer fYear;
   /**  @serial */
-  private Integer fMonth;
+  private final Integer fMonth;
   /**  @serial */
-  private Integer fDay;
+  private final Integer fDay;
   /**  @serial */
-  private Integer fHour;
+  private final Integer fHour;
   /**  @serial */
-  private Integer fMinute;
+  private final Integer fMinute;
   /**  @serial */
-  private Integer fSecond;
+  private final Integer fSecond;
   /**  @serial */
-  private Integer fNanosecond;
+  private final Integer fNanosecond;
 
-  /** Indicates if this DateTime has been parsed into its 7 constituents. @serial */
-  private boolean fIsAlreadyParsed;
+  /** Indicates if this DateTime has been parsed into its 7 constituents; false only if the text can't be parsed. @serial */
+  private final boolean fIsAlreadyParsed;
 
   /** @serial */
-  private int fHashCode;
+  private final int fHashCode;
+  
+  /** The result of {@link #presentUnits()}. */
+  private final transient int fPresentUnits;
+  
+  /** 
+   Cached result of {@link #toString()}. Not final, since most objects never need it. Since String is immutable, 
+   a race between threads at worst causes the text to be built more than once. 
+  */
+  private transient String fToString;
+  
+  private static final int MIN_MODIFIED_JD = DayNumbers.modifiedJulianDay(1, 1, 1);
+  private static final int MAX_MODIFIED_JD = DayNumbers.modifiedJulianDay(9999, 12, 31);
+  
+  /** Day 1 of week 1, for {@link #getWeekIndex()} : Sunday, January 2, 2000. */
+  private static final int WEEK_INDEX_START = DayNumbers.modifiedJulianDay(2000, 1, 2);
+  
+  /** The time portion of the start of a day, for getStartEndDateTime. */
+  private static final Integer[] START_OF_DAY = {0, 0, 0, 0};
+  /** The time portion of the end of a day, for getStartEndDateTime. */
+  private static final Integer[] END_OF_DAY = {23, 59, 59, 999999999};
+  
+  private static final int ALL_UNITS = CanonicalWriter.DATE | CanonicalWriter.TIME | CanonicalWriter.NANOSECONDS;
   
   private static final int EQUAL = 0;
   
@@ -1536,72 +1749,114 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
   }
 
   private void validateState() {
-    checkRange(fYear, 1, 9999, "Year");
-    checkRange(fMonth, 1, 12, "Month");
-    checkRange(fDay, 1, 31, "Day");
-    checkRange(fHour, 0, 23, "Hour");
-    checkRange(fMinute, 0, 59, "Minute");
-    checkRange(fSecond, 0, 59, "Second");
-    checkRange(fNanosecond, 0, 999999999, "Nanosecond");
-    checkNumDaysInMonth(fYear, fMonth, fDay);
+    String problem = rangeProblem(fYear, fMonth, fDay, fHour, fMinute, fSecond, fNanosecond);
+    if (problem != null) {
+      throw new ItemOutOfRange(problem);
+    }
   }
 
-  private void checkRange(Integer aValue, int aMin, int aMax, String aName) {
+  private static String rangeProblem(Integer aValue, int aMin, int aMax, String aName) {
+    String result = null;
     if(aValue != null){
       if (aValue < aMin || aValue > aMax){
-        throw new ItemOutOfRange(aName + " is not in the range " + aMin + ".." + aMax + ". Value is:" + aValue);
+        result = aName + " is not in the range " + aMin + ".." + aMax + ". Value is:" + aValue;
       }
     }
+    return result;
   }
 
-  private void checkNumDaysInMonth(Integer aYear, Integer aMonth, Integer aDay) {
+  private static String numDaysInMonthProblem(Integer aYear, Integer aMonth, Integer aDay) {
+    String result = null;
     if (hasYearMonthDay(aYear, aMonth, aDay) && aDay > getNumDaysInMonth(aYear, aMonth)) {
-      throw new ItemOutOfRange("The day-of-the-month value '" + aDay + "' exceeds the number of days in the month: " + getNumDaysInMonth(aYear, aMonth));
+      result = "The day-of-the-month value '" + aDay + "' exceeds the number of days in the month: " + getNumDaysInMonth(aYear, aMonth);
     }
+    return result;
   }
 
-  private void parseDateTimeText() {
-    DateTimeParser parser = new DateTimeParser();
-    DateTime dateTime = parser.parse(fDateTime);
-    /*
-     * This is unusual - we essentially copy from one object to another. This could be
-     * avoided by building another interface, But defining a top-level interface for this
-     * simple task is too high a price.
-     */
-    fYear = dateTime.fYear;
-    fMonth = dateTime.fMonth;
-    fDay = dateTime.fDay;
-    fHour = dateTime.fHour;
-    fMinute = dateTime.fMinute;
-    fSecond = dateTime.fSecond;
-    fNanosecond = dateTime.fNanosecond;
-    validateState();
+  /** The same value as <tt>ModelUtil.hashCodeFor</tt> over the 7 units, without creating an array. */
+  private static int hashCodeFor(Integer aYear, Integer aMonth, Integer aDay, Integer aHour, Integer aMinute, Integer aSecond, Integer aNanoseconds) {
+    int result = ModelUtil.HASH_SEED;
+    result = ModelUtil.hash(result, (Object)aYear);
+    result = ModelUtil.hash(result, (Object)aMonth);
+    result = ModelUtil.hash(result, (Object)aDay);
+    result = ModelUtil.hash(result, (Object)aHour);
+    result = ModelUtil.hash(result, (Object)aMinute);
+    result = ModelUtil.hash(result, (Object)aSecond);
+    result = ModelUtil.hash(result, (Object)aNanoseconds);
+    return result;
   }
 
-  private boolean hasYearMonthDay(Integer aYear, Integer aMonth, Integer aDay) {
-    return isPresent(aYear, aMonth, aDay);
+  private static int presentUnitsFor(Integer aYear, Integer aMonth, Integer aDay, Integer aHour, Integer aMinute, Integer aSecond, Integer aNanoseconds) {
+    int result = 0;
+    result = aYear == null ? result : result | CanonicalWriter.YEAR;
+    result = aMonth == null ? result : result | CanonicalWriter.MONTH;
+    result = aDay == null ? result : result | CanonicalWriter.DAY;
+    result = aHour == null ? result : result | CanonicalWriter.HOUR;
+    result = aMinute == null ? result : result | CanonicalWriter.MINUTE;
+    result = aSecond == null ? result : result | CanonicalWriter.SECOND;
+    result = aNanoseconds == null ? result : result | CanonicalWriter.NANOSECONDS;
+    return result;
   }
 
-  private static boolean isLeapYear(Integer aYear) {
-    boolean result = false;
-    if (aYear % 100 == 0) {
-      // this is a century year
-      if (aYear % 400 == 0) {
-        result = true;
-      }
+  private static boolean hasYearMonthDay(Integer aYear, Integer aMonth, Integer aDay) {
+    return aYear != null && aMonth != null && aDay != null;
+  }
+
+  private void addToString(String aName, Object aValue, StringBuilder aBuilder) {
+    aBuilder.append(aName).append(':').append(aValue).append(' ');
+  }
+
+  /** Return the nanoseconds since the start of the day; absent units are taken as 0. */
+  private long nanosOfDay() {
+    ensureParsed();
+    return Buckets.nanosOfDay(
+      PackedDateTime.valueOf(fHour), PackedDateTime.valueOf(fMinute), PackedDateTime.valueOf(fSecond), PackedDateTime.valueOf(fNanosecond)
+    );
+  }
+
+  private static long bucketNanos(long aBucketSize, TimeUnit aUnit) {
+    if (aBucketSize < 1) {
+      throw new IllegalArgumentException("Bucket size must be 1 or more: " + aBucketSize);
     }
-    else if (aYear % 4 == 0) {
-      result = true;
+    //toNanos doesn't fail when the result is too large : it silently returns Long.MAX_VALUE
+    if (aBucketSize > aUnit.convert(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+      throw new IllegalArgumentException("Bucket size is too large to be held in nanoseconds: " + aBucketSize + " " + aUnit);
     }
-    return result;
+    return aUnit.toNanos(aBucketSize);
   }
 
-  private Object[] getSignificantFields() {
-    return new Object[]{fYear, fMonth, fDay, fHour, fMinute, fSecond, fNanosecond};
+  private DateTime bucketStart(long aIndex, long aBucketSize, TimeUnit aUnit, DateTime aOrigin) {
+    long bucketNanos = bucketNanos(aBucketSize, aUnit);
+    long days = Buckets.startDays(aIndex, bucketNanos);
+    long nanosOfDay = aOrigin.nanosOfDay() + Buckets.startNanos(aIndex, bucketNanos);
+    if (nanosOfDay >= Buckets.NANOS_PER_DAY) {
+      nanosOfDay = nanosOfDay - Buckets.NANOS_PER_DAY;
+      ++days;
+    }
+    long day = aOrigin.getModifiedJulianDayNumber() + days;
+    if (day < MIN_MODIFIED_JD || day > MAX_MODIFIED_JD) {
+      throw new ItemOutOfRange("Start of bucket is outside the years 1..9999.");
+    }
+    int ymd = DayNumbers.toYearMonthDay((int)day);
+    int nanosOfSecond = (int)(nanosOfDay % 1000000000L);
+    int secondOfDay = (int)(nanosOfDay / 1000000000L);
+    boolean hasNanos = fNanosecond != null || aOrigin.getNanoseconds() != null || nanosOfSecond != 0;
+    return new DateTime(
+      DayNumbers.yearOf(ymd), DayNumbers.monthOf(ymd), DayNumbers.dayOf(ymd), 
+      secondOfDay / 3600, (secondOfDay / 60) % 60, secondOfDay % 60, hasNanos ? Integer.valueOf(nanosOfSecond) : null
+    );
   }
 
-  private void addToString(String aName, Object aValue, StringBuilder aBuilder) {
-    aBuilder.append(aName + ":" + String.valueOf(aValue) + " ");
+  private static int valueOf(Integer aUnit) {
+    return aUnit == null ? 0 : aUnit.intValue();
+  }
+
+  private static int toMask(Unit... aUnits) {
+    int result = 0;
+    for (Unit unit : aUnits) {
+      result = result | 1 << unit.ordinal();
+    }
+    return result;
   }
 
   /** Return true only if all the given arguments are non-null. */
@@ -1616,64 +1871,58 @@ DateTime newDt = oldDt.changeTimeZone(fromUK, toIndonesia);
     return result;
   }
 
-  private DateTime getStartEndDateTime(Integer aDay, Integer aHour, Integer aMinute, Integer aSecond, Integer aNanosecond) {
-    ensureHasYearMonthDay();
-    return new DateTime(fYear, fMonth, aDay, aHour, aMinute, aSecond, aNanosecond);
+  /** The year-month-day must already be valid. The time portion is one of START_OF_DAY or END_OF_DAY. */
+  private DateTime getStartEndDateTime(Integer aYear, Integer aMonth, Integer aDay, Integer[] aTime) {
+    return new DateTime(aYear, aMonth, aDay, aTime[0], aTime[1], aTime[2], aTime[3], false);
   }
-  
-  private String calcToStringFormat(){
-    String result = null; //caller will check for this; null means the set of units is bizarre
-    if(unitsAllPresent(Unit.YEAR) && unitsAllAbsent(Unit.MONTH, Unit.DAY, Unit.HOUR, Unit.MINUTE, Unit.SECOND, Unit.NANOSECONDS)){
-      result = "YYYY";
-    }
-    else if (unitsAllPresent(Unit.YEAR, Unit.MONTH) && unitsAllAbsent(Unit.DAY, Unit.HOUR, Unit.MINUTE, Unit.SECOND, Unit.NANOSECONDS)){
-      result = "YYYY-MM";
-    }
-    else if (unitsAllPresent(Unit.YEAR, Unit.MONTH, Unit.DAY) && unitsAllAbsent(Unit.HOUR, Unit.MINUTE, Unit.SECOND, Unit.NANOSECONDS)){
-      result = "YYYY-MM-DD";
-    }
-    else if (unitsAllPresent(Unit.YEAR, Unit.MONTH, Unit.DAY, Unit.HOUR) && unitsAllAbsent(Unit.MINUTE, Unit.SECOND, Unit.NANOSECONDS)){
-      result = "YYYY-MM-DD hh";
-    }
-    else if (unitsAllPresent(Unit.YEAR, Unit.MONTH, Unit.DAY, Unit.HOUR, Unit.MINUTE) && unitsAllAbsent(Unit.SECOND, Unit.NANOSECONDS)){
-      result = "YYYY-MM-DD hh:mm";
-    }
-    else if (unitsAllPresent(Unit.YEAR, Unit.MONTH, Unit.DAY, Unit.HOUR, Unit.MINUTE, Unit.SECOND) && unitsAllAbsent(Unit.NANOSECONDS)){
-      result = "YYYY-MM-DD hh:mm:ss";
-    }
-    else if (unitsAllPresent(Unit.YEAR, Unit.MONTH, Unit.DAY, Unit.HOUR, Unit.MINUTE, Unit.SECOND, Unit.NANOSECONDS)){
-      result = "YYYY-MM-DD hh:mm:ss.fffffffff";
-    }
-    else if (unitsAllAbsent(Unit.YEAR, Unit.MONTH, Unit.DAY) && unitsAllPresent(Unit.HOUR, Unit.MINUTE, Unit.SECOND, Unit.NANOSECONDS)){
-      result = "hh:mm:ss.fffffffff";
-    }
-    else if (unitsAllAbsent(Unit.YEAR, Unit.MONTH, Unit.DAY, Unit.NANOSECONDS) && unitsAllPresent(Unit.HOUR, Unit.MINUTE, Unit.SECOND)){
-      result = "hh:mm:ss";
+
+  private DateTime startOrEndOf(Period aPeriod, int aNumPeriods, Integer[] aTime) {
+    ensureHasYearMonthDay();
+    boolean isEnd = aTime == END_OF_DAY;
+    int year = fYear;
+    int month = fMonth;
+    int day = fDay;
+    if (aPeriod == Period.DAY || aPeriod == Period.WEEK) {
+      long mjd = DayNumbers.modifiedJulianDay(year, month, day);
+      if (aPeriod == Period.DAY) {
+        mjd = mjd + aNumPeriods;
+      }
+      else {
+        mjd = mjd - (DayNumbers.weekDay((int)mjd) - 1) + 7L * aNumPeriods + (isEnd ? 6 : 0);
+      }
+      if (mjd < MIN_MODIFIED_JD || mjd > MAX_MODIFIED_JD) {
+        throw new ItemOutOfRange("Period is outside the years 1..9999.");
+      }
+      int ymd = DayNumbers.toYearMonthDay((int)mjd);
+      year = DayNumbers.yearOf(ymd);
+      month = DayNumbers.monthOf(ymd);
+      day = DayNumbers.dayOf(ymd);
     }
-    else if (unitsAllAbsent(Unit.YEAR, Unit.MONTH, Unit.DAY, Unit.SECOND, Unit.NANOSECONDS) && unitsAllPresent(Unit.HOUR, Unit.MINUTE)){
-      result = "hh:mm";
+    else {
+      //count months from the start of year 0, then move by whole periods
+      int monthsPerPeriod = aPeriod == Period.MONTH ? 1 : aPeriod == Period.QUARTER ? 3 : 12;
+      long months = year * 12L + (month - 1);
+      months = months - months % monthsPerPeriod + (long)aNumPeriods * monthsPerPeriod + (isEnd ? monthsPerPeriod - 1 : 0);
+      if (months < 12 || months >= 10000 * 12) {
+        throw new ItemOutOfRange("Period is outside the years 1..9999.");
+      }
+      year = (int)(months / 12);
+      month = (int)(months % 12) + 1;
+      day = isEnd ? DayNumbers.daysInMonth(year, month) : 1;
     }
-    return result;
+    return getStartEndDateTime(year == fYear ? fYear : Integer.valueOf(year), month, day, aTime);
   }
   
   /**
-    Always treat de-serialization as a full-blown constructor, by
-    validating the final state of the de-serialized object.
-  */
-  private void readObject(ObjectInputStream aInputStream) throws ClassNotFoundException, IOException {
-    //always perform the default de-serialization first
-    aInputStream.defaultReadObject();
-    //no mutable fields in this case
-    validateState();
-  }
-
-   /**
-    This is the default implementation of writeObject.
-    Customise if necessary.
+    Always treat de-serialization as a full-blown constructor, by replacing the de-serialized object 
+    with one built by a constructor. This validates the state, and sets the transient fields. 
+    The serialized form is unchanged, and includes objects serialized before their text was parsed.
   */
-  private void writeObject(ObjectOutputStream aOutputStream) throws IOException {
-    //perform the default serialization for all non-transient, non-static fields
-    aOutputStream.defaultWriteObject();
+  private Object readResolve() throws ObjectStreamException {
+    return fDateTime != null ? 
+      new DateTime(fDateTime) : 
+      new DateTime(fYear, fMonth, fDay, fHour, fMinute, fSecond, fNanosecond)
+    ;
   }
   
 }
\ No newline at end of file
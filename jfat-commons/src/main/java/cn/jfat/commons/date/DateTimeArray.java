@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ A growable column of date-times, held in primitive form.
+
+ <P>Each item is held as its {@link PackedDateTime} form : a <tt>long</tt> for year..second, which also records which of
+ those units are present, and an <tt>int</tt> for the nanoseconds. The array of nanoseconds is created only when the first item
+ having nanoseconds is stored; until then, each item takes 8 bytes, instead of the 150 or so taken by a <tt>DateTime</tt>
+ object in a <tt>List</tt>. Nothing is lost : partial date-times, with absent units, are held exactly.
+
+ <P>This is a <tt>List&lt;DateTime&gt;</tt>. A <tt>DateTime</tt> object is created only when an item is read with {@link #get(int)};
+ the primitive accessors {@link #getPacked(int)} and {@link #getNanos(int)} create no objects at all.
+
+ <P>{@link #subList(int, int)} returns a view over a range of items, sharing the same storage; nothing is copied.
+ Changes made with <tt>set</tt>, or by sorting a view, are seen in the original array, and vice versa. A view has a fixed size.
+ As usual for views, if the original array is structurally changed (items added or removed), then the behaviour of a view is undefined.
+
+ <P>This class is not thread-safe.
+
+ <P>Example :
+ <PRE>
+  DateTimeArray column = new DateTimeArray();
+  column.add(new DateTime("2014-06-05 13:47"));
+  ...
+  column.sort();
+  int index = column.binarySearch(new DateTime("2014-06-01"));
+ </PRE>
+*/
+public final class DateTimeArray extends AbstractList<DateTime> implements RandomAccess {
+
+  /** Constructor for an empty array. */
+  public DateTimeArray(){
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   Constructor for an empty array, with room for the given number of items before it grows.
+   @param aInitialCapacity 0 or more.
+  */
+  public DateTimeArray(int aInitialCapacity){
+    if(aInitialCapacity < 0){
+      throw new IllegalArgumentException("Capacity cannot be negative: " + aInitialCapacity);
+    }
+    fStore = new Store(aInitialCapacity);
+    fOffset = 0;
+    fSize = 0;
+    fIsView = false;
+  }
+
+  /** Constructor holding the given date-times, in the order returned by the collection's iterator. */
+  public DateTimeArray(Collection<? extends DateTime> aDateTimes){
+    this(aDateTimes.size());
+    for(DateTime dateTime : aDateTimes){
+      add(dateTime);
+    }
+  }
+
+  /** The number of items. */
+  @Override public int size(){
+    return fSize;
+  }
+
+  /** Return a new <tt>DateTime</tt> for the item at the given index. */
+  @Override public DateTime get(int aIndex){
+    int index = storeIndex(aIndex);
+    return PackedDateTime.toDateTime(fStore.Packed[index], fStore.nanosAt(index));
+  }
+
+  /** Replace the item at the given index, and return the item it replaced. Throws a runtime exception if the item is <tt>null</tt>. */
+  @Override public DateTime set(int aIndex, DateTime aDateTime){
+    DateTime result = get(aIndex);
+    setPacked(aIndex, PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime));
+    return result;
+  }
+
+  /** Append the given item. Not supported by views. Throws a runtime exception if the item is <tt>null</tt>. */
+  @Override public boolean add(DateTime aDateTime){
+    addPacked(PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime));
+    return true;
+  }
+
+  /** Insert the given item at the given index, 0..size(). Not supported by views. */
+  @Override public void add(int aIndex, DateTime aDateTime){
+    checkNotView();
+    if(aIndex < 0 || aIndex > fSize){
+      throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + fSize);
+    }
+    long packed = PackedDateTime.pack(aDateTime);
+    int nanos = PackedDateTime.nanosOf(aDateTime);
+    fStore.ensureCapacity(fSize + 1);
+    fStore.move(aIndex, aIndex + 1, fSize - aIndex);
+    fStore.put(aIndex, packed, nanos);
+    ++fSize;
+    ++modCount;
+  }
+
+  /** Remove the item at the given index, and return it. Not supported by views. */
+  @Override public DateTime remove(int aIndex){
+    DateTime result = get(aIndex);
+    removeRange(aIndex, aIndex + 1);
+    return result;
+  }
+
+  /** Remove all items. Not supported by views. */
+  @Override public void clear(){
+    removeRange(0, fSize);
+  }
+
+  /** Return the packed form of the item at the given index, as in {@link PackedDateTime#pack(DateTime)}. */
+  public long getPacked(int aIndex){
+    return fStore.Packed[storeIndex(aIndex)];
+  }
+
+  /** Return the nanoseconds of the item at the given index, or {@link PackedDateTime#ABSENT}. */
+  public int getNanos(int aIndex){
+    return fStore.nanosAt(storeIndex(aIndex));
+  }
+
+  /**
+   Replace the item at the given index with the given primitive form.
+   @param aPacked as returned by {@link PackedDateTime#pack(DateTime)}.
+   @param aNanos as returned by {@link PackedDateTime#nanosOf(DateTime)}.
+  */
+  public void setPacked(int aIndex, long aPacked, int aNanos){
+    fStore.put(storeIndex(aIndex), aPacked, aNanos);
+  }
+
+  /** Append an item in primitive form. See {@link #setPacked(int, long, int)}. Not supported by views. */
+  public void addPacked(long aPacked, int aNanos){
+    checkNotView();
+    fStore.ensureCapacity(fSize + 1);
+    fStore.put(fSize, aPacked, aNanos);
+    ++fSize;
+    ++modCount;
+  }
+
+  /** Sort the items into ascending order, as in {@link DateTimeSorts}. */
+  public void sort(){
+    //sorts the store directly : only the sort's scratch arrays are allocated, as long as this array or view
+    DateTimeSorts.sort(fStore.Packed, fStore.Nanos, fOffset, fOffset + fSize);
+  }
+
+  /**
+   Search for the given item, which must not be <tt>null</tt>. The items must already be sorted in ascending order.
+   Return values are as for <tt>Collections.binarySearch</tt> : the index of the item, if found; otherwise,
+   <tt>(-(insertion point) - 1)</tt>.
+  */
+  public int binarySearch(DateTime aDateTime){
+    return binarySearch(PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime));
+  }
+
+  /** As {@link #binarySearch(DateTime)}, for an item in primitive form. */
+  public int binarySearch(long aPacked, int aNanos){
+    int low = 0;
+    int high = fSize - 1;
+    while(low <= high){
+      int middle = (low + high) >>> 1;
+      int index = fOffset + middle;
+      int comparison = PackedDateTime.compare(fStore.Packed[index], fStore.nanosAt(index), aPacked, aNanos);
+      if(comparison < 0){
+        low = middle + 1;
+      }
+      else if (comparison > 0){
+        high = middle - 1;
+      }
+      else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /** Return a view over the given range of items, sharing the storage of this array. See the class comment. */
+  @Override public DateTimeArray subList(int aFromIndex, int aToIndex){
+    if(aFromIndex < 0 || aToIndex > fSize || aFromIndex > aToIndex){
+      throw new IndexOutOfBoundsException("From: " + aFromIndex + ", To: " + aToIndex + ", Size: " + fSize);
+    }
+    return new DateTimeArray(fStore, fOffset + aFromIndex, aToIndex - aFromIndex);
+  }
+
+  /** Reduce the storage to the current size. Not supported by views. */
+  public void trimToSize(){
+    checkNotView();
+    fStore.resize(fSize);
+  }
+
+  /** Remove a range of items. Not supported by views. */
+  @Override protected void removeRange(int aFromIndex, int aToIndex){
+    checkNotView();
+    if(aFromIndex < 0 || aToIndex > fSize || aFromIndex > aToIndex){
+      throw new IndexOutOfBoundsException("From: " + aFromIndex + ", To: " + aToIndex + ", Size: " + fSize);
+    }
+    fStore.move(aToIndex, aFromIndex, fSize - aToIndex);
+    fSize = fSize - (aToIndex - aFromIndex);
+    ++modCount;
+  }
+
+  // PRIVATE
+
+  private final Store fStore;
+  /** The index in fStore of item 0; always 0, except for views. */
+  private final int fOffset;
+  private int fSize;
+  private final boolean fIsView;
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  /** Constructor for views. */
+  private DateTimeArray(Store aStore, int aOffset, int aSize){
+    fStore = aStore;
+    fOffset = aOffset;
+    fSize = aSize;
+    fIsView = true;
+  }
+
+  private int storeIndex(int aIndex){
+    if(aIndex < 0 || aIndex >= fSize){
+      throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + fSize);
+    }
+    return fOffset + aIndex;
+  }
+
+  private void checkNotView(){
+    if(fIsView){
+      throw new UnsupportedOperationException("A view of a DateTimeArray has a fixed size.");
+    }
+  }
+
+  /** The storage, shared by an array and its views. The array of nanoseconds is null until an item having nanoseconds is stored. */
+  private static final class Store {
+    Store(int aCapacity){
+      Packed = new long[aCapacity];
+    }
+    long[] Packed;
+    int[] Nanos;
+
+    int nanosAt(int aIndex){
+      return Nanos == null ? PackedDateTime.ABSENT : Nanos[aIndex];
+    }
+
+    void put(int aIndex, long aPacked, int aNanos){
+      Packed[aIndex] = aPacked;
+      if(Nanos == null && aNanos != PackedDateTime.ABSENT){
+        Nanos = new int[Packed.length];
+        Arrays.fill(Nanos, PackedDateTime.ABSENT);
+      }
+      if(Nanos != null){
+        Nanos[aIndex] = aNanos;
+      }
+    }
+
+    void ensureCapacity(int aCapacity){
+      if(aCapacity > Packed.length){
+        resize(Math.max(aCapacity, Packed.length + (Packed.length >> 1) + 1));
+      }
+    }
+
+    void resize(int aCapacity){
+      Packed = Arrays.copyOf(Packed, aCapacity);
+      if(Nanos != null){
+        int oldLength = Nanos.length;
+        Nanos = Arrays.copyOf(Nanos, aCapacity);
+        if(aCapacity > oldLength){
+          Arrays.fill(Nanos, oldLength, aCapacity, PackedDateTime.ABSENT);
+        }
+      }
+    }
+
+    void move(int aFrom, int aTo, int aLength){
+      System.arraycopy(Packed, aFrom, Packed, aTo, aLength);
+      if(Nanos != null){
+        System.arraycopy(Nanos, aFrom, Nanos, aTo, aLength);
+      }
+    }
+  }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ A column of date-times stored in a file, and read through memory mapping.
+
+ <P>The file holds each date-time in its {@link PackedDateTime} form, in 12 bytes : the packed <tt>long</tt>, then the
+ nanoseconds. After the items comes a footer, holding the number of items, the least and greatest items, whether the items
+ are in ascending order, and a sparse index : a copy of every 1024th item.
+
+ <P>Files are written with a {@link Writer}, which buffers items outside the Java heap, in a direct <tt>ByteBuffer</tt>, and
+ writes the footer when closed. Files are read with {@link #open(File)}, which maps the file into memory; nothing is
+ read into the heap but the fixed-size part of the footer. Opening a file of any size is immediate; its pages are read by the
+ operating system as they're used, and may be shared by many processes. Reading an item creates no objects, except with
+ {@link #get(long)}.
+
+ <P>When the items are in ascending order, {@link #lowerBound(DateTime)} and {@link #upperBound(DateTime)} find a range of
+ items with a binary search of the sparse index, followed by a binary search of a single block of 1024 items.
+ {@link #overlaps(DateTime, DateTime)} uses the least and greatest items to skip files entirely.
+
+ <P>Item indexes are <tt>long</tt>, since a file may hold more than <tt>Integer.MAX_VALUE</tt> items.
+
+ <P>This class is immutable, and may be shared between threads. The <tt>Writer</tt> is not thread-safe.
+
+ <P>Example :
+ <PRE>
+  DateTimeColumnFile.Writer writer = DateTimeColumnFile.create(file);
+  try {
+    for(DateTime timestamp : timestamps){
+      writer.append(timestamp);
+    }
+  }
+  finally {
+    writer.close();
+  }
+  ...
+  DateTimeColumnFile column = DateTimeColumnFile.open(file);
+  for(long idx = column.lowerBound(start), stop = column.lowerBound(end); idx &lt; stop; ++idx){
+    long packed = column.getPacked(idx);
+    ...
+  }
+ </PRE>
+*/
+public final class DateTimeColumnFile {
+
+  /** Writes a new column file. Closing the writer writes the footer; a file not closed is not readable. */
+  public static final class Writer implements Closeable {
+
+    /** Append the given date-time, which must not be <tt>null</tt>. */
+    public void append(DateTime aDateTime) throws IOException {
+      appendPacked(PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime));
+    }
+
+    /**
+     Append a date-time in primitive form.
+     @param aPacked as returned by {@link PackedDateTime#pack(DateTime)}.
+     @param aNanos as returned by {@link PackedDateTime#nanosOf(DateTime)}.
+    */
+    public void appendPacked(long aPacked, int aNanos) throws IOException {
+      if(fCount > 0){
+        if(PackedDateTime.compare(aPacked, aNanos, fMaxPacked, fMaxNanos) > 0){
+          fMaxPacked = aPacked;
+          fMaxNanos = aNanos;
+        }
+        if(PackedDateTime.compare(aPacked, aNanos, fLastPacked, fLastNanos) < 0){
+          fSorted = false;
+        }
+        if(PackedDateTime.compare(aPacked, aNanos, fMinPacked, fMinNanos) < 0){
+          fMinPacked = aPacked;
+          fMinNanos = aNanos;
+        }
+      }
+      else {
+        fMinPacked = fMaxPacked = aPacked;
+        fMinNanos = fMaxNanos = aNanos;
+      }
+      if(fCount % SPARSE_STEP == 0){
+        int entry = (int)(fCount / SPARSE_STEP);
+        if(entry == fSparsePacked.length){
+          fSparsePacked = Arrays.copyOf(fSparsePacked, entry * 2);
+          fSparseNanos = Arrays.copyOf(fSparseNanos, entry * 2);
+        }
+        fSparsePacked[entry] = aPacked;
+        fSparseNanos[entry] = aNanos;
+      }
+      if(! fBuffer.hasRemaining()){
+        flush();
+      }
+      fBuffer.putLong(aPacked).putInt(aNanos);
+      fLastPacked = aPacked;
+      fLastNanos = aNanos;
+      ++fCount;
+    }
+
+    /** The number of items appended so far. */
+    public long size(){
+      return fCount;
+    }
+
+    /** Write any buffered items and the footer, force the file to disk, and close it. */
+    public void close() throws IOException {
+      if(fChannel.isOpen()){
+        try {
+          flush();
+          int numSparse = (int)((fCount + SPARSE_STEP - 1) / SPARSE_STEP);
+          for(int entry = 0; entry < numSparse; ++entry){
+            if(! fBuffer.hasRemaining()){
+              flush();
+            }
+            fBuffer.putLong(fSparsePacked[entry]).putInt(fSparseNanos[entry]);
+          }
+          flush();
+          fBuffer.putLong(fCount);
+          fBuffer.putLong(fMinPacked).putInt(fMinNanos);
+          fBuffer.putLong(fMaxPacked).putInt(fMaxNanos);
+          fBuffer.putInt(SPARSE_STEP).putInt(fSorted ? SORTED : 0).putInt(VERSION).putInt(MAGIC);
+          flush();
+          fChannel.force(true);
+        }
+        finally {
+          fChannel.close();
+        }
+      }
+    }
+
+    private final FileChannel fChannel;
+    /** Outside the heap. Always a whole number of records. */
+    private final ByteBuffer fBuffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+    private long fCount;
+    private long fMinPacked;
+    private int fMinNanos;
+    private long fMaxPacked;
+    private int fMaxNanos;
+    private long fLastPacked;
+    private int fLastNanos;
+    private boolean fSorted = true;
+    /** Small : one entry for every SPARSE_STEP items. */
+    private long[] fSparsePacked = new long[16];
+    private int[] fSparseNanos = new int[16];
+
+    private Writer(File aFile) throws IOException {
+      fChannel = new FileOutputStream(aFile).getChannel();
+    }
+
+    private void flush() throws IOException {
+      fBuffer.flip();
+      while(fBuffer.hasRemaining()){
+        fChannel.write(fBuffer);
+      }
+      fBuffer.clear();
+    }
+  }
+
+  /** Create a new column file, replacing any existing file. */
+  public static Writer create(File aFile) throws IOException {
+    return new Writer(aFile);
+  }
+
+  /** Map an existing column file, written by a {@link Writer}. Throws an <tt>IOException</tt> if the file is not in the expected form. */
+  public static DateTimeColumnFile open(File aFile) throws IOException {
+    FileInputStream input = new FileInputStream(aFile);
+    try {
+      return new DateTimeColumnFile(input.getChannel(), aFile);
+    }
+    finally {
+      //the mappings remain valid after the channel is closed
+      input.close();
+    }
+  }
+
+  /** The number of items. */
+  public long size(){
+    return fCount;
+  }
+
+  /** Return <tt>true</tt> only if the items are in ascending order, as defined by {@link DateTime#compareTo(DateTime)}. */
+  public boolean isSorted(){
+    return fSorted;
+  }
+
+  /** Return the least item, or <tt>null</tt> if there are no items. */
+  public DateTime getMin(){
+    return fCount == 0 ? null : PackedDateTime.toDateTime(fMinPacked, fMinNanos);
+  }
+
+  /** Return the greatest item, or <tt>null</tt> if there are no items. */
+  public DateTime getMax(){
+    return fCount == 0 ? null : PackedDateTime.toDateTime(fMaxPacked, fMaxNanos);
+  }
+
+  /**
+   Return <tt>true</tt> if some items may lie in <tt>[aFrom, aTo)</tt>, judging only by the least and greatest items.
+   A return value of <tt>false</tt> means that no item is in the range, and the file need not be read.
+  */
+  public boolean overlaps(DateTime aFrom, DateTime aTo){
+    return fCount > 0 &&
+      PackedDateTime.compare(fMinPacked, fMinNanos, PackedDateTime.pack(aTo), PackedDateTime.nanosOf(aTo)) < 0 &&
+      PackedDateTime.compare(fMaxPacked, fMaxNanos, PackedDateTime.pack(aFrom), PackedDateTime.nanosOf(aFrom)) >= 0
+    ;
+  }
+
+  /** Return a new <tt>DateTime</tt> for the item at the given index. */
+  public DateTime get(long aIndex){
+    return PackedDateTime.toDateTime(getPacked(aIndex), getNanos(aIndex));
+  }
+
+  /** Return the packed form of the item at the given index, as in {@link PackedDateTime#pack(DateTime)}. */
+  public long getPacked(long aIndex){
+    checkIndex(aIndex);
+    return segmentOf(aIndex).getLong(positionOf(aIndex));
+  }
+
+  /** Return the nanoseconds of the item at the given index, or {@link PackedDateTime#ABSENT}. */
+  public int getNanos(long aIndex){
+    checkIndex(aIndex);
+    return segmentOf(aIndex).getInt(positionOf(aIndex) + 8);
+  }
+
+  /**
+   Return the index of the first item greater than or equal to the given date-time, or <tt>size()</tt> if there's none.
+   The items in <tt>[aFrom, aTo)</tt> are those from <tt>lowerBound(aFrom)</tt> to <tt>lowerBound(aTo) - 1</tt>.
+   Requires the items to be sorted; if not, an <tt>IllegalStateException</tt> is thrown.
+  */
+  public long lowerBound(DateTime aDateTime){
+    return search(PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime), false);
+  }
+
+  /** Return the index of the first item greater than the given date-time, or <tt>size()</tt>. See {@link #lowerBound(DateTime)}. */
+  public long upperBound(DateTime aDateTime){
+    return search(PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime), true);
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "DateTimeColumnFile " + fFile + " size:" + fCount + " sorted:" + fSorted + " min:" + getMin() + " max:" + getMax();
+  }
+
+  // PRIVATE
+
+  private final File fFile;
+  private final long fCount;
+  private final long fMinPacked;
+  private final int fMinNanos;
+  private final long fMaxPacked;
+  private final int fMaxNanos;
+  private final boolean fSorted;
+  private final int fSparseStep;
+  private final int fNumSparse;
+  /** The items, in pieces of at most SEGMENT_RECORDS records, since a single mapping is limited to 2 GB. */
+  private final MappedByteBuffer[] fSegments;
+  private final MappedByteBuffer fSparse;
+
+  private static final int RECORD_BYTES = 12;
+  private static final int SPARSE_STEP = 1024;
+  private static final int BUFFER_RECORDS = 8 * 1024;
+  /** The fixed-size end of the footer. */
+  private static final int TRAILER_BYTES = 8 + RECORD_BYTES + RECORD_BYTES + 4 * 4;
+  private static final int SEGMENT_SHIFT = 26;
+  private static final long SEGMENT_RECORDS = 1L << SEGMENT_SHIFT;
+  private static final int SORTED = 1;
+  private static final int VERSION = 1;
+  /** "JFDC". */
+  private static final int MAGIC = 0x4A464443;
+
+  private DateTimeColumnFile(FileChannel aChannel, File aFile) throws IOException {
+    fFile = aFile;
+    long fileSize = aChannel.size();
+    if(fileSize < TRAILER_BYTES){
+      throw new IOException("Not a date-time column file (too small): " + aFile);
+    }
+    ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+    while(trailer.hasRemaining()){
+      if(aChannel.read(trailer, fileSize - TRAILER_BYTES + trailer.position()) < 0){
+        throw new IOException("Unexpected end of file: " + aFile);
+      }
+    }
+    trailer.flip();
+    fCount = trailer.getLong();
+    fMinPacked = trailer.getLong();
+    fMinNanos = trailer.getInt();
+    fMaxPacked = trailer.getLong();
+    fMaxNanos = trailer.getInt();
+    fSparseStep = trailer.getInt();
+    fSorted = (trailer.getInt() & SORTED) != 0;
+    int version = trailer.getInt();
+    int magic = trailer.getInt();
+    if(magic != MAGIC || version != VERSION || fCount < 0 || fSparseStep <= 0){
+      throw new IOException("Not a date-time column file (bad footer): " + aFile);
+    }
+    long numSparse = (fCount + fSparseStep - 1) / fSparseStep;
+    if(fileSize != (fCount + numSparse) * RECORD_BYTES + TRAILER_BYTES){
+      throw new IOException("Not a date-time column file (size " + fileSize + " doesn't match footer): " + aFile);
+    }
+    fNumSparse = (int)numSparse;
+    fSegments = new MappedByteBuffer[(int)((fCount + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+    for(int segment = 0; segment < fSegments.length; ++segment){
+      long first = segment * SEGMENT_RECORDS;
+      long numRecords = Math.min(SEGMENT_RECORDS, fCount - first);
+      fSegments[segment] = aChannel.map(FileChannel.MapMode.READ_ONLY, first * RECORD_BYTES, numRecords * RECORD_BYTES);
+    }
+    fSparse = aChannel.map(FileChannel.MapMode.READ_ONLY, fCount * RECORD_BYTES, numSparse * RECORD_BYTES);
+  }
+
+  private void checkIndex(long aIndex){
+    if(aIndex < 0 || aIndex >= fCount){
+      throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + fCount);
+    }
+  }
+
+  private MappedByteBuffer segmentOf(long aIndex){
+    return fSegments[(int)(aIndex >>> SEGMENT_SHIFT)];
+  }
+
+  private static int positionOf(long aIndex){
+    return (int)(aIndex & (SEGMENT_RECORDS - 1)) * RECORD_BYTES;
+  }
+
+  private long search(long aPacked, int aNanos, boolean aSkipEqual){
+    if(! fSorted){
+      throw new IllegalStateException("Items are not sorted: " + fFile);
+    }
+    //the first sparse entry which is past the target; the answer lies in the block ending there
+    int low = 0;
+    int high = fNumSparse;
+    while(low < high){
+      int middle = (low + high) >>> 1;
+      if(isBefore(fSparse.getLong(middle * RECORD_BYTES), fSparse.getInt(middle * RECORD_BYTES + 8), aPacked, aNanos, aSkipEqual)){
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    long first = Math.max(0, (long)(low - 1) * fSparseStep);
+    long last = low < fNumSparse ? (long)low * fSparseStep : fCount;
+    while(first < last){
+      long middle = (first + last) >>> 1;
+      if(isBefore(getPacked(middle), getNanos(middle), aPacked, aNanos, aSkipEqual)){
+        first = middle + 1;
+      }
+      else {
+        last = middle;
+      }
+    }
+    return first;
+  }
+
+  /** Return true if the item comes before the target, or is equal to it, when equal items are skipped. */
+  private static boolean isBefore(long aPacked, int aNanos, long aTargetPacked, int aTargetNanos, boolean aSkipEqual){
+    int comparison = PackedDateTime.compare(aPacked, aNanos, aTargetPacked, aTargetNanos);
+    return comparison < 0 || (aSkipEqual && comparison == 0);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+/**
+ Work area holding the seven units of a date-time as primitives, used when rendering output.
+
+ <P>Decoding a {@link DateTime} once into this form lets the formatting code read each unit without
+ unboxing, and lets the same object be re-used for many rows. Absent units are {@link PackedDateTime#ABSENT}.
+
+ <P>This class is mutable, and is not thread-safe.
+*/
+final class DateTimeFields {
+
+  int Year;
+  int Month;
+  int Day;
+  int Hour;
+  int Minute;
+  int Second;
+  int Nanosecond;
+
+  /** Load the units of the given <tt>DateTime</tt>, parsing it if necessary. */
+  void load(DateTime aDateTime){
+    Year = PackedDateTime.valueOf(aDateTime.getYear());
+    Month = PackedDateTime.valueOf(aDateTime.getMonth());
+    Day = PackedDateTime.valueOf(aDateTime.getDay());
+    Hour = PackedDateTime.valueOf(aDateTime.getHour());
+    Minute = PackedDateTime.valueOf(aDateTime.getMinute());
+    Second = PackedDateTime.valueOf(aDateTime.getSecond());
+    Nanosecond = PackedDateTime.valueOf(aDateTime.getNanoseconds());
+    fWeekDay = NOT_CALCULATED;
+  }
+
+  /** Load the units held by the primitive form defined by {@link PackedDateTime}. */
+  void load(long aPacked, int aNanos){
+    Year = PackedDateTime.year(aPacked);
+    Month = PackedDateTime.month(aPacked);
+    Day = PackedDateTime.day(aPacked);
+    Hour = PackedDateTime.hour(aPacked);
+    Minute = PackedDateTime.minute(aPacked);
+    Second = PackedDateTime.second(aPacked);
+    Nanosecond = aNanos;
+    fWeekDay = NOT_CALCULATED;
+  }
+
+  /**
+   Return the weekday 1..7 for Sunday..Saturday, as in {@link DateTime#getWeekDay()}.
+   Calculated only once per load.
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+  */
+  int weekDay(){
+    if (fWeekDay == NOT_CALCULATED){
+      if (Year == PackedDateTime.ABSENT || Month == PackedDateTime.ABSENT || Day == PackedDateTime.ABSENT){
+        throw new DateTime.MissingItem("DateTime does not include year/month/day.");
+      }
+      fWeekDay = DayNumbers.weekDay(DayNumbers.modifiedJulianDay(Year, Month, Day));
+    }
+    return fWeekDay;
+  }
+
+  // PRIVATE
+
+  private static final int NOT_CALCULATED = 0;
+  private int fWeekDay;
+}
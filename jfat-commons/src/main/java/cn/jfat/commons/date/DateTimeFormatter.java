@@ -15,15 +15,12 @@
  */
 package cn.jfat.commons.date;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.GregorianCalendar;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,21 +29,20 @@ import java.util.regex.Pattern;
  
  <P>This class defines a mini-language for defining how a {@link DateTime} is formatted.
  See {@link DateTime#format(String)} for details regarding the formatting mini-language.
-
- <P>The DateFormatSymbols class might be used to grab the locale-specific text, but the arrays it 
- returns are wonky and weird, so I have avoided it.
+ 
+ <P>The pattern is interpreted, and any localized text is looked up, only once, when this object is built. 
+ When the same pattern is used many times, holding on to a formatter avoids repeating that work on every call.
+ 
+ <P>This class is immutable, and may be shared between threads.
 */
-final class DateTimeFormatter {
+public final class DateTimeFormatter {
 
   /**
    Constructor used for patterns that represent date-time elements using only numbers, and no localizable text. 
    @param aFormat uses the syntax described by {@link DateTime#format(String)}.
    */
-  DateTimeFormatter(String aFormat){
-    fFormat = aFormat;
-    fLocale = null;
-    fCustomLocalization = null;
-    validateState();
+  public DateTimeFormatter(String aFormat){
+    this(aFormat, (CustomLocalization)null);
   }
 
   /**
@@ -56,11 +52,8 @@ final class DateTimeFormatter {
    @param aLocale used to generate text for Month, Weekday, and AM-PM indicator; required only by patterns which return localized 
    text, instead of numeric forms for date-time elements.
    */
-  DateTimeFormatter(String aFormat, Locale aLocale){
-    fFormat = aFormat;
-    fLocale = aLocale;
-    fCustomLocalization = null;
-    validateState();
+  public DateTimeFormatter(String aFormat, Locale aLocale){
+    this(aFormat, aLocale == null ? null : CustomLocalization.forLocale(aLocale));
   }
 
   /**
@@ -69,76 +62,106 @@ final class DateTimeFormatter {
    <P>This constructor exists mostly since SimpleDateFormat doesn't support all locales, and it has a 
    policy of N letters for text, where N != 3. 
 
+   @param aFormat must match the syntax described by {@link DateTime#format(String)}.
+   @param aLocalization text for months, weekdays, and AM/PM indicators; required only by patterns which return text, instead 
+   of numeric forms for date-time elements.
+   */
+  public DateTimeFormatter(String aFormat, CustomLocalization aLocalization){
+    fFormat = aFormat;
+    fLocalization = aLocalization;
+    validateState();
+    fCompiled = compiled(fFormat);
+  }
+
+  /**
+   As {@link #DateTimeFormatter(String, CustomLocalization)}, with the text passed as lists.
    @param aFormat must match the syntax described by {@link DateTime#format(String)}.
    @param aMonths contains text for all 12 months, starting with January; size must be 12. 
    @param aWeekdays contains text for all 7 weekdays, starting with Sunday; size must be 7. 
    @param aAmPmIndicators contains text for A.M and P.M. indicators (in that order); size must be 2. 
    */
   DateTimeFormatter(String aFormat, List<String> aMonths, List<String> aWeekdays, List<String> aAmPmIndicators){
-    fFormat = aFormat;
-    fLocale = null;
-    fCustomLocalization = new CustomLocalization(aMonths, aWeekdays, aAmPmIndicators);
-    validateState();
+    this(aFormat, new CustomLocalization(aMonths, aWeekdays, aAmPmIndicators));
   }
   
   /**  Format a {@link DateTime}.  */
-  String format(DateTime aDateTime){
-    fEscapedRanges = new ArrayList<EscapedRange>();
-    fInterpretedRanges = new ArrayList<InterpretedRange>();
-    findEscapedRanges();
-    interpretInput(aDateTime);
-    return produceFinalOutput();
+  public String format(DateTime aDateTime){
+    DateTimeFields fields = new DateTimeFields();
+    fields.load(aDateTime);
+    FixedWidthWriter fixedWidth = fCompiled.FixedWidth;
+    if(fixedWidth != null && fixedWidth.canWrite(fields)){
+      char[] result = new char[fixedWidth.length()];
+      fixedWidth.write(fields, result, 0);
+      return new String(result);
+    }
+    StringBuilder result = new StringBuilder(estimatedLength());
+    renderSegments(fields, result);
+    return result.toString();
   }
   
-  // PRIVATE 
-  private final String fFormat;
-  private final Locale fLocale;
-  private Collection<InterpretedRange> fInterpretedRanges;
-  private Collection<EscapedRange> fEscapedRanges;
-  
-   /** 
-    Table mapping a Locale to the names of the months.
-    Initially empty, populated only when a specific Locale is needed for presenting such text. 
-    Used for MMMM and MMM tokens.  
-  */
-  private final Map<Locale, List<String>> fMonths = new LinkedHashMap<Locale, List<String>>();
-   
-   /** 
-   Table mapping a Locale to the names of the weekdays.
-   Initially empty, populated only when a specific Locale is needed for presenting such text. 
-   Used for WWWW and WWW tokens.  
+  /**
+   Append the formatted form of the given units to the given builder.
+   <P>The pattern is interpreted only once, when this object is constructed, so this method may be 
+   called for many rows without re-interpreting the pattern.  
+   @param aScratch working space for fixed-width patterns, of length at least {@link #estimatedLength()}. 
+   Its content is not used. The caller may pass the same array for each row, so that no objects are created per row.
   */
-  private final Map<Locale, List<String>> fWeekdays = new LinkedHashMap<Locale, List<String>>();
-   
-   /**
-    Table mapping a Locale to the text used to indicate a.m. and p.m. 
-    Initially empty, populated only when a specific Locale is needed for presenting such text. 
-    Used for the 'a' token.  
+  void render(DateTimeFields aFields, StringBuilder aOutput, char[] aScratch){
+    FixedWidthWriter fixedWidth = fCompiled.FixedWidth;
+    if(fixedWidth != null && fixedWidth.canWrite(aFields)){
+      int end = fixedWidth.write(aFields, aScratch, 0);
+      aOutput.append(aScratch, 0, end);
+    }
+    else {
+      renderSegments(aFields, aOutput);
+    }
+  }
+  
+  /**
+   Write the formatted form of the given units into the given buffer, starting at the given position, and 
+   return the position just after the last character written.
+   @throws IndexOutOfBoundsException if the buffer is too small. 
   */
-  private final Map<Locale, List<String>> fAmPm = new LinkedHashMap<Locale, List<String>>();
+  int render(DateTimeFields aFields, char[] aBuffer, int aPos){
+    FixedWidthWriter fixedWidth = fCompiled.FixedWidth;
+    if(fixedWidth != null && fixedWidth.canWrite(aFields)){
+      return fixedWidth.write(aFields, aBuffer, aPos);
+    }
+    StringBuilder text = new StringBuilder(estimatedLength());
+    renderSegments(aFields, text);
+    if(aPos + text.length() > aBuffer.length){
+      throw new IndexOutOfBoundsException("Buffer too small for formatted text. Needs " + (aPos + text.length()) + ", has " + aBuffer.length);
+    }
+    text.getChars(0, text.length(), aBuffer, aPos);
+    return aPos + text.length();
+  }
   
-  private final CustomLocalization fCustomLocalization;
+  /** A typical length of the output; exact for fixed-width patterns. */
+  int estimatedLength(){
+    FixedWidthWriter fixedWidth = fCompiled.FixedWidth;
+    return fixedWidth != null ? fixedWidth.length() : fFormat.length() + 4;
+  }
   
-  private final class CustomLocalization{
-    CustomLocalization(List<String> aMonths, List<String> aWeekdays, List<String> aAmPm){
-      if(aMonths.size() != 12){
-        throw new IllegalArgumentException("Your List of custom months must have size 12, but its size is " + aMonths.size());
-      }
-      if(aWeekdays.size() != 7){
-        throw new IllegalArgumentException("Your List of custom weekdays must have size 7, but its size is " + aWeekdays.size());
-      }
-      if(aAmPm.size() != 2){
-        throw new IllegalArgumentException("Your List of custom a.m./p.m. indicators must have size 2, but its size is " + aAmPm.size());
-      }
-      Months = aMonths;
-      Weekdays = aWeekdays;
-      AmPmIndicators = aAmPm;
-    }
-    List<String> Months;
-    List<String> Weekdays;
-    List<String> AmPmIndicators;
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "DateTimeFormatter format:" + Util.quote(fFormat) + " localization:" + fLocalization;
   }
-
+  
+  // PRIVATE 
+  private final String fFormat;
+  /** Null if the pattern has no localizable text, or if no localization was given. */
+  private final CustomLocalization fLocalization;
+  
+  /** The result of interpreting fFormat. */
+  private final Compiled fCompiled;
+  
+  /** 
+   Compiled patterns, shared by all formatters, since most applications use only a few patterns.
+   Once the cache is full, further patterns are still compiled, but not cached.  
+  */
+  private static final Map<String, Compiled> COMPILED = new ConcurrentHashMap<String, Compiled>();
+  private static final int MAX_COMPILED = 256;
+  
   /** A section of fFormat containing a token that must be interpreted. */ 
   private static final class InterpretedRange {
     int Start; 
@@ -152,9 +175,31 @@ final class DateTimeFormatter {
     int Start;
     int End;
   }
+  
+  /** A part of fFormat to be output: either literal text, or a token (in which case Literal is null). */
+  private static final class Segment {
+    Segment(String aToken, String aLiteral){
+      Token = aToken;
+      Literal = aLiteral;
+    }
+    final String Token;
+    final String Literal;
+  }
+
+  /** The interpreted form of a pattern. Immutable. */
+  private static final class Compiled {
+    Compiled(Segment[] aSegments, FixedWidthWriter aFixedWidth){
+      Segments = aSegments;
+      FixedWidth = aFixedWidth;
+    }
+    /** Literal text, with the escape characters removed, and tokens. */
+    final Segment[] Segments;
+    /** Null if the pattern is not purely numeric and fixed-width. */
+    final FixedWidthWriter FixedWidth;
+  }
 
   /** Special character used to escape the interpretation of parts of fFormat. */
-  private static final String ESCAPE_CHAR = "|";
+  private static final char ESCAPE_CHAR = '|';
   private static final Pattern ESCAPED_RANGE = Pattern.compile("\\|[^\\|]*\\|");
   
   /* Here, 'token' means an item in the mini-language, having special meaning (defined below). */ 
@@ -190,9 +235,6 @@ final class DateTimeFormatter {
   /** As {@link #h12}, but with leading zero. */ 
   private static final String hh12 = "hh12";
 
-  private static final int AM = 0; //a.m. comes first in lists used by this class 
-  private static final int PM = 1;
-  
   /**
    A.M./P.M. text is sensitive to Locale, in the same way that names of months and weekdays are 
    sensitive to Locale.  
@@ -239,22 +281,102 @@ final class DateTimeFormatter {
     TOKENS.add("ff");
     TOKENS.add("f");
   }
+  
+  /** Patterns for each item in {@link #TOKENS}, in the same order. None of the tokens contain special regex characters. */
+  private static final List<Pattern> TOKEN_PATTERNS = new ArrayList<Pattern>();
+  static {
+    for(String token : TOKENS){
+      TOKEN_PATTERNS.add(Pattern.compile(token));
+    }
+  }
+
+  /** The general code, for any pattern. */
+  private void renderSegments(DateTimeFields aFields, StringBuilder aOutput){
+    for(Segment segment : fCompiled.Segments){
+      if(segment.Token == null){
+        aOutput.append(segment.Literal);
+      }
+      else {
+        aOutput.append(interpretThe(segment.Token, aFields));
+      }
+    }
+  }
+  
+  private static Compiled compiled(String aFormat){
+    Compiled result = COMPILED.get(aFormat);
+    if(result == null){
+      result = compile(aFormat);
+      if(COMPILED.size() < MAX_COMPILED){
+        COMPILED.put(aFormat, result);
+      }
+    }
+    return result;
+  }
+  
+  private static Compiled compile(String aFormat){
+    Segment[] segments = segmentsOf(aFormat);
+    String[] tokens = new String[segments.length];
+    String[] literals = new String[segments.length];
+    for(int idx = 0; idx < segments.length; ++idx){
+      tokens[idx] = segments[idx].Token;
+      literals[idx] = segments[idx].Literal;
+    }
+    return new Compiled(segments, FixedWidthWriter.forPattern(tokens, literals));
+  }
+  
+  /** 
+   Interpret the format, and return its parts in order of appearance. 
+   Escape characters are dropped from the literal text. 
+  */
+  private static Segment[] segmentsOf(String aFormat){
+    List<EscapedRange> escapedRanges = findEscapedRanges(aFormat);
+    List<InterpretedRange> interpretedRanges = findTokens(aFormat, escapedRanges);
+    List<Segment> result = new ArrayList<Segment>();
+    StringBuilder literal = new StringBuilder();
+    int idx = 0;
+    while ( idx < aFormat.length() ) {
+      InterpretedRange interpretation = getInterpretation(interpretedRanges, idx);
+      if  (interpretation != null){
+        addLiteral(literal, result);
+        result.add(new Segment(interpretation.Text, null));
+        idx = interpretation.End;
+      }
+      else {
+        char letter = aFormat.charAt(idx);
+        if(letter != ESCAPE_CHAR){
+          literal.append(letter);
+        }
+      }
+      ++idx;
+    }
+    addLiteral(literal, result);
+    return result.toArray(new Segment[result.size()]);
+  }
+  
+  private static void addLiteral(StringBuilder aLiteral, List<Segment> aSegments){
+    if(aLiteral.length() > 0){
+      aSegments.add(new Segment(null, aLiteral.toString()));
+      aLiteral.setLength(0);
+    }
+  }
 
   /** Escaped ranges are bounded by a PAIR of {@link #ESCAPE_CHAR} characters. */
-  private void findEscapedRanges(){
-    Matcher matcher = ESCAPED_RANGE.matcher(fFormat);
+  private static List<EscapedRange> findEscapedRanges(String aFormat){
+    List<EscapedRange> result = new ArrayList<EscapedRange>();
+    Matcher matcher = ESCAPED_RANGE.matcher(aFormat);
     while (matcher.find()){
       EscapedRange escapedRange = new EscapedRange();
       escapedRange.Start = matcher.start(); //first pipe
       escapedRange.End = matcher.end() - 1; //second pipe
-      fEscapedRanges.add(escapedRange);
+      result.add(escapedRange);
     }
+    return result;
   }
   
   /** Return true only if the start of the interpreted range is in an escaped range. */ 
-  private boolean isInEscapedRange(InterpretedRange aInterpretedRange){
+  private static boolean isInEscapedRange(InterpretedRange aInterpretedRange, Collection<EscapedRange> aEscapedRanges){
     boolean result = false; //innocent till shown guilty
-    for(EscapedRange escapedRange : fEscapedRanges){
+    for(EscapedRange escapedRange : aEscapedRanges){
       //checking only the start is sufficient, because the tokens never contain the escape char
       if(escapedRange.Start <= aInterpretedRange.Start && aInterpretedRange.Start <= escapedRange.End ){
         result = true;
@@ -265,32 +387,34 @@ final class DateTimeFormatter {
   }
   
   /** 
-   Scan fFormat for all tokens, in a specific order, and interpret them with the given DateTime. 
-   The interpreted tokens are saved for output later. 
+   Scan the format for all tokens, in a specific order. 
+   The text of each returned range is the token itself, which is interpreted later, for each DateTime. 
   */
-  private void interpretInput(DateTime aDateTime){
-    String format = fFormat;
-    for(String token : TOKENS){
-      Pattern pattern = Pattern.compile(token);
-      Matcher matcher = pattern.matcher(format);
+  private static List<InterpretedRange> findTokens(String aFormat, Collection<EscapedRange> aEscapedRanges){
+    List<InterpretedRange> result = new ArrayList<InterpretedRange>();
+    String format = aFormat;
+    for(int tokenIdx = 0; tokenIdx < TOKENS.size(); ++tokenIdx){
+      String token = TOKENS.get(tokenIdx);
+      Matcher matcher = TOKEN_PATTERNS.get(tokenIdx).matcher(format);
       while(matcher.find()){
         InterpretedRange interpretedRange = new InterpretedRange();
         interpretedRange.Start = matcher.start();
         interpretedRange.End = matcher.end() - 1;
-        if(! isInEscapedRange(interpretedRange)){
-          interpretedRange.Text = interpretThe(matcher.group(), aDateTime);
-          fInterpretedRanges.add(interpretedRange);
+        if(! isInEscapedRange(interpretedRange, aEscapedRanges)){
+          interpretedRange.Text = token;
+          result.add(interpretedRange);
         }
       }
       format = format.replace(token, withCharDenotingAlreadyInterpreted(token));
     }
+    return result;
   }
   
   /** 
    Return a temp placeholder string used to identify sections of fFormat that have already been interpreted.
    The returned string is a list of "@" characters, whose length is the same as aToken. 
   */
-  private String withCharDenotingAlreadyInterpreted(String aToken){
+  private static String withCharDenotingAlreadyInterpreted(String aToken){
     StringBuilder result = new StringBuilder();
     for(int idx = 1; idx <= aToken.length(); ++idx){
       //any character that isn't interpreted, or a special regex char, will do here
@@ -301,30 +425,9 @@ final class DateTimeFormatter {
     return result.toString();
   }
 
-  /** Render the final output returned to the caller. */
-  private String produceFinalOutput(){
-    StringBuilder result = new StringBuilder();
-    int idx = 0;
-    while ( idx < fFormat.length() ) {
-      String letter = nextLetter(idx);
-      InterpretedRange interpretation = getInterpretation(idx);
-      if  (interpretation != null){
-        result.append(interpretation.Text);
-        idx = interpretation.End;
-      }
-      else {
-        if(!ESCAPE_CHAR.equals(letter)){
-          result.append(letter);
-        }
-      }
-      ++idx;
-    }
-    return result.toString();
-  }
-
-  private InterpretedRange getInterpretation(int aIdx){
+  private static InterpretedRange getInterpretation(Collection<InterpretedRange> aInterpretedRanges, int aIdx){
     InterpretedRange result = null;
-    for(InterpretedRange interpretedRange : fInterpretedRanges){
+    for(InterpretedRange interpretedRange : aInterpretedRanges){
       if(interpretedRange.Start == aIdx ){
         result = interpretedRange;
       }
@@ -332,78 +435,69 @@ final class DateTimeFormatter {
     return result;
   }
 
-  private String nextLetter(int aIdx){
-    return fFormat.substring(aIdx, aIdx+1); 
-  }
-  
-  private String  interpretThe(String aCurrentToken, DateTime aDateTime){
+  private String  interpretThe(String aCurrentToken, DateTimeFields aFields){
     String result = EMPTY_STRING;
     if(YYYY.equals(aCurrentToken)) {
-      result =  valueStr(aDateTime.getYear());
+      result =  valueStr(aFields.Year);
     }
     else if (YY.equals(aCurrentToken)){
-      result = noCentury(valueStr(aDateTime.getYear()));
+      result = noCentury(valueStr(aFields.Year));
     }
     else if (MMMM.equals(aCurrentToken)){
-      int month = aDateTime.getMonth();
-      result = fullMonth(month);
+      result = fullMonth(aFields.Month);
     }
     else if (MMM.equals(aCurrentToken)){
-      int month = aDateTime.getMonth();
-      result = firstThreeChars(fullMonth(month));
+      result = firstThreeChars(fullMonth(aFields.Month));
     }
     else if (MM.equals(aCurrentToken)){
-      result = addLeadingZero(valueStr(aDateTime.getMonth()));
+      result = twoDigits(aFields.Month);
     }
     else if (M.equals(aCurrentToken)){
-      result = valueStr(aDateTime.getMonth());
+      result = valueStr(aFields.Month);
     }
     else if(DD.equals(aCurrentToken)){
-      result = addLeadingZero(valueStr(aDateTime.getDay()));
+      result = twoDigits(aFields.Day);
     }
     else if(D.equals(aCurrentToken)){
-      result = valueStr(aDateTime.getDay());
+      result = valueStr(aFields.Day);
     }
     else if(WWWW.equals(aCurrentToken)){
-      int weekday = aDateTime.getWeekDay();
-      result = fullWeekday(weekday);
+      result = fullWeekday(aFields.weekDay());
     }
     else if(WWW.equals(aCurrentToken)){
-      int weekday = aDateTime.getWeekDay();
-      result = firstThreeChars(fullWeekday(weekday));
+      result = firstThreeChars(fullWeekday(aFields.weekDay()));
     }
     else if(hh.equals(aCurrentToken)){
-      result = addLeadingZero(valueStr(aDateTime.getHour()));
+      result = twoDigits(aFields.Hour);
     }
     else if(h.equals(aCurrentToken)){
-      result = valueStr(aDateTime.getHour());
+      result = valueStr(aFields.Hour);
     }
     else if (h12.equals(aCurrentToken)){
-      result = valueStr(twelveHourStyle(aDateTime.getHour()));
+      result = valueStr(twelveHourStyle(aFields.Hour));
     }
     else if (hh12.equals(aCurrentToken)){
-      result = addLeadingZero(valueStr(twelveHourStyle(aDateTime.getHour())));
+      result = twoDigits(twelveHourStyle(aFields.Hour));
     }
     else if (a.equals(aCurrentToken)){
-      int hour = aDateTime.getHour();
-      result = amPmIndicator(hour);
+      result = amPmIndicator(aFields.Hour);
     }
     else if(mm.equals(aCurrentToken)){
-      result = addLeadingZero(valueStr(aDateTime.getMinute()));
+      result = twoDigits(aFields.Minute);
     }
     else if(m.equals(aCurrentToken)){
-      result = valueStr(aDateTime.getMinute());
+      result = valueStr(aFields.Minute);
     }
     else if(ss.equals(aCurrentToken)){
-      result = addLeadingZero(valueStr(aDateTime.getSecond()));
+      result = twoDigits(aFields.Second);
     }
     else if(s.equals(aCurrentToken)){
-      result = valueStr(aDateTime.getSecond());
+      result = valueStr(aFields.Second);
     }
     else if(aCurrentToken.startsWith("f")){
       Matcher matcher = FRACTIONALS.matcher(aCurrentToken);
       if ( matcher.matches() ) {
-        String nanos = nanosWithLeadingZeroes(aDateTime.getNanoseconds());
+        String nanos = nanosWithLeadingZeroes(aFields.Nanosecond);
         int numDecimalsToShow = aCurrentToken.length();
         result = firstNChars(nanos, numDecimalsToShow);
       }
@@ -418,9 +512,10 @@ final class DateTimeFormatter {
     return result;
   }
   
-  private String valueStr(Object aItem){
+  /** Return the text of the given unit, or an empty String if the unit is absent. */
+  private String valueStr(int aItem){
     String result = EMPTY_STRING;
-    if(aItem != null){
+    if(aItem != PackedDateTime.ABSENT){
       result = String.valueOf(aItem);
     }
     return result;
@@ -434,20 +529,21 @@ final class DateTimeFormatter {
     return result;
   }
   
-  private String nanosWithLeadingZeroes(Integer aNanos){
-    String result = valueStr(aNanos);
-    while(result.length() < 9){
-      result = "0" + result;
-    }
-    return result;
+  /** Absent nanoseconds are shown as all zeroes. */
+  private String nanosWithLeadingZeroes(int aNanos){
+    char[] result = new char[9];
+    Digits.writeFraction(result, 0, aNanos == PackedDateTime.ABSENT ? 0 : aNanos, 9);
+    return new String(result);
   }
   
   
-  /** Pad 0..9 with a leading zero. */
-  private String addLeadingZero(String aTimePart){
-    String result = aTimePart;
-    if(Util.textHasContent(aTimePart) && aTimePart.length() ==1){
-      result = "0" + result;
+  /** Return the given unit as 2 digits, or an empty String if the unit is absent. */
+  private String twoDigits(int aItem){
+    String result = EMPTY_STRING;
+    if(aItem != PackedDateTime.ABSENT){
+      char[] digits = new char[2];
+      Digits.writeTwoDigits(digits, 0, aItem);
+      result = new String(digits);
     }
     return result;
   }
@@ -460,83 +556,23 @@ final class DateTimeFormatter {
     return result;
   }
   
-  private String fullMonth(Integer aMonth){
-    String result = "";
-    if(aMonth != null){
-      if(fCustomLocalization != null){
-        result = lookupCustomMonthFor(aMonth);
-      }
-      else if (fLocale != null){
-        result = lookupMonthFor(aMonth);
-      }
-      else {
-        throw new IllegalArgumentException("Your date pattern requires either a Locale, or your own custom localizations for text:" + Util.quote(fFormat)) ;
-      }
-    }
-    return result;
-  }
-
-  private String lookupCustomMonthFor(Integer aMonth){
-    return fCustomLocalization.Months.get(aMonth-1);
-  }
-  
-  private String lookupMonthFor(Integer aMonth){
+  private String fullMonth(int aMonth){
     String result = EMPTY_STRING;
-    if (! fMonths.containsKey(fLocale) ){
-      List<String> months = new ArrayList<String>();
-      SimpleDateFormat format = new SimpleDateFormat("MMMM", fLocale);
-      for(int idx = Calendar.JANUARY; idx <= Calendar.DECEMBER; ++idx){
-        Calendar firstDayOfMonth = new GregorianCalendar();
-        firstDayOfMonth.set(Calendar.YEAR, 2000);
-        firstDayOfMonth.set(Calendar.MONTH, idx);
-        firstDayOfMonth.set(Calendar.DAY_OF_MONTH, 15);
-        String monthText = format.format(firstDayOfMonth.getTime());
-        months.add(monthText);
-      }
-      fMonths.put(fLocale, months);
-    }
-    result = fMonths.get(fLocale).get(aMonth-1); //list is 0-based
-    return result;
-  }
-  
-  private String fullWeekday(Integer aWeekday){
-    String result = "";
-    if(aWeekday != null){
-      if (fCustomLocalization != null){
-        result = lookupCustomWeekdayFor(aWeekday);
-      }
-      else if(fLocale != null ){
-        result = lookupWeekdayFor(aWeekday);
-      }
-      else {
-        throw new IllegalArgumentException("Your date pattern requires either a Locale, or your own custom localizations for text:" + Util.quote(fFormat)) ;
-      }
+    if(aMonth != PackedDateTime.ABSENT){
+      result = localization().month(aMonth);
     }
     return result;
   }
 
-  private String lookupCustomWeekdayFor(Integer aWeekday){
-    return fCustomLocalization.Weekdays.get(aWeekday-1);
+  private String fullWeekday(int aWeekday){
+    return localization().weekday(aWeekday);
   }
-  
-  private String lookupWeekdayFor(Integer aWeekday){
-    String result = EMPTY_STRING;
-    if (! fWeekdays.containsKey(fLocale) ){
-      List<String> weekdays = new ArrayList<String>();
-      SimpleDateFormat format = new SimpleDateFormat("EEEE", fLocale);
-      //Feb 8, 2009..Feb 14, 2009 runs Sun..Sat
-      for(int idx = 8; idx <= 14; ++idx){
-        Calendar firstDayOfWeek = new GregorianCalendar();
-        firstDayOfWeek.set(Calendar.YEAR, 2009);
-        firstDayOfWeek.set(Calendar.MONTH, 1); //month is 0-based
-        firstDayOfWeek.set(Calendar.DAY_OF_MONTH, idx);
-        String weekdayText = format.format(firstDayOfWeek.getTime());
-        weekdays.add(weekdayText);
-      }
-      fWeekdays.put(fLocale, weekdays);
+
+  private CustomLocalization localization(){
+    if(fLocalization == null){
+      throw new IllegalArgumentException("Your date pattern requires either a Locale, or your own custom localizations for text:" + Util.quote(fFormat)) ;
     }
-    result = fWeekdays.get(fLocale).get(aWeekday-1); //list is 0-based
-    return result;
+    return fLocalization;
   }
 
   private String firstNChars(String aText, int aN){
@@ -548,9 +584,9 @@ final class DateTimeFormatter {
   }
 
   /**  Coerce the hour to match the number used in the 12-hour style. */
-  private Integer twelveHourStyle(Integer aHour){
-    Integer result = aHour;
-    if(aHour != null){
+  private int twelveHourStyle(int aHour){
+    int result = aHour;
+    if(aHour != PackedDateTime.ABSENT){
       if (aHour == 0) {
         result = 12; //eg 12:30 am
       }
@@ -561,61 +597,13 @@ final class DateTimeFormatter {
     return result;
   }
   
-  private String amPmIndicator(Integer aHour){
-    String result = "";
-    if(aHour != null){
-      if(fCustomLocalization != null){
-        result = lookupCustomAmPmFor(aHour);
-      }
-      else if (fLocale != null) {
-        result = lookupAmPmFor(aHour);
-      }
-      else {
-        throw new IllegalArgumentException(
-          "Your date pattern requires either a Locale, or your own custom localizations for text:" + Util.quote(fFormat)
-        ) ;
-      }
-    }
-    return result;
-  }
-    
-  private String lookupCustomAmPmFor(Integer aHour){
+  private String amPmIndicator(int aHour){
     String result = EMPTY_STRING;
-    if(aHour < 12 ){
-      result = fCustomLocalization.AmPmIndicators.get(AM);
-    }
-    else {
-      result = fCustomLocalization.AmPmIndicators.get(PM);
+    if(aHour != PackedDateTime.ABSENT){
+      result = localization().amPm(aHour);
     }
     return result;
   }
-    
-  private String lookupAmPmFor(Integer aHour){
-    String result = EMPTY_STRING;
-    if (! fAmPm.containsKey(fLocale) ){
-      List<String> indicators = new ArrayList<String>();
-      indicators.add(getAmPmTextFor(6));
-      indicators.add(getAmPmTextFor(18));
-      fAmPm.put(fLocale, indicators);
-    }
-    if (aHour < 12 ){
-      result = fAmPm.get(fLocale).get(AM); 
-    }
-    else {
-      result = fAmPm.get(fLocale).get(PM); 
-    }
-    return result;
-  }
-  
-  private String getAmPmTextFor(Integer aHour){
-    SimpleDateFormat format = new SimpleDateFormat("a", fLocale);
-    Calendar someDay = new GregorianCalendar();
-    someDay.set(Calendar.YEAR, 2000);
-    someDay.set(Calendar.MONTH, 6);
-    someDay.set(Calendar.DAY_OF_MONTH, 15);
-    someDay.set(Calendar.HOUR_OF_DAY, aHour);
-    return format.format(someDay.getTime());
-  }
   
   private void validateState(){
     if(! Util.textHasContent(fFormat)){  
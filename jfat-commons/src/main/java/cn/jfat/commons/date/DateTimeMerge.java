@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ Merge several sorted sources into a single sorted sequence, ordered by date-time.
+
+ <P>Each source must already be sorted, in the order of {@link DateTime#compareTo(DateTime)}. The merge uses a
+ <em>loser tree</em> (tournament tree) : after the first item, each item output costs about <tt>log2(N)</tt> comparisons for
+ <tt>N</tt> sources, one per level of the tree, compared with about twice that for a binary heap. The comparisons are
+ on the primitive form of {@link PackedDateTime}, not on <tt>DateTime</tt> objects.
+
+ <P>Items with equal date-times are output in the order of their sources (items from the first source first), so the merge is
+ stable. Optionally, items whose date-time equals that of the item output just before are dropped, leaving only the first
+ of each run of equal date-times.
+
+ <P>Sources may be :
+ <ul>
+ <li>iterators over <tt>DateTime</tt> objects, with {@link #merge(List, boolean)}
+ <li>iterators over other items, such as events, each having a <tt>DateTime</tt>, with {@link #merge(List, Key, boolean)}
+ <li>arrays of packed date-times, with {@link #merge(long[][], int[][], boolean, long[], int[])}
+ </ul>
+
+ <P>Example :
+ <PRE>
+  Iterator&lt;Event&gt; timeline = DateTimeMerge.merge(partitions, new DateTimeMerge.Key&lt;Event&gt;(){
+    public DateTime dateTimeOf(Event aEvent){
+      return aEvent.getWhen();
+    }
+  }, false);
+ </PRE>
+*/
+public final class DateTimeMerge {
+
+  /** Extracts the date-time by which an item is ordered. */
+  public interface Key<T> {
+    /** Return the date-time of the given item. Must not return <tt>null</tt>. */
+    DateTime dateTimeOf(T aItem);
+  }
+
+  /**
+   Return a lazy iterator over the merged items of the given sorted sources.
+   The sources are read only as items are requested. The returned iterator doesn't support <tt>remove</tt>.
+   @param aSources each is sorted by date-time.
+   @param aKey returns the date-time of each item.
+   @param aDropDuplicates if <tt>true</tt>, skip each item whose date-time equals that of the item returned just before it.
+  */
+  public static <T> Iterator<T> merge(List<? extends Iterator<? extends T>> aSources, Key<? super T> aKey, boolean aDropDuplicates){
+    return new Merged<T>(aSources, aKey, aDropDuplicates);
+  }
+
+  /** As {@link #merge(List, Key, boolean)}, for sources of <tt>DateTime</tt> objects. */
+  public static Iterator<DateTime> merge(List<? extends Iterator<DateTime>> aSources, boolean aDropDuplicates){
+    return merge(aSources, IDENTITY, aDropDuplicates);
+  }
+
+  /**
+   Merge sorted arrays of packed date-times into the given output arrays. Return the number of items written.
+   @param aPacked each array holds the packed form of a sorted source, as returned by {@link PackedDateTime#pack(DateTime)}.
+   @param aNanos the nanoseconds of each source, as returned by {@link PackedDateTime#nanosOf(DateTime)}, each of the same length as
+   the corresponding item of <tt>aPacked</tt>. If <tt>null</tt>, the nanoseconds are taken as absent.
+   @param aDropDuplicates if <tt>true</tt>, skip each item equal to the item written just before it.
+   @param aPackedOut receives the merged packed date-times; must have room for all of the items.
+   @param aNanosOut receives the merged nanoseconds; may be <tt>null</tt>, if they're not needed.
+  */
+  public static int merge(long[][] aPacked, int[][] aNanos, boolean aDropDuplicates, long[] aPackedOut, int[] aNanosOut){
+    int numSources = aPacked.length;
+    if(aNanos != null && aNanos.length != numSources){
+      throw new IllegalArgumentException("Expected nanoseconds for " + numSources + " sources, but found " + aNanos.length);
+    }
+    int total = 0;
+    for(int source = 0; source < numSources; ++source){
+      if(aNanos != null && aNanos[source].length != aPacked[source].length){
+        throw new IllegalArgumentException("Source " + source + " has " + aPacked[source].length + " items, but " + aNanos[source].length + " nanoseconds.");
+      }
+      total = total + aPacked[source].length;
+    }
+    if(aPackedOut.length < total || (aNanosOut != null && aNanosOut.length < total)){
+      throw new IllegalArgumentException("Output arrays need room for " + total + " items.");
+    }
+    int result = 0;
+    if(numSources > 0){
+      LoserTree tree = new LoserTree(numSources);
+      int[] positions = new int[numSources];
+      for(int source = 0; source < numSources; ++source){
+        loadFromArray(tree, source, aPacked, aNanos, 0);
+      }
+      tree.build();
+      long lastPacked = 0;
+      int lastNanos = 0;
+      for(int source = tree.winner(); source != LoserTree.NONE; source = tree.winner()){
+        long packed = tree.Packed[source];
+        int nanos = tree.Nanos[source];
+        if(! aDropDuplicates || result == 0 || packed != lastPacked || nanos != lastNanos){
+          aPackedOut[result] = packed;
+          if(aNanosOut != null){
+            aNanosOut[result] = nanos;
+          }
+          ++result;
+          lastPacked = packed;
+          lastNanos = nanos;
+        }
+        loadFromArray(tree, source, aPacked, aNanos, ++positions[source]);
+        tree.replay(source);
+      }
+    }
+    return result;
+  }
+
+  // PRIVATE
+
+  private static final Key<DateTime> IDENTITY = new Key<DateTime>(){
+    public DateTime dateTimeOf(DateTime aItem){
+      return aItem;
+    }
+  };
+
+  private DateTimeMerge(){
+    //prevent construction
+  }
+
+  private static void loadFromArray(LoserTree aTree, int aSource, long[][] aPacked, int[][] aNanos, int aPosition){
+    if(aPosition < aPacked[aSource].length){
+      aTree.Packed[aSource] = aPacked[aSource][aPosition];
+      aTree.Nanos[aSource] = aNanos == null ? PackedDateTime.ABSENT : aNanos[aSource][aPosition];
+    }
+    else {
+      aTree.Done[aSource] = true;
+    }
+  }
+
+  /**
+   Loser tree over the current item of each source. Node 0 holds the index of the overall winner (the least item);
+   each other node holds the index of the source that lost the match played there.
+   Sources which are done lose to all others; ties go to the source with the lower index.
+  */
+  private static final class LoserTree {
+    LoserTree(int aNumSources){
+      NumSources = aNumSources;
+      Packed = new long[aNumSources];
+      Nanos = new int[aNumSources];
+      Done = new boolean[aNumSources];
+      fTree = new int[aNumSources];
+    }
+    static final int NONE = -1;
+    final int NumSources;
+    /** The current item of each source; not meaningful when the source is done. */
+    final long[] Packed;
+    final int[] Nanos;
+    final boolean[] Done;
+
+    /** Play all matches, once the first item of each source is loaded. */
+    void build(){
+      //start with every node held by a virtual source which beats all others; each real source then displaces one of them
+      for(int node = 0; node < NumSources; ++node){
+        fTree[node] = NumSources;
+      }
+      for(int source = NumSources - 1; source >= 0; --source){
+        replay(source);
+      }
+    }
+
+    /** Return the source whose current item is least, or NONE if all sources are done. */
+    int winner(){
+      int result = fTree[0];
+      return Done[result] ? NONE : result;
+    }
+
+    /** Replay the matches from the leaf of the given source up to the root, after its current item changes. */
+    void replay(int aSource){
+      int winner = aSource;
+      for(int node = (aSource + NumSources) >> 1; node > 0; node = node >> 1){
+        int loser = fTree[node];
+        if(beats(loser, winner)){
+          fTree[node] = winner;
+          winner = loser;
+        }
+      }
+      fTree[0] = winner;
+    }
+
+    private final int[] fTree;
+
+    private boolean beats(int aSource, int aThat){
+      if(aSource == NumSources || aThat == NumSources){
+        return aSource == NumSources;
+      }
+      if(Done[aSource] || Done[aThat]){
+        return ! Done[aSource] || (Done[aThat] && aSource < aThat);
+      }
+      int comparison = PackedDateTime.compare(Packed[aSource], Nanos[aSource], Packed[aThat], Nanos[aThat]);
+      return comparison < 0 || (comparison == 0 && aSource < aThat);
+    }
+  }
+
+  /** Lazy merge of iterators. */
+  private static final class Merged<T> implements Iterator<T> {
+    Merged(List<? extends Iterator<? extends T>> aSources, Key<? super T> aKey, boolean aDropDuplicates){
+      fKey = aKey;
+      fDropDuplicates = aDropDuplicates;
+      fSources = new Iterator<?>[aSources.size()];
+      fHeads = new Object[fSources.length];
+      if(fSources.length > 0){
+        fTree = new LoserTree(fSources.length);
+        for(int source = 0; source < fSources.length; ++source){
+          fSources[source] = aSources.get(source);
+          advance(source);
+        }
+        fTree.build();
+      }
+      else {
+        fTree = null;
+      }
+    }
+
+    public boolean hasNext(){
+      if(fTree == null){
+        return false;
+      }
+      if(fDropDuplicates && fHasLast){
+        //skip items equal to the last one returned
+        for(int source = fTree.winner(); source != LoserTree.NONE && isLast(source); source = fTree.winner()){
+          advance(source);
+          fTree.replay(source);
+        }
+      }
+      return fTree.winner() != LoserTree.NONE;
+    }
+
+    public T next(){
+      if(! hasNext()){
+        throw new NoSuchElementException();
+      }
+      int source = fTree.winner();
+      @SuppressWarnings("unchecked")
+      T result = (T)fHeads[source];
+      fLastPacked = fTree.Packed[source];
+      fLastNanos = fTree.Nanos[source];
+      fHasLast = true;
+      advance(source);
+      fTree.replay(source);
+      return result;
+    }
+
+    public void remove(){
+      throw new UnsupportedOperationException();
+    }
+
+    private final Key<? super T> fKey;
+    private final boolean fDropDuplicates;
+    private final Iterator<?>[] fSources;
+    /** The current item of each source. */
+    private final Object[] fHeads;
+    private final LoserTree fTree;
+    private boolean fHasLast;
+    private long fLastPacked;
+    private int fLastNanos;
+
+    /** Load the next item of the given source into the tree, without replaying. */
+    private void advance(int aSource){
+      if(fSources[aSource].hasNext()){
+        @SuppressWarnings("unchecked")
+        T item = (T)fSources[aSource].next();
+        DateTime dateTime = fKey.dateTimeOf(item);
+        fHeads[aSource] = item;
+        fTree.Packed[aSource] = PackedDateTime.pack(dateTime);
+        fTree.Nanos[aSource] = PackedDateTime.nanosOf(dateTime);
+      }
+      else {
+        fHeads[aSource] = null;
+        fTree.Done[aSource] = true;
+      }
+    }
+
+    private boolean isLast(int aSource){
+      return fTree.Packed[aSource] == fLastPacked && fTree.Nanos[aSource] == fLastNanos;
+    }
+  }
+}
@@ -41,22 +41,23 @@ final class DateTimeParser  {
     if(aDateTime == null){
       throw new NullPointerException("DateTime string is null");
     }
-    String dateTime = aDateTime.trim();
-    Parts parts = splitIntoDateAndTime(dateTime);
-    if (parts.hasTwoParts()) {
-      parseDate(parts.datePart);
-      parseTime(parts.timePart);
-    }
-    else if (parts.hasDateOnly()){
-      parseDate(parts.datePart);
-    }
-    else if (parts.hasTimeOnly()){
-      parseTime(parts.timePart);
+    String problem = parseUnits(aDateTime.trim());
+    if (problem != null) {
+      throw new DateTimeParser.UnknownDateTimeFormat(problem);
     }
     DateTime result = new DateTime(fYear, fMonth, fDay, fHour, fMinute, fSecond, fNanosecond);
     return result;
   }
   
+  /** 
+   As {@link #parse(String)}, but only set the fields of this parser, and return <tt>false</tt> instead of throwing 
+   an exception, when the format is unknown or a unit is out of range. Used by DateTime, which reads the fields 
+   directly, for text which may never be parsed.
+  */
+  boolean parseFields(String aDateTime) {
+    return parseUnits(aDateTime.trim()) == null && DateTime.rangeProblem(fYear, fMonth, fDay, fHour, fMinute, fSecond, fNanosecond) == null;
+  }
+  
   // PRIVATE
   
   /** 
@@ -92,13 +93,14 @@ final class DateTimeParser  {
   private static final String COLON = ":";
   private static final int THIRD_POSITION = 2;
   
-  private Integer fYear;
-  private Integer fMonth;
-  private Integer fDay;
-  private Integer fHour;
-  private Integer fMinute;
-  private Integer fSecond;
-  private Integer fNanosecond;
+  /** The parsed units; read by DateTime after {@link #parseFields(String)}. */
+  Integer fYear;
+  Integer fMonth;
+  Integer fDay;
+  Integer fHour;
+  Integer fMinute;
+  Integer fSecond;
+  Integer fNanosecond;
   
   private class Parts {
     String datePart;
@@ -114,6 +116,25 @@ final class DateTimeParser  {
     }
   }
   
+  /** Return a description of the problem, or null if the text has a known format. */
+  private String parseUnits(String aDateTime){
+    String result = null;
+    Parts parts = splitIntoDateAndTime(aDateTime);
+    if (parts.hasTwoParts()) {
+      result = parseDate(parts.datePart);
+      if (result == null) {
+        result = parseTime(parts.timePart);
+      }
+    }
+    else if (parts.hasDateOnly()){
+      result = parseDate(parts.datePart);
+    }
+    else if (parts.hasTimeOnly()){
+      result = parseTime(parts.timePart);
+    }
+    return result;
+  }
+  
   /** Date and time can be separated with a single space, or with a 'T' character (case-sensitive). */
   private Parts splitIntoDateAndTime(String aDateTime){
     Parts result = new Parts();
@@ -146,13 +167,14 @@ final class DateTimeParser  {
   
   private boolean hasColonInThirdPlace(String aDateTime){
     boolean result = false;
-    if(aDateTime.length() >= THIRD_POSITION){
+    if(aDateTime.length() > THIRD_POSITION){
       result = COLON.equals(aDateTime.substring(THIRD_POSITION,THIRD_POSITION+1));
     }
     return result;
   }
   
-  private void parseDate(String aDate) {
+  private String parseDate(String aDate) {
+    String result = null;
     Matcher matcher = DATE.matcher(aDate);
     if (matcher.matches()){
       String year = getGroup(matcher, 1, 4, 6);
@@ -169,8 +191,9 @@ final class DateTimeParser  {
       }
     }
     else {
-      throw new DateTimeParser.UnknownDateTimeFormat("Unexpected format for date:" + aDate);
+      result = "Unexpected format for date:" + aDate;
     }
+    return result;
   }
 
   private String getGroup(Matcher aMatcher, int... aGroupIds){
@@ -182,7 +205,8 @@ final class DateTimeParser  {
     return result;
   }
 
-  private void parseTime(String aTime) {
+  private String parseTime(String aTime) {
+    String result = null;
     Matcher matcher = TIME.matcher(aTime);
     if (matcher.matches()){
       String hour = getGroup(matcher, 1, 5, 8, 10);
@@ -203,8 +227,9 @@ final class DateTimeParser  {
       }
     }
     else {
-      throw new DateTimeParser.UnknownDateTimeFormat("Unexpected format for time:" + aTime);
+      result = "Unexpected format for time:" + aTime;
     }
+    return result;
   }
   
   /**
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ The date-times from a start (inclusive) to an end (exclusive), at a fixed step. Returned by
+ {@link DateTime#range(DateTime, DateTime, int, DateTime.Unit)}.
+
+ <P>This is a lazy, read-only <tt>List</tt>. No <tt>DateTime</tt> is held; item <tt>i</tt> is calculated directly from the
+ start, only when requested, so {@link #get(int)} takes the same time for any index, and the size is known exactly
+ without walking the range.
+
+ <P>For parallel work, a range can be cut into pieces of nearly equal size with {@link #split(int)}, or with
+ {@link #subList(int, int)}; neither copies anything.
+
+ <P>The step is applied to the start, as follows :
+ <ul>
+ <li>years and months : the day of the month is that of the start, but limited to the last day of the month,
+ as in {@link DateTime.DayOverflow#LastDay}. The time portion is that of the start.
+ <li>days : the time portion is that of the start.
+ <li>hours, minutes, and seconds : every item has hour, minute, and second; if any of these are absent from the start, then
+ they are taken as 0. The nanoseconds are those of the start.
+ </ul>
+ The range holds all such date-times that are less than the end, in the sense of {@link DateTime#compareTo(DateTime)}.
+
+ <P>This class is immutable, and may be shared between threads.
+*/
+public final class DateTimeRange extends AbstractList<DateTime> implements RandomAccess {
+
+  /** The number of date-times in this range. */
+  @Override public int size(){
+    return fSize;
+  }
+
+  /** Return the date-time at the given index, 0..size()-1. */
+  @Override public DateTime get(int aIndex){
+    if(aIndex < 0 || aIndex >= fSize){
+      throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + fSize);
+    }
+    return PackedDateTime.toDateTime(fSteps.packedAt(fFirst + aIndex), fSteps.Nanos);
+  }
+
+  /** Return part of this range, without copying. */
+  @Override public DateTimeRange subList(int aFromIndex, int aToIndex){
+    if(aFromIndex < 0 || aToIndex > fSize || aFromIndex > aToIndex){
+      throw new IndexOutOfBoundsException("From: " + aFromIndex + ", To: " + aToIndex + ", Size: " + fSize);
+    }
+    return new DateTimeRange(fSteps, fFirst + aFromIndex, aToIndex - aFromIndex);
+  }
+
+  /**
+   Cut this range into pieces of nearly equal size, in order.
+   Returns fewer pieces than requested only if this range has fewer items than that (but always at least 1 piece).
+   @param aNumPieces 1 or more.
+  */
+  public List<DateTimeRange> split(int aNumPieces){
+    if(aNumPieces < 1){
+      throw new IllegalArgumentException("Number of pieces must be 1 or more: " + aNumPieces);
+    }
+    int numPieces = Math.max(1, Math.min(aNumPieces, fSize));
+    List<DateTimeRange> result = new ArrayList<DateTimeRange>(numPieces);
+    for(int piece = 0; piece < numPieces; ++piece){
+      result.add(subList(ParallelTasks.startOf(piece, numPieces, fSize), ParallelTasks.startOf(piece + 1, numPieces, fSize)));
+    }
+    return result;
+  }
+
+  /** The number of units between items. */
+  public int getStep(){
+    return fSteps.Step;
+  }
+
+  /** The unit of the step. */
+  public DateTime.Unit getUnit(){
+    return fSteps.Unit;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "DateTimeRange step:" + fSteps.Step + " " + fSteps.Unit + " size:" + fSize + (fSize == 0 ? "" : " first:" + get(0));
+  }
+
+  // PACKAGE-PRIVATE
+
+  /** See {@link DateTime#range(DateTime, DateTime, int, DateTime.Unit)}. */
+  DateTimeRange(DateTime aStart, DateTime aEndExclusive, int aStep, DateTime.Unit aUnit){
+    if(aStep < 1){
+      throw new IllegalArgumentException("Step must be 1 or more: " + aStep);
+    }
+    if(aUnit == DateTime.Unit.NANOSECONDS){
+      throw new IllegalArgumentException("Step must be in seconds or larger units, not nanoseconds.");
+    }
+    fSteps = new Steps(aStart, aStep, aUnit);
+    fFirst = 0;
+    fSize = fSteps.countBefore(aEndExclusive);
+  }
+
+  // PRIVATE
+  private final Steps fSteps;
+  /** The step number of the first item. */
+  private final long fFirst;
+  private final int fSize;
+
+  /** The largest Modified Julian Day number, for 9999-12-31. */
+  private static final int MAX_DAY = DayNumbers.modifiedJulianDay(9999, 12, 31);
+  /** Greater than any packed date-time. */
+  private static final long BEYOND = Long.MAX_VALUE;
+
+  private DateTimeRange(Steps aSteps, long aFirst, int aSize){
+    fSteps = aSteps;
+    fFirst = aFirst;
+    fSize = aSize;
+  }
+
+  /** The start and step, shared by a range and its pieces. Calculates the n-th step, with no objects created. */
+  private static final class Steps {
+    Steps(DateTime aStart, int aStep, DateTime.Unit aUnit){
+      Step = aStep;
+      Unit = aUnit;
+      StartDay = aStart.getModifiedJulianDayNumber(); //requires year-month-day
+      Year = aStart.getYear();
+      Month = aStart.getMonth();
+      Day = aStart.getDay();
+      Hour = PackedDateTime.valueOf(aStart.getHour());
+      Minute = PackedDateTime.valueOf(aStart.getMinute());
+      Second = PackedDateTime.valueOf(aStart.getSecond());
+      Nanos = PackedDateTime.valueOf(aStart.getNanoseconds());
+      StartSecond = secondOfDay(Hour, Minute, Second);
+      if(Unit == DateTime.Unit.YEAR || Unit == DateTime.Unit.MONTH){
+        StepSize = Unit == DateTime.Unit.YEAR ? 12L * aStep : aStep;
+        MaxSteps = 10000L * 12 / StepSize;
+      }
+      else if(Unit == DateTime.Unit.DAY){
+        StepSize = aStep;
+        MaxSteps = (MAX_DAY - StartDay) / StepSize + 1;
+      }
+      else {
+        StepSize = aStep * (Unit == DateTime.Unit.HOUR ? 3600L : Unit == DateTime.Unit.MINUTE ? 60L : 1L);
+        MaxSteps = ((MAX_DAY - StartDay + 1) * 86400L) / StepSize + 1;
+      }
+    }
+    final int Step;
+    final DateTime.Unit Unit;
+    /** The step in months, days, or seconds, according to Unit. */
+    final long StepSize;
+    /** Steps beyond this are always past the year 9999; prevents overflow. */
+    final long MaxSteps;
+    final int StartDay;
+    final int StartSecond;
+    final int Year;
+    final int Month;
+    final int Day;
+    final int Hour;
+    final int Minute;
+    final int Second;
+    final int Nanos;
+
+    /** Return the packed year..second of the given step, or BEYOND if it's past the year 9999. */
+    long packedAt(long aStep){
+      if(aStep > MaxSteps){
+        return BEYOND;
+      }
+      long result = BEYOND;
+      if(Unit == DateTime.Unit.YEAR || Unit == DateTime.Unit.MONTH){
+        long month = Year * 12L + (Month - 1) + aStep * StepSize;
+        int year = (int)(month / 12);
+        int monthOfYear = (int)(month % 12) + 1;
+        if(year <= 9999){
+          int day = Math.min(Day, DayNumbers.daysInMonth(year, monthOfYear));
+          result = PackedDateTime.packUnchecked(year, monthOfYear, day, Hour, Minute, Second);
+        }
+      }
+      else if(Unit == DateTime.Unit.DAY){
+        long day = StartDay + aStep * StepSize;
+        if(day <= MAX_DAY){
+          int ymd = DayNumbers.toYearMonthDay((int)day);
+          result = PackedDateTime.packUnchecked(DayNumbers.yearOf(ymd), DayNumbers.monthOf(ymd), DayNumbers.dayOf(ymd), Hour, Minute, Second);
+        }
+      }
+      else {
+        long second = StartSecond + aStep * StepSize;
+        long day = StartDay + second / 86400;
+        int secondOfDay = (int)(second % 86400);
+        if(day <= MAX_DAY){
+          int ymd = DayNumbers.toYearMonthDay((int)day);
+          result = PackedDateTime.packUnchecked(
+            DayNumbers.yearOf(ymd), DayNumbers.monthOf(ymd), DayNumbers.dayOf(ymd),
+            secondOfDay / 3600, (secondOfDay / 60) % 60, secondOfDay % 60
+          );
+        }
+      }
+      return result;
+    }
+
+    /** Return the number of steps that come before the given date-time. */
+    int countBefore(DateTime aEnd){
+      long endPacked = PackedDateTime.pack(aEnd);
+      int endNanos = PackedDateTime.nanosOf(aEnd);
+      int endDay = aEnd.getModifiedJulianDayNumber(); //requires year-month-day
+      //first estimate from the difference in whole units, then correct it by comparing with the end itself
+      long difference = 0;
+      if(Unit == DateTime.Unit.YEAR || Unit == DateTime.Unit.MONTH){
+        difference = (aEnd.getYear() * 12L + aEnd.getMonth()) - (Year * 12L + Month);
+      }
+      else if(Unit == DateTime.Unit.DAY){
+        difference = endDay - StartDay;
+      }
+      else {
+        int endSecond = secondOfDay(
+          PackedDateTime.valueOf(aEnd.getHour()), PackedDateTime.valueOf(aEnd.getMinute()), PackedDateTime.valueOf(aEnd.getSecond())
+        );
+        difference = (endDay - StartDay) * 86400L + endSecond - StartSecond;
+      }
+      long result = Math.max(0, Math.min((difference + StepSize - 1) / StepSize, MaxSteps + 1));
+      while(result > 0 && ! isBefore(result - 1, endPacked, endNanos)){
+        --result;
+      }
+      while(isBefore(result, endPacked, endNanos)){
+        ++result;
+      }
+      if(result > Integer.MAX_VALUE){
+        throw new IllegalArgumentException("Range has too many items: " + result);
+      }
+      return (int)result;
+    }
+
+    private boolean isBefore(long aStep, long aEndPacked, int aEndNanos){
+      long packed = packedAt(aStep);
+      return packed != BEYOND && PackedDateTime.compare(packed, Nanos, aEndPacked, aEndNanos) < 0;
+    }
+
+    /** Absent units are taken as 0. */
+    private static int secondOfDay(int aHour, int aMinute, int aSecond){
+      return Math.max(0, aHour) * 3600 + Math.max(0, aMinute) * 60 + Math.max(0, aSecond);
+    }
+  }
+}
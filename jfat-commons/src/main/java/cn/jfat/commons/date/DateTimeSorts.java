@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.Callable;
+
+/**
+ Sort date-times with a radix sort, instead of by comparisons.
+
+ <P>The sort key of each item is its {@link PackedDateTime} form : a <tt>long</tt> for year..second, and an <tt>int</tt> for
+ the nanoseconds. These give exactly the order of {@link DateTime#compareTo(DateTime)}, including its placing of absent
+ units first, so partial date-times (such as dates with no time) are sorted correctly.
+ The keys are sorted one byte at a time, least significant byte first (an LSD radix sort), in a fixed number of passes
+ over the data. Any pass in which all items have the same byte is skipped, so data having, for example, no nanoseconds,
+ or only dates, takes fewer passes.
+
+ <P>The sort is stable : equal items keep their relative order.
+
+ <P>Large inputs are sorted on several threads : in each pass, every thread counts and then moves its own slice of the data.
+ The work is done by a shared pool of daemon threads, sized to the number of processors, as in {@link BulkFormatter}.
+
+ <P>Example :
+ <PRE>
+  DateTimeSorts.sort(dateTimes); //same result as Arrays.sort(dateTimes)
+ </PRE>
+*/
+public final class DateTimeSorts {
+
+  /** Sort the given date-times into ascending order. Throws a runtime exception if an item is <tt>null</tt>. */
+  public static void sort(DateTime[] aDateTimes){
+    final int size = aDateTimes.length;
+    final long[] packed = new long[size];
+    final int[] nanos = new int[size];
+    final DateTime[] dateTimes = aDateTimes;
+    int numTasks = ParallelTasks.numTasksFor(size, MIN_ITEMS_PER_TASK);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numTasks);
+    for(int task = 0; task < numTasks; ++task){
+      final int start = ParallelTasks.startOf(task, numTasks, size);
+      final int end = ParallelTasks.startOf(task + 1, numTasks, size);
+      tasks.add(new Callable<Void>(){
+        public Void call(){
+          for(int idx = start; idx < end; ++idx){
+            packed[idx] = PackedDateTime.pack(dateTimes[idx]);
+            nanos[idx] = PackedDateTime.nanosOf(dateTimes[idx]);
+          }
+          return null;
+        }
+      });
+    }
+    ParallelTasks.invokeAll(null, tasks);
+    int[] order = sortWithOrder(packed, nanos);
+    DateTime[] unsorted = aDateTimes.clone();
+    for(int idx = 0; idx < size; ++idx){
+      aDateTimes[idx] = unsorted[order[idx]];
+    }
+  }
+
+  /** Sort the given list into ascending order, in the manner of <tt>Collections.sort</tt>. */
+  public static void sort(List<DateTime> aDateTimes){
+    DateTime[] items = aDateTimes.toArray(new DateTime[aDateTimes.size()]);
+    sort(items);
+    ListIterator<DateTime> iter = aDateTimes.listIterator();
+    for(DateTime item : items){
+      iter.next();
+      iter.set(item);
+    }
+  }
+
+  /**
+   Sort date-times held in their primitive form, in place. Items at the same index in both arrays are moved together.
+   @param aPacked items as returned by {@link PackedDateTime#pack(DateTime)}.
+   @param aNanos items as returned by {@link PackedDateTime#nanosOf(DateTime)}, of the same length as <tt>aPacked</tt>.
+   May be <tt>null</tt>, if the nanoseconds are not held.
+  */
+  public static void sort(long[] aPacked, int[] aNanos){
+    if(aNanos != null && aNanos.length != aPacked.length){
+      throw new IllegalArgumentException("Arrays have different lengths: " + aPacked.length + ", " + aNanos.length);
+    }
+    sort(aPacked, aNanos, 0, aPacked.length);
+  }
+
+  /**
+   As {@link #sort(long[], int[])}, but sort only the items from <tt>aFromIndex</tt> (inclusive) to <tt>aToIndex</tt> (exclusive),
+   in the manner of <tt>Arrays.sort</tt>. The items outside the range are not touched, and are not copied.
+   <P>Throws an <tt>IllegalArgumentException</tt> if <tt>aFromIndex</tt> is greater than <tt>aToIndex</tt>, and an
+   <tt>ArrayIndexOutOfBoundsException</tt> if the range does not fit in the arrays.
+  */
+  public static void sort(long[] aPacked, int[] aNanos, int aFromIndex, int aToIndex){
+    if(aFromIndex > aToIndex){
+      throw new IllegalArgumentException("From index " + aFromIndex + " is greater than to index " + aToIndex);
+    }
+    if(aFromIndex < 0 || aToIndex > aPacked.length || (aNanos != null && aToIndex > aNanos.length)){
+      throw new ArrayIndexOutOfBoundsException("Range " + aFromIndex + ".." + aToIndex + " does not fit in the arrays.");
+    }
+    int size = aToIndex - aFromIndex;
+    new RadixSort(aPacked, aNanos, null, aFromIndex, size, ParallelTasks.numTasksFor(size, MIN_ITEMS_PER_TASK)).run();
+  }
+
+  // PACKAGE-PRIVATE
+
+  /**
+   As {@link #sort(long[], int[])}, but also return where each item came from : item <tt>i</tt> of the result is the original
+   index of the item now at index <tt>i</tt>.
+  */
+  static int[] sortWithOrder(long[] aPacked, int[] aNanos){
+    int[] result = new int[aPacked.length];
+    for(int idx = 0; idx < result.length; ++idx){
+      result[idx] = idx;
+    }
+    new RadixSort(aPacked, aNanos, result, 0, aPacked.length, ParallelTasks.numTasksFor(aPacked.length, MIN_ITEMS_PER_TASK)).run();
+    return result;
+  }
+
+  // PRIVATE
+
+  /** Below this, a task spends more time starting than sorting. */
+  private static final int MIN_ITEMS_PER_TASK = 1 << 15;
+
+  /** The passes : 4 bytes of the nanoseconds (plus 1, so that ABSENT sorts first), then the 5 bytes used by the packed form. */
+  private static final int NUM_NANOS_PASSES = 4;
+  private static final int NUM_PASSES = NUM_NANOS_PASSES + 5;
+  private static final int NUM_BUCKETS = 256;
+
+  private DateTimeSorts(){
+    //prevent construction
+  }
+
+  /**
+   LSD radix sort over a range of the keys, carrying along an optional array of original positions.
+   Each pass moves the items from one set of arrays to the other; the results are copied back at the end, if needed.
+   Only the scratch arrays are allocated, and only as long as the range.
+   The optional array of positions is indexed from the start of the range.
+  */
+  private static final class RadixSort {
+    RadixSort(long[] aPacked, int[] aNanos, int[] aOrder, int aOffset, int aSize, int aNumTasks){
+      fSize = aSize;
+      fNumTasks = aNumTasks;
+      fPacked = aPacked;
+      fNanos = aNanos;
+      fOrder = aOrder;
+      fOffset = aOffset;
+      fPackedOut = new long[fSize];
+      fNanosOut = aNanos == null ? null : new int[fSize];
+      fOrderOut = aOrder == null ? null : new int[fSize];
+    }
+
+    void run(){
+      long[] originalPacked = fPacked;
+      int[] originalNanos = fNanos;
+      int[] originalOrder = fOrder;
+      int originalOffset = fOffset;
+      for(int pass = fNanos == null ? NUM_NANOS_PASSES : 0; pass < NUM_PASSES; ++pass){
+        int[][] counts = countAll(pass);
+        if(! allInOneBucket(counts)){
+          moveAll(pass, offsetsFrom(counts));
+          swap();
+        }
+      }
+      if(fPacked != originalPacked){
+        System.arraycopy(fPacked, fOffset, originalPacked, originalOffset, fSize);
+        if(originalNanos != null){
+          System.arraycopy(fNanos, fOffset, originalNanos, originalOffset, fSize);
+        }
+        if(originalOrder != null){
+          System.arraycopy(fOrder, 0, originalOrder, 0, fSize);
+        }
+      }
+    }
+
+    private final int fSize;
+    private final int fNumTasks;
+    /** The source of the next pass. */
+    private long[] fPacked;
+    private int[] fNanos;
+    private int[] fOrder;
+    /** The index in fPacked and fNanos of the first item; the scratch arrays start at 0. */
+    private int fOffset;
+    /** The destination of the next pass. */
+    private long[] fPackedOut;
+    private int[] fNanosOut;
+    private int[] fOrderOut;
+    private int fOffsetOut;
+
+    private int digit(int aPass, int aIdx){
+      int result = 0;
+      if(aPass < NUM_NANOS_PASSES){
+        result = ((fNanos[fOffset + aIdx] + 1) >>> (8 * aPass)) & 0xFF;
+      }
+      else {
+        result = (int)(fPacked[fOffset + aIdx] >>> (8 * (aPass - NUM_NANOS_PASSES))) & 0xFF;
+      }
+      return result;
+    }
+
+    /** Return the count of each digit, for each task's slice of the data. */
+    private int[][] countAll(final int aPass){
+      List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(fNumTasks);
+      for(int task = 0; task < fNumTasks; ++task){
+        final int start = ParallelTasks.startOf(task, fNumTasks, fSize);
+        final int end = ParallelTasks.startOf(task + 1, fNumTasks, fSize);
+        tasks.add(new Callable<int[]>(){
+          public int[] call(){
+            int[] result = new int[NUM_BUCKETS];
+            for(int idx = start; idx < end; ++idx){
+              ++result[digit(aPass, idx)];
+            }
+            return result;
+          }
+        });
+      }
+      return ParallelTasks.invokeAll(null, tasks).toArray(new int[fNumTasks][]);
+    }
+
+    private boolean allInOneBucket(int[][] aCounts){
+      for(int bucket = 0; bucket < NUM_BUCKETS; ++bucket){
+        int total = 0;
+        for(int[] counts : aCounts){
+          total = total + counts[bucket];
+        }
+        if(total != 0){
+          return total == fSize;
+        }
+      }
+      return true;
+    }
+
+    /** Return where each task writes its first item of each digit : digits in order, and tasks in order within each digit. */
+    private int[][] offsetsFrom(int[][] aCounts){
+      int[][] result = new int[fNumTasks][NUM_BUCKETS];
+      int next = 0;
+      for(int bucket = 0; bucket < NUM_BUCKETS; ++bucket){
+        for(int task = 0; task < fNumTasks; ++task){
+          result[task][bucket] = next;
+          next = next + aCounts[task][bucket];
+        }
+      }
+      return result;
+    }
+
+    private void moveAll(final int aPass, final int[][] aOffsets){
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(fNumTasks);
+      for(int task = 0; task < fNumTasks; ++task){
+        final int start = ParallelTasks.startOf(task, fNumTasks, fSize);
+        final int end = ParallelTasks.startOf(task + 1, fNumTasks, fSize);
+        final int[] offsets = aOffsets[task];
+        tasks.add(new Callable<Void>(){
+          public Void call(){
+            for(int idx = start; idx < end; ++idx){
+              int target = offsets[digit(aPass, idx)]++;
+              fPackedOut[fOffsetOut + target] = fPacked[fOffset + idx];
+              if(fNanos != null){
+                fNanosOut[fOffsetOut + target] = fNanos[fOffset + idx];
+              }
+              if(fOrder != null){
+                fOrderOut[target] = fOrder[idx];
+              }
+            }
+            return null;
+          }
+        });
+      }
+      ParallelTasks.invokeAll(null, tasks);
+    }
+
+    private void swap(){
+      long[] packed = fPacked;
+      fPacked = fPackedOut;
+      fPackedOut = packed;
+      int[] nanos = fNanos;
+      fNanos = fNanosOut;
+      fNanosOut = nanos;
+      int[] order = fOrder;
+      fOrder = fOrderOut;
+      fOrderOut = order;
+      int offset = fOffset;
+      fOffset = fOffsetOut;
+      fOffsetOut = offset;
+    }
+  }
+}
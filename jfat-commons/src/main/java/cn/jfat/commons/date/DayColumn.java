@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ Date arithmetic over whole columns of days, held as <tt>int[]</tt>.
+
+ <P>Each item is a Modified Julian Day number, as returned by {@link DateTime#getModifiedJulianDayNumber()}.
+ Holding dates in this form, instead of as a list of <tt>DateTime</tt> objects, takes 4 bytes per date, and lets
+ the usual operations run as simple loops over arrays, with no objects created.
+
+ <P>Each operation reads from one array and writes to another, item by item. The output array may be the same as
+ the input array, to work in place. The output must be at least as long as the input.
+ Apart from the conversions to and from <tt>DateTime</tt>, no validation is performed on the day numbers themselves;
+ they are assumed to fall in the years 1..9999.
+
+ <P>Example :
+ <PRE>
+  int[] days = DayColumn.fromDateTimes(tradeDates);
+  DayColumn.plusDays(days, 30, days);
+  DayColumn.monthEnds(days, days);
+  List&lt;DateTime&gt; result = DayColumn.toDateTimes(days);
+ </PRE>
+*/
+public final class DayColumn {
+
+  /** Return the day number of each date. Requires year-month-day to be present in each item; if not, a runtime exception is thrown. */
+  public static int[] fromDateTimes(List<DateTime> aDates){
+    int[] result = new int[aDates.size()];
+    int idx = 0;
+    for(DateTime date : aDates){
+      result[idx++] = date.getModifiedJulianDayNumber().intValue();
+    }
+    return result;
+  }
+
+  /** Return a date, with year-month-day only, for each day number. Throws a runtime exception for days outside the years 1..9999. */
+  public static List<DateTime> toDateTimes(int[] aDays){
+    List<DateTime> result = new ArrayList<DateTime>(aDays.length);
+    for(int day : aDays){
+      int ymd = DayNumbers.toYearMonthDay(day);
+      result.add(DateTime.forDateOnly(DayNumbers.yearOf(ymd), DayNumbers.monthOf(ymd), DayNumbers.dayOf(ymd)));
+    }
+    return result;
+  }
+
+  /** Add the same number of days (either sign) to each day. */
+  public static void plusDays(int[] aDays, int aNumDays, int[] aOut){
+    checkLength(aDays, aOut);
+    for(int idx = 0; idx < aDays.length; ++idx){
+      aOut[idx] = aDays[idx] + aNumDays;
+    }
+  }
+
+  /** Add a different number of days (either sign) to each day. <tt>aNumDays</tt> must be at least as long as <tt>aDays</tt>. */
+  public static void plusDays(int[] aDays, int[] aNumDays, int[] aOut){
+    checkLength(aDays, aNumDays);
+    checkLength(aDays, aOut);
+    for(int idx = 0; idx < aDays.length; ++idx){
+      aOut[idx] = aDays[idx] + aNumDays[idx];
+    }
+  }
+
+  /**
+   Calculate the number of days from each item of <tt>aFrom</tt> to the corresponding item of <tt>aTo</tt>, as in
+   {@link DateTime#numDaysFrom(DateTime)}. <tt>aTo</tt> must be at least as long as <tt>aFrom</tt>.
+  */
+  public static void numDaysFrom(int[] aFrom, int[] aTo, int[] aOut){
+    checkLength(aFrom, aTo);
+    checkLength(aFrom, aOut);
+    for(int idx = 0; idx < aFrom.length; ++idx){
+      aOut[idx] = aTo[idx] - aFrom[idx];
+    }
+  }
+
+  /** Calculate the weekday of each day, 1..7 for Sunday..Saturday, as in {@link DateTime#getWeekDay()}. */
+  public static void weekDays(int[] aDays, int[] aOut){
+    checkLength(aDays, aOut);
+    for(int idx = 0; idx < aDays.length; ++idx){
+      //the offset keeps the dividend positive, for all years 1..9999, so a plain remainder is enough
+      aOut[idx] = (aDays[idx] + WEEKDAY_OFFSET) % 7 + 1;
+    }
+  }
+
+  /** Calculate the year of each day. */
+  public static void years(int[] aDays, int[] aOut){
+    checkLength(aDays, aOut);
+    for(int idx = 0; idx < aDays.length; ++idx){
+      aOut[idx] = DayNumbers.yearOf(DayNumbers.toYearMonthDay(aDays[idx]));
+    }
+  }
+
+  /** Calculate the first day of the month holding each day. */
+  public static void monthStarts(int[] aDays, int[] aOut){
+    checkLength(aDays, aOut);
+    for(int idx = 0; idx < aDays.length; ++idx){
+      int day = aDays[idx];
+      aOut[idx] = day - DayNumbers.dayOf(DayNumbers.toYearMonthDay(day)) + 1;
+    }
+  }
+
+  /** Calculate the last day of the month holding each day. */
+  public static void monthEnds(int[] aDays, int[] aOut){
+    checkLength(aDays, aOut);
+    for(int idx = 0; idx < aDays.length; ++idx){
+      int day = aDays[idx];
+      int ymd = DayNumbers.toYearMonthDay(day);
+      aOut[idx] = day - DayNumbers.dayOf(ymd) + DayNumbers.daysInMonth(DayNumbers.yearOf(ymd), DayNumbers.monthOf(ymd));
+    }
+  }
+
+  // PRIVATE
+
+  /** 3 makes day 0 (a Wednesday) give 4; the multiple of 7 makes every day in the years 1..9999 non-negative. */
+  private static final int WEEKDAY_OFFSET = 3 + 7 * 100000;
+
+  private DayColumn(){
+    //prevent construction
+  }
+
+  private static void checkLength(int[] aInput, int[] aOutput){
+    if(aOutput.length < aInput.length){
+      throw new IllegalArgumentException("Array has length " + aOutput.length + ", but needs at least " + aInput.length);
+    }
+  }
+}
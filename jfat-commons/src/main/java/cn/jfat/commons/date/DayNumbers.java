@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+/**
+ Primitive calendar arithmetic on Modified Julian Day numbers.
+
+ <P>These are the same day numbers returned by {@link DateTime#getModifiedJulianDayNumber()},
+ in the proleptic Gregorian calendar. Nothing here creates objects.
+*/
+final class DayNumbers {
+
+  /** Return the Modified Julian Day number of the given year-month-day. No validation is performed. */
+  static int modifiedJulianDay(int aYear, int aMonth, int aDay){
+    //http://www.hermetic.ch/cal_stud/jdn.htm - the JD at noon, less 1, less the epoch of the modified JD
+    int y = aYear;
+    int m = aMonth;
+    int d = aDay;
+    int jdAtNoon = (1461 * (y + 4800 + (m - 14) / 12)) / 4 + (367 * (m - 2 - 12 * ((m - 14) / 12))) / 12 - (3 * ((y + 4900 + (m - 14) / 12) / 100)) / 4 + d - 32075;
+    return jdAtNoon - 1 - EPOCH_MODIFIED_JD;
+  }
+
+  /**
+   Return the year-month-day of the given Modified Julian Day number, encoded as the decimal number 
+   <tt>YYYYMMDD</tt>. Use {@link #yearOf(int)}, {@link #monthOf(int)}, and {@link #dayOf(int)} to decode it.
+  */
+  static int toYearMonthDay(int aModifiedJulianDay){
+    //http://www.hermetic.ch/cal_stud/jdn.htm - the same as DateTime.fromJulianDayNumberAtNoon
+    int l = aModifiedJulianDay + 1 + EPOCH_MODIFIED_JD + 68569;
+    int n = (4 * l) / 146097;
+    l = l - (146097 * n + 3) / 4;
+    int i = (4000 * (l + 1)) / 1461001;
+    l = l - (1461 * i) / 4 + 31;
+    int j = (80 * l) / 2447;
+    int d = l - (2447 * j) / 80;
+    l = j / 11;
+    int m = j + 2 - (12 * l);
+    int y = 100 * (n - 49) + i + l;
+    return y * 10000 + m * 100 + d;
+  }
+
+  static int yearOf(int aYearMonthDay){
+    return aYearMonthDay / 10000;
+  }
+
+  static int monthOf(int aYearMonthDay){
+    return (aYearMonthDay / 100) % 100;
+  }
+
+  static int dayOf(int aYearMonthDay){
+    return aYearMonthDay % 100;
+  }
+
+  /** Return the number of days in the given month 1..12. */
+  static int daysInMonth(int aYear, int aMonth){
+    int result = DAYS_IN_MONTH[aMonth - 1];
+    if (aMonth == 2 && isLeapYear(aYear)){
+      result = 29;
+    }
+    return result;
+  }
+
+  static boolean isLeapYear(int aYear){
+    return (aYear % 4 == 0 && aYear % 100 != 0) || aYear % 400 == 0;
+  }
+
+  /** Return the weekday 1..7, for Sunday..Saturday, as in {@link DateTime#getWeekDay()}. */
+  static int weekDay(int aModifiedJulianDay){
+    //day 0 is a Wednesday
+    return floorMod(aModifiedJulianDay + 3, 7) + 1;
+  }
+
+  /**
+   Return the ISO-8601 week-based year of the given day. This differs from the calendar year only for a few days
+   at the start or end of some years.
+  */
+  static int isoWeekYear(int aModifiedJulianDay){
+    int result = yearOf(toYearMonthDay(aModifiedJulianDay));
+    if (aModifiedJulianDay < ISO_YEAR_STARTS[result]){
+      --result;
+    }
+    else if (aModifiedJulianDay >= ISO_YEAR_STARTS[result + 1]){
+      ++result;
+    }
+    return result;
+  }
+
+  /** Return the ISO-8601 week 1..53 of the given day. Weeks start on Monday. */
+  static int isoWeek(int aModifiedJulianDay){
+    return (aModifiedJulianDay - ISO_YEAR_STARTS[isoWeekYear(aModifiedJulianDay)]) / 7 + 1;
+  }
+
+  /** Return the Monday which starts week 1 of the given ISO-8601 week-based year: the Monday of the week holding January 4. */
+  static int isoYearStart(int aYear){
+    int january4 = modifiedJulianDay(aYear, 1, 4);
+    return january4 - isoWeekDay(january4) + 1;
+  }
+
+  /** Return the weekday 1..7, for Monday..Sunday, as in ISO-8601. */
+  static int isoWeekDay(int aModifiedJulianDay){
+    //day 0 is a Wednesday
+    return floorMod(aModifiedJulianDay + 2, 7) + 1;
+  }
+
+  /** Integer remainder, always in the range 0..aDivisor-1 for a positive divisor. */
+  static int floorMod(int aValue, int aDivisor){
+    int result = aValue % aDivisor;
+    return result < 0 ? result + aDivisor : result;
+  }
+
+  // PRIVATE
+
+  private static final int EPOCH_MODIFIED_JD = 2400000;
+  
+  private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+  /** The start of each ISO-8601 week-based year 0..10000, as a Modified Julian Day number. */
+  private static final int[] ISO_YEAR_STARTS = new int[10001];
+  static {
+    for(int year = 0; year < ISO_YEAR_STARTS.length; ++year){
+      ISO_YEAR_STARTS[year] = isoYearStart(year);
+    }
+  }
+
+  private DayNumbers(){
+    //prevent construction
+  }
+}
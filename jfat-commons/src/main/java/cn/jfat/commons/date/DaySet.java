@@ -0,0 +1,689 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Arrays;
+
+/**
+ A set of days, held as a compressed bitmap.
+
+ <P>Each day is identified by its Modified Julian Day number, as returned by {@link DateTime#getModifiedJulianDayNumber()},
+ for dates in the years 1..9999. The days are split into chunks of 65,536 consecutive days (about 179 years), and each
+ chunk holding any days is stored in the smallest of three forms, in the manner of a <em>Roaring</em> bitmap :
+ <ul>
+ <li>an array of sorted 16-bit offsets, for chunks with few days : 2 bytes per day
+ <li>a bitmap of 65,536 bits, for chunks with many days : 8 KB, no matter how many days
+ <li>a list of runs of consecutive days : 4 bytes per run
+ </ul>
+ The array and bitmap forms are chosen automatically, as days are added and removed. Runs are chosen only by {@link #optimize()},
+ which should be called once a set is complete; it's useful for sets made of long stretches of days.
+ By comparison, a <tt>HashSet&lt;DateTime&gt;</tt> takes well over 100 bytes per day.
+
+ <P>{@link #union(DaySet)} and {@link #intersection(DaySet)} work a chunk at a time; two bitmaps are combined
+ 64 days at a time, with a single operation on a <tt>long</tt>.
+
+ <P>This class is not thread-safe.
+
+ <P>Example :
+ <PRE>
+  DaySet active = new DaySet();
+  active.add(loginDate);
+  ...
+  DaySet both = active.intersection(otherCustomer);
+  for(int day = both.nextDay(start); day != DaySet.NONE &amp;&amp; day &lt; end; day = both.nextDay(day + 1)){
+    ...
+  }
+ </PRE>
+*/
+public final class DaySet {
+
+  /** Returned by {@link #nextDay(int)} when there is no such day. Not a valid day number. */
+  public static final int NONE = Integer.MIN_VALUE;
+
+  /** Constructor for an empty set. */
+  public DaySet(){
+    this(4);
+  }
+
+  /** Add the given day. Return <tt>true</tt> only if it was not already present. */
+  public boolean add(int aDay){
+    int value = offsetOf(aDay);
+    int index = indexOf(keyOf(value));
+    boolean result = false;
+    if(index < 0){
+      insert(-(index + 1), keyOf(value), new ArrayContainer().add(lowOf(value)));
+      result = true;
+    }
+    else if(! fContainers[index].contains(lowOf(value))){
+      fContainers[index] = fContainers[index].add(lowOf(value));
+      result = true;
+    }
+    return result;
+  }
+
+  /** Add the day of the given date. Requires year-month-day to be present; if not, a runtime exception is thrown. */
+  public boolean add(DateTime aDate){
+    return add(aDate.getModifiedJulianDayNumber());
+  }
+
+  /**
+   Add all days in the given range.
+   @param aFrom first day, inclusive.
+   @param aTo last day, exclusive.
+  */
+  public void addRange(int aFrom, int aTo){
+    if(aFrom >= aTo){
+      return;
+    }
+    int from = offsetOf(aFrom);
+    int last = offsetOf(aTo - 1);
+    for(int key = keyOf(from); key <= keyOf(last); ++key){
+      int lowFrom = key == keyOf(from) ? lowOf(from) : 0;
+      int lowTo = key == keyOf(last) ? lowOf(last) + 1 : CHUNK_SIZE;
+      int index = indexOf(key);
+      Container container = null;
+      if(lowFrom == 0 && lowTo == CHUNK_SIZE){
+        container = new RunContainer(new char[]{0, (char)(CHUNK_SIZE - 1)});
+      }
+      else {
+        BitmapContainer bitmap = index < 0 ? new BitmapContainer() : fContainers[index].toBitmap();
+        bitmap.setRange(lowFrom, lowTo);
+        container = bitmap.shrink();
+      }
+      if(index < 0){
+        insert(-(index + 1), key, container);
+      }
+      else {
+        fContainers[index] = container;
+      }
+    }
+  }
+
+  /** Remove the given day. Return <tt>true</tt> only if it was present. */
+  public boolean remove(int aDay){
+    int value = offsetOf(aDay);
+    int index = indexOf(keyOf(value));
+    boolean result = false;
+    if(index >= 0 && fContainers[index].contains(lowOf(value))){
+      Container container = fContainers[index].remove(lowOf(value));
+      if(container.cardinality() == 0){
+        System.arraycopy(fKeys, index + 1, fKeys, index, fSize - index - 1);
+        System.arraycopy(fContainers, index + 1, fContainers, index, fSize - index - 1);
+        fContainers[--fSize] = null;
+      }
+      else {
+        fContainers[index] = container;
+      }
+      result = true;
+    }
+    return result;
+  }
+
+  /** Return <tt>true</tt> only if the given day is present. Days outside the years 1..9999 are never present. */
+  public boolean contains(int aDay){
+    boolean result = false;
+    if(MIN_DAY <= aDay && aDay <= MAX_DAY){
+      int value = aDay - MIN_DAY;
+      int index = indexOf(keyOf(value));
+      result = index >= 0 && fContainers[index].contains(lowOf(value));
+    }
+    return result;
+  }
+
+  /** Return <tt>true</tt> only if the day of the given date is present. Requires year-month-day to be present. */
+  public boolean contains(DateTime aDate){
+    return contains(aDate.getModifiedJulianDayNumber());
+  }
+
+  /** The number of days in this set. */
+  public int cardinality(){
+    int result = 0;
+    for(int idx = 0; idx < fSize; ++idx){
+      result = result + fContainers[idx].cardinality();
+    }
+    return result;
+  }
+
+  /** Return <tt>true</tt> only if this set has no days. */
+  public boolean isEmpty(){
+    return fSize == 0;
+  }
+
+  /** Return the first day in this set which is on or after the given day, or {@link #NONE}. */
+  public int nextDay(int aFrom){
+    if(aFrom > MAX_DAY){
+      return NONE;
+    }
+    int from = Math.max(aFrom, MIN_DAY) - MIN_DAY;
+    int index = indexOf(keyOf(from));
+    int low = lowOf(from);
+    if(index < 0){
+      index = -(index + 1);
+      low = 0;
+    }
+    for( ; index < fSize; ++index){
+      int next = fContainers[index].next(low);
+      if(next != -1){
+        return MIN_DAY + (fKeys[index] << 16) + next;
+      }
+      low = 0;
+    }
+    return NONE;
+  }
+
+  /**
+   Return the days in the given range, in ascending order.
+   @param aFrom first day, inclusive.
+   @param aTo last day, exclusive.
+  */
+  public int[] toArray(int aFrom, int aTo){
+    int[] result = new int[16];
+    int count = 0;
+    for(int day = nextDay(aFrom); day != NONE && day < aTo; day = nextDay(day + 1)){
+      if(count == result.length){
+        result = Arrays.copyOf(result, count * 2);
+      }
+      result[count++] = day;
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /** Return a new set, holding the days found in this set, or in the given set, or in both. Neither set is changed. */
+  public DaySet union(DaySet aThat){
+    DaySet result = new DaySet(fSize + aThat.fSize);
+    int idx = 0;
+    int thatIdx = 0;
+    while(idx < fSize || thatIdx < aThat.fSize){
+      int key = idx < fSize ? fKeys[idx] : Integer.MAX_VALUE;
+      int thatKey = thatIdx < aThat.fSize ? aThat.fKeys[thatIdx] : Integer.MAX_VALUE;
+      if(key < thatKey){
+        result.append(fKeys[idx], fContainers[idx++].copy());
+      }
+      else if(thatKey < key){
+        result.append(aThat.fKeys[thatIdx], aThat.fContainers[thatIdx++].copy());
+      }
+      else {
+        result.append(fKeys[idx], or(fContainers[idx++], aThat.fContainers[thatIdx++]));
+      }
+    }
+    return result;
+  }
+
+  /** Return a new set, holding only the days found in both this set and the given set. Neither set is changed. */
+  public DaySet intersection(DaySet aThat){
+    DaySet result = new DaySet(Math.min(fSize, aThat.fSize));
+    int idx = 0;
+    int thatIdx = 0;
+    while(idx < fSize && thatIdx < aThat.fSize){
+      if(fKeys[idx] < aThat.fKeys[thatIdx]){
+        ++idx;
+      }
+      else if(aThat.fKeys[thatIdx] < fKeys[idx]){
+        ++thatIdx;
+      }
+      else {
+        Container container = and(fContainers[idx], aThat.fContainers[thatIdx]);
+        if(container.cardinality() > 0){
+          result.append(fKeys[idx], container);
+        }
+        ++idx;
+        ++thatIdx;
+      }
+    }
+    return result;
+  }
+
+  /**
+   Store each chunk in its smallest form, including runs of consecutive days.
+   Call this once the set is complete, or nearly so.
+  */
+  public void optimize(){
+    for(int idx = 0; idx < fSize; ++idx){
+      Container container = fContainers[idx];
+      int cardinality = container.cardinality();
+      int runBytes = 4 * container.numRuns();
+      int arrayBytes = cardinality <= ARRAY_MAX ? 2 * cardinality : Integer.MAX_VALUE;
+      if(runBytes < Math.min(arrayBytes, BITMAP_BYTES)){
+        fContainers[idx] = RunContainer.from(container);
+      }
+      else if(arrayBytes < BITMAP_BYTES){
+        fContainers[idx] = ArrayContainer.from(container);
+      }
+      else {
+        fContainers[idx] = container.toBitmap();
+      }
+    }
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    StringBuilder result = new StringBuilder("DaySet cardinality:" + cardinality() + " chunks:");
+    for(int idx = 0; idx < fSize; ++idx){
+      result.append(' ').append(fContainers[idx].getClass().getSimpleName());
+    }
+    return result.toString();
+  }
+
+  // PRIVATE
+
+  /** The chunk keys, in ascending order, and their containers. */
+  private char[] fKeys;
+  private Container[] fContainers;
+  private int fSize;
+
+  private static final int MIN_DAY = DayNumbers.modifiedJulianDay(1, 1, 1);
+  private static final int MAX_DAY = DayNumbers.modifiedJulianDay(9999, 12, 31);
+  private static final int CHUNK_SIZE = 1 << 16;
+  /** Above this, a bitmap is smaller than an array. */
+  private static final int ARRAY_MAX = 4096;
+  private static final int BITMAP_WORDS = CHUNK_SIZE / 64;
+  private static final int BITMAP_BYTES = 8 * BITMAP_WORDS;
+
+  private DaySet(int aCapacity){
+    fKeys = new char[aCapacity];
+    fContainers = new Container[aCapacity];
+  }
+
+  /** Return the day as an offset from MIN_DAY, which is split into a chunk key and a low part. */
+  private static int offsetOf(int aDay){
+    if(aDay < MIN_DAY || aDay > MAX_DAY){
+      throw new IllegalArgumentException("Day number " + aDay + " is outside the years 1..9999.");
+    }
+    return aDay - MIN_DAY;
+  }
+
+  private static int keyOf(int aOffset){
+    return aOffset >>> 16;
+  }
+
+  private static int lowOf(int aOffset){
+    return aOffset & 0xFFFF;
+  }
+
+  /** As for <tt>Arrays.binarySearch</tt>. */
+  private int indexOf(int aKey){
+    int low = 0;
+    int high = fSize - 1;
+    while(low <= high){
+      int middle = (low + high) >>> 1;
+      if(fKeys[middle] < aKey){
+        low = middle + 1;
+      }
+      else if(fKeys[middle] > aKey){
+        high = middle - 1;
+      }
+      else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private void insert(int aIndex, int aKey, Container aContainer){
+    if(fSize == fKeys.length){
+      fKeys = Arrays.copyOf(fKeys, fSize * 2 + 1);
+      fContainers = Arrays.copyOf(fContainers, fSize * 2 + 1);
+    }
+    System.arraycopy(fKeys, aIndex, fKeys, aIndex + 1, fSize - aIndex);
+    System.arraycopy(fContainers, aIndex, fContainers, aIndex + 1, fSize - aIndex);
+    fKeys[aIndex] = (char)aKey;
+    fContainers[aIndex] = aContainer;
+    ++fSize;
+  }
+
+  private void append(int aKey, Container aContainer){
+    insert(fSize, aKey, aContainer);
+  }
+
+  private static Container or(Container aOne, Container aTwo){
+    Container result = null;
+    if(aOne instanceof ArrayContainer && aTwo instanceof ArrayContainer){
+      result = ((ArrayContainer)aOne).or((ArrayContainer)aTwo);
+    }
+    else {
+      BitmapContainer bitmap = aOne.toBitmap();
+      bitmap.or(aTwo);
+      result = bitmap.shrink();
+    }
+    return result;
+  }
+
+  private static Container and(Container aOne, Container aTwo){
+    Container result = null;
+    if(aOne instanceof ArrayContainer){
+      result = ((ArrayContainer)aOne).and(aTwo);
+    }
+    else if(aTwo instanceof ArrayContainer){
+      result = ((ArrayContainer)aTwo).and(aOne);
+    }
+    else {
+      BitmapContainer bitmap = aOne.toBitmap();
+      bitmap.and(aTwo.toBitmap());
+      result = bitmap.shrink();
+    }
+    return result;
+  }
+
+  /**
+   The days of one chunk, as values 0..65535. Changes may return a different container, in a different form.
+   Only the methods which change a container may return the same object.
+  */
+  private static abstract class Container {
+    abstract int cardinality();
+    abstract boolean contains(int aLow);
+    /** Return the least value which is at least the given value, or -1. */
+    abstract int next(int aLow);
+    /** Requires the value to be absent. */
+    abstract Container add(int aLow);
+    /** Requires the value to be present. */
+    abstract Container remove(int aLow);
+    /** Return a new bitmap with the same values. */
+    abstract BitmapContainer toBitmap();
+    abstract Container copy();
+    abstract int numRuns();
+  }
+
+  /** Sorted values. */
+  private static final class ArrayContainer extends Container {
+    ArrayContainer(){
+      this(new char[4], 0);
+    }
+    ArrayContainer(char[] aValues, int aCardinality){
+      fValues = aValues;
+      fCardinality = aCardinality;
+    }
+    static ArrayContainer from(Container aContainer){
+      char[] values = new char[aContainer.cardinality()];
+      int count = 0;
+      for(int low = aContainer.next(0); low != -1; low = low + 1 < CHUNK_SIZE ? aContainer.next(low + 1) : -1){
+        values[count++] = (char)low;
+      }
+      return new ArrayContainer(values, count);
+    }
+    @Override int cardinality(){
+      return fCardinality;
+    }
+    @Override boolean contains(int aLow){
+      return Arrays.binarySearch(fValues, 0, fCardinality, (char)aLow) >= 0;
+    }
+    @Override int next(int aLow){
+      int index = Arrays.binarySearch(fValues, 0, fCardinality, (char)aLow);
+      if(index < 0){
+        index = -(index + 1);
+      }
+      return index < fCardinality ? fValues[index] : -1;
+    }
+    @Override Container add(int aLow){
+      if(fCardinality == ARRAY_MAX){
+        BitmapContainer result = toBitmap();
+        result.add(aLow);
+        return result;
+      }
+      int index = -(Arrays.binarySearch(fValues, 0, fCardinality, (char)aLow) + 1);
+      if(fCardinality == fValues.length){
+        fValues = Arrays.copyOf(fValues, Math.min(ARRAY_MAX, Math.max(4, fCardinality * 2)));
+      }
+      System.arraycopy(fValues, index, fValues, index + 1, fCardinality - index);
+      fValues[index] = (char)aLow;
+      ++fCardinality;
+      return this;
+    }
+    @Override Container remove(int aLow){
+      int index = Arrays.binarySearch(fValues, 0, fCardinality, (char)aLow);
+      System.arraycopy(fValues, index + 1, fValues, index, fCardinality - index - 1);
+      --fCardinality;
+      return this;
+    }
+    @Override BitmapContainer toBitmap(){
+      BitmapContainer result = new BitmapContainer();
+      for(int idx = 0; idx < fCardinality; ++idx){
+        result.add(fValues[idx]);
+      }
+      return result;
+    }
+    @Override Container copy(){
+      return new ArrayContainer(Arrays.copyOf(fValues, fCardinality), fCardinality);
+    }
+    @Override int numRuns(){
+      int result = 0;
+      for(int idx = 0; idx < fCardinality; ++idx){
+        if(idx == 0 || fValues[idx] != fValues[idx - 1] + 1){
+          ++result;
+        }
+      }
+      return result;
+    }
+    /** Merge of the two sorted arrays. */
+    Container or(ArrayContainer aThat){
+      char[] values = new char[fCardinality + aThat.fCardinality];
+      int count = 0;
+      int idx = 0;
+      int thatIdx = 0;
+      while(idx < fCardinality || thatIdx < aThat.fCardinality){
+        int value = idx < fCardinality ? fValues[idx] : CHUNK_SIZE;
+        int thatValue = thatIdx < aThat.fCardinality ? aThat.fValues[thatIdx] : CHUNK_SIZE;
+        values[count++] = (char)Math.min(value, thatValue);
+        if(value <= thatValue) ++idx;
+        if(thatValue <= value) ++thatIdx;
+      }
+      ArrayContainer result = new ArrayContainer(values, count);
+      return count <= ARRAY_MAX ? result : result.toBitmap();
+    }
+    /** The values of this array also found in the given container. */
+    ArrayContainer and(Container aThat){
+      char[] values = new char[fCardinality];
+      int count = 0;
+      for(int idx = 0; idx < fCardinality; ++idx){
+        if(aThat.contains(fValues[idx])){
+          values[count++] = fValues[idx];
+        }
+      }
+      return new ArrayContainer(values, count);
+    }
+    private char[] fValues;
+    private int fCardinality;
+  }
+
+  /** One bit for each value. */
+  private static final class BitmapContainer extends Container {
+    @Override int cardinality(){
+      return fCardinality;
+    }
+    @Override boolean contains(int aLow){
+      return (fWords[aLow >>> 6] & (1L << aLow)) != 0;
+    }
+    @Override int next(int aLow){
+      int index = aLow >>> 6;
+      long word = fWords[index] & (-1L << aLow);
+      while(word == 0){
+        if(++index == BITMAP_WORDS){
+          return -1;
+        }
+        word = fWords[index];
+      }
+      return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+    @Override BitmapContainer add(int aLow){
+      fWords[aLow >>> 6] |= 1L << aLow;
+      ++fCardinality;
+      return this;
+    }
+    @Override Container remove(int aLow){
+      fWords[aLow >>> 6] &= ~(1L << aLow);
+      --fCardinality;
+      return shrink();
+    }
+    @Override BitmapContainer toBitmap(){
+      BitmapContainer result = new BitmapContainer();
+      System.arraycopy(fWords, 0, result.fWords, 0, BITMAP_WORDS);
+      result.fCardinality = fCardinality;
+      return result;
+    }
+    @Override Container copy(){
+      return toBitmap();
+    }
+    @Override int numRuns(){
+      int result = 0;
+      long previous = 0;
+      for(long word : fWords){
+        //the first bit of each run is set, and the bit before it is not
+        result = result + Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+        previous = word;
+      }
+      return result;
+    }
+    /** Set all values from aFrom (inclusive) to aTo (exclusive). */
+    void setRange(int aFrom, int aTo){
+      fill(aFrom, aTo);
+      recount();
+    }
+    /** As {@link #setRange(int, int)}, but leaving the cardinality stale. */
+    void fill(int aFrom, int aTo){
+      for(int index = aFrom >>> 6; index <= (aTo - 1) >>> 6; ++index){
+        long mask = -1L;
+        if(index == aFrom >>> 6){
+          mask = mask & (-1L << aFrom);
+        }
+        if(index == (aTo - 1) >>> 6){
+          mask = mask & (-1L >>> (63 - ((aTo - 1) & 63)));
+        }
+        fWords[index] |= mask;
+      }
+    }
+    void or(Container aThat){
+      if(aThat instanceof BitmapContainer){
+        long[] words = ((BitmapContainer)aThat).fWords;
+        for(int index = 0; index < BITMAP_WORDS; ++index){
+          fWords[index] |= words[index];
+        }
+        recount();
+      }
+      else if(aThat instanceof RunContainer){
+        char[] runs = ((RunContainer)aThat).fRuns;
+        for(int idx = 0; idx < runs.length; idx = idx + 2){
+          fill(runs[idx], runs[idx] + runs[idx + 1] + 1);
+        }
+        recount();
+      }
+      else {
+        for(int low = aThat.next(0); low != -1; low = low + 1 < CHUNK_SIZE ? aThat.next(low + 1) : -1){
+          if(! contains(low)){
+            add(low);
+          }
+        }
+      }
+    }
+    void and(BitmapContainer aThat){
+      for(int index = 0; index < BITMAP_WORDS; ++index){
+        fWords[index] &= aThat.fWords[index];
+      }
+      recount();
+    }
+    /** Return this bitmap, or an array with the same values, if that's smaller. */
+    Container shrink(){
+      return fCardinality <= ARRAY_MAX ? ArrayContainer.from(this) : this;
+    }
+    private final long[] fWords = new long[BITMAP_WORDS];
+    private int fCardinality;
+    private void recount(){
+      fCardinality = 0;
+      for(long word : fWords){
+        fCardinality = fCardinality + Long.bitCount(word);
+      }
+    }
+  }
+
+  /**
+   Runs of consecutive values, as pairs : the first value, and the length of the run, less 1.
+   Never changed in place; changes return a container of another form.
+  */
+  private static final class RunContainer extends Container {
+    RunContainer(char[] aRuns){
+      fRuns = aRuns;
+      int cardinality = 0;
+      for(int idx = 0; idx < fRuns.length; idx = idx + 2){
+        cardinality = cardinality + fRuns[idx + 1] + 1;
+      }
+      fCardinality = cardinality;
+    }
+    static RunContainer from(Container aContainer){
+      char[] runs = new char[2 * aContainer.numRuns()];
+      int count = 0;
+      for(int low = aContainer.next(0); low != -1; ){
+        int end = low;
+        while(end + 1 < CHUNK_SIZE && aContainer.contains(end + 1)){
+          ++end;
+        }
+        runs[count++] = (char)low;
+        runs[count++] = (char)(end - low);
+        low = end + 1 < CHUNK_SIZE ? aContainer.next(end + 1) : -1;
+      }
+      return new RunContainer(runs);
+    }
+    @Override int cardinality(){
+      return fCardinality;
+    }
+    @Override boolean contains(int aLow){
+      int run = runAtOrBefore(aLow);
+      return run >= 0 && aLow <= fRuns[run] + fRuns[run + 1];
+    }
+    @Override int next(int aLow){
+      int run = runAtOrBefore(aLow);
+      if(run >= 0 && aLow <= fRuns[run] + fRuns[run + 1]){
+        return aLow;
+      }
+      run = run + 2;
+      return run < fRuns.length ? fRuns[run] : -1;
+    }
+    @Override Container add(int aLow){
+      return toBitmap().add(aLow).shrink();
+    }
+    @Override Container remove(int aLow){
+      return toBitmap().remove(aLow);
+    }
+    @Override BitmapContainer toBitmap(){
+      BitmapContainer result = new BitmapContainer();
+      for(int idx = 0; idx < fRuns.length; idx = idx + 2){
+        result.fill(fRuns[idx], fRuns[idx] + fRuns[idx + 1] + 1);
+      }
+      result.fCardinality = fCardinality;
+      return result;
+    }
+    @Override Container copy(){
+      return this;
+    }
+    @Override int numRuns(){
+      return fRuns.length / 2;
+    }
+    private final char[] fRuns;
+    private final int fCardinality;
+    /** Return the position in fRuns of the last run starting at or before the given value, or -2. */
+    private int runAtOrBefore(int aLow){
+      int low = 0;
+      int high = fRuns.length / 2 - 1;
+      while(low <= high){
+        int middle = (low + high) >>> 1;
+        if(fRuns[2 * middle] <= aLow){
+          low = middle + 1;
+        }
+        else {
+          high = middle - 1;
+        }
+      }
+      return 2 * (low - 1);
+    }
+  }
+}
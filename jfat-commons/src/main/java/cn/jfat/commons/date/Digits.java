@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+/**
+ Writes small non-negative numbers into a <tt>char</tt> array, using lookup tables instead of division loops.
+ Each method returns the position just after the last character written.
+*/
+final class Digits {
+
+  /** Write 0..99 as exactly 2 digits, with a leading zero if needed. */
+  static int writeTwoDigits(char[] aBuffer, int aPos, int aValue){
+    aBuffer[aPos] = TENS[aValue];
+    aBuffer[aPos + 1] = ONES[aValue];
+    return aPos + 2;
+  }
+
+  /** Write 0..9999 as exactly 4 digits, with leading zeroes if needed. */
+  static int writeFourDigits(char[] aBuffer, int aPos, int aValue){
+    int high = aValue / 100;
+    writeTwoDigits(aBuffer, aPos, high);
+    return writeTwoDigits(aBuffer, aPos + 2, aValue - high * 100);
+  }
+
+  /** Write 0..9999 with no leading zeroes, as {@link String#valueOf(int)} would. */
+  static int writeUnpadded(char[] aBuffer, int aPos, int aValue){
+    int pos = aPos;
+    int high = aValue / 100;
+    int low = aValue - high * 100;
+    if (high >= 10) {
+      pos = writeTwoDigits(aBuffer, pos, high);
+    }
+    else if (high > 0){
+      aBuffer[pos++] = ONES[high];
+    }
+    if (high > 0 || low >= 10){
+      pos = writeTwoDigits(aBuffer, pos, low);
+    }
+    else {
+      aBuffer[pos++] = ONES[low];
+    }
+    return pos;
+  }
+
+  /**
+   Write the first <tt>aNumDigits</tt> (1..9) digits of the nanoseconds, as a decimal fraction of a second.
+   No rounding is done.
+  */
+  static int writeFraction(char[] aBuffer, int aPos, int aNanos, int aNumDigits){
+    //the 9 digits are taken as 1 + 2 + 2 + 2 + 2
+    int end = aPos + aNumDigits;
+    int pos = aPos;
+    int first = aNanos / 100000000;
+    int remaining = aNanos - first * 100000000;
+    aBuffer[pos++] = ONES[first];
+    int divisor = 1000000;
+    while (pos + 1 < end){
+      int pair = remaining / divisor;
+      remaining = remaining - pair * divisor;
+      pos = writeTwoDigits(aBuffer, pos, pair);
+      divisor = divisor / 100;
+    }
+    if (pos < end){
+      aBuffer[pos++] = TENS[remaining / divisor];
+    }
+    return end;
+  }
+
+  // PRIVATE
+
+  /** The tens digit of 0..99. */
+  private static final char[] TENS = new char[100];
+  /** The ones digit of 0..99. */
+  private static final char[] ONES = new char[100];
+  static {
+    for(int idx = 0; idx < 100; ++idx){
+      TENS[idx] = (char)('0' + idx / 10);
+      ONES[idx] = (char)('0' + idx % 10);
+    }
+  }
+
+  private Digits(){
+    //prevent construction
+  }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ An immutable, compressed column of date-times.
+
+ <P>Date-times in event data are often highly repetitive : many items share the same second, or come in bursts,
+ or fall within a narrow range. This class splits the items into blocks of 1,024, and stores each block in the
+ smallest of four forms, chosen from the items in the block :
+ <ul>
+ <li><em>runs</em> : each run of equal items is stored once, with its length; good for sorted data with bursts.
+ <li><em>dictionary</em> : up to 256 distinct items, each item stored as a 1-byte code.
+ <li><em>offsets</em> : each item stored as a 2- or 4-byte offset from the least item in the block, in the manner of
+ <em>frame-of-reference</em> encoding. Since {@link PackedDateTime} keeps each unit in its own bit field, items
+ within the same day differ by less than 2<sup>17</sup>, and items within a few years by less than 2<sup>32</sup>.
+ <li><em>plain</em> : 8 bytes per item, when nothing else helps.
+ </ul>
+ In all but the first two forms, the nanoseconds are stored only if they vary within the block.
+ By comparison, a {@link DateTimeArray} takes 8 to 12 bytes per item, and a <tt>List</tt> of <tt>DateTime</tt>
+ objects takes well over 100.
+
+ <P>Any item can be read at random, in constant time, except for blocks of runs, which take a binary search within
+ the block. For scans, {@link #decode(int, int, long[], int[], int)} copies a range of items into arrays supplied by the caller,
+ a block at a time, creating no objects.
+
+ <P>This is a <tt>List&lt;DateTime&gt;</tt>. A <tt>DateTime</tt> object is created only when an item is read with {@link #get(int)}.
+ This class is immutable, and thus thread-safe.
+
+ <P>Example :
+ <PRE>
+  EncodedDateTimeColumn column = new EncodedDateTimeColumn(events);
+  long[] packed = new long[1024];
+  int[] nanos = new int[1024];
+  for(int from = 0; from &lt; column.size(); from = from + packed.length){
+    int num = Math.min(packed.length, column.size() - from);
+    column.decode(from, from + num, packed, nanos, 0);
+    ...
+  }
+ </PRE>
+*/
+public final class EncodedDateTimeColumn extends AbstractList<DateTime> implements RandomAccess {
+
+  /** Constructor holding the items of the given array, in order. */
+  public EncodedDateTimeColumn(DateTimeArray aDateTimes){
+    fSize = aDateTimes.size();
+    fBlocks = new Block[(fSize + BLOCK_SIZE - 1) / BLOCK_SIZE];
+    long[] packed = new long[BLOCK_SIZE];
+    int[] nanos = new int[BLOCK_SIZE];
+    for(int block = 0; block < fBlocks.length; ++block){
+      int from = block * BLOCK_SIZE;
+      int count = Math.min(BLOCK_SIZE, fSize - from);
+      for(int idx = 0; idx < count; ++idx){
+        packed[idx] = aDateTimes.getPacked(from + idx);
+        nanos[idx] = aDateTimes.getNanos(from + idx);
+      }
+      fBlocks[block] = encode(packed, nanos, count);
+    }
+  }
+
+  /** Constructor holding the given date-times, in the order returned by the collection's iterator. */
+  public EncodedDateTimeColumn(Collection<? extends DateTime> aDateTimes){
+    this(aDateTimes instanceof DateTimeArray ? (DateTimeArray)aDateTimes : new DateTimeArray(aDateTimes));
+  }
+
+  /** The number of items. */
+  @Override public int size(){
+    return fSize;
+  }
+
+  /** Return the item at the given index, as a new <tt>DateTime</tt>. */
+  @Override public DateTime get(int aIndex){
+    checkIndex(aIndex);
+    Block block = fBlocks[aIndex / BLOCK_SIZE];
+    int offset = aIndex % BLOCK_SIZE;
+    return PackedDateTime.toDateTime(block.packed(offset), block.nanos(offset));
+  }
+
+  /** Return the packed year..second of the item at the given index. See {@link PackedDateTime}. */
+  public long getPacked(int aIndex){
+    checkIndex(aIndex);
+    return fBlocks[aIndex / BLOCK_SIZE].packed(aIndex % BLOCK_SIZE);
+  }
+
+  /** Return the nanoseconds of the item at the given index, or {@link PackedDateTime#ABSENT}. */
+  public int getNanos(int aIndex){
+    checkIndex(aIndex);
+    return fBlocks[aIndex / BLOCK_SIZE].nanos(aIndex % BLOCK_SIZE);
+  }
+
+  /**
+   Copy the items in the range <tt>aFrom</tt> (inclusive) to <tt>aTo</tt> (exclusive) into the given arrays,
+   in {@link PackedDateTime} form, starting at <tt>aOffset</tt> in each array.
+  */
+  public void decode(int aFrom, int aTo, long[] aPacked, int[] aNanos, int aOffset){
+    if(aFrom < 0 || aTo > fSize || aFrom > aTo){
+      throw new IndexOutOfBoundsException("From: " + aFrom + ", To: " + aTo + ", Size: " + fSize);
+    }
+    if(aOffset < 0 || aOffset + (aTo - aFrom) > Math.min(aPacked.length, aNanos.length)){
+      throw new IndexOutOfBoundsException("Offset: " + aOffset + ", Count: " + (aTo - aFrom));
+    }
+    int out = aOffset;
+    int index = aFrom;
+    while(index < aTo){
+      int start = index % BLOCK_SIZE;
+      int end = Math.min(BLOCK_SIZE, start + (aTo - index));
+      fBlocks[index / BLOCK_SIZE].decode(start, end, aPacked, aNanos, out);
+      out = out + (end - start);
+      index = index + (end - start);
+    }
+  }
+
+  /** The approximate number of bytes taken by the encoded items, not counting fixed overheads. */
+  public long getEncodedSize(){
+    long result = 0;
+    for(Block block : fBlocks){
+      result = result + block.numBytes();
+    }
+    return result;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    Map<String, Integer> numBlocks = new HashMap<String, Integer>();
+    for(Block block : fBlocks){
+      String name = block.getClass().getSimpleName();
+      Integer count = numBlocks.get(name);
+      numBlocks.put(name, count == null ? 1 : count + 1);
+    }
+    return "EncodedDateTimeColumn size:" + fSize + " bytes:" + getEncodedSize() + " blocks:" + numBlocks;
+  }
+
+  // PRIVATE
+
+  private final int fSize;
+  private final Block[] fBlocks;
+
+  private static final int BLOCK_SIZE = 1024;
+  private static final int MAX_DICTIONARY = 256;
+
+  private void checkIndex(int aIndex){
+    if(aIndex < 0 || aIndex >= fSize){
+      throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + fSize);
+    }
+  }
+
+  /** Return the smallest form for the given items. */
+  private static Block encode(long[] aPacked, int[] aNanos, int aCount){
+    int numRuns = 1;
+    long min = aPacked[0];
+    long max = aPacked[0];
+    boolean sameNanos = true;
+    for(int idx = 1; idx < aCount; ++idx){
+      if(aPacked[idx] != aPacked[idx - 1] || aNanos[idx] != aNanos[idx - 1]){
+        ++numRuns;
+      }
+      min = Math.min(min, aPacked[idx]);
+      max = Math.max(max, aPacked[idx]);
+      sameNanos = sameNanos && aNanos[idx] == aNanos[0];
+    }
+    int nanosBytes = sameNanos ? 0 : 4 * aCount;
+    long range = max - min;
+
+    Block result = new PlainBlock(aPacked, aNanos, aCount, sameNanos);
+    long best = 8L * aCount + nanosBytes;
+    if(range <= 0xFFFFFFFFL){
+      int width = range <= 0xFFFF ? 2 : 4;
+      long size = (long)width * aCount + nanosBytes;
+      if(size < best){
+        result = new OffsetBlock(aPacked, aNanos, aCount, sameNanos, min, width);
+        best = size;
+      }
+    }
+    if(numRuns * 16L < best){
+      result = new RunBlock(aPacked, aNanos, aCount, numRuns);
+      best = numRuns * 16L;
+    }
+    //a dictionary takes at least 1 byte per item
+    if(aCount < best){
+      DictionaryBlock dictionary = DictionaryBlock.tryEncode(aPacked, aNanos, aCount);
+      if(dictionary != null && dictionary.numBytes() < best){
+        result = dictionary;
+      }
+    }
+    return result;
+  }
+
+  /** A block of up to BLOCK_SIZE items, indexed from 0 within the block. */
+  private static abstract class Block {
+    abstract long packed(int aOffset);
+    abstract int nanos(int aOffset);
+    abstract long numBytes();
+    /** Default implementation; subclasses may do better. */
+    void decode(int aFrom, int aTo, long[] aPacked, int[] aNanos, int aOut){
+      for(int idx = aFrom; idx < aTo; ++idx){
+        aPacked[aOut + idx - aFrom] = packed(idx);
+        aNanos[aOut + idx - aFrom] = nanos(idx);
+      }
+    }
+  }
+
+  /** The nanoseconds, stored only if they vary within the block. */
+  private static abstract class NanosBlock extends Block {
+    NanosBlock(int[] aNanos, int aCount, boolean aSameNanos){
+      fSameNanos = aNanos[0];
+      fNanos = aSameNanos ? null : Arrays.copyOf(aNanos, aCount);
+    }
+    @Override final int nanos(int aOffset){
+      return fNanos == null ? fSameNanos : fNanos[aOffset];
+    }
+    long nanosBytes(){
+      return fNanos == null ? 0 : 4L * fNanos.length;
+    }
+    void decodeNanos(int aFrom, int aTo, int[] aNanos, int aOut){
+      if(fNanos == null){
+        Arrays.fill(aNanos, aOut, aOut + aTo - aFrom, fSameNanos);
+      }
+      else {
+        System.arraycopy(fNanos, aFrom, aNanos, aOut, aTo - aFrom);
+      }
+    }
+    private final int fSameNanos;
+    private final int[] fNanos;
+  }
+
+  private static final class PlainBlock extends NanosBlock {
+    PlainBlock(long[] aPacked, int[] aNanos, int aCount, boolean aSameNanos){
+      super(aNanos, aCount, aSameNanos);
+      fPacked = Arrays.copyOf(aPacked, aCount);
+    }
+    @Override long packed(int aOffset){
+      return fPacked[aOffset];
+    }
+    @Override long numBytes(){
+      return 8L * fPacked.length + nanosBytes();
+    }
+    @Override void decode(int aFrom, int aTo, long[] aPacked, int[] aNanos, int aOut){
+      System.arraycopy(fPacked, aFrom, aPacked, aOut, aTo - aFrom);
+      decodeNanos(aFrom, aTo, aNanos, aOut);
+    }
+    private final long[] fPacked;
+  }
+
+  /** Offsets from the least item, in 2 or 4 bytes each. The 4-byte offsets are unsigned. */
+  private static final class OffsetBlock extends NanosBlock {
+    OffsetBlock(long[] aPacked, int[] aNanos, int aCount, boolean aSameNanos, long aBase, int aWidth){
+      super(aNanos, aCount, aSameNanos);
+      fBase = aBase;
+      if(aWidth == 2){
+        fShortOffsets = new char[aCount];
+        fIntOffsets = null;
+        for(int idx = 0; idx < aCount; ++idx){
+          fShortOffsets[idx] = (char)(aPacked[idx] - aBase);
+        }
+      }
+      else {
+        fShortOffsets = null;
+        fIntOffsets = new int[aCount];
+        for(int idx = 0; idx < aCount; ++idx){
+          fIntOffsets[idx] = (int)(aPacked[idx] - aBase);
+        }
+      }
+    }
+    @Override long packed(int aOffset){
+      return fShortOffsets != null ? fBase + fShortOffsets[aOffset] : fBase + (fIntOffsets[aOffset] & 0xFFFFFFFFL);
+    }
+    @Override long numBytes(){
+      return (fShortOffsets != null ? 2L * fShortOffsets.length : 4L * fIntOffsets.length) + nanosBytes();
+    }
+    @Override void decode(int aFrom, int aTo, long[] aPacked, int[] aNanos, int aOut){
+      int out = aOut;
+      if(fShortOffsets != null){
+        for(int idx = aFrom; idx < aTo; ++idx){
+          aPacked[out++] = fBase + fShortOffsets[idx];
+        }
+      }
+      else {
+        for(int idx = aFrom; idx < aTo; ++idx){
+          aPacked[out++] = fBase + (fIntOffsets[idx] & 0xFFFFFFFFL);
+        }
+      }
+      decodeNanos(aFrom, aTo, aNanos, aOut);
+    }
+    private final long fBase;
+    private final char[] fShortOffsets;
+    private final int[] fIntOffsets;
+  }
+
+  /** Runs of equal items. fEnds holds the (exclusive) end of each run. */
+  private static final class RunBlock extends Block {
+    RunBlock(long[] aPacked, int[] aNanos, int aCount, int aNumRuns){
+      fPacked = new long[aNumRuns];
+      fNanos = new int[aNumRuns];
+      fEnds = new int[aNumRuns];
+      int run = 0;
+      for(int idx = 0; idx < aCount; ++idx){
+        if(idx > 0 && (aPacked[idx] != aPacked[idx - 1] || aNanos[idx] != aNanos[idx - 1])){
+          ++run;
+        }
+        fPacked[run] = aPacked[idx];
+        fNanos[run] = aNanos[idx];
+        fEnds[run] = idx + 1;
+      }
+    }
+    @Override long packed(int aOffset){
+      return fPacked[runOf(aOffset)];
+    }
+    @Override int nanos(int aOffset){
+      return fNanos[runOf(aOffset)];
+    }
+    @Override long numBytes(){
+      return 16L * fEnds.length;
+    }
+    @Override void decode(int aFrom, int aTo, long[] aPacked, int[] aNanos, int aOut){
+      int out = aOut;
+      int run = runOf(aFrom);
+      int idx = aFrom;
+      while(idx < aTo){
+        int end = Math.min(aTo, fEnds[run]);
+        Arrays.fill(aPacked, out, out + end - idx, fPacked[run]);
+        Arrays.fill(aNanos, out, out + end - idx, fNanos[run]);
+        out = out + end - idx;
+        idx = end;
+        ++run;
+      }
+    }
+    private int runOf(int aOffset){
+      int result = Arrays.binarySearch(fEnds, aOffset + 1);
+      return result >= 0 ? result : -(result + 1);
+    }
+    private final long[] fPacked;
+    private final int[] fNanos;
+    private final int[] fEnds;
+  }
+
+  /** Up to 256 distinct items, and a 1-byte code for each item. */
+  private static final class DictionaryBlock extends Block {
+    /** Return null if there are too many distinct items. */
+    static DictionaryBlock tryEncode(long[] aPacked, int[] aNanos, int aCount){
+      long[] distinctPacked = new long[MAX_DICTIONARY];
+      int[] distinctNanos = new int[MAX_DICTIONARY];
+      byte[] codes = new byte[aCount];
+      int numDistinct = 0;
+      for(int idx = 0; idx < aCount; ++idx){
+        int code = 0;
+        //the dictionary is small, and equal items are often adjacent : search back from the last code used
+        int last = idx == 0 ? 0 : codes[idx - 1] & 0xFF;
+        if(numDistinct > 0 && distinctPacked[last] == aPacked[idx] && distinctNanos[last] == aNanos[idx]){
+          code = last;
+        }
+        else {
+          code = numDistinct - 1;
+          while(code >= 0 && !(distinctPacked[code] == aPacked[idx] && distinctNanos[code] == aNanos[idx])){
+            --code;
+          }
+          if(code < 0){
+            if(numDistinct == MAX_DICTIONARY){
+              return null;
+            }
+            code = numDistinct++;
+            distinctPacked[code] = aPacked[idx];
+            distinctNanos[code] = aNanos[idx];
+          }
+        }
+        codes[idx] = (byte)code;
+      }
+      return new DictionaryBlock(Arrays.copyOf(distinctPacked, numDistinct), Arrays.copyOf(distinctNanos, numDistinct), codes);
+    }
+    @Override long packed(int aOffset){
+      return fPacked[fCodes[aOffset] & 0xFF];
+    }
+    @Override int nanos(int aOffset){
+      return fNanos[fCodes[aOffset] & 0xFF];
+    }
+    @Override long numBytes(){
+      return 12L * fPacked.length + fCodes.length;
+    }
+    @Override void decode(int aFrom, int aTo, long[] aPacked, int[] aNanos, int aOut){
+      int out = aOut;
+      for(int idx = aFrom; idx < aTo; ++idx){
+        int code = fCodes[idx] & 0xFF;
+        aPacked[out] = fPacked[code];
+        aNanos[out] = fNanos[code];
+        ++out;
+      }
+    }
+    private DictionaryBlock(long[] aPacked, int[] aNanos, byte[] aCodes){
+      fPacked = aPacked;
+      fNanos = aNanos;
+      fCodes = aCodes;
+    }
+    private final long[] fPacked;
+    private final int[] fNanos;
+    private final byte[] fCodes;
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+/**
+ A fiscal calendar, dividing days into fiscal years, quarters, and periods.
+
+ <P>Two kinds of fiscal calendar are provided :
+ <ul>
+ <li>{@link #forFirstMonth(int, boolean)} : the fiscal year starts on the first day of a given calendar month,
+ and each period is a calendar month.
+ <li>{@link #forFourFourFive(int, int, boolean)} : the fiscal year always ends on the same weekday, so it has 52 or 53 whole weeks.
+ Each quarter has 13 weeks, divided into periods of 4, 4, and 5 weeks. In a 53-week year, the extra week goes into the last period.
+ </ul>
+ Other kinds can be defined by subclassing.
+
+ <P>Days are identified by their Modified Julian Day number, as returned by {@link DateTime#getModifiedJulianDayNumber()}.
+ Each method taking such a day number has a twin taking a <tt>DateTime</tt>. The methods taking a day number create no objects,
+ and take the same small time for any day, so they are suitable for use on each row of a large data set.
+
+ <P>Example :
+ <PRE>
+  FiscalCalendar fiscal = FiscalCalendar.forFirstMonth(4, false); //April 1 to March 31, named for the starting year
+  int year = fiscal.fiscalYear(dateTime);
+  int quarter = fiscal.quarter(dateTime);
+ </PRE>
+
+ <P>Passing a day outside the years 1..9999 causes an <tt>IllegalArgumentException</tt>.
+ <P>The calendars returned by the factory methods are immutable, and may be shared between threads.
+*/
+public abstract class FiscalCalendar {
+
+  /**
+   Return a fiscal calendar whose years start on the first day of the given month, and whose periods are calendar months.
+   @param aFirstMonth the first month of the fiscal year, 1..12.
+   @param aNamedForEndYear if <tt>true</tt>, each fiscal year is named for the calendar year in which it ends (for example,
+   October 2014 to September 2015 is fiscal year 2015); otherwise, it's named for the calendar year in which it starts.
+   Has no effect when <tt>aFirstMonth</tt> is 1.
+  */
+  public static FiscalCalendar forFirstMonth(int aFirstMonth, boolean aNamedForEndYear){
+    return new ByMonth(aFirstMonth, aNamedForEndYear);
+  }
+
+  /**
+   Return a 4-4-5 fiscal calendar, whose years end on a given weekday near the end of a given month.
+   Each fiscal year is named for the calendar year in which its last month falls.
+   @param aLastMonth the month 1..12 in which each fiscal year ends.
+   @param aLastWeekDay the weekday on which each fiscal year ends, 1..7 for Sunday..Saturday, as in {@link DateTime#getWeekDay()}.
+   @param aNearestEndOfMonth if <tt>true</tt>, the year ends on the given weekday nearest to the last day of <tt>aLastMonth</tt>,
+   which may fall in the following month; otherwise, it ends on the last such weekday in <tt>aLastMonth</tt>.
+  */
+  public static FiscalCalendar forFourFourFive(int aLastMonth, int aLastWeekDay, boolean aNearestEndOfMonth){
+    return new FourFourFive(aLastMonth, aLastWeekDay, aNearestEndOfMonth);
+  }
+
+  /** Return the fiscal year holding the given Modified Julian Day. */
+  public abstract int fiscalYear(int aModifiedJulianDay);
+
+  /** Return the period 1..12 holding the given Modified Julian Day, within its fiscal year. */
+  public abstract int period(int aModifiedJulianDay);
+
+  /** Return the first day of the given fiscal year, as a Modified Julian Day number. */
+  public abstract int startOfYear(int aFiscalYear);
+
+  /** Return the quarter 1..4 holding the given Modified Julian Day. By default, each quarter has 3 periods. */
+  public int quarter(int aModifiedJulianDay){
+    return (period(aModifiedJulianDay) - 1) / 3 + 1;
+  }
+
+  /** Return the day of the fiscal year, starting at 1. */
+  public int dayOfYear(int aModifiedJulianDay){
+    return aModifiedJulianDay - startOfYear(fiscalYear(aModifiedJulianDay)) + 1;
+  }
+
+  /** Return the week of the fiscal year, starting at 1, with each week starting on the same weekday as the fiscal year. */
+  public int week(int aModifiedJulianDay){
+    return (dayOfYear(aModifiedJulianDay) - 1) / 7 + 1;
+  }
+
+  /** As {@link #fiscalYear(int)}. Requires year-month-day to be present; if not, a runtime exception is thrown. */
+  public final int fiscalYear(DateTime aDate){
+    return fiscalYear(aDate.getModifiedJulianDayNumber().intValue());
+  }
+
+  /** As {@link #period(int)}. Requires year-month-day to be present; if not, a runtime exception is thrown. */
+  public final int period(DateTime aDate){
+    return period(aDate.getModifiedJulianDayNumber().intValue());
+  }
+
+  /** As {@link #quarter(int)}. Requires year-month-day to be present; if not, a runtime exception is thrown. */
+  public final int quarter(DateTime aDate){
+    return quarter(aDate.getModifiedJulianDayNumber().intValue());
+  }
+
+  /** As {@link #dayOfYear(int)}. Requires year-month-day to be present; if not, a runtime exception is thrown. */
+  public final int dayOfYear(DateTime aDate){
+    return dayOfYear(aDate.getModifiedJulianDayNumber().intValue());
+  }
+
+  /** As {@link #week(int)}. Requires year-month-day to be present; if not, a runtime exception is thrown. */
+  public final int week(DateTime aDate){
+    return week(aDate.getModifiedJulianDayNumber().intValue());
+  }
+
+  // PRIVATE
+
+  private static final int MIN_DAY = DayNumbers.modifiedJulianDay(1, 1, 1);
+  private static final int MAX_DAY = DayNumbers.modifiedJulianDay(9999, 12, 31);
+
+  /** Return the calendar year-month-day of the given day, as in {@link DayNumbers#toYearMonthDay(int)}. */
+  private static int yearMonthDayOf(int aModifiedJulianDay){
+    if(aModifiedJulianDay < MIN_DAY || aModifiedJulianDay > MAX_DAY){
+      throw new IllegalArgumentException("Day " + aModifiedJulianDay + " is outside the years 1..9999.");
+    }
+    return DayNumbers.toYearMonthDay(aModifiedJulianDay);
+  }
+
+  private static void checkRange(String aName, int aValue, int aMin, int aMax){
+    if(aValue < aMin || aValue > aMax){
+      throw new IllegalArgumentException(aName + " must be in the range " + aMin + ".." + aMax + ": " + aValue);
+    }
+  }
+
+  /** Fiscal years starting on the first day of a month, with calendar months as periods. */
+  private static final class ByMonth extends FiscalCalendar {
+    ByMonth(int aFirstMonth, boolean aNamedForEndYear){
+      checkRange("First month", aFirstMonth, 1, 12);
+      fFirstMonth = aFirstMonth;
+      //the fiscal year less the calendar year in which it starts
+      fYearOffset = (aNamedForEndYear && aFirstMonth > 1) ? 1 : 0;
+    }
+    @Override public int fiscalYear(int aModifiedJulianDay){
+      int ymd = yearMonthDayOf(aModifiedJulianDay);
+      int startYear = DayNumbers.yearOf(ymd);
+      if(DayNumbers.monthOf(ymd) < fFirstMonth){
+        --startYear;
+      }
+      return startYear + fYearOffset;
+    }
+    @Override public int period(int aModifiedJulianDay){
+      return DayNumbers.floorMod(DayNumbers.monthOf(yearMonthDayOf(aModifiedJulianDay)) - fFirstMonth, 12) + 1;
+    }
+    @Override public int startOfYear(int aFiscalYear){
+      return DayNumbers.modifiedJulianDay(aFiscalYear - fYearOffset, fFirstMonth, 1);
+    }
+    @Override public String toString(){
+      return "FiscalCalendar first month:" + fFirstMonth + " named for end year:" + (fYearOffset == 1);
+    }
+    private final int fFirstMonth;
+    private final int fYearOffset;
+  }
+
+  /** 52-53 week fiscal years, with quarters of 4, 4, and 5 weeks. */
+  private static final class FourFourFive extends FiscalCalendar {
+    FourFourFive(int aLastMonth, int aLastWeekDay, boolean aNearestEndOfMonth){
+      checkRange("Last month", aLastMonth, 1, 12);
+      checkRange("Last weekday", aLastWeekDay, 1, 7);
+      fDescription = "FiscalCalendar 4-4-5 last month:" + aLastMonth + " last weekday:" + aLastWeekDay + " nearest end of month:" + aNearestEndOfMonth;
+      fYearEnds = new int[10002];
+      for(int year = -1; year < fYearEnds.length - 1; ++year){
+        int lastDayOfMonth = DayNumbers.modifiedJulianDay(year, aLastMonth, DayNumbers.daysInMonth(year, aLastMonth));
+        int daysBack = DayNumbers.floorMod(DayNumbers.weekDay(lastDayOfMonth) - aLastWeekDay, 7);
+        if(aNearestEndOfMonth && daysBack > 3){
+          fYearEnds[year + 1] = lastDayOfMonth + 7 - daysBack;
+        }
+        else {
+          fYearEnds[year + 1] = lastDayOfMonth - daysBack;
+        }
+      }
+    }
+    @Override public int fiscalYear(int aModifiedJulianDay){
+      int result = DayNumbers.yearOf(yearMonthDayOf(aModifiedJulianDay));
+      if(aModifiedJulianDay > yearEnd(result)){
+        ++result;
+      }
+      else if(aModifiedJulianDay <= yearEnd(result - 1)){
+        --result;
+      }
+      return result;
+    }
+    @Override public int period(int aModifiedJulianDay){
+      int week = (aModifiedJulianDay - startOfYear(fiscalYear(aModifiedJulianDay))) / 7; //0..52
+      int quarter = Math.min(week / 13, 3);
+      int weekOfQuarter = week - 13 * quarter; //0..13, with 13 only in the extra week of a long year
+      return 3 * quarter + (weekOfQuarter < 4 ? 1 : weekOfQuarter < 8 ? 2 : 3);
+    }
+    @Override public int startOfYear(int aFiscalYear){
+      checkRange("Fiscal year", aFiscalYear, 0, fYearEnds.length - 2);
+      return yearEnd(aFiscalYear - 1) + 1;
+    }
+    @Override public String toString(){
+      return fDescription;
+    }
+    private final String fDescription;
+    /**
+     The last day of each fiscal year -1..10000, at index year + 1. A year ending near the end of December may end
+     in the first days of the next calendar year, so the first days of year 1 may fall in fiscal year 0, which
+     starts in the calendar year 0.
+    */
+    private final int[] fYearEnds;
+    private int yearEnd(int aFiscalYear){
+      return fYearEnds[aFiscalYear + 1];
+    }
+  }
+}
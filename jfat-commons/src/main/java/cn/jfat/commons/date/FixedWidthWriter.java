@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ Fast path used by {@link DateTimeFormatter} for purely numeric patterns, such as <tt>YYYY-MM-DD hh:mm:ss.fff</tt>.
+
+ <P>Such patterns always produce text of the same length, with each unit at the same position. The literal text
+ is placed into a template once, and each row then only copies the template and writes the digits of each unit
+ into place, using lookup tables.
+
+ <P>Only the tokens <tt>YYYY, YY, MM, DD, hh, hh12, mm, ss</tt> and <tt>f..fffffffff</tt> are fixed-width.
+ The output is identical to that of the general formatting code, but only when {@link #canWrite(DateTimeFields)}
+ returns <tt>true</tt>. Otherwise (a unit is absent, or the year has less than 4 digits), the caller must use the
+ general code.
+
+ <P>This class is immutable.
+*/
+final class FixedWidthWriter {
+
+  /**
+   Return a writer for the given pattern, or <tt>null</tt> if the pattern contains any token that is not fixed-width.
+   @param aTokens the tokens of the pattern, in order; <tt>null</tt> where the pattern has literal text.
+   @param aLiterals the literal text of the pattern, in order; <tt>null</tt> where the pattern has a token.
+  */
+  static FixedWidthWriter forPattern(String[] aTokens, String[] aLiterals){
+    int numFields = 0;
+    int length = 0;
+    for(int idx = 0; idx < aTokens.length; ++idx){
+      if (aTokens[idx] == null){
+        length = length + aLiterals[idx].length();
+      }
+      else {
+        int width = widthOf(aTokens[idx]);
+        if (width == 0){
+          return null;
+        }
+        length = length + width;
+        ++numFields;
+      }
+    }
+    return new FixedWidthWriter(aTokens, aLiterals, numFields, length);
+  }
+
+  /** The number of characters written for every row. */
+  int length(){
+    return fTemplate.length;
+  }
+
+  /** Return <tt>true</tt> only if {@link #write} gives the same output as the general formatting code. */
+  boolean canWrite(DateTimeFields aFields){
+    boolean result = true;
+    if ((fNeeds & NEEDS_YEAR) != 0){
+      result = aFields.Year >= 1000;
+    }
+    if ((fNeeds & NEEDS_MONTH) != 0){
+      result = result && aFields.Month != PackedDateTime.ABSENT;
+    }
+    if ((fNeeds & NEEDS_DAY) != 0){
+      result = result && aFields.Day != PackedDateTime.ABSENT;
+    }
+    if ((fNeeds & NEEDS_HOUR) != 0){
+      result = result && aFields.Hour != PackedDateTime.ABSENT;
+    }
+    if ((fNeeds & NEEDS_MINUTE) != 0){
+      result = result && aFields.Minute != PackedDateTime.ABSENT;
+    }
+    if ((fNeeds & NEEDS_SECOND) != 0){
+      result = result && aFields.Second != PackedDateTime.ABSENT;
+    }
+    return result;
+  }
+
+  /**
+   Write exactly {@link #length()} characters into the given buffer, starting at the given position.
+   Return the position just after the last character written.
+   <P>Call only if {@link #canWrite(DateTimeFields)} returns <tt>true</tt>.
+  */
+  int write(DateTimeFields aFields, char[] aBuffer, int aPos){
+    System.arraycopy(fTemplate, 0, aBuffer, aPos, fTemplate.length);
+    for(int idx = 0; idx < fFields.length; ++idx){
+      int pos = aPos + fPositions[idx];
+      switch(fFields[idx]){
+        case YEAR : Digits.writeFourDigits(aBuffer, pos, aFields.Year); break;
+        case YEAR_NO_CENTURY : Digits.writeTwoDigits(aBuffer, pos, aFields.Year % 100); break;
+        case MONTH : Digits.writeTwoDigits(aBuffer, pos, aFields.Month); break;
+        case DAY : Digits.writeTwoDigits(aBuffer, pos, aFields.Day); break;
+        case HOUR : Digits.writeTwoDigits(aBuffer, pos, aFields.Hour); break;
+        case HOUR_12 : Digits.writeTwoDigits(aBuffer, pos, twelveHourStyle(aFields.Hour)); break;
+        case MINUTE : Digits.writeTwoDigits(aBuffer, pos, aFields.Minute); break;
+        case SECOND : Digits.writeTwoDigits(aBuffer, pos, aFields.Second); break;
+        default :
+          //absent nanoseconds are shown as zeroes, as in the general code
+          int nanos = aFields.Nanosecond == PackedDateTime.ABSENT ? 0 : aFields.Nanosecond;
+          Digits.writeFraction(aBuffer, pos, nanos, fFields[idx] - FRACTION);
+      }
+    }
+    return aPos + fTemplate.length;
+  }
+
+  // PRIVATE
+
+  /** Literal text, with blanks where the units go. */
+  private final char[] fTemplate;
+  /** The kind of each unit in the pattern, in order. */
+  private final int[] fFields;
+  /** The position in fTemplate of each item in fFields. */
+  private final int[] fPositions;
+  /** Bit mask of the units that must be present. */
+  private final int fNeeds;
+
+  private static final int YEAR = 1;
+  private static final int YEAR_NO_CENTURY = 2;
+  private static final int MONTH = 3;
+  private static final int DAY = 4;
+  private static final int HOUR = 5;
+  private static final int HOUR_12 = 6;
+  private static final int MINUTE = 7;
+  private static final int SECOND = 8;
+  /** FRACTION + N means the first N digits of the nanoseconds. */
+  private static final int FRACTION = 100;
+
+  private static final int NEEDS_YEAR = 1;
+  private static final int NEEDS_MONTH = 2;
+  private static final int NEEDS_DAY = 4;
+  private static final int NEEDS_HOUR = 8;
+  private static final int NEEDS_MINUTE = 16;
+  private static final int NEEDS_SECOND = 32;
+
+  /** Maps each fixed-width token, except for fractions, to its kind of unit. */
+  private static final Map<String, Integer> KINDS = new LinkedHashMap<String, Integer>();
+  static {
+    KINDS.put("YYYY", YEAR);
+    KINDS.put("YY", YEAR_NO_CENTURY);
+    KINDS.put("MM", MONTH);
+    KINDS.put("DD", DAY);
+    KINDS.put("hh", HOUR);
+    KINDS.put("hh12", HOUR_12);
+    KINDS.put("mm", MINUTE);
+    KINDS.put("ss", SECOND);
+  }
+
+  private FixedWidthWriter(String[] aTokens, String[] aLiterals, int aNumFields, int aLength){
+    fTemplate = new char[aLength];
+    fFields = new int[aNumFields];
+    fPositions = new int[aNumFields];
+    int needs = 0;
+    int pos = 0;
+    int field = 0;
+    for(int idx = 0; idx < aTokens.length; ++idx){
+      if (aTokens[idx] == null){
+        aLiterals[idx].getChars(0, aLiterals[idx].length(), fTemplate, pos);
+        pos = pos + aLiterals[idx].length();
+      }
+      else {
+        fFields[field] = kindOf(aTokens[idx]);
+        fPositions[field] = pos;
+        needs = needs | needsFor(fFields[field]);
+        pos = pos + widthOf(aTokens[idx]);
+        ++field;
+      }
+    }
+    fNeeds = needs;
+  }
+
+  /** Return 0 if the token is not fixed-width. */
+  private static int widthOf(String aToken){
+    int result = 0;
+    Integer kind = KINDS.get(aToken);
+    if (kind != null){
+      result = kind.intValue() == YEAR ? 4 : 2;
+    }
+    else if (isFraction(aToken)){
+      result = aToken.length();
+    }
+    return result;
+  }
+
+  private static int kindOf(String aToken){
+    Integer kind = KINDS.get(aToken);
+    return kind != null ? kind.intValue() : FRACTION + aToken.length();
+  }
+
+  private static boolean isFraction(String aToken){
+    boolean result = aToken.length() >= 1 && aToken.length() <= 9;
+    for(int idx = 0; result && idx < aToken.length(); ++idx){
+      result = aToken.charAt(idx) == 'f';
+    }
+    return result;
+  }
+
+  private static int needsFor(int aKind){
+    int result = 0;
+    switch(aKind){
+      case YEAR : case YEAR_NO_CENTURY : result = NEEDS_YEAR; break;
+      case MONTH : result = NEEDS_MONTH; break;
+      case DAY : result = NEEDS_DAY; break;
+      case HOUR : case HOUR_12 : result = NEEDS_HOUR; break;
+      case MINUTE : result = NEEDS_MINUTE; break;
+      case SECOND : result = NEEDS_SECOND; break;
+      default : result = 0; //nanoseconds may be absent
+    }
+    return result;
+  }
+
+  private static int twelveHourStyle(int aHour){
+    int result = aHour;
+    if (aHour == 0){
+      result = 12;
+    }
+    else if (aHour > 12){
+      result = aHour - 12;
+    }
+    return result;
+  }
+}
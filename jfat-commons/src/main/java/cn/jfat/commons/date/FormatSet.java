@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Locale;
+
+/**
+ Formats the same {@link DateTime} with several patterns at once.
+
+ <P>Useful when each date-time is output in more than one form; for example, as a partition key, an hourly bucket,
+ and a display value. The patterns are interpreted only once, when this object is built. For each date-time,
+ its units are read only once, and the weekday is calculated at most once, no matter how many patterns use them.
+
+ <P>Example :
+ <PRE>
+  FormatSet formats = new FormatSet("YYYY-MM-DD", "YYYY-MM-DD hh", "YYYY-MM-DD hh:mm:ss.fff");
+  StringBuilder day = new StringBuilder();
+  StringBuilder hour = new StringBuilder();
+  StringBuilder full = new StringBuilder();
+  for(DateTime dateTime : dateTimes){
+    day.setLength(0);
+    hour.setLength(0);
+    full.setLength(0);
+    formats.format(dateTime, day, hour, full);
+    ...
+  }
+ </PRE>
+
+ <P>This class is immutable, and may be shared between threads.
+*/
+public final class FormatSet {
+
+  /**
+   Constructor for patterns using only numbers, and no localizable text.
+   @param aFormats each uses the <a href="DateTime.html#FormattingLanguage">formatting mini-language</a>; at least one is required.
+  */
+  public FormatSet(String... aFormats){
+    this((Locale)null, aFormats);
+  }
+
+  /**
+   Constructor for patterns using numbers and/or localizable text.
+   @param aLocale used to generate text for Month, Weekday and AM/PM indicator; required only by patterns which return
+   localized text, instead of numeric forms.
+   @param aFormats each uses the <a href="DateTime.html#FormattingLanguage">formatting mini-language</a>; at least one is required.
+  */
+  public FormatSet(Locale aLocale, String... aFormats){
+    this(formattersFor(aLocale, aFormats));
+  }
+
+  /**
+   Constructor taking existing formatters, which may use a {@link CustomLocalization}.
+   @param aFormatters at least one is required.
+  */
+  public FormatSet(DateTimeFormatter... aFormatters){
+    if(aFormatters.length == 0){
+      throw new IllegalArgumentException("FormatSet needs at least one format.");
+    }
+    fFormatters = aFormatters.clone();
+    int scratchLength = 0;
+    for(DateTimeFormatter formatter : fFormatters){
+      scratchLength = Math.max(scratchLength, formatter.estimatedLength());
+    }
+    fScratchLength = scratchLength;
+  }
+
+  /** The number of patterns. */
+  public int size(){
+    return fFormatters.length;
+  }
+
+  /** Return the text for each pattern, in the order passed to the constructor. */
+  public String[] format(DateTime aDateTime){
+    DateTimeFields fields = new DateTimeFields();
+    fields.load(aDateTime);
+    String[] result = new String[fFormatters.length];
+    StringBuilder text = new StringBuilder();
+    char[] scratch = newScratch();
+    for(int idx = 0; idx < fFormatters.length; ++idx){
+      text.setLength(0);
+      fFormatters[idx].render(fields, text, scratch);
+      result[idx] = text.toString();
+    }
+    return result;
+  }
+
+  /**
+   Append the text for each pattern to the corresponding builder.
+   @param aOutputs one per pattern, in the order passed to the constructor. The same builder may be passed more than once,
+   in which case the texts follow each other, with no separator.
+  */
+  public void format(DateTime aDateTime, StringBuilder... aOutputs){
+    checkNumOutputs(aOutputs.length);
+    DateTimeFields fields = new DateTimeFields();
+    fields.load(aDateTime);
+    char[] scratch = newScratch();
+    for(int idx = 0; idx < fFormatters.length; ++idx){
+      fFormatters[idx].render(fields, aOutputs[idx], scratch);
+    }
+  }
+
+  /**
+   Write the text for all patterns into a single buffer, one after the other, with no separator.
+   Return the position just after the last character written.
+
+   @param aBuffer must have room for all of the text.
+   @param aPos the position of the first character to be written.
+   @param aEnds receives the position just after the text of each pattern; its length must be at least {@link #size()}.
+   The text for pattern <tt>i</tt> starts at <tt>aEnds[i-1]</tt> (or <tt>aPos</tt>, for the first pattern).
+   @throws IndexOutOfBoundsException if the buffer is too small.
+  */
+  public int format(DateTime aDateTime, char[] aBuffer, int aPos, int[] aEnds){
+    if(aEnds.length < fFormatters.length){
+      throw new IllegalArgumentException("Array of ends has length " + aEnds.length + ", but there are " + fFormatters.length + " formats.");
+    }
+    DateTimeFields fields = new DateTimeFields();
+    fields.load(aDateTime);
+    int pos = aPos;
+    for(int idx = 0; idx < fFormatters.length; ++idx){
+      pos = fFormatters[idx].render(fields, aBuffer, pos);
+      aEnds[idx] = pos;
+    }
+    return pos;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    StringBuilder result = new StringBuilder("FormatSet");
+    for(DateTimeFormatter formatter : fFormatters){
+      result.append(' ').append(formatter);
+    }
+    return result.toString();
+  }
+
+  // PRIVATE
+  private final DateTimeFormatter[] fFormatters;
+  /** Enough working space for any of the formatters. */
+  private final int fScratchLength;
+
+  private static DateTimeFormatter[] formattersFor(Locale aLocale, String... aFormats){
+    DateTimeFormatter[] result = new DateTimeFormatter[aFormats.length];
+    for(int idx = 0; idx < aFormats.length; ++idx){
+      result[idx] = new DateTimeFormatter(aFormats[idx], aLocale);
+    }
+    return result;
+  }
+
+  /** One per call, shared by all of the patterns. */
+  private char[] newScratch(){
+    return new char[fScratchLength];
+  }
+
+  private void checkNumOutputs(int aNumOutputs){
+    if(aNumOutputs != fFormatters.length){
+      throw new IllegalArgumentException("Expected one output per format, " + fFormatters.length + ", but found " + aNumOutputs);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+/**
+ The text of many formatted date-times, held in a single <tt>char</tt> array.
+ Returned by {@link BulkFormatter}.
+
+ <P>The text for row <tt>i</tt> occupies the range <tt>getStart(i)</tt> (inclusive) to <tt>getEnd(i)</tt> (exclusive)
+ of {@link #getChars()}. Rows follow each other with no separator, so the whole column can be written out
+ with a single call, or row by row without creating any <tt>String</tt> objects :
+ <PRE>
+  FormattedColumn column = formatter.format(dateTimes);
+  char[] chars = column.getChars();
+  for(int idx = 0; idx &lt; column.size(); ++idx){
+    writer.write(chars, column.getStart(idx), column.getLength(idx));
+    writer.write(',');
+  }
+ </PRE>
+*/
+public final class FormattedColumn {
+
+  /** The number of rows. */
+  public int size(){
+    return fOffsets.length - 1;
+  }
+
+  /** The index in {@link #getChars()} of the first character of the given row. */
+  public int getStart(int aRow){
+    return fOffsets[aRow];
+  }
+
+  /** The index in {@link #getChars()} just after the last character of the given row. */
+  public int getEnd(int aRow){
+    return fOffsets[aRow + 1];
+  }
+
+  /** The number of characters in the given row. */
+  public int getLength(int aRow){
+    return fOffsets[aRow + 1] - fOffsets[aRow];
+  }
+
+  /** Return the text of the given row, as a new <tt>String</tt>. */
+  public String get(int aRow){
+    return new String(fChars, getStart(aRow), getLength(aRow));
+  }
+
+  /**
+   Return the text of all rows.
+   <P>For speed, this is the array held by this object, not a copy; callers must not change it.
+  */
+  public char[] getChars(){
+    return fChars;
+  }
+
+  /**
+   Return the offsets of all rows, of length <tt>size() + 1</tt>. The last item is the total number of characters.
+   <P>For speed, this is the array held by this object, not a copy; callers must not change it.
+  */
+  public int[] getOffsets(){
+    return fOffsets;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "FormattedColumn rows:" + size() + " chars:" + fChars.length;
+  }
+
+  // PACKAGE-PRIVATE
+
+  FormattedColumn(char[] aChars, int[] aOffsets){
+    fChars = aChars;
+    fOffsets = aOffsets;
+  }
+
+  // PRIVATE
+  private final char[] fChars;
+  private final int[] fOffsets;
+}
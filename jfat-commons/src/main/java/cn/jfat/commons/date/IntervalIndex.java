@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ Values indexed by intervals of time, for finding the intervals that overlap or contain a given date-time or range.
+
+ <P>Each interval runs from its start (inclusive) to its end (exclusive), as <tt>[start, end)</tt>. The end must come after the start.
+
+ <P>The index is built in one step, from all of its intervals. The intervals are sorted by start, and held in their
+ {@link PackedDateTime} form, in primitive arrays. Over those arrays lies an implicit balanced search tree : the root is the
+ middle item, the root of the left subtree is the middle of the left half, and so on. Each node also records the latest end
+ found in its subtree, so that whole subtrees holding nothing of interest are skipped. The tree takes no extra objects.
+
+ <P>Queries and their cost, for <tt>n</tt> intervals and <tt>k</tt> results :
+ <ul>
+ <li>{@link #overlapping(DateTime, DateTime)} : <tt>O(log n + k)</tt>
+ <li>{@link #containing(DateTime)} (a <em>stabbing</em> query) : <tt>O(log n + k)</tt>
+ <li>{@link #containing(DateTime, DateTime)} : <tt>O(log n + k)</tt>
+ <li>{@link #within(DateTime, DateTime)} : <tt>O(log n + m)</tt>, where <tt>m</tt> is the number of intervals starting in the range
+ </ul>
+ (For the tree queries, the bound is the usual one for interval trees : in the worst case, with many long intervals, more
+ nodes may be visited.) Results are returned in order of start; intervals with the same start are in the order in which they were
+ passed to the constructor.
+
+ <P>This class is immutable. For data which changes, build a new index from time to time, and publish it to readers through a
+ <tt>volatile</tt> field or an <tt>AtomicReference</tt>. Readers then need no locks at all, and each sees a consistent snapshot.
+
+ <P>Example :
+ <PRE>
+  IntervalIndex&lt;Booking&gt; bookings = new IntervalIndex&lt;Booking&gt;(starts, ends, items);
+  List&lt;Booking&gt; clashes = bookings.overlapping(requestedStart, requestedEnd);
+ </PRE>
+*/
+public final class IntervalIndex<V> {
+
+  /**
+   Constructor.
+   @param aStarts the start of each interval, inclusive; none may be <tt>null</tt>.
+   @param aEnds the end of each interval, exclusive; none may be <tt>null</tt>, and each must come after the corresponding start.
+   @param aValues the value for each interval; may include <tt>null</tt>. All three lists must have the same size.
+  */
+  public IntervalIndex(List<DateTime> aStarts, List<DateTime> aEnds, List<? extends V> aValues){
+    if(aStarts.size() != aEnds.size() || aStarts.size() != aValues.size()){
+      throw new IllegalArgumentException(
+        "Lists have different sizes. Starts: " + aStarts.size() + ", Ends: " + aEnds.size() + ", Values: " + aValues.size()
+      );
+    }
+    int size = aStarts.size();
+    long[] startPacked = new long[size];
+    int[] startNanos = new int[size];
+    long[] endPacked = new long[size];
+    int[] endNanos = new int[size];
+    Iterator<DateTime> ends = aEnds.iterator();
+    int idx = 0;
+    for(DateTime start : aStarts){
+      DateTime end = ends.next();
+      startPacked[idx] = PackedDateTime.pack(start);
+      startNanos[idx] = PackedDateTime.nanosOf(start);
+      endPacked[idx] = PackedDateTime.pack(end);
+      endNanos[idx] = PackedDateTime.nanosOf(end);
+      if(PackedDateTime.compare(startPacked[idx], startNanos[idx], endPacked[idx], endNanos[idx]) >= 0){
+        throw new IllegalArgumentException("Interval " + idx + " does not end after it starts: " + start + ", " + end);
+      }
+      ++idx;
+    }
+    int[] order = DateTimeSorts.sortWithOrder(startPacked, startNanos);
+    Object[] values = aValues.toArray();
+    fStartPacked = startPacked;
+    fStartNanos = startNanos;
+    fEndPacked = new long[size];
+    fEndNanos = new int[size];
+    fValues = new Object[size];
+    for(idx = 0; idx < size; ++idx){
+      fEndPacked[idx] = endPacked[order[idx]];
+      fEndNanos[idx] = endNanos[order[idx]];
+      fValues[idx] = values[order[idx]];
+    }
+    fMaxEndPacked = new long[size];
+    fMaxEndNanos = new int[size];
+    buildMaxEnds(0, size);
+  }
+
+  /** The number of intervals. */
+  public int size(){
+    return fValues.length;
+  }
+
+  /** Return the start of the interval at the given index, 0..size()-1, in order of start. */
+  public DateTime startAt(int aIndex){
+    checkIndex(aIndex);
+    return PackedDateTime.toDateTime(fStartPacked[aIndex], fStartNanos[aIndex]);
+  }
+
+  /** Return the end of the interval at the given index, 0..size()-1, in order of start. */
+  public DateTime endAt(int aIndex){
+    checkIndex(aIndex);
+    return PackedDateTime.toDateTime(fEndPacked[aIndex], fEndNanos[aIndex]);
+  }
+
+  /** Return the value of the interval at the given index, 0..size()-1, in order of start. */
+  @SuppressWarnings("unchecked")
+  public V valueAt(int aIndex){
+    checkIndex(aIndex);
+    return (V)fValues[aIndex];
+  }
+
+  /** Return the values of the intervals sharing at least some time with <tt>[aFrom, aTo)</tt>. */
+  public List<V> overlapping(DateTime aFrom, DateTime aTo){
+    List<V> result = new ArrayList<V>();
+    search(0, size(), new Query(aTo, false, aFrom, false), result);
+    return result;
+  }
+
+  /** Return the values of the intervals containing the given date-time. */
+  public List<V> containing(DateTime aDateTime){
+    List<V> result = new ArrayList<V>();
+    search(0, size(), new Query(aDateTime, true, aDateTime, false), result);
+    return result;
+  }
+
+  /** Return the values of the intervals containing all of <tt>[aFrom, aTo)</tt>. */
+  public List<V> containing(DateTime aFrom, DateTime aTo){
+    List<V> result = new ArrayList<V>();
+    search(0, size(), new Query(aFrom, true, aTo, true), result);
+    return result;
+  }
+
+  /** Return the values of the intervals lying entirely within <tt>[aFrom, aTo)</tt>. */
+  public List<V> within(DateTime aFrom, DateTime aTo){
+    long fromPacked = PackedDateTime.pack(aFrom);
+    int fromNanos = PackedDateTime.nanosOf(aFrom);
+    long toPacked = PackedDateTime.pack(aTo);
+    int toNanos = PackedDateTime.nanosOf(aTo);
+    List<V> result = new ArrayList<V>();
+    //the first interval starting at or after aFrom
+    int low = 0;
+    int high = size();
+    while(low < high){
+      int middle = (low + high) >>> 1;
+      if(PackedDateTime.compare(fStartPacked[middle], fStartNanos[middle], fromPacked, fromNanos) < 0){
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    //an interval ending by aTo must also start before it
+    for(int idx = low; idx < size() && PackedDateTime.compare(fStartPacked[idx], fStartNanos[idx], toPacked, toNanos) < 0; ++idx){
+      if(PackedDateTime.compare(fEndPacked[idx], fEndNanos[idx], toPacked, toNanos) <= 0){
+        result.add(valueAt(idx));
+      }
+    }
+    return result;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "IntervalIndex size:" + size();
+  }
+
+  // PRIVATE
+
+  /** Sorted by start. */
+  private final long[] fStartPacked;
+  private final int[] fStartNanos;
+  private final long[] fEndPacked;
+  private final int[] fEndNanos;
+  private final Object[] fValues;
+  /** For each node of the implicit tree, the latest end in its subtree. */
+  private final long[] fMaxEndPacked;
+  private final int[] fMaxEndNanos;
+
+  /**
+   The intervals which start before (or at) a limit, and end after (or at) another limit.
+   Each query on the tree is of this form.
+  */
+  private static final class Query {
+    Query(DateTime aStartLimit, boolean aStartInclusive, DateTime aEndLimit, boolean aEndInclusive){
+      StartPacked = PackedDateTime.pack(aStartLimit);
+      StartNanos = PackedDateTime.nanosOf(aStartLimit);
+      StartInclusive = aStartInclusive;
+      EndPacked = PackedDateTime.pack(aEndLimit);
+      EndNanos = PackedDateTime.nanosOf(aEndLimit);
+      EndInclusive = aEndInclusive;
+    }
+    final long StartPacked;
+    final int StartNanos;
+    final boolean StartInclusive;
+    final long EndPacked;
+    final int EndNanos;
+    final boolean EndInclusive;
+
+    boolean startMatches(long aPacked, int aNanos){
+      int comparison = PackedDateTime.compare(aPacked, aNanos, StartPacked, StartNanos);
+      return comparison < 0 || (StartInclusive && comparison == 0);
+    }
+    boolean endMatches(long aPacked, int aNanos){
+      int comparison = PackedDateTime.compare(aPacked, aNanos, EndPacked, EndNanos);
+      return comparison > 0 || (EndInclusive && comparison == 0);
+    }
+  }
+
+  /**
+   The node for the items <tt>aLow..aHigh-1</tt> is the middle item; its subtrees are the items on either side.
+   Record the latest end of each node, and return the node, or -1 if there are no items.
+  */
+  private int buildMaxEnds(int aLow, int aHigh){
+    if(aLow >= aHigh){
+      return -1;
+    }
+    int node = (aLow + aHigh) >>> 1;
+    fMaxEndPacked[node] = fEndPacked[node];
+    fMaxEndNanos[node] = fEndNanos[node];
+    for(int child : new int[]{buildMaxEnds(aLow, node), buildMaxEnds(node + 1, aHigh)}){
+      if(child != -1 && PackedDateTime.compare(fMaxEndPacked[child], fMaxEndNanos[child], fMaxEndPacked[node], fMaxEndNanos[node]) > 0){
+        fMaxEndPacked[node] = fMaxEndPacked[child];
+        fMaxEndNanos[node] = fMaxEndNanos[child];
+      }
+    }
+    return node;
+  }
+
+  /** Add the values of matching intervals among items <tt>aLow..aHigh-1</tt>, in order. */
+  private void search(int aLow, int aHigh, Query aQuery, List<V> aResult){
+    if(aLow >= aHigh){
+      return;
+    }
+    int node = (aLow + aHigh) >>> 1;
+    if(! aQuery.endMatches(fMaxEndPacked[node], fMaxEndNanos[node])){
+      return; //no interval in this subtree ends late enough
+    }
+    search(aLow, node, aQuery, aResult);
+    if(! aQuery.startMatches(fStartPacked[node], fStartNanos[node])){
+      return; //this interval, and all to its right, start too late
+    }
+    if(aQuery.endMatches(fEndPacked[node], fEndNanos[node])){
+      aResult.add(valueAt(node));
+    }
+    search(node + 1, aHigh, aQuery, aResult);
+  }
+
+  private void checkIndex(int aIndex){
+    if(aIndex < 0 || aIndex >= size()){
+      throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + size());
+    }
+  }
+}
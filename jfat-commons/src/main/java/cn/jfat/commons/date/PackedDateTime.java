@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+/**
+ Primitive representation of a {@link DateTime}, for use in columns and other bulk structures.
+
+ <P>A <tt>DateTime</tt> is represented by 2 primitives :
+ <ul>
+ <li>a <tt>long</tt> holding year, month, day, hour, minute and second, each in its own bit field.
+ An absent field is stored as 0; present fields are stored such that 0 is never used.
+ <li>an <tt>int</tt> holding the nanoseconds, 0..999,999,999, or {@link #ABSENT} if the nanoseconds are absent.
+ </ul>
+
+ <P>All seven units, and their presence or absence, are retained, so no information is lost.
+ (A single <tt>long</tt> cannot hold every state of a <tt>DateTime</tt> : the full range of years
+ at nanosecond precision, together with absent units, needs about 69 bits.)
+
+ <P>Both primitives are <em>order-preserving</em>. Comparing the <tt>long</tt>s, and then the <tt>int</tt>s, as signed
+ values gives the same result as {@link DateTime#compareTo(DateTime)}, including its policy of placing absent units first.
+ Two <tt>DateTime</tt>s are equal if and only if both of their primitives are equal.
+
+ <P>Example :
+ <PRE>
+  long packed = PackedDateTime.pack(dt);
+  int nanos = PackedDateTime.nanosOf(dt);
+  ...
+  DateTime same = PackedDateTime.toDateTime(packed, nanos);
+ </PRE>
+*/
+public final class PackedDateTime {
+
+  /** Value returned by the field accessors of this class when a unit is absent. */
+  public static final int ABSENT = -1;
+
+  /**
+   Return the packed year-month-day-hour-minute-second of the given <tt>DateTime</tt>.
+   <P>The nanoseconds are returned separately, by {@link #nanosOf(DateTime)}.
+   <P>If the <tt>DateTime</tt> has not been parsed, it is parsed by this method; if it cannot be parsed,
+   a <tt>RuntimeException</tt> is thrown.
+  */
+  public static long pack(DateTime aDateTime){
+    return pack(
+      valueOf(aDateTime.getYear()), valueOf(aDateTime.getMonth()), valueOf(aDateTime.getDay()),
+      valueOf(aDateTime.getHour()), valueOf(aDateTime.getMinute()), valueOf(aDateTime.getSecond())
+    );
+  }
+
+  /**
+   Return the nanoseconds of the given <tt>DateTime</tt>, or {@link #ABSENT}.
+   See {@link #pack(DateTime)}.
+  */
+  public static int nanosOf(DateTime aDateTime){
+    return valueOf(aDateTime.getNanoseconds());
+  }
+
+  /**
+   Pack the given units.
+
+   <P>Each item takes {@link #ABSENT} if the corresponding unit is absent. The ranges of
+   the items are the same as those of {@link DateTime#DateTime(Integer, Integer, Integer, Integer, Integer, Integer, Integer)};
+   as with that constructor, a <tt>RuntimeException</tt> is thrown if an item is out of range.
+  */
+  public static long pack(int aYear, int aMonth, int aDay, int aHour, int aMinute, int aSecond){
+    checkRange(aYear, 1, 9999, "Year");
+    checkRange(aMonth, 1, 12, "Month");
+    checkRange(aDay, 1, 31, "Day");
+    checkRange(aHour, 0, 23, "Hour");
+    checkRange(aMinute, 0, 59, "Minute");
+    checkRange(aSecond, 0, 59, "Second");
+    if (aYear != ABSENT && aMonth != ABSENT && aDay != ABSENT && aDay > DateTime.getNumDaysInMonth(aYear, aMonth)) {
+      throw new DateTime.ItemOutOfRange("The day-of-the-month value '" + aDay + "' exceeds the number of days in the month: " + DateTime.getNumDaysInMonth(aYear, aMonth));
+    }
+    return packUnchecked(aYear, aMonth, aDay, aHour, aMinute, aSecond);
+  }
+
+  /** Return a new <tt>DateTime</tt> having the units held by the given primitives. */
+  public static DateTime toDateTime(long aPacked, int aNanos){
+    return new DateTime(
+      boxed(year(aPacked)), boxed(month(aPacked)), boxed(day(aPacked)),
+      boxed(hour(aPacked)), boxed(minute(aPacked)), boxed(second(aPacked)), boxed(aNanos)
+    );
+  }
+
+  /** Return the year 1..9999, or {@link #ABSENT}. */
+  public static int year(long aPacked){
+    return (int)(aPacked >>> YEAR_SHIFT & YEAR_MASK) - 1;
+  }
+
+  /** Return the month 1..12, or {@link #ABSENT}. */
+  public static int month(long aPacked){
+    return zeroIsAbsent((int)(aPacked >>> MONTH_SHIFT & MONTH_MASK));
+  }
+
+  /** Return the day of the month 1..31, or {@link #ABSENT}. */
+  public static int day(long aPacked){
+    return zeroIsAbsent((int)(aPacked >>> DAY_SHIFT & DAY_MASK));
+  }
+
+  /** Return the hour 0..23, or {@link #ABSENT}. */
+  public static int hour(long aPacked){
+    return (int)(aPacked >>> HOUR_SHIFT & HOUR_MASK) - 1;
+  }
+
+  /** Return the minute 0..59, or {@link #ABSENT}. */
+  public static int minute(long aPacked){
+    return (int)(aPacked >>> MINUTE_SHIFT & MINUTE_MASK) - 1;
+  }
+
+  /** Return the second 0..59, or {@link #ABSENT}. */
+  public static int second(long aPacked){
+    return (int)(aPacked & SECOND_MASK) - 1;
+  }
+
+  /** Return <tt>true</tt> only if year, month and day are all present. */
+  public static boolean hasYearMonthDay(long aPacked){
+    return (aPacked >>> YEAR_SHIFT) != 0 && month(aPacked) != ABSENT && day(aPacked) != ABSENT;
+  }
+
+  /**
+   Compare two packed values, in the same manner as {@link DateTime#compareTo(DateTime)}.
+   @return negative, zero or positive, as the first item is less than, equal to, or greater than the second.
+  */
+  public static int compare(long aPacked, int aNanos, long aThatPacked, int aThatNanos){
+    int result = 0;
+    if (aPacked != aThatPacked) {
+      result = aPacked < aThatPacked ? -1 : 1;
+    }
+    else if (aNanos != aThatNanos){
+      result = aNanos < aThatNanos ? -1 : 1;
+    }
+    return result;
+  }
+
+  /**
+   Return the ISO-8601 week-based year, as in {@link DateTime#getIsoWeekYear()}. No objects are created.
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+  */
+  public static int isoWeekYear(long aPacked){
+    return DayNumbers.isoWeekYear(checkedDayNumber(aPacked));
+  }
+
+  /**
+   Return the ISO-8601 week 1..53, as in {@link DateTime#getIsoWeek()}. No objects are created.
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown.
+  */
+  public static int isoWeek(long aPacked){
+    return DayNumbers.isoWeek(checkedDayNumber(aPacked));
+  }
+
+  /**
+   Return the index of the fixed-size time bucket holding the given date-time, as in 
+   {@link DateTime#bucketIndex(long, java.util.concurrent.TimeUnit, DateTime)}.
+   No objects are created.
+   <P>Requires year-month-day to be present in both the date-time and the origin; if not, a runtime exception is thrown. 
+   Absent time units are taken as 0.
+   @param aBucketNanos size of each bucket in nanoseconds, 1 or more.
+  */
+  public static long bucketIndex(long aPacked, int aNanos, long aBucketNanos, long aOriginPacked, int aOriginNanos){
+    if (! hasYearMonthDay(aPacked) || ! hasYearMonthDay(aOriginPacked)){
+      throw new DateTime.MissingItem("Packed date-time does not include year/month/day.");
+    }
+    if (aBucketNanos < 1){
+      throw new IllegalArgumentException("Bucket size must be 1 or more: " + aBucketNanos);
+    }
+    return Buckets.index(
+      dayNumber(aPacked) - dayNumber(aOriginPacked), 
+      nanosOfDay(aPacked, aNanos) - nanosOfDay(aOriginPacked, aOriginNanos), 
+      aBucketNanos
+    );
+  }
+
+  // PACKAGE-PRIVATE
+
+  /** As {@link #pack(int, int, int, int, int, int)}, but without any validation. */
+  static long packUnchecked(int aYear, int aMonth, int aDay, int aHour, int aMinute, int aSecond){
+    return
+      (long)(aYear + 1) << YEAR_SHIFT |
+      (long)(aMonth == ABSENT ? 0 : aMonth) << MONTH_SHIFT |
+      (long)(aDay == ABSENT ? 0 : aDay) << DAY_SHIFT |
+      (long)(aHour + 1) << HOUR_SHIFT |
+      (long)(aMinute + 1) << MINUTE_SHIFT |
+      (long)(aSecond + 1)
+    ;
+  }
+
+  /** The Modified Julian Day number. Requires year-month-day. */
+  static int dayNumber(long aPacked){
+    return DayNumbers.modifiedJulianDay(year(aPacked), month(aPacked), day(aPacked));
+  }
+
+  /** As dayNumber, but throws an exception if year-month-day is not present. */
+  static int checkedDayNumber(long aPacked){
+    if (! hasYearMonthDay(aPacked)){
+      throw new DateTime.MissingItem("Packed date-time does not include year/month/day.");
+    }
+    return dayNumber(aPacked);
+  }
+
+  /** Absent units are taken as 0. */
+  static long nanosOfDay(long aPacked, int aNanos){
+    return Buckets.nanosOfDay(hour(aPacked), minute(aPacked), second(aPacked), aNanos);
+  }
+
+  /** Return the unboxed value of the given unit, or {@link #ABSENT}. */
+  static int valueOf(Integer aUnit){
+    return aUnit == null ? ABSENT : aUnit.intValue();
+  }
+
+  /** Return the boxed value of the given unit, or <tt>null</tt> if the unit is absent. */
+  static Integer boxed(int aUnit){
+    return aUnit == ABSENT ? null : Integer.valueOf(aUnit);
+  }
+
+  // PRIVATE
+
+  /*
+   Layout of the bit fields, from least to most significant.
+   The year is stored as year + 1, so that the absent value -1 is stored as 0; likewise for the time units.
+   Months and days are never 0, so they are stored as is.
+   The top 24 bits are always 0, so every packed value is positive.
+  */
+  private static final int SECOND_MASK = 0x3F; //6 bits, 1..60
+  private static final int MINUTE_SHIFT = 6;
+  private static final int MINUTE_MASK = 0x3F; //6 bits, 1..60
+  private static final int HOUR_SHIFT = 12;
+  private static final int HOUR_MASK = 0x1F; //5 bits, 1..24
+  private static final int DAY_SHIFT = 17;
+  private static final int DAY_MASK = 0x1F; //5 bits, 1..31
+  private static final int MONTH_SHIFT = 22;
+  private static final int MONTH_MASK = 0xF; //4 bits, 1..12
+  private static final int YEAR_SHIFT = 26;
+  private static final int YEAR_MASK = 0x3FFF; //14 bits, 2..10000
+
+  private PackedDateTime(){
+    //prevent construction
+  }
+
+  private static int zeroIsAbsent(int aValue){
+    return aValue == 0 ? ABSENT : aValue;
+  }
+
+  private static void checkRange(int aValue, int aMin, int aMax, String aName) {
+    if (aValue != ABSENT && (aValue < aMin || aValue > aMax)){
+      throw new DateTime.ItemOutOfRange(aName + " is not in the range " + aMin + ".." + aMax + ". Value is:" + aValue);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ Runs the pieces of a bulk operation on several threads.
+
+ <P>Callers split their work into tasks, and pass them to {@link #invokeAll(ExecutorService, List)}.
+ When no executor is supplied, a shared pool of daemon threads is used, sized to the number of processors.
+ The shared pool is created only when first needed.
+*/
+final class ParallelTasks {
+
+  /** The number of processors available to the JVM. */
+  static int parallelism(){
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   Return the number of tasks to use for an operation over the given number of items.
+   Returns 1 if the operation is too small to be worth splitting, or if the caller is itself a worker of the shared pool.
+   @param aNumItems the number of items to be processed
+   @param aMinItemsPerTask the smallest number of items worth giving to a single task
+  */
+  static int numTasksFor(int aNumItems, int aMinItemsPerTask){
+    int result = 1;
+    if (! isWorkerThread()){
+      int maxUseful = aNumItems / aMinItemsPerTask;
+      result = Math.max(1, Math.min(maxUseful, parallelism() * TASKS_PER_THREAD));
+    }
+    return result;
+  }
+
+  /** Return the start index of the given task, when aNumItems are split evenly into aNumTasks. */
+  static int startOf(int aTask, int aNumTasks, int aNumItems){
+    return (int)((long)aNumItems * aTask / aNumTasks);
+  }
+
+  /** The shared pool of daemon threads. */
+  static ExecutorService defaultExecutor(){
+    return SharedPool.INSTANCE;
+  }
+
+  /**
+   Run all tasks, and return their results in the same order.
+   <P>A single task is run in the calling thread. If any task fails, its exception is re-thrown
+   to the caller (wrapped in a <tt>RuntimeException</tt> if it's a checked exception).
+   @param aExecutor if <tt>null</tt>, then {@link #defaultExecutor()} is used.
+  */
+  static <T> List<T> invokeAll(ExecutorService aExecutor, List<Callable<T>> aTasks){
+    List<T> result = new ArrayList<T>(aTasks.size());
+    try {
+      if (aTasks.size() == 1){
+        result.add(aTasks.get(0).call());
+      }
+      else {
+        ExecutorService executor = aExecutor == null ? defaultExecutor() : aExecutor;
+        for(Future<T> future : executor.invokeAll(aTasks)){
+          result.add(future.get());
+        }
+      }
+    }
+    catch (ExecutionException ex){
+      throw asUnchecked(ex.getCause());
+    }
+    catch (InterruptedException ex){
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for tasks to complete.", ex);
+    }
+    catch (Exception ex){
+      throw asUnchecked(ex);
+    }
+    return result;
+  }
+
+  // PRIVATE
+
+  /** Gives some slack for uneven work, without creating too many small tasks. */
+  private static final int TASKS_PER_THREAD = 4;
+
+  private ParallelTasks(){
+    //prevent construction
+  }
+
+  /** Lazy initialization holder; the pool is created on first use. */
+  private static final class SharedPool {
+    static final ExecutorService INSTANCE = Executors.newFixedThreadPool(parallelism(), new ThreadFactory() {
+      private final AtomicInteger fCount = new AtomicInteger();
+      public Thread newThread(Runnable aRunnable) {
+        Thread result = new WorkerThread(aRunnable, "jfat-date-worker-" + fCount.incrementAndGet());
+        result.setDaemon(true);
+        return result;
+      }
+    });
+  }
+
+  /** Marks threads of the shared pool, so that nested bulk operations don't wait on their own pool. */
+  private static final class WorkerThread extends Thread {
+    WorkerThread(Runnable aRunnable, String aName){
+      super(aRunnable, aName);
+    }
+  }
+
+  private static boolean isWorkerThread(){
+    return Thread.currentThread() instanceof WorkerThread;
+  }
+
+  private static RuntimeException asUnchecked(Throwable aThrowable){
+    if (aThrowable instanceof Error){
+      throw (Error)aThrowable;
+    }
+    return aThrowable instanceof RuntimeException ? (RuntimeException)aThrowable : new RuntimeException(aThrowable);
+  }
+}
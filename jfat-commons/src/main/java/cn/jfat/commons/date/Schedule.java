@@ -0,0 +1,546 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ A recurring schedule, defined by a cron-style expression, which calculates the times at which it fires.
+
+ <P>The expression has 5 fields, separated by white space :
+ <PRE>minute hour day-of-month month day-of-week</PRE>
+ An optional sixth field may be placed first, for the second; if absent, the second is always 0.
+ The ranges are: second and minute 0..59, hour 0..23, day-of-month 1..31, month 1..12, and
+ day-of-week 0..7, where both 0 and 7 mean Sunday.
+
+ <P>Each field is a comma-separated list of items. Each item is one of:
+ <ul>
+ <li><tt>*</tt> - every value
+ <li><tt>n</tt> - a single value
+ <li><tt>a-b</tt> - the values a through b, inclusive
+ <li><tt>*&#47;s</tt>, <tt>a-b/s</tt>, or <tt>a/s</tt> - every s-th value, starting at the start of the range (or at a, until the end of the range)
+ </ul>
+ As in cron, when both day-of-month and day-of-week are restricted (that is, not <tt>*</tt>), a day matches if <em>either</em> matches.
+
+ <P>Example, for 9:30 on weekdays, and every 15 minutes on the first day of each quarter :
+ <PRE>
+  Schedule open = new Schedule("30 9 * * 1-5");
+  Schedule quarterly = new Schedule("*&#47;15 * 1 1,4,7,10 *");
+  DateTime next = open.next(DateTime.now(timeZone));
+ </PRE>
+
+ <h3>Days That Don't Exist</h3>
+ A day-of-month may not exist in every month; for example, day 31 in April. Such days are treated according to a
+ {@link DateTime.DayOverflow} policy, which has the same meaning here as in
+ {@link DateTime#plus(Integer, Integer, Integer, Integer, Integer, Integer, Integer, DateTime.DayOverflow)} :
+ <ul>
+ <li><tt>LastDay</tt> - fires on the last day of the month instead (April 30)
+ <li><tt>FirstDay</tt> - fires on the first day of the next month instead (May 1)
+ <li><tt>Spillover</tt> - fires on the day reached by counting on into the next month (May 1)
+ <li><tt>Abort</tt> - doesn't fire at all for that month; this is the behavior of cron, and is the default.
+ </ul>
+
+ <h3>Calculation</h3>
+ The expression is compiled once, into a set of bits for each field. {@link #next(DateTime)} and
+ {@link #previous(DateTime)} jump directly from one matching value to the next, field by field, starting with the
+ month, instead of stepping through each minute. Finding the next fire time usually takes a handful of steps.
+ A schedule which can never fire, such as <tt>0 0 30 2 *</tt> with <tt>Abort</tt>, is detected when constructed,
+ so that searching it returns <tt>null</tt> at once.
+
+ <P>All times are in the same (unstated) time zone as the <tt>DateTime</tt> objects passed to this class.
+ <P>This class is immutable, and may be shared between threads.
+*/
+public final class Schedule {
+
+  /**
+   Constructor, for which days that don't exist in a month are skipped, as in cron.
+   @param aExpression cron-style expression, as described in the class comment.
+  */
+  public Schedule(String aExpression){
+    this(aExpression, DateTime.DayOverflow.Abort);
+  }
+
+  /**
+   Full constructor.
+   @param aExpression cron-style expression, as described in the class comment.
+   @param aDayOverflow policy for days that don't exist in a month, such as day 31 in April.
+  */
+  public Schedule(String aExpression, DateTime.DayOverflow aDayOverflow){
+    if(! Util.textHasContent(aExpression)){
+      throw new IllegalArgumentException("Schedule expression has no content.");
+    }
+    fExpression = aExpression.trim();
+    fDayOverflow = aDayOverflow;
+    String[] fields = fExpression.split("\\s+");
+    if(fields.length != 5 && fields.length != 6){
+      throw new IllegalArgumentException("Schedule expression must have 5 or 6 fields: " + Util.quote(fExpression));
+    }
+    int first = fields.length - 5;
+    fSeconds = first == 0 ? 1L : parseField(fields[0], 0, 59);
+    fMinutes = parseField(fields[first], 0, 59);
+    fHours = parseField(fields[first + 1], 0, 23);
+    fDays = parseField(fields[first + 2], 1, 31);
+    fMonths = parseField(fields[first + 3], 1, 12);
+    long weekdays = parseField(fields[first + 4], 0, 7);
+    //cron's 0..7, with 0 and 7 for Sunday, becomes 1..7 for Sunday..Saturday, as in DateTime.getWeekDay()
+    fWeekdays = ((weekdays & 0x7F) << 1) | ((weekdays >>> 7) << 1);
+    fDaysRestricted = ! fields[first + 2].equals("*");
+    fWeekdaysRestricted = ! fields[first + 4].equals("*");
+    fSearchMonths = searchMonths();
+    fCanFire = canFire();
+  }
+
+  /**
+   Return the first time this schedule fires strictly after the given date-time, or <tt>null</tt> if
+   it never fires again before the end of the year 9999.
+   <P>Requires year-month-day to be present; absent time units are taken as 0.
+   The result has year..second, with no nanoseconds.
+  */
+  public DateTime next(DateTime aDateTime){
+    Cursor at = new Cursor(aDateTime);
+    //the next whole second; any nanoseconds are simply dropped
+    at.Second = at.Second + 1;
+    return at.forward() ? at.toDateTime() : null;
+  }
+
+  /**
+   Return the last time this schedule fired strictly before the given date-time, or <tt>null</tt> if
+   it never fired since the start of the year 1.
+   <P>Requires year-month-day to be present; absent time units are taken as 0.
+   The result has year..second, with no nanoseconds.
+  */
+  public DateTime previous(DateTime aDateTime){
+    Cursor at = new Cursor(aDateTime);
+    Integer nanos = aDateTime.getNanoseconds();
+    if(nanos == null || nanos.intValue() == 0){
+      at.Second = at.Second - 1;
+    }
+    return at.backward() ? at.toDateTime() : null;
+  }
+
+  /**
+   Return <tt>true</tt> only if this schedule fires at the given date-time. The nanoseconds, if any, are ignored.
+   <P>Requires year-month-day to be present; absent time units are taken as 0.
+  */
+  public boolean firesAt(DateTime aDateTime){
+    Cursor at = new Cursor(aDateTime);
+    return
+      isSet(daysFor(at.Year, at.Month), at.Day) && isSet(fHours, at.Hour) &&
+      isSet(fMinutes, at.Minute) && isSet(fSeconds, at.Second)
+    ;
+  }
+
+  /**
+   Return the times this schedule fires strictly after the given date-time, in order.
+   <P>The returned object is lazy: each fire time is calculated only when requested. It has no end, unless the
+   schedule stops firing before the end of the year 9999. Its iterators don't support <tt>remove</tt>.
+  */
+  public Iterable<DateTime> after(final DateTime aDateTime){
+    return new Iterable<DateTime>() {
+      public Iterator<DateTime> iterator() {
+        return new FireTimes(aDateTime);
+      }
+    };
+  }
+
+  /** Return the expression passed to the constructor, trimmed. */
+  public String getExpression(){
+    return fExpression;
+  }
+
+  /** Return the policy for days that don't exist in a month. */
+  public DateTime.DayOverflow getDayOverflow(){
+    return fDayOverflow;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "Schedule " + Util.quote(fExpression) + " " + fDayOverflow;
+  }
+
+  // PRIVATE
+  private final String fExpression;
+  private final DateTime.DayOverflow fDayOverflow;
+
+  /* One bit per allowed value, at the position of the value itself. */
+  private final long fSeconds;
+  private final long fMinutes;
+  private final long fHours;
+  private final long fDays;
+  private final long fMonths;
+  /** Bits 1..7 for Sunday..Saturday. */
+  private final long fWeekdays;
+
+  private final boolean fDaysRestricted;
+  private final boolean fWeekdaysRestricted;
+  /** Bits 1..12 for the months in which this schedule may fire; see searchMonths. */
+  private final long fSearchMonths;
+  /** False only if no month of any year has a day on which this schedule fires. */
+  private final boolean fCanFire;
+
+  /**
+   The months in fMonths, and, when days that don't exist are moved into the next month, the months after them.
+   A month outside this set never has a day on which this schedule fires, so the search skips it.
+  */
+  private long searchMonths(){
+    long result = fMonths;
+    if(fDaysRestricted && (fDayOverflow == DateTime.DayOverflow.FirstDay || fDayOverflow == DateTime.DayOverflow.Spillover)){
+      //bits 1..11 move up to 2..12, and bit 12 wraps around to 1
+      result = result | ((fMonths << 1) & daysUpTo(12)) | ((fMonths >>> 12) << 1);
+    }
+    return result;
+  }
+
+  /**
+   Whether any month of any year has a day on which this schedule fires. The days of a month depend only on
+   whether its year, and the year before, are leap years, and on weekdays; every month has each weekday.
+   So a leap year and the year after it cover every case.
+  */
+  private boolean canFire(){
+    for(int year = 2000; year <= 2001; ++year){
+      for(int month = 1; month <= 12; ++month){
+        if(daysFor(year, month) != 0){
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Parse one field of the expression. */
+  private long parseField(String aField, int aMin, int aMax){
+    long result = 0;
+    for(String item : aField.split(",")){
+      int step = 1;
+      String range = item;
+      int slash = item.indexOf('/');
+      if(slash >= 0){
+        step = parseNumber(item.substring(slash + 1), 1, aMax - aMin + 1, aField);
+        range = item.substring(0, slash);
+      }
+      int start = aMin;
+      int end = aMax;
+      if(! range.equals("*")){
+        int dash = range.indexOf('-');
+        if(dash >= 0){
+          start = parseNumber(range.substring(0, dash), aMin, aMax, aField);
+          end = parseNumber(range.substring(dash + 1), start, aMax, aField);
+        }
+        else {
+          start = parseNumber(range, aMin, aMax, aField);
+          end = slash >= 0 ? aMax : start;
+        }
+      }
+      for(int value = start; value <= end; value = value + step){
+        result = result | (1L << value);
+      }
+    }
+    return result;
+  }
+
+  private int parseNumber(String aText, int aMin, int aMax, String aField){
+    int result = 0;
+    try {
+      result = Integer.parseInt(aText);
+    }
+    catch(NumberFormatException ex){
+      throw new IllegalArgumentException("Cannot parse " + Util.quote(aField) + " in schedule expression " + Util.quote(fExpression));
+    }
+    if(result < aMin || result > aMax){
+      throw new IllegalArgumentException(
+        "Value " + result + " in " + Util.quote(aField) + " is not in the range " + aMin + ".." + aMax + ", in schedule expression " + Util.quote(fExpression)
+      );
+    }
+    return result;
+  }
+
+  /** Return the days of the given month on which this schedule fires, as bits 1..31. */
+  private long daysFor(int aYear, int aMonth){
+    long result = 0;
+    boolean monthMatches = isSet(fMonths, aMonth);
+    if(! fDaysRestricted && ! fWeekdaysRestricted){
+      result = monthMatches ? daysUpTo(DayNumbers.daysInMonth(aYear, aMonth)) : 0;
+    }
+    else {
+      if(fDaysRestricted){
+        result = daysOfMonthFor(aYear, aMonth, monthMatches);
+      }
+      if(fWeekdaysRestricted && monthMatches){
+        result = result | weekdaysFor(aYear, aMonth);
+      }
+    }
+    return result;
+  }
+
+  /** The days given by the day-of-month field, including days moved here from the previous month by fDayOverflow. */
+  private long daysOfMonthFor(int aYear, int aMonth, boolean aMonthMatches){
+    long result = 0;
+    int numDays = DayNumbers.daysInMonth(aYear, aMonth);
+    if(aMonthMatches){
+      result = fDays & daysUpTo(numDays);
+      if(fDayOverflow == DateTime.DayOverflow.LastDay && (fDays & ~daysUpTo(numDays)) != 0){
+        result = result | (1L << numDays);
+      }
+    }
+    int prevYear = aMonth == 1 ? aYear - 1 : aYear;
+    int prevMonth = aMonth == 1 ? 12 : aMonth - 1;
+    if(prevYear >= 1 && isSet(fMonths, prevMonth)){
+      int prevNumDays = DayNumbers.daysInMonth(prevYear, prevMonth);
+      long overflow = fDays & ~daysUpTo(prevNumDays);
+      if(overflow != 0){
+        if(fDayOverflow == DateTime.DayOverflow.FirstDay){
+          result = result | (1L << 1);
+        }
+        else if(fDayOverflow == DateTime.DayOverflow.Spillover){
+          result = result | (overflow >>> prevNumDays);
+        }
+      }
+    }
+    return result;
+  }
+
+  /** The days of the given month which fall on a weekday in fWeekdays. */
+  private long weekdaysFor(int aYear, int aMonth){
+    long result = 0;
+    int weekday = DayNumbers.weekDay(DayNumbers.modifiedJulianDay(aYear, aMonth, 1));
+    int numDays = DayNumbers.daysInMonth(aYear, aMonth);
+    for(int day = 1; day <= numDays; ++day){
+      if(isSet(fWeekdays, weekday)){
+        result = result | (1L << day);
+      }
+      weekday = weekday == 7 ? 1 : weekday + 1;
+    }
+    return result;
+  }
+
+  /** Bits 1..aNumDays. */
+  private static long daysUpTo(int aNumDays){
+    return ((1L << (aNumDays + 1)) - 1) & ~1L;
+  }
+
+  private static boolean isSet(long aBits, int aValue){
+    return (aBits & (1L << aValue)) != 0;
+  }
+
+  /** Return the smallest set bit at or after aFrom (0..63), or -1 if none. */
+  private static int nextSetBit(long aBits, int aFrom){
+    long bits = aBits & (-1L << aFrom);
+    return bits == 0 ? -1 : Long.numberOfTrailingZeros(bits);
+  }
+
+  /** Return the largest set bit at or before aFrom (0..63), or -1 if none. */
+  private static int previousSetBit(long aBits, int aFrom){
+    long bits = aBits & (-1L >>> (63 - aFrom));
+    return bits == 0 ? -1 : 63 - Long.numberOfLeadingZeros(bits);
+  }
+
+  /**
+   The units of a date-time, as a mutable work area for the search.
+   During a search, a unit may briefly be one past its range, and is then carried into the next larger unit.
+  */
+  private final class Cursor {
+    Cursor(DateTime aDateTime){
+      if(! aDateTime.hasYearMonthDay()){
+        throw new DateTime.MissingItem("DateTime does not include year/month/day.");
+      }
+      Year = aDateTime.getYear();
+      Month = aDateTime.getMonth();
+      Day = aDateTime.getDay();
+      Hour = zeroIfAbsent(aDateTime.getHour());
+      Minute = zeroIfAbsent(aDateTime.getMinute());
+      Second = zeroIfAbsent(aDateTime.getSecond());
+    }
+    int Year;
+    int Month;
+    int Day;
+    int Hour;
+    int Minute;
+    int Second;
+
+    /** Move to the first fire time at or after the current position. Return false if there is none. */
+    boolean forward(){
+      if(! fCanFire){
+        return false;
+      }
+      int year = Year;
+      int month = Month;
+      int day = Day;
+      int hour = Hour;
+      int minute = Minute;
+      int second = Second;
+      while(year <= 9999){
+        //carry any unit that is one past its range
+        if(second == 60){ second = 0; ++minute; }
+        if(minute == 60){ minute = 0; ++hour; }
+        if(hour == 24){ hour = 0; ++day; }
+        if(day > DayNumbers.daysInMonth(year, month)){ day = 1; ++month; }
+        if(month == 13){ month = 1; ++year; continue; }
+        int nextMonth = nextSetBit(fSearchMonths, month);
+        if(nextMonth < 0){
+          month = 1; day = 1; hour = 0; minute = 0; second = 0; ++year; //next year
+          continue;
+        }
+        if(nextMonth != month){
+          month = nextMonth; day = 1; hour = 0; minute = 0; second = 0;
+        }
+        int nextDay = nextSetBit(daysFor(year, month), day);
+        if(nextDay < 0){
+          day = 32; hour = 0; minute = 0; second = 0; //next month
+          continue;
+        }
+        if(nextDay != day){
+          day = nextDay; hour = 0; minute = 0; second = 0;
+        }
+        int nextHour = nextSetBit(fHours, hour);
+        if(nextHour < 0){
+          hour = 24; minute = 0; second = 0;
+          continue;
+        }
+        if(nextHour != hour){
+          hour = nextHour; minute = 0; second = 0;
+        }
+        int nextMinute = nextSetBit(fMinutes, minute);
+        if(nextMinute < 0){
+          minute = 60; second = 0;
+          continue;
+        }
+        if(nextMinute != minute){
+          minute = nextMinute; second = 0;
+        }
+        int nextSecond = nextSetBit(fSeconds, second);
+        if(nextSecond < 0){
+          second = 60;
+          continue;
+        }
+        set(year, month, day, hour, minute, nextSecond);
+        return true;
+      }
+      return false;
+    }
+
+    /** Move to the last fire time at or before the current position. Return false if there is none. */
+    boolean backward(){
+      if(! fCanFire){
+        return false;
+      }
+      int year = Year;
+      int month = Month;
+      int day = Day;
+      int hour = Hour;
+      int minute = Minute;
+      int second = Second;
+      while(year >= 1){
+        //borrow for any unit that is one below its range
+        if(second == -1){ second = 59; --minute; }
+        if(minute == -1){ minute = 59; --hour; }
+        if(hour == -1){ hour = 23; --day; }
+        if(day == 0){ --month; day = 31; }
+        if(month == 0){ month = 12; --year; continue; }
+        int previousMonth = previousSetBit(fSearchMonths, month);
+        if(previousMonth < 1){
+          month = 12; day = 31; hour = 23; minute = 59; second = 59; --year; //previous year
+          continue;
+        }
+        if(previousMonth != month){
+          month = previousMonth; day = 31; hour = 23; minute = 59; second = 59;
+        }
+        day = Math.min(day, DayNumbers.daysInMonth(year, month));
+        int previousDay = previousSetBit(daysFor(year, month), day);
+        if(previousDay < 0){
+          day = 0; hour = 23; minute = 59; second = 59; //previous month
+          continue;
+        }
+        if(previousDay != day){
+          day = previousDay; hour = 23; minute = 59; second = 59;
+        }
+        int previousHour = previousSetBit(fHours, hour);
+        if(previousHour < 0){
+          hour = -1; minute = 59; second = 59;
+          continue;
+        }
+        if(previousHour != hour){
+          hour = previousHour; minute = 59; second = 59;
+        }
+        int previousMinute = previousSetBit(fMinutes, minute);
+        if(previousMinute < 0){
+          minute = -1; second = 59;
+          continue;
+        }
+        if(previousMinute != minute){
+          minute = previousMinute; second = 59;
+        }
+        int previousSecond = previousSetBit(fSeconds, second);
+        if(previousSecond < 0){
+          second = -1;
+          continue;
+        }
+        set(year, month, day, hour, minute, previousSecond);
+        return true;
+      }
+      return false;
+    }
+
+    DateTime toDateTime(){
+      return new DateTime(Year, Month, Day, Hour, Minute, Second, null);
+    }
+
+    private void set(int aYear, int aMonth, int aDay, int aHour, int aMinute, int aSecond){
+      Year = aYear;
+      Month = aMonth;
+      Day = aDay;
+      Hour = aHour;
+      Minute = aMinute;
+      Second = aSecond;
+    }
+
+    private int zeroIfAbsent(Integer aUnit){
+      return aUnit == null ? 0 : aUnit.intValue();
+    }
+  }
+
+  /** The lazy iterator returned by {@link #after(DateTime)}. Each fire time is calculated when first needed. */
+  private final class FireTimes implements Iterator<DateTime> {
+    FireTimes(DateTime aStart){
+      fLast = aStart;
+    }
+    public boolean hasNext() {
+      calculateNext();
+      return fNext != null;
+    }
+    public DateTime next() {
+      calculateNext();
+      if(fNext == null){
+        throw new NoSuchElementException();
+      }
+      fLast = fNext;
+      fIsCalculated = false;
+      return fLast;
+    }
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+    private DateTime fLast;
+    private DateTime fNext;
+    private boolean fIsCalculated;
+    private void calculateNext(){
+      if(! fIsCalculated){
+        fNext = Schedule.this.next(fLast);
+        fIsCalculated = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Aggregate values over session windows, from a stream of date-time stamped events.
+
+ <P>A session is a run of events, in which each event follows the one before it by less than a given gap.
+ The session window starts at its first event, and ends one gap after its last event. An event falling
+ between two sessions may join them into one.
+
+ <P>Late events, the watermark, and the {@link WindowAggregator.Aggregation} and {@link WindowAggregator.Listener}
+ are as for {@link WindowAggregator}. A session is closed when the watermark reaches its end. An event
+ is dropped as late only if it belongs to no open session, and would start a session which is already closed.
+
+ <P>The open sessions are held in sorted arrays of primitives. There are usually few of them, since only
+ sessions within the allowed lateness of the latest event remain open.
+
+ <P>This class is not thread-safe.
+
+ <P>Example :
+ <PRE>
+  SessionAggregator visits = new SessionAggregator(30, TimeUnit.MINUTES, 5, WindowAggregator.SUM, listener);
+  ...
+  visits.add(click.getWhen(), 1);
+ </PRE>
+*/
+public final class SessionAggregator {
+
+  /**
+   Constructor.
+   @param aGap events less than this far apart are in the same session, in units of <tt>aUnit</tt>; 1 or more.
+   @param aAllowedLateness how far behind the latest event an event may be, and still be counted, in units of <tt>aUnit</tt>; 0 or more.
+  */
+  public SessionAggregator(long aGap, TimeUnit aUnit, long aAllowedLateness, WindowAggregator.Aggregation aAggregation, WindowAggregator.Listener aListener){
+    if(aGap < 1){
+      throw new IllegalArgumentException("Gap must be 1 or more: " + aGap);
+    }
+    if(aAllowedLateness < 0){
+      throw new IllegalArgumentException("Allowed lateness cannot be negative: " + aAllowedLateness);
+    }
+    fGapNanos = aUnit.toNanos(aGap);
+    fAllowedLatenessNanos = aUnit.toNanos(aAllowedLateness);
+    fAggregation = aAggregation;
+    fListener = aListener;
+  }
+
+  /** Add an event. Requires year-month-day to be present; absent time units are taken as 0. */
+  public void add(DateTime aWhen, long aValue){
+    add(PackedDateTime.pack(aWhen), PackedDateTime.nanosOf(aWhen), aValue);
+  }
+
+  /** Add an event, with its date-time in primitive form. See {@link #add(DateTime, long)}. */
+  public void add(long aPacked, int aNanos, long aValue){
+    if(fReference == null){
+      fReference = PackedDateTime.toDateTime(aPacked, aNanos);
+      fReferencePacked = aPacked;
+      fReferenceNanos = aNanos;
+    }
+    long when = PackedDateTime.bucketIndex(aPacked, aNanos, 1, fReferencePacked, fReferenceNanos);
+    int idx = firstEndingAfter(when);
+    if(idx < fSize && fStarts[idx] < when + fGapNanos){
+      fStarts[idx] = Math.min(fStarts[idx], when);
+      fLasts[idx] = Math.max(fLasts[idx], when);
+      fValues[idx] = fAggregation.combine(fValues[idx], aValue);
+      ++fCounts[idx];
+      if(idx + 1 < fSize && fStarts[idx + 1] < fLasts[idx] + fGapNanos){
+        mergeWithNext(idx);
+      }
+    }
+    else if(when + fGapNanos <= fWatermark){
+      ++fNumLateEvents;
+      return;
+    }
+    else {
+      insert(idx, when, aValue);
+    }
+    if(!fHasEvents || when > fLatest){
+      fLatest = when;
+      fHasEvents = true;
+      closeUpTo(fLatest - fAllowedLatenessNanos);
+    }
+  }
+
+  /** Close all sessions ending at or before the given date-time, even if no event has yet moved the watermark that far. */
+  public void advanceWatermark(DateTime aWatermark){
+    if(fReference != null){
+      closeUpTo(PackedDateTime.bucketIndex(PackedDateTime.pack(aWatermark), PackedDateTime.nanosOf(aWatermark), 1, fReferencePacked, fReferenceNanos));
+    }
+  }
+
+  /** Close all open sessions, as at the end of a stream. */
+  public void flush(){
+    if(fSize > 0){
+      closeUpTo(fLasts[fSize - 1] + fGapNanos);
+    }
+  }
+
+  /** The number of sessions not yet closed. */
+  public int getNumOpenSessions(){
+    return fSize;
+  }
+
+  /** The number of events dropped because they arrived too late. */
+  public long getNumLateEvents(){
+    return fNumLateEvents;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "SessionAggregator gap:" + fGapNanos + "ns open:" + fSize + " late:" + fNumLateEvents;
+  }
+
+  // PRIVATE
+
+  private final long fGapNanos;
+  private final long fAllowedLatenessNanos;
+  private final WindowAggregator.Aggregation fAggregation;
+  private final WindowAggregator.Listener fListener;
+
+  /** Times are held as nanoseconds from the first event. */
+  private DateTime fReference;
+  private long fReferencePacked;
+  private int fReferenceNanos;
+
+  /** Open sessions, in order. Each session ends a gap or more before the next one starts. */
+  private long[] fStarts = new long[4];
+  private long[] fLasts = new long[4];
+  private long[] fValues = new long[4];
+  private long[] fCounts = new long[4];
+  private int fSize;
+
+  private boolean fHasEvents;
+  private long fLatest;
+  private long fWatermark = Long.MIN_VALUE / 2;
+  private long fNumLateEvents;
+
+  /** Index of the first open session whose end is after the given time; the sessions' ends are in order. */
+  private int firstEndingAfter(long aWhen){
+    int low = 0;
+    int high = fSize;
+    while(low < high){
+      int mid = (low + high) >>> 1;
+      if(fLasts[mid] + fGapNanos <= aWhen){
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void mergeWithNext(int aIdx){
+    int next = aIdx + 1;
+    fLasts[aIdx] = Math.max(fLasts[aIdx], fLasts[next]);
+    fValues[aIdx] = fAggregation.combine(fValues[aIdx], fValues[next]);
+    fCounts[aIdx] = fCounts[aIdx] + fCounts[next];
+    remove(next, 1);
+  }
+
+  private void insert(int aIdx, long aWhen, long aValue){
+    if(fSize == fStarts.length){
+      int capacity = fSize * 2;
+      fStarts = Arrays.copyOf(fStarts, capacity);
+      fLasts = Arrays.copyOf(fLasts, capacity);
+      fValues = Arrays.copyOf(fValues, capacity);
+      fCounts = Arrays.copyOf(fCounts, capacity);
+    }
+    int numMoved = fSize - aIdx;
+    System.arraycopy(fStarts, aIdx, fStarts, aIdx + 1, numMoved);
+    System.arraycopy(fLasts, aIdx, fLasts, aIdx + 1, numMoved);
+    System.arraycopy(fValues, aIdx, fValues, aIdx + 1, numMoved);
+    System.arraycopy(fCounts, aIdx, fCounts, aIdx + 1, numMoved);
+    fStarts[aIdx] = aWhen;
+    fLasts[aIdx] = aWhen;
+    fValues[aIdx] = fAggregation.combine(fAggregation.identity(), aValue);
+    fCounts[aIdx] = 1;
+    ++fSize;
+  }
+
+  private void remove(int aIdx, int aCount){
+    int numMoved = fSize - aIdx - aCount;
+    System.arraycopy(fStarts, aIdx + aCount, fStarts, aIdx, numMoved);
+    System.arraycopy(fLasts, aIdx + aCount, fLasts, aIdx, numMoved);
+    System.arraycopy(fValues, aIdx + aCount, fValues, aIdx, numMoved);
+    System.arraycopy(fCounts, aIdx + aCount, fCounts, aIdx, numMoved);
+    fSize = fSize - aCount;
+  }
+
+  /** Close the sessions ending at or before the given time, in nanoseconds from the reference. */
+  private void closeUpTo(long aWatermark){
+    if(aWatermark <= fWatermark){
+      return;
+    }
+    fWatermark = aWatermark;
+    int numClosed = firstEndingAfter(aWatermark);
+    for(int idx = 0; idx < numClosed; ++idx){
+      fListener.windowClosed(toDateTime(fStarts[idx]), toDateTime(fLasts[idx] + fGapNanos), fValues[idx], fCounts[idx]);
+    }
+    if(numClosed > 0){
+      remove(0, numClosed);
+    }
+  }
+
+  private DateTime toDateTime(long aNanos){
+    return DateTime.startOfBucket(aNanos, 1, fReference);
+  }
+}
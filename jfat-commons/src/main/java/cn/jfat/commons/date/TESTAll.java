@@ -32,6 +32,23 @@ public final class TESTAll {
     suite.addTest(new TestSuite(TESTDateTime.class));
     suite.addTest(new TestSuite(TESTDateTimeFormatter.class));
     suite.addTest(new TestSuite(TESTDateTimeInterval.class));
+    suite.addTest(new TestSuite(TESTPackedDateTime.class));
+    suite.addTest(new TestSuite(TESTBusinessCalendar.class));
+    suite.addTest(new TestSuite(TESTSchedule.class));
+    suite.addTest(new TestSuite(TESTFiscalCalendar.class));
+    suite.addTest(new TestSuite(TESTDayColumn.class));
+    suite.addTest(new TestSuite(TESTDateTimeMerge.class));
+    suite.addTest(new TestSuite(TESTDateTimeSorts.class));
+    suite.addTest(new TestSuite(TESTDateTimeArray.class));
+    suite.addTest(new TestSuite(TESTTimeIndex.class));
+    suite.addTest(new TestSuite(TESTConcurrentTimeline.class));
+    suite.addTest(new TestSuite(TESTIntervalIndex.class));
+    suite.addTest(new TestSuite(TESTDaySet.class));
+    suite.addTest(new TestSuite(TESTDateTimeColumnFile.class));
+    suite.addTest(new TestSuite(TESTTimingWheel.class));
+    suite.addTest(new TestSuite(TESTWindowAggregator.class));
+    suite.addTest(new TestSuite(TESTTimeBucketCounter.class));
+    suite.addTest(new TestSuite(TESTEncodedDateTimeColumn.class));
     
     return suite;
   }
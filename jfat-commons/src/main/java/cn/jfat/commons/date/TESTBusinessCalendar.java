@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTBusinessCalendar extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTBusinessCalendar.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTBusinessCalendar(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testIsBusinessDay(){
+    assertTrue(CALENDAR.isBusinessDay(new DateTime("2013-12-24")));
+    assertFalse(CALENDAR.isBusinessDay(new DateTime("2013-12-25 13:00"))); //holiday
+    assertFalse(CALENDAR.isBusinessDay(new DateTime("2013-12-28"))); //Saturday
+    assertFalse(CALENDAR.isBusinessDay(new DateTime("2013-12-29"))); //Sunday
+    assertTrue(CALENDAR.isBusinessDay(new DateTime("2013-12-30")));
+  }
+
+  public void testBusinessDaysBetween(){
+    testBetween("2013-12-23", "2013-12-23", 0);
+    testBetween("2013-12-23", "2013-12-24", 1);
+    testBetween("2013-12-23", "2014-01-06", 8); //23, 24, 26, 27, 30, 31, 2, 3; 25 Dec and 1 Jan are holidays
+    testBetween("2014-01-06", "2013-12-23", -8);
+    testBetween("2012-01-01", "2015-01-01", countByLooping("2012-01-01", "2015-01-01"));
+    testBetween("2013-03-05", "2014-09-17", countByLooping("2013-03-05", "2014-09-17"));
+  }
+
+  public void testPlusBusinessDays(){
+    testPlus("2013-12-23", 0, "2013-12-23");
+    testPlus("2013-12-23", 2, "2013-12-26");
+    testPlus("2013-12-23", 6, "2014-01-02");
+    testPlus("2014-01-02", -6, "2013-12-23");
+    //Saturday
+    testPlus("2013-12-28", 0, "2013-12-30");
+    testPlus("2013-12-28", 1, "2013-12-30");
+    testPlus("2013-12-28", 2, "2013-12-31");
+    testPlus("2013-12-28", -1, "2013-12-27");
+    //the time portion is retained
+    assertEquals(new DateTime("2013-12-30 13:45"), CALENDAR.plusBusinessDays(new DateTime("2013-12-27 13:45"), 1));
+    //agrees with stepping one day at a time
+    DateTime start = new DateTime("2012-02-29");
+    for(int numDays = 0; numDays < 300; numDays = numDays + 7){
+      assertEquals(numDays, CALENDAR.businessDaysBetween(start, CALENDAR.plusBusinessDays(start, numDays)));
+    }
+  }
+
+  public void testOutOfRange(){
+    try {
+      CALENDAR.isBusinessDay(new DateTime("2016-01-01"));
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    try {
+      CALENDAR.plusBusinessDays(new DateTime("2015-12-30"), 5);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    //the day after the last day is allowed as an end
+    assertEquals(1, CALENDAR.businessDaysBetween(new DateTime("2015-12-31"), new DateTime("2016-01-01")));
+  }
+
+  public void testCombine(){
+    //a market closed on Fridays, but open on Sundays
+    List<DateTime> holidays = Collections.singletonList(new DateTime("2014-01-02"));
+    BusinessCalendar other = new BusinessCalendar(2014, 2020, Arrays.asList(6, 7), holidays);
+    BusinessCalendar both = CALENDAR.and(other);
+    BusinessCalendar either = CALENDAR.or(other);
+    assertEquals(DayNumbers.modifiedJulianDay(2014, 1, 1), both.getFirstDay());
+    assertEquals(DayNumbers.modifiedJulianDay(2015, 12, 31), both.getLastDay());
+    assertFalse(both.isBusinessDay(new DateTime("2014-01-02"))); //holiday in other
+    assertFalse(both.isBusinessDay(new DateTime("2014-01-03"))); //Friday
+    assertTrue(both.isBusinessDay(new DateTime("2014-01-06")));
+    assertTrue(either.isBusinessDay(new DateTime("2014-01-02")));
+    assertTrue(either.isBusinessDay(new DateTime("2014-01-03")));
+    assertTrue(either.isBusinessDay(new DateTime("2014-01-05"))); //Sunday
+    assertFalse(either.isBusinessDay(new DateTime("2014-01-04"))); //Saturday
+    assertEquals(new DateTime("2014-01-06"), both.plusBusinessDays(new DateTime("2014-01-01"), 1));
+  }
+
+  // PRIVATE
+
+  private static final BusinessCalendar CALENDAR = BusinessCalendar.forMondayToFriday(
+    2012, 2015, Arrays.asList(new DateTime("2013-12-25"), new DateTime("2014-01-01 12:00"))
+  );
+
+  private void testBetween(String aStart, String aEnd, int aExpected){
+    assertEquals(aExpected, CALENDAR.businessDaysBetween(new DateTime(aStart), new DateTime(aEnd)));
+  }
+
+  private void testPlus(String aStart, int aNumDays, String aExpected){
+    assertEquals(new DateTime(aExpected), CALENDAR.plusBusinessDays(new DateTime(aStart), aNumDays));
+  }
+
+  private int countByLooping(String aStart, String aEnd){
+    int result = 0;
+    DateTime end = new DateTime(aEnd);
+    for(DateTime day = new DateTime(aStart); day.lt(end); day = day.plusDays(1)){
+      if(CALENDAR.isBusinessDay(day)){
+        ++result;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTConcurrentTimeline extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTConcurrentTimeline.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTConcurrentTimeline(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testMapOperations(){
+    ConcurrentTimeline<String> timeline = new ConcurrentTimeline<String>();
+    assertNull(timeline.put(new DateTime("2014-01-02 10:00"), "b"));
+    assertNull(timeline.put(new DateTime("2014-01-01"), "a"));
+    assertNull(timeline.put(new DateTime("2014-01-02 10:00:00.000000001"), "c"));
+    assertEquals("b", timeline.put(new DateTime("2014-01-02 10:00"), "B"));
+    assertEquals("B", timeline.putIfAbsent(new DateTime("2014-01-02 10:00"), "x"));
+    assertEquals("B", timeline.get(new DateTime("2014-01-02 10:00")));
+    assertNull(timeline.get(new DateTime("2014-01-02")));
+    assertEquals(3, timeline.size());
+    assertEquals(new DateTime("2014-01-01"), timeline.first().getKey());
+    assertEquals("c", timeline.last().getValue());
+    assertFalse(timeline.remove(new DateTime("2014-01-01"), "z"));
+    assertEquals("a", timeline.remove(new DateTime("2014-01-01")));
+    assertEquals(2, timeline.size());
+  }
+
+  public void testRange(){
+    ConcurrentTimeline<Integer> timeline = new ConcurrentTimeline<Integer>();
+    for(int day = 1; day <= 10; ++day){
+      timeline.put(DateTime.forDateOnly(2014, 3, day), day);
+    }
+    List<Integer> found = new ArrayList<Integer>();
+    for(Iterator<Map.Entry<DateTime, Integer>> iter = timeline.range(new DateTime("2014-03-03"), new DateTime("2014-03-06")); iter.hasNext(); ){
+      found.add(iter.next().getValue());
+    }
+    assertEquals("[3, 4, 5]", found.toString());
+    assertFalse(timeline.range(new DateTime("2014-03-06"), new DateTime("2014-03-03")).hasNext());
+    Iterator<Map.Entry<DateTime, Integer>> iter = timeline.range(new DateTime("2014-03-01"), new DateTime("2014-03-02"));
+    iter.next();
+    iter.remove();
+    assertEquals(new DateTime("2014-03-02"), timeline.first().getKey());
+  }
+
+  public void testPollFirstBefore(){
+    ConcurrentTimeline<Integer> timeline = new ConcurrentTimeline<Integer>();
+    for(int day = 1; day <= 5; ++day){
+      timeline.put(DateTime.forDateOnly(2014, 3, day), day);
+    }
+    DateTime cutoff = new DateTime("2014-03-03");
+    assertEquals(Integer.valueOf(1), timeline.pollFirstBefore(cutoff).getValue());
+    assertEquals(Integer.valueOf(2), timeline.pollFirstBefore(cutoff).getValue());
+    assertNull(timeline.pollFirstBefore(cutoff));
+    assertEquals(3, timeline.size());
+  }
+
+  public void testPollThenPutEqualValue() throws Exception {
+    //each poller puts back a new, equal value for the same date-time; no value object may be returned twice
+    final ConcurrentTimeline<String> timeline = new ConcurrentTimeline<String>();
+    final DateTime when = DateTime.forDateOnly(2014, 3, 1);
+    final DateTime cutoff = DateTime.forDateOnly(2014, 3, 2);
+    final Map<String, Boolean> returned = Collections.synchronizedMap(new IdentityHashMap<String, Boolean>());
+    timeline.put(when, new String("session"));
+    final int numThreads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Callable<Integer>> pollers = new ArrayList<Callable<Integer>>();
+      for(int thread = 0; thread < numThreads; ++thread){
+        pollers.add(new Callable<Integer>(){
+          public Integer call(){
+            int result = 0;
+            for(int idx = 0; idx < 500000; ++idx){
+              Map.Entry<DateTime, String> polled = timeline.pollFirstBefore(cutoff);
+              if(polled != null){
+                assertNull("returned twice", returned.put(polled.getValue(), Boolean.TRUE));
+                timeline.put(when, new String("session"));
+                ++result;
+              }
+            }
+            return result;
+          }
+        });
+      }
+      int polled = 0;
+      for(Future<Integer> count : executor.invokeAll(pollers)){
+        polled = polled + count.get();
+      }
+      //every value put was either returned once, or is still there
+      assertEquals(polled + 1, returned.size() + timeline.size());
+      assertEquals(1, timeline.size());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testManyThreads() throws Exception {
+    final ConcurrentTimeline<Integer> timeline = new ConcurrentTimeline<Integer>();
+    final int numThreads = 4;
+    final int perThread = 2000;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Callable<Integer>> writers = new ArrayList<Callable<Integer>>();
+      for(int thread = 0; thread < numThreads; ++thread){
+        final int first = thread * perThread;
+        writers.add(new Callable<Integer>(){
+          public Integer call(){
+            for(int idx = first; idx < first + perThread; ++idx){
+              timeline.put(secondsAfterMidnight(idx), idx);
+            }
+            return null;
+          }
+        });
+      }
+      executor.invokeAll(writers);
+      assertEquals(numThreads * perThread, timeline.size());
+
+      final DateTime cutoff = secondsAfterMidnight(numThreads * perThread / 2);
+      List<Callable<Integer>> pollers = new ArrayList<Callable<Integer>>();
+      for(int thread = 0; thread < numThreads; ++thread){
+        pollers.add(new Callable<Integer>(){
+          public Integer call(){
+            int result = 0;
+            while(timeline.pollFirstBefore(cutoff) != null){
+              ++result;
+            }
+            return result;
+          }
+        });
+      }
+      int polled = 0;
+      for(Future<Integer> count : executor.invokeAll(pollers)){
+        polled = polled + count.get();
+      }
+      assertEquals(numThreads * perThread / 2, polled);
+      assertEquals(cutoff, timeline.first().getKey());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  // PRIVATE
+
+  private static DateTime secondsAfterMidnight(int aSeconds){
+    return new DateTime(2014, 1, 1, aSeconds / 3600, (aSeconds / 60) % 60, aSeconds % 60, 0);
+  }
+}
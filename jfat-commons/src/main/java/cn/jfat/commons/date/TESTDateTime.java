@@ -15,7 +15,15 @@
  */
 package cn.jfat.commons.date;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 import junit.framework.TestCase;
 
 /** JUnit tests. */
@@ -375,12 +383,21 @@ public final class TESTDateTime  extends TestCase  {
     //time only
     testToString(SUCCESS, null, null, null, 13, 30, 59, 123456789, "13:30:59.123456789");
     testToString(SUCCESS, null, null, null, 13, 30, 59, null, "13:30:59");
+    testToString(SUCCESS, null, null, null, 13, 30, null, null, "13:30");
+    testToString(SUCCESS, null, null, null, 0, 0, 0, 1, "00:00:00.000000001");
+    testToString(SUCCESS, 9999, 12, 31, 23, 59, 59, 999999999, "9999-12-31 23:59:59.999999999");
+    testToString(SUCCESS, 999, 1, 1, null, null, null, null, "999-01-01");
     
     //bizarre combination of formats
     testToString(SUCCESS, 2001, 1, 31, 13, null, 59, 123456789, "Y:2001 M:1 D:31 h:13 m:null s:59 f:123456789");
 
     //extra trailing space
     testToString(FAIL, 2001, 1, 31, 13, 30, 59, 123456789, "2001-01-31 13:30:59.123456789 ");
+    
+    //the text is calculated only once
+    DateTime dateTime = new DateTime(2001, 1, 31, 13, 30, 59, 0);
+    assertSame(dateTime.toString(), dateTime.toString());
+    assertTrue(dateTime.toString().equals(dateTime.format("YYYY-MM-DD hh:mm:ss.fffffffff")));
   }
   
   public void testDayOfWeek(){
@@ -773,6 +790,234 @@ public final class TESTDateTime  extends TestCase  {
     testNumSecondsFrom("2013-01-01 00:00:00", "2013-01-01 23:59:59",DAY-1);
   }
 
+  public void testBuckets(){
+    DateTime origin = DateTime.forDateOnly(2000, 1, 3); //a Monday
+    DateTime dateTime = new DateTime("2014-06-05 13:47:59.5"); //a Thursday
+    assertEquals(new DateTime("2014-06-05 13:45:00.000000000"), dateTime.floor(15, TimeUnit.MINUTES, origin));
+    assertEquals(new DateTime("2014-06-05 14:00:00.000000000"), dateTime.ceil(15, TimeUnit.MINUTES, origin));
+    assertEquals(new DateTime("2014-06-05 12:00:00.000000000"), dateTime.floor(6, TimeUnit.HOURS, origin));
+    assertEquals(new DateTime("2014-06-05 13:47:55.000000000"), dateTime.floor(5, TimeUnit.SECONDS, origin));
+    assertEquals(new DateTime("2014-06-02 00:00:00.000000000"), dateTime.floor(7, TimeUnit.DAYS, origin));
+    assertEquals(new DateTime("2014-06-09 00:00:00.000000000"), dateTime.ceil(7, TimeUnit.DAYS, origin));
+    //on a boundary
+    DateTime boundary = new DateTime("2014-06-05 13:45:00");
+    assertEquals(boundary, boundary.floor(15, TimeUnit.MINUTES, origin));
+    assertEquals(boundary, boundary.ceil(15, TimeUnit.MINUTES, origin));
+    //before the origin
+    assertEquals(-1, new DateTime("2000-01-02 23:59:59").bucketIndex(1, TimeUnit.DAYS, origin));
+    assertEquals(new DateTime("1999-12-27 00:00:00"), new DateTime("1999-12-31 12:00").floor(7, TimeUnit.DAYS, origin));
+    //an origin with a time portion
+    DateTime shifted = new DateTime("2000-01-01 00:07:30");
+    assertEquals(new DateTime("2014-06-05 13:37:30.000000000"), dateTime.floor(15, TimeUnit.MINUTES, shifted));
+    //far from the origin, where nanoseconds don't fit in a long
+    assertEquals(new DateTime("9999-12-31 00:00:00"), new DateTime("9999-12-31 23:59").floor(1, TimeUnit.DAYS, DateTime.forDateOnly(1, 1, 1)));
+    long days = new DateTime("9999-12-31").bucketIndex(1, TimeUnit.DAYS, DateTime.forDateOnly(1, 1, 1));
+    assertEquals(new DateTime("9999-12-31").numDaysFrom(DateTime.forDateOnly(1, 1, 1)), -days);
+    assertEquals(new DateTime("0001-01-01 00:00:00"), new DateTime("0001-01-01 12:00").floor(1, TimeUnit.DAYS, DateTime.forDateOnly(9999, 12, 31)));
+    assertEquals(new DateTime("0001-01-01 09:00:00"), new DateTime("0001-01-01 12:00").floor(9, TimeUnit.HOURS, new DateTime("9999-12-31 15:00")));
+    //packed form agrees
+    long packed = PackedDateTime.pack(dateTime);
+    for(long size = 1; size < 100000; size = size * 7){
+      assertEquals(
+        dateTime.bucketIndex(size, TimeUnit.SECONDS, origin), 
+        PackedDateTime.bucketIndex(packed, PackedDateTime.nanosOf(dateTime), size * 1000000000L, PackedDateTime.pack(origin), PackedDateTime.ABSENT)
+      );
+    }
+    try {
+      dateTime.floor(0, TimeUnit.MINUTES, origin);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    //more nanoseconds than a long can hold
+    try {
+      dateTime.floor(200000, TimeUnit.DAYS, origin);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    assertEquals(new DateTime("2000-01-03 00:00:00.000000000"), dateTime.floor(106751, TimeUnit.DAYS, origin));
+  }
+
+  public void testPeriods(){
+    DateTime dt = new DateTime("2014-05-14 13:47:59.5"); //a Wednesday
+    assertEquals(new DateTime("2014-05-11 00:00:00.000000000"), dt.getStartOfWeek());
+    assertEquals(new DateTime("2014-05-17 23:59:59.999999999"), dt.getEndOfWeek());
+    assertEquals(new DateTime("2014-04-01 00:00:00.000000000"), dt.getStartOfQuarter());
+    assertEquals(new DateTime("2014-06-30 23:59:59.999999999"), dt.getEndOfQuarter());
+    assertEquals(new DateTime("2014-01-01 00:00:00.000000000"), dt.getStartOfYear());
+    assertEquals(new DateTime("2014-12-31 23:59:59.999999999"), dt.getEndOfYear());
+    assertEquals(new DateTime("2014-05-16 00:00:00.000000000"), dt.getStartOf(DateTime.Period.DAY, 2));
+    assertEquals(new DateTime("2014-04-27 00:00:00.000000000"), dt.getStartOf(DateTime.Period.WEEK, -2));
+    assertEquals(new DateTime("2014-06-01 00:00:00.000000000"), dt.getStartOf(DateTime.Period.MONTH, 1));
+    assertEquals(new DateTime("2014-02-28 23:59:59.999999999"), dt.getEndOf(DateTime.Period.MONTH, -3));
+    assertEquals(new DateTime("2016-02-29 23:59:59.999999999"), dt.getEndOf(DateTime.Period.MONTH, 21));
+    assertEquals(new DateTime("2013-10-01 00:00:00.000000000"), dt.getStartOf(DateTime.Period.QUARTER, -2));
+    assertEquals(new DateTime("2015-03-31 23:59:59.999999999"), dt.getEndOf(DateTime.Period.QUARTER, 3));
+    assertEquals(new DateTime("2024-12-31 23:59:59.999999999"), dt.getEndOf(DateTime.Period.YEAR, 10));
+    //agrees with the older methods
+    assertEquals(dt.getStartOfMonth(), dt.getStartOf(DateTime.Period.MONTH, 0));
+    assertEquals(dt.getEndOfMonth(), dt.getEndOf(DateTime.Period.MONTH, 0));
+    assertEquals(dt.getStartOfDay(), dt.getStartOf(DateTime.Period.DAY, 0));
+    assertEquals(dt.getEndOfDay(), dt.getEndOf(DateTime.Period.DAY, 0));
+    try {
+      new DateTime("9999-12-31").getEndOfWeek();
+      fail();
+    }
+    catch(DateTime.ItemOutOfRange ex){
+      //expected
+    }
+    try {
+      dt.getStartOf(DateTime.Period.YEAR, -2014);
+      fail();
+    }
+    catch(DateTime.ItemOutOfRange ex){
+      //expected
+    }
+  }
+
+  public void testSerialization() throws Exception {
+    testRoundTrip(new DateTime("2014-06-05 13:47:59.5"));
+    testRoundTrip(new DateTime(2014, 6, 5, 13, 47, null, null));
+    testRoundTrip(DateTime.forTimeOnly(1, 2, 3, 4));
+    //text which can't be parsed still fails when used, after a round trip
+    DateTime bad = roundTrip(new DateTime("2014-13-01"));
+    assertEquals("2014-13-01", bad.toString());
+    try {
+      bad.getYear();
+      fail();
+    }
+    catch (DateTime.ItemOutOfRange ex){
+      //expected
+    }
+  }
+
+  public void testIsoWeek(){
+    testIsoWeek("2014-06-15", 2014, 24);
+    testIsoWeek("2014-12-29", 2015, 1);
+    testIsoWeek("2016-01-01", 2015, 53);
+    testIsoWeek("2008-12-29", 2009, 1);
+    testIsoWeek("2010-01-03", 2009, 53);
+    testIsoWeek("2010-01-04", 2010, 1);
+    testIsoWeek("0001-01-01", 1, 1);
+    testIsoWeek("9999-12-31", 9999, 52);
+    //agrees with the JDK, over a range of years
+    GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    calendar.setFirstDayOfWeek(Calendar.MONDAY);
+    calendar.setMinimalDaysInFirstWeek(4);
+    calendar.clear();
+    calendar.set(1990, Calendar.JANUARY, 1);
+    DateTime day = DateTime.forDateOnly(1990, 1, 1);
+    while(day.getYear() < 2040){
+      int week = calendar.get(Calendar.WEEK_OF_YEAR);
+      int weekYear = day.getYear();
+      if (week == 1 && day.getMonth() == 12) {
+        ++weekYear;
+      }
+      else if (week >= 52 && day.getMonth() == 1) {
+        --weekYear;
+      }
+      assertEquals(day.toString(), week, day.getIsoWeek().intValue());
+      assertEquals(day.toString(), weekYear, day.getIsoWeekYear().intValue());
+      day = day.plusDays(1);
+      calendar.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    assertEquals(2015, PackedDateTime.isoWeekYear(PackedDateTime.pack(new DateTime("2014-12-31 10:00"))));
+    assertEquals(1, PackedDateTime.isoWeek(PackedDateTime.pack(new DateTime("2014-12-31 10:00"))));
+  }
+
+  public void testUnparseableText(){
+    //the constructor never fails for bad text; each use throws a new exception, from the caller
+    DateTime mysql = new DateTime("2005-00-00");
+    assertEquals("2005-00-00", mysql.toString());
+    assertFalse(DateTime.isParseable("2005-00-00"));
+    DateTime.ItemOutOfRange first = null;
+    try {
+      mysql.getYear();
+      fail();
+    }
+    catch(DateTime.ItemOutOfRange ex){
+      assertTrue(ex.getMessage().startsWith("Month is not in the range"));
+      first = ex;
+    }
+    try {
+      mysql.getMonth();
+      fail();
+    }
+    catch(DateTime.ItemOutOfRange ex){
+      assertNotSame(first, ex);
+      assertTrue(thrownBy("getMonth", ex));
+    }
+    try {
+      new DateTime("2005-01-0x").getDay();
+      fail();
+    }
+    catch(DateTimeParser.UnknownDateTimeFormat ex){
+      assertEquals("Unexpected format for date:2005-01-0x", ex.getMessage());
+    }
+    //two characters : a year, not a time
+    assertEquals(Integer.valueOf(12), new DateTime("12").getYear());
+    assertEquals(new DateTime(2005, 1, 2, 3, 4, 5, 6).hashCode(), new DateTime("2005-01-02 03:04:05.000000006").hashCode());
+  }
+  
+  public void testRange(){
+    DateTime start = new DateTime("2012-01-31 10:30");
+    //each item is calculated directly, and must match stepping one at a time 
+    DateTimeRange days = DateTime.range(start, new DateTime("2013-03-01"), 3, DateTime.Unit.DAY);
+    DateTime expected = start;
+    for(DateTime day : days){
+      assertEquals(expected, day);
+      expected = expected.plusDays(3);
+    }
+    assertTrue(expected.gteq(new DateTime("2013-03-01")));
+    assertEquals(132, days.size());
+    
+    DateTimeRange months = DateTime.range(start, new DateTime("2012-05-31 10:30"), 1, DateTime.Unit.MONTH);
+    assertEquals(4, months.size());
+    assertEquals(new DateTime("2012-02-29 10:30"), months.get(1));
+    assertEquals(new DateTime("2012-04-30 10:30"), months.get(3));
+    assertEquals(2, DateTime.range(start, new DateTime("2014-01-31 10:30"), 1, DateTime.Unit.YEAR).size());
+    
+    DateTimeRange hours = DateTime.range(DateTime.forDateOnly(2012, 12, 31), DateTime.forDateOnly(2013, 1, 2), 5, DateTime.Unit.HOUR);
+    assertEquals(10, hours.size());
+    assertEquals(new DateTime("2012-12-31 00:00:00"), hours.get(0));
+    assertEquals(new DateTime("2013-01-01 01:00:00"), hours.get(5));
+    assertEquals(new DateTime("2013-01-01 21:00:00"), hours.get(9));
+    
+    DateTimeRange seconds = DateTime.range(new DateTime("9999-12-31 23:59:50.5"), new DateTime("9999-12-31 23:59:59.9"), 1, DateTime.Unit.SECOND);
+    assertEquals(10, seconds.size());
+    assertEquals(new DateTime("9999-12-31 23:59:59.5"), seconds.get(9));
+    assertEquals(0, DateTime.range(start, start, 1, DateTime.Unit.MINUTE).size());
+    assertEquals(0, DateTime.range(start, new DateTime("2001-01-01"), 1, DateTime.Unit.MINUTE).size());
+    
+    List<DateTimeRange> pieces = days.split(4);
+    assertEquals(4, pieces.size());
+    int total = 0;
+    for(DateTimeRange piece : pieces){
+      assertEquals(days.get(total), piece.get(0));
+      total = total + piece.size();
+    }
+    assertEquals(days.size(), total);
+    assertEquals(2, DateTime.range(start, start.plusDays(2), 1, DateTime.Unit.DAY).split(10).size());
+    
+    try {
+      DateTime.range(start, start.plusDays(2), 1, DateTime.Unit.NANOSECONDS);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    try {
+      days.get(days.size());
+      fail();
+    }
+    catch(IndexOutOfBoundsException ex){
+      //expected
+    }
+  }
+
   // PRIVATE
   
   private static final boolean SUCCESS = true;
@@ -837,6 +1082,14 @@ public final class TESTDateTime  extends TestCase  {
     return result;
   }
   
+  private static boolean thrownBy(String aMethodName, Throwable aEx){
+    boolean result = false;
+    for(StackTraceElement frame : aEx.getStackTrace()){
+      result = result || aMethodName.equals(frame.getMethodName());
+    }
+    return result;
+  }
+  
   private static void log(String aMsg) {
     System.out.println(aMsg);
   }
@@ -1154,6 +1407,29 @@ public final class TESTDateTime  extends TestCase  {
     }
   }
 
+  private void testRoundTrip(DateTime aDateTime) throws Exception {
+    DateTime copy = roundTrip(aDateTime);
+    assertEquals(aDateTime, copy);
+    assertEquals(aDateTime.hashCode(), copy.hashCode());
+    assertEquals(aDateTime.toString(), copy.toString());
+    assertEquals(aDateTime.presentUnits(), copy.presentUnits());
+  }
+
+  private DateTime roundTrip(DateTime aDateTime) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream output = new ObjectOutputStream(bytes);
+    output.writeObject(aDateTime);
+    output.close();
+    ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    return (DateTime)input.readObject();
+  }
+
+  private void testIsoWeek(String aDate, int aExpectedYear, int aExpectedWeek){
+    DateTime date = new DateTime(aDate);
+    assertEquals(aDate, aExpectedYear, date.getIsoWeekYear().intValue());
+    assertEquals(aDate, aExpectedWeek, date.getIsoWeek().intValue());
+  }
+
   private void testNumSecondsFrom(String a, String b, long aExpected){
     DateTime dtA = new DateTime(a);
     DateTime dtB = new DateTime(b);
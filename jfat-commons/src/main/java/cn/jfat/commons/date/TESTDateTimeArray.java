@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTDateTimeArray extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTDateTimeArray.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTDateTimeArray(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testBehavesLikeList(){
+    List<DateTime> expected = new ArrayList<DateTime>(ITEMS);
+    DateTimeArray array = new DateTimeArray(0);
+    for(DateTime item : ITEMS){
+      array.add(item);
+    }
+    assertEquals(expected, array);
+    assertEquals(expected.hashCode(), array.hashCode());
+
+    DateTime replaced = array.set(1, new DateTime("2014-06-05 13:47:59.123"));
+    assertEquals(expected.set(1, new DateTime("2014-06-05 13:47:59.123")), replaced);
+    array.add(0, new DateTime("2001-01-01"));
+    expected.add(0, new DateTime("2001-01-01"));
+    assertEquals(expected.remove(3), array.remove(3));
+    assertEquals(expected, array);
+    assertEquals(expected.remove(1), array.remove(1));
+    assertEquals(expected, array);
+    array.clear();
+    assertTrue(array.isEmpty());
+  }
+
+  public void testNanosAreAddedLazily(){
+    DateTimeArray array = new DateTimeArray();
+    array.add(new DateTime("2014-01-01"));
+    array.add(new DateTime("2014-01-01 10:00:00"));
+    assertEquals(PackedDateTime.ABSENT, array.getNanos(0));
+    array.add(new DateTime("2014-01-01 10:00:00.5"));
+    assertEquals(PackedDateTime.ABSENT, array.getNanos(0));
+    assertEquals(500000000, array.getNanos(2));
+    assertEquals(new DateTime("2014-01-01"), array.get(0));
+    assertEquals(new DateTime("2014-01-01 10:00:00"), array.get(1));
+  }
+
+  public void testSortAndSearch(){
+    DateTimeArray array = new DateTimeArray(ITEMS);
+    array.sort();
+    List<DateTime> expected = new ArrayList<DateTime>(ITEMS);
+    Collections.sort(expected);
+    assertEquals(expected, array);
+    for(DateTime item : expected){
+      assertEquals(Collections.binarySearch(expected, item), array.binarySearch(item));
+    }
+    DateTime missing = new DateTime("2014-01-01 10:00:00.1");
+    assertEquals(Collections.binarySearch(expected, missing), array.binarySearch(missing));
+    assertEquals(-1, array.binarySearch(new DateTime("00:00")));
+  }
+
+  public void testViews(){
+    DateTimeArray array = new DateTimeArray(ITEMS);
+    DateTimeArray view = array.subList(1, 4);
+    assertEquals(ITEMS.subList(1, 4), view);
+    view.sort();
+    List<DateTime> expected = new ArrayList<DateTime>(ITEMS);
+    Collections.sort(expected.subList(1, 4));
+    assertEquals(expected, array);
+    //writes through, both ways
+    view.set(0, new DateTime("1999-12-31"));
+    assertEquals(new DateTime("1999-12-31"), array.get(1));
+    array.set(2, new DateTime("1998-12-31"));
+    assertEquals(new DateTime("1998-12-31"), view.get(1));
+    assertEquals(new DateTime("1998-12-31"), view.subList(1, 2).get(0));
+    try {
+      view.add(new DateTime("2014-01-01"));
+      fail();
+    }
+    catch(UnsupportedOperationException ex){
+      //expected
+    }
+    try {
+      view.get(3);
+      fail();
+    }
+    catch(IndexOutOfBoundsException ex){
+      //expected
+    }
+  }
+
+  // PRIVATE
+
+  private static final List<DateTime> ITEMS = Arrays.asList(
+    new DateTime("2014-01-01 10:00"), new DateTime("2014-01-01"), new DateTime("10:00:00"), 
+    new DateTime("2014-01-01 10:00:00.5"), new DateTime("2014-01-01 10:00:00"), new DateTime("2013"),
+    new DateTime("2014-01-01 09:59:59.999999999"), new DateTime("2014-01-01 10:00:00.000000000")
+  );
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTDateTimeColumnFile extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTDateTimeColumnFile.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTDateTimeColumnFile(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testSortedFile() throws IOException {
+    //several blocks of the sparse index, with runs of equal items, and a mix of partial and full date-times
+    Random random = new Random(11);
+    List<DateTime> items = new ArrayList<DateTime>();
+    DateTime next = new DateTime("2014-01-01");
+    for(int idx = 0; idx < 5000; ++idx){
+      items.add(next);
+      if(random.nextInt(4) != 0){
+        next = new DateTime(2014, 1, 1, 0, 0, 0, 0).plus(0, 0, 0, 0, 0, idx + 1, random.nextInt(1000), DateTime.DayOverflow.Spillover);
+      }
+    }
+    File file = write(items);
+    DateTimeColumnFile column = DateTimeColumnFile.open(file);
+    assertEquals(items.size(), column.size());
+    assertTrue(column.isSorted());
+    assertEquals(items.get(0), column.getMin());
+    assertEquals(items.get(items.size() - 1), column.getMax());
+    for(int idx = 0; idx < items.size(); idx = idx + 97){
+      assertEquals(items.get(idx), column.get(idx));
+    }
+    for(int query = 0; query < 300; ++query){
+      DateTime target = items.get(random.nextInt(items.size()));
+      assertEquals(count(items, target, false), column.lowerBound(target));
+      assertEquals(count(items, target, true), column.upperBound(target));
+    }
+    assertEquals(0, column.lowerBound(new DateTime("2013-12-31")));
+    assertEquals(items.size(), column.lowerBound(new DateTime("2015-01-01")));
+    assertTrue(column.overlaps(new DateTime("2013-01-01"), new DateTime("2014-01-01 00:00:01")));
+    assertFalse(column.overlaps(new DateTime("2013-01-01"), new DateTime("2014-01-01")));
+    file.delete();
+  }
+
+  public void testUnsortedAndEmpty() throws IOException {
+    List<DateTime> items = new ArrayList<DateTime>();
+    items.add(new DateTime("2014-05-01 10:00"));
+    items.add(new DateTime("2014-04-01"));
+    File file = write(items);
+    DateTimeColumnFile column = DateTimeColumnFile.open(file);
+    assertFalse(column.isSorted());
+    assertEquals(new DateTime("2014-04-01"), column.getMin());
+    try {
+      column.lowerBound(new DateTime("2014-04-15"));
+      fail();
+    }
+    catch(IllegalStateException ex){
+      //expected
+    }
+    file.delete();
+
+    file = write(new ArrayList<DateTime>());
+    column = DateTimeColumnFile.open(file);
+    assertEquals(0, column.size());
+    assertNull(column.getMax());
+    assertFalse(column.overlaps(new DateTime("2014-01-01"), new DateTime("2015-01-01")));
+    file.delete();
+  }
+
+  public void testBadFile() throws IOException {
+    File file = File.createTempFile("jfat", ".dtc");
+    FileOutputStream output = new FileOutputStream(file);
+    output.write(new byte[100]);
+    output.close();
+    try {
+      DateTimeColumnFile.open(file);
+      fail();
+    }
+    catch(IOException ex){
+      //expected
+    }
+    file.delete();
+  }
+
+  // PRIVATE
+
+  private static File write(List<DateTime> aItems) throws IOException {
+    File result = File.createTempFile("jfat", ".dtc");
+    result.deleteOnExit();
+    DateTimeColumnFile.Writer writer = DateTimeColumnFile.create(result);
+    try {
+      for(DateTime item : aItems){
+        writer.append(item);
+      }
+    }
+    finally {
+      writer.close();
+    }
+    return result;
+  }
+
+  /** The number of items less than the target, or less than or equal to it. */
+  private static long count(List<DateTime> aItems, DateTime aTarget, boolean aIncludeEqual){
+    long result = 0;
+    for(DateTime item : aItems){
+      int comparison = item.compareTo(aTarget);
+      if(comparison < 0 || (aIncludeEqual && comparison == 0)){
+        ++result;
+      }
+    }
+    return result;
+  }
+}
@@ -179,6 +179,124 @@ public final class TESTDateTimeFormatter   extends TestCase   {
     testDate(SUCCESS, "2009-10-28 01:59:01", "YYYY-MM-DD WWWW hh:mm:ss a", months, weekdays, amPm, "2009-10-28 humpday 01:59:01 am");
   }
   
+  public void testRegisteredLocalization(){
+    List<String> months = Arrays.asList("J", "F", "M", "A", "M", "J", "J", "A", "S", "O", "N", "D");
+    List<String> weekdays = Arrays.asList("sunday", "monday", "tuesday", "humpday", "thursday", "friday", "saturday");
+    List<String> amPm = Arrays.asList("am", "pm");
+    CustomLocalization.register("humpday", months, weekdays, amPm);
+    DateTimeFormatter formatter = CustomLocalization.forName("humpday").formatter("WWWW MMMM D h12 a");
+    assertEquals("humpday O 28 4 pm", formatter.format(new DateTime("2009-10-28 16:59:01")));
+    assertEquals("humpday O 28 4 pm", new DateTime("2009-10-28 16:59:01").format("WWWW MMMM D h12 a", CustomLocalization.forName("humpday")));
+    try {
+      CustomLocalization.forName("no such name");
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    try {
+      CustomLocalization.register("bad", months.subList(0, 11), weekdays, amPm);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+  
+  public void testFormatSet(){
+    DateTime dateTime = new DateTime("2009-10-28 13:59:01.123456789");
+    FormatSet formats = new FormatSet(Locale.CANADA, "YYYY-MM-DD", "YYYY-MM-DD hh", "WWWW, MMMM D", "hh:mm:ss.fff");
+    String[] texts = formats.format(dateTime);
+    assertEquals(4, texts.length);
+    assertEquals("2009-10-28", texts[0]);
+    assertEquals("2009-10-28 13", texts[1]);
+    assertEquals("Wednesday, October 28", texts[2]);
+    assertEquals("13:59:01.123", texts[3]);
+    
+    StringBuilder day = new StringBuilder("day:");
+    StringBuilder rest = new StringBuilder();
+    formats.format(dateTime, day, rest, rest, rest);
+    assertEquals("day:2009-10-28", day.toString());
+    assertEquals("2009-10-28 13Wednesday, October 2813:59:01.123", rest.toString());
+    
+    char[] buffer = new char[100];
+    int[] ends = new int[4];
+    int end = formats.format(dateTime, buffer, 5, ends);
+    assertEquals(5 + 10 + 13 + 21 + 12, end);
+    assertEquals("2009-10-28 13", new String(buffer, ends[0], ends[1] - ends[0]));
+    assertEquals("Wednesday, October 28", new String(buffer, ends[1], ends[2] - ends[1]));
+    try {
+      formats.format(dateTime, new char[20], 0, ends);
+      fail();
+    }
+    catch(IndexOutOfBoundsException ex){
+      //expected
+    }
+    try {
+      formats.format(dateTime, day, rest);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+  
+  public void testFixedWidth(){
+    testDate(SUCCESS, "2009-10-28 01:59:01.123456789", "YYYYMMDDhhmmss", "20091028015901");
+    testDate(SUCCESS, "2009-10-28 13:05:01.123456789", "YYYY-MM-DD hh:mm:ss.fff", "2009-10-28 13:05:01.123");
+    testDate(SUCCESS, "2009-10-28 13:05:01.000000789", "YY/MM/DD hh12:mm:ss.fffffffff", "09/10/28 01:05:01.000000789");
+    testDate(SUCCESS, "2009-10-28 00:05:01", "hh12:mm:ss.ff", "12:05:01.00");
+    testDate(SUCCESS, "2009-10-28 13:05:01.5", "|T|hh|h|mm", "T13h05");
+    //these fall back to the general formatting code
+    testDate(SUCCESS, "0999-10-28", "YYYY-MM-DD", "999-10-28");
+    testDate(SUCCESS, "0999-10-28", "YY-MM-DD", "9-10-28");
+    testDate(SUCCESS, "2009-10-28", "YYYY-MM-DD hh:mm", "2009-10-28 :");
+    testDate(SUCCESS, "13:05", "YYYY-MM-DD hh:mm:ss.fff", "-- 13:05:.000");
+  }
+  
+  public void testBulkFormat(){
+    DateTime[] dateTimes = new DateTime[50000];
+    for(int idx = 0; idx < dateTimes.length; ++idx){
+      dateTimes[idx] = DateTime.forDateOnly(2009, 1, 1).plusDays(idx % 1000);
+    }
+    dateTimes[7] = null;
+    dateTimes[8] = new DateTime("2009-10-28 01:59:01");
+    FormattedColumn column = new BulkFormatter("YYYY-MM-DD").format(dateTimes);
+    assertEquals(dateTimes.length, column.size());
+    assertEquals("2009-01-01", column.get(0));
+    assertEquals("", column.get(7));
+    assertEquals("2009-10-28", column.get(8));
+    for(int idx = 0; idx < dateTimes.length; ++idx){
+      if(dateTimes[idx] != null){
+        assertEquals(dateTimes[idx].format("YYYY-MM-DD"), column.get(idx));
+      }
+    }
+    assertEquals((dateTimes.length - 1) * 10, column.getChars().length);
+  }
+  
+  public void testBulkFormatPacked(){
+    DateTime a = new DateTime("2009-10-28 13:59:01.123456789");
+    DateTime b = new DateTime("2010-01-02 00:00:00");
+    long[] packed = {PackedDateTime.pack(a), PackedDateTime.pack(b)};
+    int[] nanos = {PackedDateTime.nanosOf(a), PackedDateTime.nanosOf(b)};
+    FormattedColumn column = new BulkFormatter("WWW, D MMM YYYY h12:mm a", Locale.CANADA).format(packed, nanos);
+    assertEquals(a.format("WWW, D MMM YYYY h12:mm a", Locale.CANADA), column.get(0));
+    assertEquals("Sat, 2 Jan 2010 12:00 AM", column.get(1));
+    assertEquals("13:59:01.123", new BulkFormatter("hh:mm:ss.fff").format(packed, nanos).get(0));
+    assertEquals("00:00:00.000", new BulkFormatter("hh:mm:ss.fff").format(packed, null).get(1));
+  }
+  
+  public void testBulkFormatFailsForUnparseableRow(){
+    DateTime[] dateTimes = {new DateTime("2009-10-28"), new DateTime("BLAH")};
+    try {
+      new BulkFormatter("YYYY-MM-DD").format(dateTimes);
+      fail();
+    }
+    catch(RuntimeException ex){
+      //expected
+    }
+  }
+  
   // PRIVATE
   
   private static final boolean SUCCESS = true;
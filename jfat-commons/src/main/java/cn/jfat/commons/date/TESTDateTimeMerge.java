@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTDateTimeMerge extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTDateTimeMerge.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTDateTimeMerge(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testIterators(){
+    Random random = new Random(42);
+    for(int numSources = 0; numSources <= 9; ++numSources){
+      List<List<DateTime>> sources = randomSources(random, numSources);
+      List<DateTime> all = new ArrayList<DateTime>();
+      for(List<DateTime> source : sources){
+        all.addAll(source);
+      }
+      Collections.sort(all);
+      assertEquals(all, toList(DateTimeMerge.merge(iteratorsOver(sources), false)));
+      assertEquals(new ArrayList<DateTime>(new TreeSet<DateTime>(all)), toList(DateTimeMerge.merge(iteratorsOver(sources), true)));
+    }
+  }
+
+  public void testStableWithKey(){
+    List<String[]> first = new ArrayList<String[]>();
+    first.add(new String[]{"2014-01-01", "a"});
+    first.add(new String[]{"2014-01-03", "b"});
+    List<String[]> second = new ArrayList<String[]>();
+    second.add(new String[]{"2014-01-01", "c"});
+    second.add(new String[]{"2014-01-02", "d"});
+    DateTimeMerge.Key<String[]> key = new DateTimeMerge.Key<String[]>(){
+      public DateTime dateTimeOf(String[] aItem){
+        return new DateTime(aItem[0]);
+      }
+    };
+    List<List<String[]>> sources = new ArrayList<List<String[]>>();
+    sources.add(second);
+    sources.add(first);
+    StringBuilder order = new StringBuilder();
+    for(Iterator<String[]> iter = DateTimeMerge.merge(iteratorsOver(sources), key, false); iter.hasNext(); ){
+      order.append(iter.next()[1]);
+    }
+    assertEquals("cadb", order.toString());
+  }
+
+  public void testArrays(){
+    Random random = new Random(7);
+    for(int numSources = 0; numSources <= 9; ++numSources){
+      List<List<DateTime>> sources = randomSources(random, numSources);
+      long[][] packed = new long[numSources][];
+      int[][] nanos = new int[numSources][];
+      List<DateTime> all = new ArrayList<DateTime>();
+      for(int source = 0; source < numSources; ++source){
+        List<DateTime> items = sources.get(source);
+        packed[source] = new long[items.size()];
+        nanos[source] = new int[items.size()];
+        for(int idx = 0; idx < items.size(); ++idx){
+          packed[source][idx] = PackedDateTime.pack(items.get(idx));
+          nanos[source][idx] = PackedDateTime.nanosOf(items.get(idx));
+        }
+        all.addAll(items);
+      }
+      Collections.sort(all);
+      long[] packedOut = new long[all.size()];
+      int[] nanosOut = new int[all.size()];
+      int count = DateTimeMerge.merge(packed, nanos, false, packedOut, nanosOut);
+      assertEquals(all.size(), count);
+      for(int idx = 0; idx < count; ++idx){
+        assertEquals(all.get(idx), PackedDateTime.toDateTime(packedOut[idx], nanosOut[idx]));
+      }
+      List<DateTime> distinct = new ArrayList<DateTime>(new TreeSet<DateTime>(all));
+      count = DateTimeMerge.merge(packed, nanos, true, packedOut, nanosOut);
+      assertEquals(distinct.size(), count);
+      for(int idx = 0; idx < count; ++idx){
+        assertEquals(distinct.get(idx), PackedDateTime.toDateTime(packedOut[idx], nanosOut[idx]));
+      }
+    }
+  }
+
+  // PRIVATE
+
+  private List<List<DateTime>> randomSources(Random aRandom, int aNumSources){
+    List<List<DateTime>> result = new ArrayList<List<DateTime>>();
+    for(int source = 0; source < aNumSources; ++source){
+      List<DateTime> items = new ArrayList<DateTime>();
+      int size = source == 2 ? 0 : aRandom.nextInt(30);
+      for(int idx = 0; idx < size; ++idx){
+        //a narrow range, to give many duplicates
+        items.add(new DateTime(2014, 1, 1 + aRandom.nextInt(3), aRandom.nextInt(2), 0, 0, aRandom.nextBoolean() ? null : aRandom.nextInt(2)));
+      }
+      Collections.sort(items);
+      result.add(items);
+    }
+    return result;
+  }
+
+  private static <T> List<Iterator<T>> iteratorsOver(List<List<T>> aSources){
+    List<Iterator<T>> result = new ArrayList<Iterator<T>>();
+    for(List<T> source : aSources){
+      result.add(source.iterator());
+    }
+    return result;
+  }
+
+  private static <T> List<T> toList(Iterator<T> aIterator){
+    List<T> result = new ArrayList<T>();
+    while(aIterator.hasNext()){
+      result.add(aIterator.next());
+    }
+    return result;
+  }
+}
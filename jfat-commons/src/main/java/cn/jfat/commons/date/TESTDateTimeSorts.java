@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTDateTimeSorts extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTDateTimeSorts.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTDateTimeSorts(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testPartialDateTimes(){
+    //absent units sort first, as in compareTo
+    testSort(
+      new DateTime("2014-01-01 10:00"), new DateTime("2014-01-01"), new DateTime("10:00:00"), 
+      new DateTime("2014-01-01 10:00:00.5"), new DateTime("2014-01-01 10:00:00"), new DateTime("2013"),
+      new DateTime("2014-01-01 09:59:59.999999999"), new DateTime("2014-01-01 10:00:00.000000000")
+    );
+    testSort();
+    testSort(new DateTime("2014-01-01"));
+  }
+
+  public void testRandom(){
+    testSort(randomDateTimes(new Random(11), 5000));
+  }
+
+  public void testLargeRunsInParallel(){
+    //large enough to be split into several tasks
+    testSort(randomDateTimes(new Random(12), 200000));
+  }
+
+  public void testStable(){
+    DateTime first = new DateTime("2014-01-01 10:00");
+    DateTime second = new DateTime("2014-01-01 10:00");
+    DateTime[] items = {second, new DateTime("2015-01-01"), first, new DateTime("2013-01-01")};
+    DateTimeSorts.sort(items);
+    assertSame(second, items[1]);
+    assertSame(first, items[2]);
+  }
+
+  public void testList(){
+    List<DateTime> items = new ArrayList<DateTime>(Arrays.asList(randomDateTimes(new Random(13), 100)));
+    List<DateTime> expected = new ArrayList<DateTime>(items);
+    Collections.sort(expected);
+    DateTimeSorts.sort(items);
+    assertEquals(expected, items);
+  }
+
+  public void testPrimitives(){
+    DateTime[] items = randomDateTimes(new Random(14), 1000);
+    long[] packed = new long[items.length];
+    int[] nanos = new int[items.length];
+    for(int idx = 0; idx < items.length; ++idx){
+      packed[idx] = PackedDateTime.pack(items[idx]);
+      nanos[idx] = PackedDateTime.nanosOf(items[idx]);
+    }
+    DateTimeSorts.sort(packed, nanos);
+    Arrays.sort(items);
+    for(int idx = 0; idx < items.length; ++idx){
+      assertEquals(items[idx], PackedDateTime.toDateTime(packed[idx], nanos[idx]));
+    }
+    //without nanoseconds
+    long[] expected = packed.clone();
+    Arrays.sort(expected);
+    Collections.reverse(Arrays.asList(items));
+    for(int idx = 0; idx < items.length; ++idx){
+      packed[idx] = PackedDateTime.pack(items[idx]);
+    }
+    DateTimeSorts.sort(packed, null);
+    assertTrue(Arrays.equals(expected, packed));
+  }
+
+  public void testRange(){
+    testSortRange(randomDateTimes(new Random(15), 1000), 100, 900);
+    testSortRange(randomDateTimes(new Random(16), 10), 3, 3);
+    //large enough to be split into several tasks
+    testSortRange(randomDateTimes(new Random(17), 200000), 7, 199990);
+    try {
+      DateTimeSorts.sort(new long[5], new int[5], 3, 2);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    try {
+      DateTimeSorts.sort(new long[5], new int[4], 0, 5);
+      fail();
+    }
+    catch(ArrayIndexOutOfBoundsException ex){
+      //expected
+    }
+  }
+
+  // PRIVATE
+
+  private void testSort(DateTime... aItems){
+    DateTime[] expected = aItems.clone();
+    Arrays.sort(expected);
+    DateTime[] actual = aItems.clone();
+    DateTimeSorts.sort(actual);
+    assertTrue(Arrays.equals(expected, actual));
+  }
+
+  /** Sort a range of the primitive forms, and check that the items outside the range are not touched. */
+  private void testSortRange(DateTime[] aItems, int aFrom, int aTo){
+    long[] packed = new long[aItems.length];
+    int[] nanos = new int[aItems.length];
+    for(int idx = 0; idx < aItems.length; ++idx){
+      packed[idx] = PackedDateTime.pack(aItems[idx]);
+      nanos[idx] = PackedDateTime.nanosOf(aItems[idx]);
+    }
+    DateTime[] expected = aItems.clone();
+    Arrays.sort(expected, aFrom, aTo);
+    DateTimeSorts.sort(packed, nanos, aFrom, aTo);
+    for(int idx = 0; idx < aItems.length; ++idx){
+      assertEquals(expected[idx], PackedDateTime.toDateTime(packed[idx], nanos[idx]));
+    }
+  }
+
+  private DateTime[] randomDateTimes(Random aRandom, int aSize){
+    DateTime[] result = new DateTime[aSize];
+    for(int idx = 0; idx < aSize; ++idx){
+      int kind = aRandom.nextInt(4);
+      if(kind == 0){
+        result[idx] = DateTime.forDateOnly(1 + aRandom.nextInt(9999), 1 + aRandom.nextInt(12), 1 + aRandom.nextInt(28));
+      }
+      else if (kind == 1){
+        result[idx] = DateTime.forTimeOnly(aRandom.nextInt(24), aRandom.nextInt(60), aRandom.nextInt(60), null);
+      }
+      else {
+        result[idx] = new DateTime(
+          2000 + aRandom.nextInt(20), 1 + aRandom.nextInt(12), 1 + aRandom.nextInt(28), 
+          aRandom.nextInt(24), aRandom.nextInt(60), aRandom.nextInt(60), kind == 2 ? null : aRandom.nextInt(1000000000)
+        );
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import junit.framework.TestCase;
+
+/**
+ Timing tests, reporting the time and memory taken per call, after the JIT has warmed up.
+
+ <P>Results are printed, not asserted, since they depend on the JVM and the machine. Run with <tt>main</tt>,
+ and compare runs with <tt>-XX:-DoEscapeAnalysis</tt>, to see how much of the allocation is removed by escape analysis.
+ Bytes per call are reported only on JVMs which can measure allocation per thread.
+
+ <P>This class is not part of {@link TESTAll}, since it only prints timings, and takes seconds to run.
+
+ <P>On HotSpot 17, the chain of arithmetic reports about 16 bytes per call, and about 288 without escape analysis.
+ The remaining 16 bytes are a single <tt>Integer</tt>, for the year. <tt>Integer.valueOf</tt> returns a cached
+ object for values up to 127, and a new one above that; since the result might be the shared cached object,
+ the JIT does not remove the boxing. All <tt>DateTime</tt> objects in the chain, and the other boxed units, which are
+ small enough to be cached, are removed. Starting the chain in year 100 reports 0 bytes per call.
+*/
+public final class TESTDateTimeSpeed extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTDateTimeSpeed.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTDateTimeSpeed(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testArithmeticChain(){
+    final DateTime start = new DateTime("2014-05-05 13:45:10.123456789");
+    report("plusDays(1).getStartOfDay().truncate(HOUR)", new Task(){
+      long run(int aNumCalls){
+        long result = 0;
+        DateTime dt = start;
+        for(int idx = 0; idx < aNumCalls; ++idx){
+          //only primitives leave the chain, so its DateTimes may be scalar-replaced
+          result = result + dt.plusDays(1).getStartOfDay().truncate(DateTime.Unit.HOUR).getDay();
+        }
+        return result;
+      }
+    });
+  }
+
+  public void testPeriods(){
+    final DateTime[] days = new DateTime[366];
+    for(int idx = 0; idx < days.length; ++idx){
+      days[idx] = DateTime.forDateOnly(2012, 1, 1).plusDays(idx);
+    }
+    report("getEndOfMonth()", new Task(){
+      long run(int aNumCalls){
+        long result = 0;
+        for(int idx = 0; idx < aNumCalls; ++idx){
+          result = result + days[idx % days.length].getEndOfMonth().getDay();
+        }
+        return result;
+      }
+    });
+    report("getStartOfWeek()", new Task(){
+      long run(int aNumCalls){
+        long result = 0;
+        for(int idx = 0; idx < aNumCalls; ++idx){
+          result = result + days[idx % days.length].getStartOfWeek().getDay();
+        }
+        return result;
+      }
+    });
+    report("getEndOf(QUARTER, 1)", new Task(){
+      long run(int aNumCalls){
+        long result = 0;
+        for(int idx = 0; idx < aNumCalls; ++idx){
+          result = result + days[idx % days.length].getEndOf(DateTime.Period.QUARTER, 1).getDay();
+        }
+        return result;
+      }
+    });
+  }
+
+  // PRIVATE
+
+  private static final int NUM_CALLS = 200000;
+  private static final int NUM_WARMUPS = 10;
+
+  /** Runs the code being timed, and returns something computed from it, so the JIT can't drop it. */
+  private static abstract class Task {
+    abstract long run(int aNumCalls);
+  }
+
+  private static void report(String aName, Task aTask){
+    long check = 0;
+    for(int idx = 0; idx < NUM_WARMUPS; ++idx){
+      check = check + aTask.run(NUM_CALLS);
+    }
+    long bytesBefore = allocatedBytes();
+    long start = System.nanoTime();
+    check = check + aTask.run(NUM_CALLS);
+    long nanos = System.nanoTime() - start;
+    long bytesAfter = allocatedBytes();
+    String bytes = bytesBefore < 0 ? "n/a" : String.valueOf((bytesAfter - bytesBefore) / NUM_CALLS);
+    System.out.println(aName + ": " + (nanos / NUM_CALLS) + " ns/call, " + bytes + " bytes/call (check " + check + ")");
+    assertTrue(check != 0);
+  }
+
+  /** Bytes allocated by the current thread so far, or -1 if the JVM can't say. */
+  private static long allocatedBytes(){
+    long result = -1;
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if(threads instanceof com.sun.management.ThreadMXBean){
+      com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean)threads;
+      if(hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()){
+        result = hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return result;
+  }
+}
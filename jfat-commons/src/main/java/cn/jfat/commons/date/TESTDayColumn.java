@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTDayColumn extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTDayColumn.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTDayColumn(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testAgreesWithDateTime(){
+    List<DateTime> dates = Arrays.asList(
+      new DateTime("0001-01-01"), new DateTime("1858-11-17"), new DateTime("2012-02-29"), 
+      new DateTime("2014-06-05"), new DateTime("2014-12-31"), new DateTime("9999-12-31")
+    );
+    int[] days = DayColumn.fromDateTimes(dates);
+    assertEquals(dates, DayColumn.toDateTimes(days));
+    int[] out = new int[days.length];
+
+    DayColumn.weekDays(days, out);
+    for(int idx = 0; idx < days.length; ++idx){
+      assertEquals(dates.get(idx).getWeekDay().intValue(), out[idx]);
+    }
+    DayColumn.years(days, out);
+    for(int idx = 0; idx < days.length; ++idx){
+      assertEquals(dates.get(idx).getYear().intValue(), out[idx]);
+    }
+    DayColumn.monthStarts(days, out);
+    for(int idx = 0; idx < days.length; ++idx){
+      assertEquals(dates.get(idx).getStartOfMonth().getModifiedJulianDayNumber().intValue(), out[idx]);
+    }
+    DayColumn.monthEnds(days, out);
+    for(int idx = 0; idx < days.length; ++idx){
+      assertEquals(dates.get(idx).getEndOfMonth().getModifiedJulianDayNumber().intValue(), out[idx]);
+    }
+  }
+
+  public void testArithmetic(){
+    int[] days = DayColumn.fromDateTimes(Arrays.asList(new DateTime("2012-02-28"), new DateTime("2013-12-31")));
+    int[] later = new int[2];
+    DayColumn.plusDays(days, 1, later);
+    assertEquals(Arrays.asList(new DateTime("2012-02-29"), new DateTime("2014-01-01")), DayColumn.toDateTimes(later));
+    DayColumn.plusDays(days, new int[]{2, -365}, later);
+    assertEquals(Arrays.asList(new DateTime("2012-03-01"), new DateTime("2012-12-31")), DayColumn.toDateTimes(later));
+    int[] differences = new int[2];
+    DayColumn.numDaysFrom(days, later, differences);
+    assertEquals(2, differences[0]);
+    assertEquals(-365, differences[1]);
+    //in place
+    DayColumn.plusDays(days, 1, days);
+    assertEquals(new DateTime("2012-02-29"), DayColumn.toDateTimes(days).get(0));
+    try {
+      DayColumn.plusDays(days, 1, new int[1]);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTDaySet extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTDaySet.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTDaySet(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testAddRemoveContains(){
+    DaySet days = new DaySet();
+    assertTrue(days.isEmpty());
+    DateTime date = new DateTime("2014-06-05");
+    assertTrue(days.add(date));
+    assertFalse(days.add(date));
+    assertTrue(days.contains(date));
+    assertFalse(days.contains(date.plusDays(1)));
+    assertTrue(days.add(FIRST));
+    assertTrue(days.add(LAST));
+    assertEquals(3, days.cardinality());
+    assertEquals(FIRST, days.nextDay(Integer.MIN_VALUE + 1));
+    assertEquals(date.getModifiedJulianDayNumber().intValue(), days.nextDay(FIRST + 1));
+    assertEquals(LAST, days.nextDay(date.getModifiedJulianDayNumber() + 1));
+    assertEquals(DaySet.NONE, days.nextDay(LAST + 1));
+    assertTrue(days.remove(FIRST));
+    assertFalse(days.remove(FIRST));
+    assertEquals(2, days.cardinality());
+    try {
+      days.add(LAST + 1);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+
+  public void testRanges(){
+    DaySet days = new DaySet();
+    days.addRange(FIRST, LAST + 1);
+    assertEquals(LAST - FIRST + 1, days.cardinality());
+    days.optimize();
+    assertTrue(days.remove(1000));
+    assertFalse(days.contains(1000));
+    assertEquals(LAST - FIRST, days.cardinality());
+    assertTrue(Arrays.equals(new int[]{998, 999, 1001}, days.toArray(998, 1002)));
+  }
+
+  public void testAgainstTreeSet(){
+    Random random = new Random(3);
+    for(int round = 0; round < 20; ++round){
+      //sparse, dense, and runs of days, so all forms are used
+      TreeSet<Integer> expectedOne = new TreeSet<Integer>();
+      TreeSet<Integer> expectedTwo = new TreeSet<Integer>();
+      DaySet one = fill(random, expectedOne, round % 3);
+      DaySet two = fill(random, expectedTwo, (round + 1) % 3);
+      if(round % 2 == 0){
+        one.optimize();
+        two.optimize();
+      }
+      check(expectedOne, one);
+      TreeSet<Integer> union = new TreeSet<Integer>(expectedOne);
+      union.addAll(expectedTwo);
+      check(union, one.union(two));
+      TreeSet<Integer> intersection = new TreeSet<Integer>(expectedOne);
+      intersection.retainAll(expectedTwo);
+      check(intersection, one.intersection(two));
+      check(expectedOne, one);
+    }
+  }
+
+  // PRIVATE
+
+  private static final int FIRST = DateTime.forDateOnly(1, 1, 1).getModifiedJulianDayNumber();
+  private static final int LAST = DateTime.forDateOnly(9999, 12, 31).getModifiedJulianDayNumber();
+  private static final int BASE = DateTime.forDateOnly(2000, 1, 1).getModifiedJulianDayNumber();
+  private static final int SPAN = 200000;
+
+  private static DaySet fill(Random aRandom, TreeSet<Integer> aExpected, int aKind){
+    DaySet result = new DaySet();
+    if(aKind == 0){
+      for(int idx = 0; idx < 500; ++idx){
+        int day = BASE + aRandom.nextInt(SPAN);
+        assertEquals(aExpected.add(day), result.add(day));
+      }
+    }
+    else if(aKind == 1){
+      for(int idx = 0; idx < 30000; ++idx){
+        int day = BASE + aRandom.nextInt(SPAN / 4);
+        assertEquals(aExpected.add(day), result.add(day));
+      }
+      for(int idx = 0; idx < 500; ++idx){
+        int day = BASE + aRandom.nextInt(SPAN / 4);
+        assertEquals(aExpected.remove(day), result.remove(day));
+      }
+    }
+    else {
+      for(int idx = 0; idx < 20; ++idx){
+        int from = BASE + aRandom.nextInt(SPAN);
+        int to = from + aRandom.nextInt(3000);
+        result.addRange(from, to);
+        for(int day = from; day < to; ++day){
+          aExpected.add(day);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void check(TreeSet<Integer> aExpected, DaySet aDays){
+    assertEquals(aExpected.size(), aDays.cardinality());
+    int[] expected = new int[aExpected.size()];
+    int idx = 0;
+    for(Integer day : aExpected){
+      expected[idx++] = day;
+    }
+    assertTrue(Arrays.equals(expected, aDays.toArray(FIRST, LAST + 1)));
+  }
+}
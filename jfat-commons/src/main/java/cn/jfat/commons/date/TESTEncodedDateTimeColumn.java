@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTEncodedDateTimeColumn extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTEncodedDateTimeColumn.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTEncodedDateTimeColumn(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testSmall(){
+    List<DateTime> items = new ArrayList<DateTime>();
+    items.add(new DateTime("2014-05-05 10:00:00"));
+    items.add(new DateTime("2014-05-05"));
+    items.add(new DateTime("10:15"));
+    items.add(new DateTime("2014-05-05 10:00:00.123456789"));
+    EncodedDateTimeColumn column = new EncodedDateTimeColumn(items);
+    assertEquals(items, column);
+    assertEquals(4, column.size());
+    assertEquals(PackedDateTime.ABSENT, column.getNanos(1));
+    assertEquals(123456789, column.getNanos(3));
+    try {
+      column.get(4);
+      fail();
+    }
+    catch(IndexOutOfBoundsException ex){
+      //expected
+    }
+    try {
+      column.add(new DateTime("2014-05-05"));
+      fail();
+    }
+    catch(UnsupportedOperationException ex){
+      //expected
+    }
+  }
+
+  public void testEmpty(){
+    EncodedDateTimeColumn column = new EncodedDateTimeColumn(new DateTimeArray());
+    assertEquals(0, column.size());
+    assertEquals(0, column.getEncodedSize());
+    column.decode(0, 0, new long[0], new int[0], 0);
+  }
+
+  public void testBursts(){
+    //sorted, second resolution, many events per second : runs
+    Random random = new Random(50);
+    DateTimeArray items = new DateTimeArray();
+    DateTime second = new DateTime("2014-05-05 10:00:00");
+    for(int idx = 0; idx < 5000; ++idx){
+      if(random.nextInt(40) == 0){
+        second = second.plus(0, 0, 0, 0, 0, 1 + random.nextInt(3), 0, DateTime.DayOverflow.Spillover);
+      }
+      items.add(second);
+    }
+    EncodedDateTimeColumn column = checkSame(items, random);
+    assertTrue(column.toString(), column.toString().contains("RunBlock"));
+    assertTrue(column.getEncodedSize() < items.size());
+  }
+
+  public void testFewDistinct(){
+    Random random = new Random(51);
+    DateTimeArray items = new DateTimeArray();
+    for(int idx = 0; idx < 3000; ++idx){
+      items.add(new DateTime(2000 + random.nextInt(20), 1 + random.nextInt(12), 1, null, null, null, null));
+    }
+    EncodedDateTimeColumn column = checkSame(items, random);
+    assertTrue(column.toString(), column.toString().contains("DictionaryBlock"));
+  }
+
+  public void testNarrowRange(){
+    //unsorted, within a single hour, with varying nanoseconds : 2-byte offsets
+    Random random = new Random(52);
+    DateTimeArray items = new DateTimeArray();
+    for(int idx = 0; idx < 3000; ++idx){
+      items.add(new DateTime(2014, 5, 5, 10, random.nextInt(60), random.nextInt(60), random.nextInt(1000000000)));
+    }
+    EncodedDateTimeColumn column = checkSame(items, random);
+    assertTrue(column.toString(), column.toString().contains("OffsetBlock"));
+    assertTrue(column.getEncodedSize() <= 6L * items.size());
+  }
+
+  public void testWideRange(){
+    Random random = new Random(53);
+    DateTimeArray items = new DateTimeArray();
+    for(int idx = 0; idx < 3000; ++idx){
+      items.add(new DateTime(1 + random.nextInt(9999), 1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), 0, 0, 0));
+    }
+    EncodedDateTimeColumn column = checkSame(items, random);
+    assertTrue(column.toString(), column.toString().contains("PlainBlock"));
+  }
+
+  public void testBadRange(){
+    EncodedDateTimeColumn column = new EncodedDateTimeColumn(Arrays.asList(new DateTime("2014-05-05"), new DateTime("2014-05-06")));
+    try {
+      column.decode(1, 3, new long[5], new int[5], 0);
+      fail();
+    }
+    catch(IndexOutOfBoundsException ex){
+      //expected
+    }
+    try {
+      column.decode(0, 2, new long[5], new int[5], 4);
+      fail();
+    }
+    catch(IndexOutOfBoundsException ex){
+      //expected
+    }
+  }
+
+  // PRIVATE
+
+  /** Check every item, and decode random ranges, against the source. */
+  private static EncodedDateTimeColumn checkSame(DateTimeArray aItems, Random aRandom){
+    EncodedDateTimeColumn column = new EncodedDateTimeColumn(aItems);
+    assertEquals(aItems.size(), column.size());
+    for(int idx = 0; idx < aItems.size(); ++idx){
+      assertEquals(aItems.getPacked(idx), column.getPacked(idx));
+      assertEquals(aItems.getNanos(idx), column.getNanos(idx));
+    }
+    assertEquals(aItems.get(aItems.size() - 1), column.get(aItems.size() - 1));
+    long[] packed = new long[aItems.size() + 10];
+    int[] nanos = new int[aItems.size() + 10];
+    for(int trial = 0; trial < 50; ++trial){
+      int from = aRandom.nextInt(aItems.size());
+      int to = from + aRandom.nextInt(aItems.size() - from + 1);
+      int offset = aRandom.nextInt(10);
+      column.decode(from, to, packed, nanos, offset);
+      for(int idx = from; idx < to; ++idx){
+        assertEquals(aItems.getPacked(idx), packed[offset + idx - from]);
+        assertEquals(aItems.getNanos(idx), nanos[offset + idx - from]);
+      }
+    }
+    return column;
+  }
+}
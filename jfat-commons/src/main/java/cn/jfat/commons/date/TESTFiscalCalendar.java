@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTFiscalCalendar extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTFiscalCalendar.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTFiscalCalendar(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testFirstMonth(){
+    FiscalCalendar calendarYear = FiscalCalendar.forFirstMonth(1, true);
+    testFiscal(calendarYear, "2014-01-01", 2014, 1, 1);
+    testFiscal(calendarYear, "2014-12-31", 2014, 4, 12);
+
+    FiscalCalendar april = FiscalCalendar.forFirstMonth(4, false);
+    testFiscal(april, "2014-03-31", 2013, 4, 12);
+    testFiscal(april, "2014-04-01", 2014, 1, 1);
+    testFiscal(april, "2014-07-15", 2014, 2, 4);
+    testFiscal(april, "2015-01-01", 2014, 4, 10);
+    assertEquals(1, april.dayOfYear(new DateTime("2014-04-01")));
+    assertEquals(365, april.dayOfYear(new DateTime("2015-03-31")));
+    assertEquals(DayNumbers.modifiedJulianDay(2014, 4, 1), april.startOfYear(2014));
+
+    FiscalCalendar october = FiscalCalendar.forFirstMonth(10, true);
+    testFiscal(october, "2014-09-30", 2014, 4, 12);
+    testFiscal(october, "2014-10-01", 2015, 1, 1);
+    assertEquals(DayNumbers.modifiedJulianDay(2014, 10, 1), october.startOfYear(2015));
+  }
+
+  public void testFourFourFive(){
+    //ends on the last Saturday of December
+    FiscalCalendar last = FiscalCalendar.forFourFourFive(12, 7, false);
+    assertEquals(DayNumbers.modifiedJulianDay(2013, 12, 29), last.startOfYear(2014));
+    testFiscal(last, "2013-12-28", 2013, 4, 12);
+    testFiscal(last, "2013-12-29", 2014, 1, 1);
+    testFiscal(last, "2014-01-25", 2014, 1, 1); //end of week 4
+    testFiscal(last, "2014-01-26", 2014, 1, 2);
+    testFiscal(last, "2014-02-23", 2014, 1, 3); //week 9
+    testFiscal(last, "2014-03-29", 2014, 1, 3); //end of week 13
+    testFiscal(last, "2014-03-30", 2014, 2, 4);
+    testFiscal(last, "2014-12-27", 2014, 4, 12);
+    testFiscal(last, "2014-12-28", 2015, 1, 1);
+
+    //ends on the Saturday nearest to December 31; fiscal 2014 has 53 weeks
+    FiscalCalendar nearest = FiscalCalendar.forFourFourFive(12, 7, true);
+    assertEquals(DayNumbers.modifiedJulianDay(2013, 12, 29), nearest.startOfYear(2014));
+    assertEquals(DayNumbers.modifiedJulianDay(2015, 1, 4), nearest.startOfYear(2015));
+    testFiscal(nearest, "2015-01-03", 2014, 4, 12);
+    assertEquals(53, nearest.week(new DateTime("2015-01-03")));
+    assertEquals(371, nearest.dayOfYear(new DateTime("2015-01-03")));
+    testFiscal(nearest, "2015-01-04", 2015, 1, 1);
+    testFiscal(nearest, "2016-01-02", 2015, 4, 12);
+    assertEquals(52, nearest.week(new DateTime("2016-01-02")));
+  }
+
+  public void testEveryDayIsInOrder(){
+    FiscalCalendar[] calendars = {
+      FiscalCalendar.forFirstMonth(7, true), FiscalCalendar.forFourFourFive(1, 1, true), FiscalCalendar.forFourFourFive(9, 6, false)
+    };
+    for(FiscalCalendar calendar : calendars){
+      int start = DayNumbers.modifiedJulianDay(1999, 1, 1);
+      int end = DayNumbers.modifiedJulianDay(2030, 1, 1);
+      for(int day = start; day < end; ++day){
+        int year = calendar.fiscalYear(day);
+        int period = calendar.period(day);
+        if(calendar.dayOfYear(day) == 1){
+          assertEquals(calendar.toString(), year, calendar.fiscalYear(day - 1) + 1);
+          assertEquals(calendar.toString(), 1, period);
+          assertEquals(calendar.toString(), 12, calendar.period(day - 1));
+        }
+        else {
+          assertEquals(calendar.toString(), year, calendar.fiscalYear(day - 1));
+          int previous = calendar.period(day - 1);
+          assertTrue(calendar.toString(), period == previous || period == previous + 1);
+        }
+      }
+    }
+  }
+
+  public void testFirstDaysOfYearOne(){
+    //a year ending near the end of December may end in January, so the first days of year 1 may be in fiscal year 0
+    int firstDay = DayNumbers.modifiedJulianDay(1, 1, 1);
+    for(int weekDay = 1; weekDay <= 7; ++weekDay){
+      FiscalCalendar[] calendars = {FiscalCalendar.forFourFourFive(12, weekDay, true), FiscalCalendar.forFourFourFive(12, weekDay, false)};
+      for(FiscalCalendar calendar : calendars){
+        for(int day = firstDay; day < firstDay + 7; ++day){
+          int year = calendar.fiscalYear(day);
+          assertTrue(calendar.toString(), year == 0 || year == 1);
+          int start = calendar.startOfYear(year);
+          assertTrue(calendar.toString(), start <= day && day < calendar.startOfYear(year + 1));
+          assertEquals(calendar.toString(), day - start + 1, calendar.dayOfYear(day));
+          assertEquals(calendar.toString(), year == 0 ? 12 : 1, calendar.period(day));
+          assertEquals(calendar.toString(), year == 0 ? 4 : 1, calendar.quarter(day));
+        }
+      }
+    }
+    FiscalCalendar wednesday = FiscalCalendar.forFourFourFive(12, 4, true);
+    //0000-12-31 is a Sunday; the nearest Wednesday to it is 0001-01-03
+    assertEquals(0, wednesday.fiscalYear(DayNumbers.modifiedJulianDay(1, 1, 3)));
+    assertEquals(1, wednesday.fiscalYear(DayNumbers.modifiedJulianDay(1, 1, 4)));
+    assertEquals(0, wednesday.dayOfYear(DayNumbers.modifiedJulianDay(1, 1, 3)) % 7);
+  }
+
+  public void testOutOfRange(){
+    FiscalCalendar calendar = FiscalCalendar.forFourFourFive(12, 7, true);
+    try {
+      calendar.fiscalYear(DayNumbers.modifiedJulianDay(0, 12, 31));
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    try {
+      FiscalCalendar.forFirstMonth(13, true);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+
+  // PRIVATE
+
+  private void testFiscal(FiscalCalendar aCalendar, String aDate, int aYear, int aQuarter, int aPeriod){
+    DateTime date = new DateTime(aDate);
+    assertEquals(aDate, aYear, aCalendar.fiscalYear(date));
+    assertEquals(aDate, aQuarter, aCalendar.quarter(date));
+    assertEquals(aDate, aPeriod, aCalendar.period(date));
+  }
+}
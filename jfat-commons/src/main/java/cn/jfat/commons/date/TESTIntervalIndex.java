@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTIntervalIndex extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTIntervalIndex.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTIntervalIndex(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testQueries(){
+    IntervalIndex<String> index = new IntervalIndex<String>(
+      Arrays.asList(at(9), at(10), at(9), at(13)),
+      Arrays.asList(at(12), at(11), at(10), at(14)),
+      Arrays.asList("a", "b", "c", "d")
+    );
+    assertEquals(4, index.size());
+    assertEquals(at(13), index.startAt(3));
+    assertEquals(Arrays.asList("a", "c", "b"), index.overlapping(at(9), at(11)));
+    assertEquals(Arrays.asList("a"), index.overlapping(at(11), at(13)));
+    assertEquals(Arrays.asList("a", "b"), index.containing(at(10)));
+    assertEquals(Arrays.asList(), index.containing(at(12)));
+    assertEquals(Arrays.asList("a"), index.containing(at(10), at(12)));
+    assertEquals(Arrays.asList("c", "b"), index.within(at(9), at(11)));
+    assertEquals(Arrays.asList("d"), index.within(at(12), at(14)));
+  }
+
+  public void testAgainstLinearScan(){
+    Random random = new Random(17);
+    int size = 500;
+    List<DateTime> starts = new ArrayList<DateTime>();
+    List<DateTime> ends = new ArrayList<DateTime>();
+    List<Integer> values = new ArrayList<Integer>();
+    for(int idx = 0; idx < size; ++idx){
+      int start = random.nextInt(1000);
+      starts.add(minute(start));
+      ends.add(minute(start + 1 + random.nextInt(random.nextBoolean() ? 10 : 300)));
+      values.add(idx);
+    }
+    IntervalIndex<Integer> index = new IntervalIndex<Integer>(starts, ends, values);
+    for(int query = 0; query < 200; ++query){
+      int from = random.nextInt(1100);
+      int to = from + 1 + random.nextInt(50);
+      assertEquals(scan(starts, ends, from, to, OVERLAP), sorted(index.overlapping(minute(from), minute(to))));
+      assertEquals(scan(starts, ends, from, to, CONTAIN), sorted(index.containing(minute(from), minute(to))));
+      assertEquals(scan(starts, ends, from, to, WITHIN), sorted(index.within(minute(from), minute(to))));
+      assertEquals(scan(starts, ends, from, from + 1, STAB), sorted(index.containing(minute(from))));
+    }
+  }
+
+  public void testBadInterval(){
+    try {
+      new IntervalIndex<String>(Arrays.asList(at(10)), Arrays.asList(at(10)), Arrays.asList("a"));
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+
+  // PRIVATE
+
+  private static final int OVERLAP = 0;
+  private static final int CONTAIN = 1;
+  private static final int WITHIN = 2;
+  private static final int STAB = 3;
+
+  private static DateTime at(int aHour){
+    return new DateTime(2014, 5, 1, aHour, 0, 0, null);
+  }
+
+  private static DateTime minute(int aMinute){
+    return new DateTime(2014, 5, 1, aMinute / 60, aMinute % 60, 0, null);
+  }
+
+  private static List<Integer> scan(List<DateTime> aStarts, List<DateTime> aEnds, int aFrom, int aTo, int aKind){
+    List<Integer> result = new ArrayList<Integer>();
+    DateTime from = minute(aFrom);
+    DateTime to = minute(aTo);
+    for(int idx = 0; idx < aStarts.size(); ++idx){
+      DateTime start = aStarts.get(idx);
+      DateTime end = aEnds.get(idx);
+      boolean matches = false;
+      if(aKind == OVERLAP) matches = start.lt(to) && end.gt(from);
+      else if(aKind == CONTAIN) matches = start.lteq(from) && end.gteq(to);
+      else if(aKind == WITHIN) matches = start.gteq(from) && end.lteq(to);
+      else matches = start.lteq(from) && end.gt(from);
+      if(matches){
+        result.add(idx);
+      }
+    }
+    return result;
+  }
+
+  private static List<Integer> sorted(List<Integer> aItems){
+    List<Integer> result = new ArrayList<Integer>(aItems);
+    Collections.sort(result);
+    return result;
+  }
+}
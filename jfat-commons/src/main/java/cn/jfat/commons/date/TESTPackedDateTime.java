@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTPackedDateTime extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTPackedDateTime.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTPackedDateTime(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testRoundTrip(){
+    testRoundTrip("2009-10-28 13:59:01.123456789");
+    testRoundTrip("0001-01-01 00:00:00.000000000");
+    testRoundTrip("9999-12-31 23:59:59.999999999");
+    testRoundTrip("2009-10-28 13:59:01");
+    testRoundTrip("2009-10-28 13:59");
+    testRoundTrip("2009-10-28 13");
+    testRoundTrip("2009-10-28");
+    testRoundTrip("2009-10");
+    testRoundTrip("2009");
+    testRoundTrip("13:59:01.1");
+    testRoundTrip("00:00");
+    testRoundTrip(new DateTime(null, null, null, null, null, null, null));
+    testRoundTrip(new DateTime(2001, 1, 31, 13, null, 59, 123456789));
+  }
+
+  public void testFields(){
+    long packed = PackedDateTime.pack(new DateTime("2009-10-28 00:59:01"));
+    assertEquals(2009, PackedDateTime.year(packed));
+    assertEquals(10, PackedDateTime.month(packed));
+    assertEquals(28, PackedDateTime.day(packed));
+    assertEquals(0, PackedDateTime.hour(packed));
+    assertEquals(59, PackedDateTime.minute(packed));
+    assertEquals(1, PackedDateTime.second(packed));
+    assertTrue(PackedDateTime.hasYearMonthDay(packed));
+
+    packed = PackedDateTime.pack(new DateTime("2009-10"));
+    assertEquals(PackedDateTime.ABSENT, PackedDateTime.day(packed));
+    assertEquals(PackedDateTime.ABSENT, PackedDateTime.hour(packed));
+    assertFalse(PackedDateTime.hasYearMonthDay(packed));
+  }
+
+  public void testOrderMatchesCompareTo(){
+    String[] dates = {
+      "2009", "2009-01", "2009-01-01", "2009-01-01 00", "2009-01-01 00:00", "2009-01-01 00:00:00",
+      "2009-01-01 00:00:00.0", "2009-01-01 00:00:00.000000001", "2009-01-01 23:59:59.999999999",
+      "2009-01-02", "2009-12-31 23:59", "2010", "00:00", "23:59:59", "23:59:59.5", "0001-01-01", "9999-12-31 23:59:59"
+    };
+    for(String left : dates){
+      for(String right : dates){
+        DateTime a = new DateTime(left);
+        DateTime b = new DateTime(right);
+        int expected = Integer.signum(a.compareTo(b));
+        int actual = PackedDateTime.compare(PackedDateTime.pack(a), PackedDateTime.nanosOf(a), PackedDateTime.pack(b), PackedDateTime.nanosOf(b));
+        assertEquals(left + " vs " + right, expected, actual);
+      }
+    }
+  }
+
+  public void testRange(){
+    testRangeFails(0, 1, 1, 0, 0, 0);
+    testRangeFails(2009, 13, 1, 0, 0, 0);
+    testRangeFails(2009, 2, 29, 0, 0, 0);
+    testRangeFails(2009, 1, 1, 24, 0, 0);
+    testRangeFails(2009, 1, 1, 0, 60, 0);
+    testRangeFails(2009, 1, 1, 0, 0, 60);
+    PackedDateTime.pack(2008, 2, 29, 0, 0, 0);
+  }
+
+  // PRIVATE
+
+  private void testRoundTrip(String aDateTime){
+    testRoundTrip(new DateTime(aDateTime));
+  }
+
+  private void testRoundTrip(DateTime aDateTime){
+    long packed = PackedDateTime.pack(aDateTime);
+    int nanos = PackedDateTime.nanosOf(aDateTime);
+    assertTrue(packed >= 0);
+    assertEquals(aDateTime, PackedDateTime.toDateTime(packed, nanos));
+  }
+
+  private void testRangeFails(int aYear, int aMonth, int aDay, int aHour, int aMinute, int aSecond){
+    try {
+      PackedDateTime.pack(aYear, aMonth, aDay, aHour, aMinute, aSecond);
+      fail();
+    }
+    catch(DateTime.ItemOutOfRange ex){
+      //expected
+    }
+  }
+}
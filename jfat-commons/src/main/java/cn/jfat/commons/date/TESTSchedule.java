@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Iterator;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTSchedule extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTSchedule.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTSchedule(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testNext(){
+    testNext("30 9 * * 1-5", "2014-01-03 09:30:00", "2014-01-06 09:30:00"); //Friday to Monday
+    testNext("30 9 * * 1-5", "2014-01-03 09:29:59.999", "2014-01-03 09:30:00");
+    testNext("30 9 * * 1-5", "2014-01-03", "2014-01-03 09:30:00");
+    testNext("*/15 * * * *", "2014-12-31 23:59:00", "2015-01-01 00:00:00");
+    testNext("0 0 29 2 *", "2013-03-01", "2016-02-29 00:00:00");
+    testNext("*/20 0 0 1 1 *", "2014-06-01", "2015-01-01 00:00:00");
+    testNext("*/20 0 0 1 1 *", "2015-01-01 00:00:00", "2015-01-01 00:00:20");
+    testNext("0 12 13 * 5", "2014-06-01", "2014-06-06 12:00:00"); //day or weekday
+    testNext("0 12 13 * 5", "2014-06-12 12:00", "2014-06-13 12:00:00");
+    testNext("0 0 * * 7", "2014-06-01 00:00", "2014-06-08 00:00:00"); //7 is Sunday
+    testNext("0 0 * * 0", "2014-06-01 00:00", "2014-06-08 00:00:00");
+  }
+
+  public void testPrevious(){
+    testPrevious("30 9 * * 1-5", "2014-01-06 09:30:00", "2014-01-03 09:30:00");
+    testPrevious("30 9 * * 1-5", "2014-01-06 09:30:00.1", "2014-01-06 09:30:00");
+    testPrevious("*/15 * * * *", "2015-01-01 00:00:00", "2014-12-31 23:45:00");
+    testPrevious("0 0 29 2 *", "2016-02-29 00:00:00", "2012-02-29 00:00:00");
+    testPrevious("0 0 31 * *", "2014-06-15", "2014-05-31 00:00:00");
+    testPrevious("0 0 1 1 *", "0001-01-01 00:00", null);
+  }
+
+  public void testAgreesWithStepping(){
+    Schedule schedule = new Schedule("7,37 */5 1-10,20 * 2");
+    DateTime start = new DateTime("2014-02-25 00:00:00");
+    DateTime expected = start;
+    Iterator<DateTime> fireTimes = schedule.after(start).iterator();
+    for(int count = 0; count < 50; ++count){
+      do {
+        expected = expected.plus(0, 0, 0, 0, 1, 0, 0, DateTime.DayOverflow.Spillover);
+      } while(! schedule.firesAt(expected));
+      DateTime fireTime = fireTimes.next();
+      assertEquals(expected.truncate(DateTime.Unit.SECOND), fireTime);
+      assertEquals(fireTime, schedule.previous(schedule.next(expected)));
+    }
+  }
+
+  public void testDayOverflow(){
+    testNext("0 0 31 4 *", DateTime.DayOverflow.Abort, "2014-01-01", null);
+    testNext("0 0 31 4,6 *", DateTime.DayOverflow.Abort, "2014-01-01", null);
+    testNext("0 0 31 4 *", DateTime.DayOverflow.LastDay, "2014-01-01", "2014-04-30 00:00:00");
+    testNext("0 0 31 4 *", DateTime.DayOverflow.FirstDay, "2014-01-01", "2014-05-01 00:00:00");
+    testNext("0 0 30 2 *", DateTime.DayOverflow.Spillover, "2014-01-01", "2014-03-02 00:00:00");
+    testNext("0 0 30,31 2 *", DateTime.DayOverflow.Spillover, "2014-03-02 00:00", "2014-03-03 00:00:00");
+    testNext("0 0 30,31 2 *", DateTime.DayOverflow.LastDay, "2014-01-01", "2014-02-28 00:00:00");
+    testNext("0 0 30,31 2 *", DateTime.DayOverflow.LastDay, "2014-02-28 00:00", "2015-02-28 00:00:00");
+  }
+
+  public void testNeverFires(){
+    testNext("0 0 30 2 *", DateTime.DayOverflow.Abort, "2014-01-01", null);
+    testNext("0 0 31 2,4,6,9,11 *", DateTime.DayOverflow.Abort, "0001-01-01", null);
+    assertNull(new Schedule("0 0 30 2 *").previous(new DateTime("9999-12-31")));
+    assertFalse(new Schedule("0 0 30 2 *").after(new DateTime("2014-01-01")).iterator().hasNext());
+  }
+
+  public void testSparseMonthsAgreeWithStepping(){
+    //months are skipped, but days moved into the following month must still be found
+    for(DateTime.DayOverflow overflow : DateTime.DayOverflow.values()){
+      Schedule schedule = new Schedule("0 0 31 2,4,11 *", overflow);
+      DateTime day = new DateTime("2014-01-01 00:00:00");
+      DateTime last = null;
+      for(int count = 0; count < 3 * 366; ++count){
+        if(schedule.firesAt(day)){
+          assertEquals(overflow.toString(), day, schedule.next(last == null ? new DateTime("2014-01-01") : last));
+          if(last != null){
+            assertEquals(overflow.toString(), last, schedule.previous(day));
+          }
+          last = day;
+        }
+        day = day.plusDays(1);
+      }
+      assertTrue(overflow.toString(), overflow == DateTime.DayOverflow.Abort ? last == null : last != null);
+    }
+  }
+
+  public void testBadExpressions(){
+    testBad("");
+    testBad("* * * *");
+    testBad("60 * * * *");
+    testBad("* 24 * * *");
+    testBad("* * 0 * *");
+    testBad("* * * 13 *");
+    testBad("* * * * 8");
+    testBad("5-1 * * * *");
+    testBad("*/0 * * * *");
+    testBad("a * * * *");
+  }
+
+  // PRIVATE
+
+  private void testNext(String aExpression, String aFrom, String aExpected){
+    testNext(aExpression, DateTime.DayOverflow.Abort, aFrom, aExpected);
+  }
+
+  private void testNext(String aExpression, DateTime.DayOverflow aDayOverflow, String aFrom, String aExpected){
+    DateTime next = new Schedule(aExpression, aDayOverflow).next(new DateTime(aFrom));
+    assertEquals(aExpected == null ? null : new DateTime(aExpected), next);
+  }
+
+  private void testPrevious(String aExpression, String aFrom, String aExpected){
+    DateTime previous = new Schedule(aExpression).previous(new DateTime(aFrom));
+    assertEquals(aExpected == null ? null : new DateTime(aExpected), previous);
+  }
+
+  private void testBad(String aExpression){
+    try {
+      new Schedule(aExpression);
+      fail("Expected failure for " + aExpression);
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+}
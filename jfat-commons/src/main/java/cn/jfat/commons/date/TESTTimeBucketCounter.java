@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTTimeBucketCounter extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTTimeBucketCounter.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTTimeBucketCounter(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testCounts(){
+    TimeBucketCounter counter = new TimeBucketCounter(1, TimeUnit.MINUTES, 3, ORIGIN);
+    long[] counts = new long[3];
+    assertEquals(Long.MIN_VALUE, counter.snapshot(counts));
+    assertTrue(counter.add(new DateTime("2014-05-05 10:00:10"), 1));
+    assertTrue(counter.add(new DateTime("2014-05-05 10:00:59.999"), 2));
+    assertTrue(counter.add(new DateTime("2014-05-05 10:01:00"), 5));
+    assertEquals(3, counter.getCount(new DateTime("2014-05-05 10:00")));
+    assertEquals(5, counter.getCount(new DateTime("2014-05-05 10:01:30")));
+    assertEquals(0, counter.getCount(new DateTime("2014-05-05 10:02")));
+
+    long newest = counter.snapshot(counts);
+    assertEquals("[0, 3, 5]", Arrays.toString(counts));
+    assertEquals(new DateTime("2014-05-05 10:01:00"), counter.getStartOf(newest));
+
+    //10:00 drops off the ring
+    assertTrue(counter.add(new DateTime("2014-05-05 10:03:00"), 7));
+    assertEquals(0, counter.getCount(new DateTime("2014-05-05 10:00")));
+    assertFalse(counter.add(new DateTime("2014-05-05 10:00:30"), 1));
+    assertEquals(1, counter.getNumDropped());
+    counter.snapshot(counts);
+    assertEquals("[5, 0, 7]", Arrays.toString(counts));
+
+    long[] newestOnly = new long[1];
+    counter.rotateTo(new DateTime("2014-05-05 10:04:00"));
+    assertEquals(newest + 3, counter.snapshot(newestOnly));
+    assertEquals(0, newestOnly[0]);
+    assertEquals(0, counter.getCount(new DateTime("2014-05-05 10:01")));
+  }
+
+  public void testNanos(){
+    TimeBucketCounter counter = new TimeBucketCounter(1, TimeUnit.HOURS, 24, DateTime.forDateOnly(1970, 1, 1));
+    long nanos = TimeUnit.DAYS.toNanos(16000) + TimeUnit.MINUTES.toNanos(90);
+    counter.addNanos(nanos, 4);
+    assertEquals(4, counter.getCount(new DateTime("2013-10-22 01:59:59")));
+  }
+
+  public void testReusedSlot(){
+    TimeBucketCounter counter = new TimeBucketCounter(1, TimeUnit.SECONDS, 4, ORIGIN);
+    for(int second = 0; second < 100; ++second){
+      counter.add(secondsAfterMidnight(second), second);
+      counter.add(secondsAfterMidnight(second), 1);
+      assertEquals(second + 1, counter.getCount(secondsAfterMidnight(second)));
+    }
+    long[] counts = new long[4];
+    counter.snapshot(counts);
+    assertEquals("[97, 98, 99, 100]", Arrays.toString(counts));
+  }
+
+  public void testManyThreads() throws Exception {
+    final TimeBucketCounter counter = new TimeBucketCounter(1, TimeUnit.SECONDS, 16, ORIGIN);
+    final int numThreads = 4;
+    final int perThread = 100000;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Callable<Integer>> writers = new ArrayList<Callable<Integer>>();
+      for(int thread = 0; thread < numThreads; ++thread){
+        writers.add(new Callable<Integer>(){
+          public Integer call(){
+            long second = TimeUnit.SECONDS.toNanos(1);
+            for(int idx = 0; idx < perThread; ++idx){
+              counter.addNanos((idx % 16) * second + idx, 1);
+            }
+            return null;
+          }
+        });
+      }
+      executor.invokeAll(writers);
+      long[] counts = new long[16];
+      counter.snapshot(counts);
+      for(long count : counts){
+        assertEquals(numThreads * perThread / 16, count);
+      }
+      assertEquals(0, counter.getNumDropped());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testBadArgs(){
+    try {
+      new TimeBucketCounter(0, TimeUnit.SECONDS, 4, ORIGIN);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    try {
+      new TimeBucketCounter(1, TimeUnit.SECONDS, 0, ORIGIN);
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+
+  // PRIVATE
+
+  private static final DateTime ORIGIN = DateTime.forDateOnly(2014, 1, 1);
+
+  private static DateTime secondsAfterMidnight(int aSeconds){
+    return new DateTime(2014, 1, 1, aSeconds / 3600, (aSeconds / 60) % 60, aSeconds % 60, 0);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTTimeIndex extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTTimeIndex.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTTimeIndex(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testSortedWithDuplicates(){
+    assertEquals(5, INDEX.size());
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), INDEX.values());
+    assertEquals(new DateTime("2014-01-01 10:00"), INDEX.keyAt(0));
+    assertEquals(new DateTime("2014-01-03 00:00:00.5"), INDEX.keyAt(4));
+  }
+
+  public void testRange(){
+    assertEquals(Arrays.asList("b", "c", "d"), INDEX.range(new DateTime("2014-01-02"), new DateTime("2014-01-03")).values());
+    assertEquals(Arrays.asList("b", "c"), INDEX.range(new DateTime("2014-01-02"), true, new DateTime("2014-01-02 12:00"), true).values());
+    assertEquals(Collections.emptyList(), INDEX.range(new DateTime("2014-01-02"), new DateTime("2014-01-02 12:00")).values());
+    assertEquals(Arrays.asList("d"), INDEX.range(new DateTime("2014-01-02 12:00"), false, new DateTime("2014-01-02 23:30"), true).values());
+    assertEquals(Collections.emptyList(), INDEX.range(new DateTime("2014-01-03"), new DateTime("2014-01-02")).values());
+    //views of views
+    TimeIndex<String> view = INDEX.range(new DateTime("2014-01-02"), new DateTime("2015-01-01"));
+    assertEquals(Arrays.asList("e"), view.range(new DateTime("2014-01-03"), new DateTime("2014-01-04")).values());
+    assertEquals(1, view.floorIndex(new DateTime("2014-01-02 12:00")));
+    assertEquals(-1, view.floorIndex(new DateTime("2014-01-01 10:00")));
+  }
+
+  public void testFloorCeilingNearest(){
+    assertEquals(-1, INDEX.floorIndex(new DateTime("2014-01-01 09:00")));
+    assertEquals(0, INDEX.ceilingIndex(new DateTime("2014-01-01 09:00")));
+    assertEquals(2, INDEX.floorIndex(new DateTime("2014-01-02 12:00")));
+    assertEquals(1, INDEX.ceilingIndex(new DateTime("2014-01-02 12:00")));
+    assertEquals(-1, INDEX.ceilingIndex(new DateTime("2014-01-04")));
+    assertEquals(1, INDEX.nearestIndex(new DateTime("2014-01-02 12:00")));
+    assertEquals(0, INDEX.nearestIndex(new DateTime("2014-01-01 09:00")));
+    assertEquals(4, INDEX.nearestIndex(new DateTime("2014-02-01")));
+    assertEquals(3, INDEX.nearestIndex(new DateTime("2014-01-02 23:00")));
+    //equally near : the earlier
+    assertEquals(0, INDEX.nearestIndex(new DateTime("2014-01-01 23:00")));
+    assertEquals(-1, new TimeIndex<String>(Collections.<DateTime>emptyList(), Collections.<String>emptyList()).nearestIndex(new DateTime("2014-01-01")));
+  }
+
+  public void testForMap(){
+    Map<DateTime, Integer> map = new LinkedHashMap<DateTime, Integer>();
+    map.put(new DateTime("2014-06-01"), 2);
+    map.put(new DateTime("2014-05-01"), 1);
+    assertEquals(Arrays.asList(1, 2), TimeIndex.forMap(map).values());
+  }
+
+  // PRIVATE
+
+  private static final List<DateTime> KEYS = Arrays.asList(
+    new DateTime("2014-01-02 12:00"), new DateTime("2014-01-03 00:00:00.5"), new DateTime("2014-01-01 10:00"),
+    new DateTime("2014-01-02 12:00"), new DateTime("2014-01-02 23:30")
+  );
+  private static final TimeIndex<String> INDEX = new TimeIndex<String>(KEYS, Arrays.asList("b", "e", "a", "c", "d"));
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTTimingWheel extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTTimingWheel.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTTimingWheel(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testNeverEarlyNeverMissed(){
+    long start = System.currentTimeMillis() * MILLI;
+    TimingWheel wheel = new TimingWheel(MILLI, UTC, INLINE);
+    Random random = new Random(5);
+    int numTasks = 3000;
+    final long[] ranAt = new long[numTasks];
+    final long[] now = new long[1];
+    long[] deadlines = new long[numTasks];
+    for(int idx = 0; idx < numTasks; ++idx){
+      //up to 10 minutes ahead : 600,000 ticks, which reaches the third level
+      deadlines[idx] = start + (long)random.nextInt(600000) * MILLI + random.nextInt((int)MILLI);
+      final int task = idx;
+      wheel.schedule(deadlines[idx], new Runnable(){
+        public void run(){
+          ranAt[task] = now[0];
+        }
+      });
+    }
+    assertEquals(numTasks, wheel.size());
+    for(now[0] = start; wheel.size() > 0; now[0] = now[0] + random.nextInt(5000) * MILLI){
+      wheel.advanceTo(now[0]);
+    }
+    for(int idx = 0; idx < numTasks; ++idx){
+      assertTrue("early", ranAt[idx] >= deadlines[idx]);
+      assertTrue("late", ranAt[idx] < deadlines[idx] + 5001 * MILLI);
+    }
+  }
+
+  public void testCancel(){
+    long start = System.currentTimeMillis() * MILLI;
+    final List<String> ran = new ArrayList<String>();
+    TimingWheel wheel = new TimingWheel(MILLI, UTC, INLINE);
+    TimingWheel.Timeout one = wheel.schedule(start + 1000 * MILLI, record(ran, "one"));
+    TimingWheel.Timeout two = wheel.schedule(start + 2000 * MILLI, record(ran, "two"));
+    assertTrue(one.cancel());
+    assertFalse(one.cancel());
+    assertTrue(one.isCancelled());
+    assertEquals(1, wheel.size());
+    wheel.advanceTo(start + 3000 * MILLI);
+    assertEquals("[two]", ran.toString());
+    assertTrue(two.isExpired());
+    assertFalse(two.cancel());
+  }
+
+  public void testLongAdvance(){
+    //a day of 1 nanosecond ticks : only the ticks with something to do are visited
+    long start = System.currentTimeMillis() * MILLI;
+    long day = 86400L * 1000 * MILLI;
+    final List<String> ran = new ArrayList<String>();
+    TimingWheel wheel = new TimingWheel(1, UTC, INLINE);
+    wheel.schedule(start + day, record(ran, "day"));
+    wheel.schedule(start + day / 2 + 7, record(ran, "half"));
+    TimingWheel.Timeout cancelled = wheel.schedule(start + day / 3, record(ran, "third"));
+    assertTrue(cancelled.cancel());
+    wheel.advanceTo(start + day / 2 + 6);
+    assertEquals("[]", ran.toString());
+    wheel.advanceTo(start + day / 2 + 7);
+    assertEquals("[half]", ran.toString());
+    wheel.advanceTo(start + 2 * day);
+    assertEquals("[half, day]", ran.toString());
+    assertEquals(0, wheel.size());
+  }
+
+  public void testPastDeadline(){
+    long start = System.currentTimeMillis() * MILLI;
+    final List<String> ran = new ArrayList<String>();
+    TimingWheel wheel = new TimingWheel(MILLI, UTC, INLINE);
+    wheel.advanceTo(start + 5000 * MILLI);
+    wheel.schedule(start, record(ran, "late"));
+    wheel.advanceTo(start + 5000 * MILLI);
+    assertEquals("[late]", ran.toString());
+  }
+
+  public void testNeverEarlyBeforeFirstTick(){
+    long start = System.currentTimeMillis() * MILLI;
+    final List<String> ran = new ArrayList<String>();
+    TimingWheel wheel = new TimingWheel(MILLI, UTC, INLINE);
+    //the wheel's first tick is at its construction, no earlier than start
+    wheel.schedule(start, record(ran, "start"));
+    wheel.advanceTo(start - 1);
+    assertEquals("[]", ran.toString());
+    wheel.advanceTo(start + 1000 * MILLI);
+    assertEquals("[start]", ran.toString());
+  }
+
+  public void testEpochNanos(){
+    TimeZone zone = TimeZone.getTimeZone("America/New_York");
+    String[] dates = {"2014-01-01 00:00", "2014-03-09 12:00", "2014-07-04 23:59:59.123456789", "2014-11-02 12:00", "1969-12-31 23:00", "2014-05-05"};
+    for(String date : dates){
+      DateTime dateTime = new DateTime(date);
+      long expected = dateTime.getNanosecondsInstant(zone);
+      assertEquals(date, expected, TimingWheel.epochNanos(PackedDateTime.pack(dateTime), PackedDateTime.nanosOf(dateTime), zone));
+    }
+  }
+
+  public void testThread() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    TimingWheel wheel = new TimingWheel(MILLI, UTC, INLINE);
+    wheel.start();
+    try {
+      wheel.schedule(DateTime.now(UTC).plus(0, 0, 0, 0, 0, 0, 20 * (int)MILLI, DateTime.DayOverflow.Spillover), new Runnable(){
+        public void run(){
+          latch.countDown();
+        }
+      });
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+    finally {
+      wheel.stop();
+    }
+  }
+
+  // PRIVATE
+
+  private static final long MILLI = TimingWheel.NANOS_PER_MILLI;
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+  private static final Executor INLINE = new Executor(){
+    public void execute(Runnable aTask){
+      aTask.run();
+    }
+  };
+
+  private static Runnable record(final List<String> aRan, final String aName){
+    return new Runnable(){
+      public void run(){
+        aRan.add(aName);
+      }
+    };
+  }
+}
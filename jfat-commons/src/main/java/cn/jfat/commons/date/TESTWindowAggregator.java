@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/** JUnit tests. */
+public final class TESTWindowAggregator extends TestCase {
+
+  /** Run the test cases.  */
+  public static void main(String args[]) {
+    String[] testCaseName = { TESTWindowAggregator.class.getName() };
+    junit.textui.TestRunner.main(testCaseName);
+  }
+
+  public TESTWindowAggregator(String aName) {
+    super(aName);
+  }
+
+  // TEST CASES
+
+  public void testTumbling(){
+    List<String> closed = new ArrayList<String>();
+    WindowAggregator counts = WindowAggregator.tumbling(1, TimeUnit.MINUTES, 0, ORIGIN, WindowAggregator.SUM, record(closed));
+    counts.add(new DateTime("2014-05-05 10:00:30"), 1);
+    counts.add(new DateTime("2014-05-05 10:00:59"), 1);
+    assertEquals(0, closed.size());
+    counts.add(new DateTime("2014-05-05 10:01:00"), 1);
+    assertEquals("[2014-05-05 10:00:00 2014-05-05 10:01:00 2 2]", closed.toString());
+    counts.add(new DateTime("2014-05-05 10:05:10"), 1);
+    assertEquals(2, closed.size());
+    assertEquals("2014-05-05 10:01:00 2014-05-05 10:02:00 1 1", closed.get(1));
+    counts.flush();
+    assertEquals("2014-05-05 10:05:00 2014-05-05 10:06:00 1 1", closed.get(2));
+  }
+
+  public void testLateEvents(){
+    List<String> closed = new ArrayList<String>();
+    WindowAggregator maxes = WindowAggregator.tumbling(60, TimeUnit.SECONDS, 30, ORIGIN, WindowAggregator.MAX, record(closed));
+    maxes.add(new DateTime("2014-05-05 10:00:10"), 5);
+    maxes.add(new DateTime("2014-05-05 10:01:20"), 1);
+    //watermark is 10:00:50 : still open
+    maxes.add(new DateTime("2014-05-05 10:00:40"), 7);
+    assertEquals(0, closed.size());
+    maxes.add(new DateTime("2014-05-05 10:01:30"), 1);
+    assertEquals("[2014-05-05 10:00:00 2014-05-05 10:01:00 7 2]", closed.toString());
+    maxes.add(new DateTime("2014-05-05 10:00:50"), 9);
+    assertEquals(1, maxes.getNumLateEvents());
+    maxes.advanceWatermark(new DateTime("2014-05-05 10:02:00"));
+    assertEquals("2014-05-05 10:01:00 2014-05-05 10:02:00 1 2", closed.get(1));
+  }
+
+  public void testSlidingAgainstBruteForce(){
+    Random random = new Random(48);
+    for(int trial = 0; trial < 20; ++trial){
+      int slide = 1 + random.nextInt(10);
+      int size = slide * (1 + random.nextInt(6));
+      int lateness = random.nextInt(30);
+      long[] seconds = disordered(random, 2000, lateness);
+      List<String> closed = new ArrayList<String>();
+      WindowAggregator sums = WindowAggregator.sliding(size, slide, TimeUnit.SECONDS, lateness, ORIGIN, WindowAggregator.SUM, record(closed));
+      TreeMap<Long, long[]> expected = new TreeMap<Long, long[]>();
+      for(long second : seconds){
+        sums.add(at(second), second);
+        long firstEnd = (Buckets.floorDiv(second, slide) + 1) * slide;
+        for(long end = firstEnd; end < second + size + slide && end - size <= second; end = end + slide){
+          if(end - size <= second && second < end){
+            long[] sumAndCount = expected.get(end);
+            if(sumAndCount == null){
+              sumAndCount = new long[2];
+              expected.put(end, sumAndCount);
+            }
+            sumAndCount[0] = sumAndCount[0] + second;
+            ++sumAndCount[1];
+          }
+        }
+      }
+      sums.flush();
+      assertEquals(0, sums.getNumLateEvents());
+      List<String> expectedClosed = new ArrayList<String>();
+      for(Long end : expected.keySet()){
+        long[] sumAndCount = expected.get(end);
+        expectedClosed.add(at(end - size) + " " + at(end) + " " + sumAndCount[0] + " " + sumAndCount[1]);
+      }
+      assertEquals(expectedClosed, closed);
+    }
+  }
+
+  public void testSlidingMinAgainstBruteForce(){
+    //events behind the watermark, but in windows still open, land in panes already in the partial results
+    Random random = new Random(50);
+    for(int trial = 0; trial < 20; ++trial){
+      int slide = 1 + random.nextInt(5);
+      int size = slide * (1 + random.nextInt(8));
+      int lateness = random.nextInt(40);
+      List<String> closed = new ArrayList<String>();
+      WindowAggregator mins = WindowAggregator.sliding(size, slide, TimeUnit.SECONDS, lateness, ORIGIN, WindowAggregator.MIN, record(closed));
+      TreeMap<Long, long[]> expected = new TreeMap<Long, long[]>();
+      long next = random.nextInt(100000);
+      long latest = Long.MIN_VALUE;
+      long closedEnd = Long.MIN_VALUE;
+      int numLate = 0;
+      for(int idx = 0; idx < 2000; ++idx){
+        //with some gaps longer than a window, so that empty windows are skipped
+        next = next + random.nextInt(random.nextInt(10) == 0 ? 200 : 3);
+        long second = next - random.nextInt(lateness + size + 1);
+        long value = random.nextInt(1000);
+        mins.add(at(second), value);
+        if(Buckets.floorDiv(second, slide) + size / slide <= closedEnd){
+          ++numLate;
+          continue;
+        }
+        if(second > latest){
+          if(latest != Long.MIN_VALUE){
+            closedEnd = Math.max(closedEnd, Buckets.floorDiv(second - lateness, slide));
+          }
+          latest = second;
+        }
+        //only the windows still open
+        long firstEnd = Math.max(Buckets.floorDiv(second, slide), closedEnd) + 1;
+        for(long end = firstEnd * slide; end - size <= second; end = end + slide){
+          long[] minAndCount = expected.get(end);
+          if(minAndCount == null){
+            minAndCount = new long[]{Long.MAX_VALUE, 0};
+            expected.put(end, minAndCount);
+          }
+          minAndCount[0] = Math.min(minAndCount[0], value);
+          ++minAndCount[1];
+        }
+      }
+      mins.flush();
+      assertEquals(numLate, mins.getNumLateEvents());
+      List<String> expectedClosed = new ArrayList<String>();
+      for(Long end : expected.keySet()){
+        long[] minAndCount = expected.get(end);
+        expectedClosed.add(at(end - size) + " " + at(end) + " " + minAndCount[0] + " " + minAndCount[1]);
+      }
+      assertEquals(expectedClosed, closed);
+    }
+  }
+
+  public void testSessions(){
+    List<String> closed = new ArrayList<String>();
+    SessionAggregator visits = new SessionAggregator(10, TimeUnit.MINUTES, 0, WindowAggregator.SUM, record(closed));
+    visits.add(new DateTime("2014-05-05 10:00"), 1);
+    visits.add(new DateTime("2014-05-05 10:05"), 1);
+    visits.add(new DateTime("2014-05-05 10:14"), 1);
+    assertEquals(0, closed.size());
+    visits.add(new DateTime("2014-05-05 10:30"), 1);
+    assertEquals("[2014-05-05 10:00:00 2014-05-05 10:24:00 3 3]", closed.toString());
+    //belongs to a session already closed
+    visits.add(new DateTime("2014-05-05 10:13"), 1);
+    assertEquals(1, visits.getNumLateEvents());
+    visits.flush();
+    assertEquals("2014-05-05 10:30:00 2014-05-05 10:40:00 1 1", closed.get(1));
+    assertEquals(0, visits.getNumOpenSessions());
+  }
+
+  public void testSessionsMerge(){
+    List<String> closed = new ArrayList<String>();
+    SessionAggregator visits = new SessionAggregator(10, TimeUnit.MINUTES, 30, WindowAggregator.MIN, record(closed));
+    visits.add(new DateTime("2014-05-05 10:00"), 4);
+    visits.add(new DateTime("2014-05-05 10:15"), 3);
+    assertEquals(2, visits.getNumOpenSessions());
+    visits.add(new DateTime("2014-05-05 10:08"), 6);
+    assertEquals(1, visits.getNumOpenSessions());
+    visits.flush();
+    assertEquals("[2014-05-05 10:00:00 2014-05-05 10:25:00 3 3]", closed.toString());
+  }
+
+  public void testSessionsAgainstBruteForce(){
+    Random random = new Random(49);
+    for(int trial = 0; trial < 20; ++trial){
+      int gap = 1 + random.nextInt(20);
+      int lateness = random.nextInt(40);
+      long[] seconds = disordered(random, 1000, lateness);
+      List<String> closed = new ArrayList<String>();
+      SessionAggregator sessions = new SessionAggregator(gap, TimeUnit.SECONDS, lateness, WindowAggregator.SUM, record(closed));
+      for(long second : seconds){
+        sessions.add(at(second), second);
+      }
+      sessions.flush();
+      assertEquals(0, sessions.getNumLateEvents());
+      long[] sorted = seconds.clone();
+      java.util.Arrays.sort(sorted);
+      List<String> expected = new ArrayList<String>();
+      int first = 0;
+      long sum = 0;
+      for(int idx = 0; idx < sorted.length; ++idx){
+        sum = sum + sorted[idx];
+        if(idx == sorted.length - 1 || sorted[idx + 1] - sorted[idx] >= gap){
+          expected.add(at(sorted[first]) + " " + at(sorted[idx] + gap) + " " + sum + " " + (idx + 1 - first));
+          first = idx + 1;
+          sum = 0;
+        }
+      }
+      assertEquals(expected, closed);
+    }
+  }
+
+  public void testBadArgs(){
+    List<String> closed = new ArrayList<String>();
+    try {
+      WindowAggregator.sliding(5, 2, TimeUnit.SECONDS, 0, ORIGIN, WindowAggregator.SUM, record(closed));
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+    try {
+      new SessionAggregator(0, TimeUnit.SECONDS, 0, WindowAggregator.SUM, record(closed));
+      fail();
+    }
+    catch(IllegalArgumentException ex){
+      //expected
+    }
+  }
+
+  // PRIVATE
+
+  private static final DateTime ORIGIN = DateTime.forDateOnly(2014, 1, 1);
+
+  private static DateTime at(long aSeconds){
+    return DateTime.startOfBucket(aSeconds, TimeUnit.SECONDS.toNanos(1), ORIGIN);
+  }
+
+  /** Increasing times, from a random start, then shuffled so that no event is more than aLateness behind one before it. */
+  private static long[] disordered(Random aRandom, int aCount, int aLateness){
+    long[] result = new long[aCount];
+    long second = aRandom.nextInt(100000);
+    for(int idx = 0; idx < aCount; ++idx){
+      second = second + aRandom.nextInt(aRandom.nextInt(10) == 0 ? 60 : 4);
+      result[idx] = second;
+    }
+    for(int idx = 1; idx < aCount; ++idx){
+      int other = idx - 1;
+      if(aRandom.nextBoolean() && result[idx] - result[other] <= aLateness){
+        long temp = result[idx];
+        result[idx] = result[other];
+        result[other] = temp;
+      }
+    }
+    return result;
+  }
+
+  private static WindowAggregator.Listener record(final List<String> aClosed){
+    return new WindowAggregator.Listener(){
+      public void windowClosed(DateTime aStart, DateTime aEnd, long aValue, long aNumEvents){
+        aClosed.add(aStart + " " + aEnd + " " + aValue + " " + aNumEvents);
+      }
+    };
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ Count events in buckets of time, such as minutes or hours, from many threads at once.
+
+ <P>The buckets are aligned to an origin, as in {@link DateTime#bucketIndex(long, TimeUnit, DateTime)}.
+ Only the most recent buckets are kept, in a ring : when an event falls in a new bucket, that bucket
+ becomes the newest, and the oldest buckets drop off the end of the ring. Events falling in a bucket
+ which has already dropped off are not counted, but are reported by {@link #getNumDropped()}.
+
+ <P>Each bucket is split into <em>stripes</em>, each on its own cache line, and each thread adds to
+ one stripe. Threads adding to the same bucket thus rarely contend for the same memory. A count
+ is the sum of a bucket's stripes. Adding an event creates no objects, and takes no locks.
+ A thread may wait only for the few stores needed to clear a bucket, when its slot in the ring is reused.
+
+ <P>Counts read while events are being added are not an atomic snapshot : each count
+ includes some subset of the concurrent adds. An add which stalls for the whole length of the ring,
+ between finding its bucket and updating it, may be counted in a newer bucket sharing the same slot.
+
+ <P>Example, for requests per minute, over the last hour :
+ <PRE>
+  TimeBucketCounter counter = new TimeBucketCounter(1, TimeUnit.MINUTES, 60, DateTime.forDateOnly(2000, 1, 1));
+  //ingestion threads
+  counter.add(request.getWhen(), 1);
+  //reporting thread
+  long[] perMinute = new long[60];
+  long newest = counter.snapshot(perMinute);
+ </PRE>
+*/
+public final class TimeBucketCounter {
+
+  /**
+   Constructor.
+   @param aBucketSize length of each bucket, in units of <tt>aUnit</tt>; 1 or more.
+   @param aNumBuckets the number of most recent buckets to keep; 1 or more.
+   @param aOrigin the start of a bucket; requires year-month-day.
+  */
+  public TimeBucketCounter(long aBucketSize, TimeUnit aUnit, int aNumBuckets, DateTime aOrigin){
+    if(aBucketSize < 1){
+      throw new IllegalArgumentException("Bucket size must be 1 or more: " + aBucketSize);
+    }
+    if(aNumBuckets < 1){
+      throw new IllegalArgumentException("Number of buckets must be 1 or more: " + aNumBuckets);
+    }
+    fBucketNanos = aUnit.toNanos(aBucketSize);
+    fNumBuckets = aNumBuckets;
+    fOrigin = aOrigin;
+    fOriginPacked = PackedDateTime.pack(aOrigin);
+    fOriginNanos = PackedDateTime.nanosOf(aOrigin);
+    int stripes = 1;
+    while(stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES){
+      stripes = stripes * 2;
+    }
+    if((long)aNumBuckets * stripes * PAD > Integer.MAX_VALUE){
+      throw new IllegalArgumentException("Too many buckets: " + aNumBuckets);
+    }
+    fNumStripes = stripes;
+    fCells = new AtomicLongArray(aNumBuckets * stripes * PAD);
+    fIndexes = new AtomicLongArray(aNumBuckets);
+    for(int slot = 0; slot < aNumBuckets; ++slot){
+      fIndexes.set(slot, UNUSED);
+    }
+  }
+
+  /** Add to the count of the bucket holding the given date-time. Returns <tt>false</tt> only if the bucket has dropped off the ring. */
+  public boolean add(DateTime aWhen, long aCount){
+    return add(PackedDateTime.pack(aWhen), PackedDateTime.nanosOf(aWhen), aCount);
+  }
+
+  /** Add to the count, with the date-time in primitive form. See {@link #add(DateTime, long)}. */
+  public boolean add(long aPacked, int aNanos, long aCount){
+    return addToBucket(PackedDateTime.bucketIndex(aPacked, aNanos, fBucketNanos, fOriginPacked, fOriginNanos), aCount);
+  }
+
+  /**
+   Add to the count, with the date-time given as nanoseconds from the origin.
+   With an origin of 1970-01-01 00:00, this is the number of nanoseconds since the epoch, in the time zone of the origin.
+   See {@link #add(DateTime, long)}.
+  */
+  public boolean addNanos(long aNanosFromOrigin, long aCount){
+    return addToBucket(Buckets.floorDiv(aNanosFromOrigin, fBucketNanos), aCount);
+  }
+
+  /** Return the count of the bucket holding the given date-time, or 0 if it is not in the ring. */
+  public long getCount(DateTime aWhen){
+    return countOf(PackedDateTime.bucketIndex(PackedDateTime.pack(aWhen), PackedDateTime.nanosOf(aWhen), fBucketNanos, fOriginPacked, fOriginNanos));
+  }
+
+  /**
+   Copy the counts of the buckets in the ring, oldest first, and return the index of the newest bucket.
+   The newest bucket's count is placed last; <tt>aCounts</tt> may be shorter than the ring, to copy only the newest buckets.
+   Returns {@link Long#MIN_VALUE} if nothing has been added yet, and leaves the array unchanged.
+   See {@link #getStartOf(long)}.
+  */
+  public long snapshot(long[] aCounts){
+    long newest = fNewest.get();
+    if(newest == NONE){
+      return Long.MIN_VALUE;
+    }
+    int num = Math.min(aCounts.length, fNumBuckets);
+    for(int idx = 0; idx < num; ++idx){
+      aCounts[aCounts.length - 1 - idx] = countOf(newest - idx);
+    }
+    return newest;
+  }
+
+  /**
+   Make the bucket holding the given date-time the newest, if it is newer than the current newest bucket.
+   Older buckets drop off the ring. Useful when events are sparse, so that a snapshot does not show stale buckets.
+  */
+  public void rotateTo(DateTime aWhen){
+    moveNewest(PackedDateTime.bucketIndex(PackedDateTime.pack(aWhen), PackedDateTime.nanosOf(aWhen), fBucketNanos, fOriginPacked, fOriginNanos));
+  }
+
+  /** Return the start of the bucket with the given index, as returned by {@link #snapshot(long[])}. */
+  public DateTime getStartOf(long aIndex){
+    return DateTime.startOfBucket(aIndex, fBucketNanos, fOrigin);
+  }
+
+  /** The number of events not counted, because their bucket had already dropped off the ring. */
+  public long getNumDropped(){
+    return fNumDropped.get();
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "TimeBucketCounter bucket:" + fBucketNanos + "ns buckets:" + fNumBuckets + " stripes:" + fNumStripes + " newest:" + fNewest.get();
+  }
+
+  // PRIVATE
+
+  private final long fBucketNanos;
+  private final int fNumBuckets;
+  private final DateTime fOrigin;
+  private final long fOriginPacked;
+  private final int fOriginNanos;
+  private final int fNumStripes;
+
+  /**
+   The stripes of each slot in the ring. Each cell is followed by unused longs, so that no two cells
+   share a cache line.
+  */
+  private final AtomicLongArray fCells;
+  /** The index of the bucket held in each slot of the ring, or UNUSED, or CLEARING. */
+  private final AtomicLongArray fIndexes;
+  private final AtomicLong fNewest = new AtomicLong(NONE);
+  private final AtomicLong fNumDropped = new AtomicLong();
+
+  /** 8 longs make 64 bytes, the usual size of a cache line. */
+  private static final int PAD = 8;
+  private static final int MAX_STRIPES = 64;
+  private static final long CLEARING = Long.MIN_VALUE;
+  private static final long UNUSED = Long.MIN_VALUE + 1;
+  private static final long NONE = Long.MIN_VALUE / 2;
+
+  private boolean addToBucket(long aIndex, long aCount){
+    long newest = fNewest.get();
+    if(aIndex > newest){
+      moveNewest(aIndex);
+    }
+    else if(aIndex <= newest - fNumBuckets){
+      fNumDropped.incrementAndGet();
+      return false;
+    }
+    int slot = slotOf(aIndex);
+    int cell = cellOf(slot, stripe());
+    while(true){
+      long held = fIndexes.get(slot);
+      if(held == aIndex){
+        fCells.getAndAdd(cell, aCount);
+        return true;
+      }
+      if(held == CLEARING){
+        Thread.yield();
+      }
+      else if(held > aIndex){
+        //the slot has been reused by a newer bucket
+        fNumDropped.incrementAndGet();
+        return false;
+      }
+      else if(fIndexes.compareAndSet(slot, held, CLEARING)){
+        for(int stripe = 0; stripe < fNumStripes; ++stripe){
+          fCells.set(cellOf(slot, stripe), 0);
+        }
+        fIndexes.set(slot, aIndex);
+      }
+    }
+  }
+
+  private void moveNewest(long aIndex){
+    long newest = fNewest.get();
+    while(aIndex > newest && !fNewest.compareAndSet(newest, aIndex)){
+      newest = fNewest.get();
+    }
+  }
+
+  /** The count of the given bucket; 0 if its slot does not hold it. */
+  private long countOf(long aIndex){
+    long newest = fNewest.get();
+    if(aIndex > newest || aIndex <= newest - fNumBuckets){
+      return 0;
+    }
+    int slot = slotOf(aIndex);
+    if(fIndexes.get(slot) != aIndex){
+      return 0;
+    }
+    long result = 0;
+    for(int stripe = 0; stripe < fNumStripes; ++stripe){
+      result = result + fCells.get(cellOf(slot, stripe));
+    }
+    //the slot may have been reused while summing
+    return fIndexes.get(slot) == aIndex ? result : 0;
+  }
+
+  private int slotOf(long aIndex){
+    return (int)(aIndex - Buckets.floorDiv(aIndex, fNumBuckets) * fNumBuckets);
+  }
+
+  private int cellOf(int aSlot, int aStripe){
+    return (aSlot * fNumStripes + aStripe) * PAD;
+  }
+
+  /** The stripe used by the current thread. Thread ids are often consecutive, so they are mixed first. */
+  private int stripe(){
+    long id = Thread.currentThread().getId();
+    return (int)((id * 0x9E3779B97F4A7C15L) >>> 40) & (fNumStripes - 1);
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ Values indexed by date-time, sorted, for range and nearest-key lookups.
+
+ <P>The keys are held in their {@link PackedDateTime} form, in primitive arrays, in ascending order. Each lookup is a
+ binary search over those arrays, so finding the items in a range takes <tt>O(log n)</tt> time, and reading the <tt>k</tt>
+ items found takes <tt>O(k)</tt> time. No <tt>DateTime</tt> objects are compared.
+
+ <P>Several values may have the same key; they're kept in the order in which they were passed to the constructor.
+
+ <P>{@link #range(DateTime, DateTime)} returns another <tt>TimeIndex</tt>, which is a view over part of this one; nothing is copied.
+
+ <P>Example :
+ <PRE>
+  TimeIndex&lt;Event&gt; index = new TimeIndex&lt;Event&gt;(times, events);
+  for(Event event : index.range(start, end).values()){
+    ...
+  }
+ </PRE>
+
+ <P>This class is immutable, and may be shared between threads, as long as the values are not changed.
+*/
+public final class TimeIndex<V> {
+
+  /**
+   Constructor.
+   @param aKeys the date-time of each value; none may be <tt>null</tt>. The keys need not be sorted.
+   @param aValues the values, in the same order as their keys; may include <tt>null</tt>. Must have the same size as <tt>aKeys</tt>.
+  */
+  public TimeIndex(List<DateTime> aKeys, List<? extends V> aValues){
+    if(aKeys.size() != aValues.size()){
+      throw new IllegalArgumentException("Number of keys " + aKeys.size() + " doesn't match number of values " + aValues.size());
+    }
+    int size = aKeys.size();
+    long[] packed = new long[size];
+    int[] nanos = null;
+    int idx = 0;
+    for(DateTime key : aKeys){
+      packed[idx] = PackedDateTime.pack(key);
+      int keyNanos = PackedDateTime.nanosOf(key);
+      if(keyNanos != PackedDateTime.ABSENT && nanos == null){
+        nanos = new int[size];
+        for(int previous = 0; previous < idx; ++previous){
+          nanos[previous] = PackedDateTime.ABSENT;
+        }
+      }
+      if(nanos != null){
+        nanos[idx] = keyNanos;
+      }
+      ++idx;
+    }
+    int[] order = DateTimeSorts.sortWithOrder(packed, nanos);
+    Object[] values = aValues.toArray();
+    fValues = new Object[size];
+    for(idx = 0; idx < size; ++idx){
+      fValues[idx] = values[order[idx]];
+    }
+    fPacked = packed;
+    fNanos = nanos;
+    fOffset = 0;
+    fSize = size;
+  }
+
+  /** Return an index of the entries of the given map. */
+  public static <V> TimeIndex<V> forMap(Map<DateTime, ? extends V> aEntries){
+    List<DateTime> keys = new ArrayList<DateTime>(aEntries.size());
+    List<V> values = new ArrayList<V>(aEntries.size());
+    for(Map.Entry<DateTime, ? extends V> entry : aEntries.entrySet()){
+      keys.add(entry.getKey());
+      values.add(entry.getValue());
+    }
+    return new TimeIndex<V>(keys, values);
+  }
+
+  /** The number of entries. */
+  public int size(){
+    return fSize;
+  }
+
+  /** Return the key at the given index, 0..size()-1. */
+  public DateTime keyAt(int aIndex){
+    int index = storeIndex(aIndex);
+    return PackedDateTime.toDateTime(fPacked[index], nanosAt(index));
+  }
+
+  /** Return the value at the given index, 0..size()-1. */
+  @SuppressWarnings("unchecked")
+  public V valueAt(int aIndex){
+    return (V)fValues[storeIndex(aIndex)];
+  }
+
+  /** Return the values, in order of their keys. The returned list is a read-only view; nothing is copied. */
+  public List<V> values(){
+    return new Values();
+  }
+
+  /**
+   Return the entries whose keys are in the given range, as a view over this index.
+   @param aFrom start of the range, inclusive.
+   @param aTo end of the range, exclusive.
+  */
+  public TimeIndex<V> range(DateTime aFrom, DateTime aTo){
+    return range(aFrom, true, aTo, false);
+  }
+
+  /**
+   Return the entries whose keys are in the given range, as a view over this index.
+   If the end comes before the start, the result is empty.
+  */
+  public TimeIndex<V> range(DateTime aFrom, boolean aFromInclusive, DateTime aTo, boolean aToInclusive){
+    int start = aFromInclusive ? lowerBound(aFrom) : upperBound(aFrom);
+    int end = aToInclusive ? upperBound(aTo) : lowerBound(aTo);
+    return new TimeIndex<V>(this, fOffset + start, Math.max(0, end - start));
+  }
+
+  /** Return the index of the last entry whose key is less than or equal to the given date-time, or -1 if there's none. */
+  public int floorIndex(DateTime aDateTime){
+    return upperBound(aDateTime) - 1;
+  }
+
+  /** Return the index of the first entry whose key is greater than or equal to the given date-time, or -1 if there's none. */
+  public int ceilingIndex(DateTime aDateTime){
+    int result = lowerBound(aDateTime);
+    return result == fSize ? -1 : result;
+  }
+
+  /**
+   Return the index of the entry whose key is nearest in time to the given date-time, or -1 if this index is empty.
+   When two keys are equally near, the earlier one is returned.
+   <P>Requires year-month-day to be present in the given date-time and in the keys compared with it;
+   if not, a runtime exception is thrown. Absent time units are taken as 0.
+  */
+  public int nearestIndex(DateTime aDateTime){
+    int floor = floorIndex(aDateTime);
+    int ceiling = ceilingIndex(aDateTime);
+    int result = floor;
+    if(floor == -1 || ceiling == -1){
+      result = floor == -1 ? ceiling : floor;
+    }
+    else if(ceiling <= floor){
+      result = ceiling; //an exact match; the first of any equal keys
+    }
+    else {
+      long packed = PackedDateTime.pack(aDateTime);
+      int nanos = PackedDateTime.nanosOf(aDateTime);
+      int target = fOffset + floor;
+      long[] before = distance(fPacked[target], nanosAt(target), packed, nanos);
+      target = fOffset + ceiling;
+      long[] after = distance(packed, nanos, fPacked[target], nanosAt(target));
+      if(after[0] < before[0] || (after[0] == before[0] && after[1] < before[1])){
+        result = ceiling;
+      }
+    }
+    return result;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "TimeIndex size:" + fSize + (fSize == 0 ? "" : " first:" + keyAt(0) + " last:" + keyAt(fSize - 1));
+  }
+
+  // PRIVATE
+
+  /** Sorted keys, shared by an index and its views. */
+  private final long[] fPacked;
+  /** Null if no key has nanoseconds. */
+  private final int[] fNanos;
+  private final Object[] fValues;
+  /** The position in the arrays of item 0; always 0, except for views. */
+  private final int fOffset;
+  private final int fSize;
+
+  /** Constructor for views. */
+  private TimeIndex(TimeIndex<V> aSource, int aOffset, int aSize){
+    fPacked = aSource.fPacked;
+    fNanos = aSource.fNanos;
+    fValues = aSource.fValues;
+    fOffset = aOffset;
+    fSize = aSize;
+  }
+
+  private int storeIndex(int aIndex){
+    if(aIndex < 0 || aIndex >= fSize){
+      throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + fSize);
+    }
+    return fOffset + aIndex;
+  }
+
+  private int nanosAt(int aStoreIndex){
+    return fNanos == null ? PackedDateTime.ABSENT : fNanos[aStoreIndex];
+  }
+
+  /** Return the index of the first key greater than or equal to the given date-time, or fSize. */
+  private int lowerBound(DateTime aDateTime){
+    return search(PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime), false);
+  }
+
+  /** Return the index of the first key greater than the given date-time, or fSize. */
+  private int upperBound(DateTime aDateTime){
+    return search(PackedDateTime.pack(aDateTime), PackedDateTime.nanosOf(aDateTime), true);
+  }
+
+  private int search(long aPacked, int aNanos, boolean aSkipEqual){
+    int low = 0;
+    int high = fSize;
+    while(low < high){
+      int middle = (low + high) >>> 1;
+      int index = fOffset + middle;
+      int comparison = PackedDateTime.compare(fPacked[index], nanosAt(index), aPacked, aNanos);
+      if(comparison < 0 || (aSkipEqual && comparison == 0)){
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /** Return the time from the first date-time to the later second one, as whole days, and nanoseconds 0..(1 day - 1). */
+  private static long[] distance(long aPacked, int aNanos, long aThatPacked, int aThatNanos){
+    if (! PackedDateTime.hasYearMonthDay(aPacked) || ! PackedDateTime.hasYearMonthDay(aThatPacked)){
+      throw new DateTime.MissingItem("DateTime does not include year/month/day.");
+    }
+    long days = PackedDateTime.dayNumber(aThatPacked) - PackedDateTime.dayNumber(aPacked);
+    long nanos = PackedDateTime.nanosOfDay(aThatPacked, aThatNanos) - PackedDateTime.nanosOfDay(aPacked, aNanos);
+    if(nanos < 0){
+      --days;
+      nanos = nanos + Buckets.NANOS_PER_DAY;
+    }
+    return new long[]{days, nanos};
+  }
+
+  /** View of the values. */
+  private final class Values extends AbstractList<V> implements RandomAccess {
+    @Override public V get(int aIndex){
+      return valueAt(aIndex);
+    }
+    @Override public int size(){
+      return fSize;
+    }
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+/**
+ Runs tasks at given date-times, using a hierarchical timing wheel.
+
+ <P>Time is divided into <em>ticks</em> of a fixed length, such as 1 millisecond. Each task is placed in a bucket according
+ to the tick of its deadline : the first level of the wheel has a bucket for each of the next 512 ticks, the second level a
+ bucket for each of the next 512 groups of 512 ticks, and so on. As time passes, the tasks of a higher-level bucket are moved
+ down into the lower level, and the tasks of each tick's bucket are run. Scheduling and cancelling a task each take
+ constant time, however many tasks are waiting. Ticks with nothing to do are skipped : an advance does work only for
+ the buckets holding tasks, and for moving tasks down, so even a long advance with a short tick is cheap.
+ A task runs at the first advance on or after its deadline, rounded up to a whole tick; never earlier.
+
+ <P>Deadlines are given as nanoseconds since the Java epoch, or as <tt>DateTime</tt> objects, taken to be in the time zone
+ passed to the constructor. A <tt>DateTime</tt> is converted to an instant directly from its {@link PackedDateTime} form,
+ with a single call to <tt>TimeZone.getOffset</tt>, instead of through a <tt>Calendar</tt>.
+
+ <P>Time advances in one of two ways :
+ <ul>
+ <li>{@link #start()} starts a daemon thread, which advances the wheel to the current time once per tick.
+ <li>{@link #advanceTo(long)} advances the wheel to a given time; useful for simulations, and for tests.
+ </ul>
+ The tasks found expired in each advance are handed to the executor passed to the constructor, in a batch, in order of their ticks.
+ Tasks should be short, or the executor should run them on other threads.
+
+ <P>This class is thread-safe. Tasks may be scheduled and cancelled from any thread.
+
+ <P>Example :
+ <PRE>
+  TimingWheel wheel = new TimingWheel(TimingWheel.NANOS_PER_MILLI, timeZone, executor);
+  wheel.start();
+  TimingWheel.Timeout reminder = wheel.schedule(new DateTime("2014-06-05 13:47"), task);
+  ...
+  reminder.cancel();
+ </PRE>
+*/
+public final class TimingWheel {
+
+  /** One millisecond, as nanoseconds. */
+  public static final long NANOS_PER_MILLI = 1000L * 1000;
+
+  /** A scheduled task. */
+  public static final class Timeout {
+
+    /** The deadline, in nanoseconds since the Java epoch. */
+    public long getDeadlineNanos(){
+      return fDeadlineNanos;
+    }
+
+    /** Prevent the task from running, if it hasn't already been handed to the executor. Return <tt>true</tt> only if cancelled by this call. */
+    public boolean cancel(){
+      synchronized(fWheel){
+        boolean result = fState == WAITING;
+        if(result){
+          fState = CANCELLED;
+          unlink();
+          --fWheel.fNumWaiting;
+        }
+        return result;
+      }
+    }
+
+    /** Return <tt>true</tt> only if {@link #cancel()} succeeded. */
+    public boolean isCancelled(){
+      synchronized(fWheel){
+        return fState == CANCELLED;
+      }
+    }
+
+    /** Return <tt>true</tt> only if the task has been handed to the executor. */
+    public boolean isExpired(){
+      synchronized(fWheel){
+        return fState == EXPIRED;
+      }
+    }
+
+    private final TimingWheel fWheel;
+    private final long fDeadlineNanos;
+    private final long fDeadlineTick;
+    private final Runnable fTask;
+    private int fState = WAITING;
+    /** The bucket's list; the bucket itself is a Timeout with no task, which is never removed. */
+    private Timeout fPrevious;
+    private Timeout fNext;
+    /** The level of the bucket holding this task. */
+    private int fLevel;
+
+    private static final int WAITING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private Timeout(TimingWheel aWheel, long aDeadlineNanos, long aDeadlineTick, Runnable aTask){
+      fWheel = aWheel;
+      fDeadlineNanos = aDeadlineNanos;
+      fDeadlineTick = aDeadlineTick;
+      fTask = aTask;
+      fPrevious = this;
+      fNext = this;
+    }
+
+    private void linkBefore(Timeout aBucket){
+      fNext = aBucket;
+      fPrevious = aBucket.fPrevious;
+      fPrevious.fNext = this;
+      aBucket.fPrevious = this;
+    }
+
+    private void unlink(){
+      --fWheel.fNumAtLevel[fLevel];
+      fPrevious.fNext = fNext;
+      fNext.fPrevious = fPrevious;
+      fPrevious = this;
+      fNext = this;
+    }
+  }
+
+  /**
+   Constructor.
+   @param aTickNanos the length of a tick, in nanoseconds, 1 or more. Deadlines are rounded up to the end of their tick;
+   a shorter tick runs tasks closer to their deadlines, and a longer tick costs less CPU when idle.
+   @param aTimeZone the time zone of the <tt>DateTime</tt> deadlines passed to {@link #schedule(DateTime, Runnable)}.
+   @param aExecutor runs the tasks.
+  */
+  public TimingWheel(long aTickNanos, TimeZone aTimeZone, Executor aExecutor){
+    if(aTickNanos < 1){
+      throw new IllegalArgumentException("Tick must be at least 1 nanosecond: " + aTickNanos);
+    }
+    fTickNanos = aTickNanos;
+    fTimeZone = aTimeZone;
+    fExecutor = aExecutor;
+    fOriginNanos = currentNanos();
+    fBuckets = new Timeout[NUM_LEVELS][WHEEL_SIZE];
+    for(Timeout[] level : fBuckets){
+      for(int bucket = 0; bucket < WHEEL_SIZE; ++bucket){
+        level[bucket] = new Timeout(this, 0, 0, null);
+      }
+    }
+  }
+
+  /**
+   Schedule a task to run at the given deadline. If the deadline is not after the current tick, the task runs at the next advance.
+   @param aDeadlineNanos nanoseconds since the Java epoch.
+  */
+  public Timeout schedule(long aDeadlineNanos, Runnable aTask){
+    if(aTask == null){
+      throw new IllegalArgumentException("Task cannot be null.");
+    }
+    synchronized(this){
+      //rounded up, so that no task runs before its deadline
+      long tick = Math.max(0, Buckets.floorDiv(aDeadlineNanos - fOriginNanos + fTickNanos - 1, fTickNanos));
+      Timeout result = new Timeout(this, aDeadlineNanos, tick, aTask);
+      place(result);
+      ++fNumWaiting;
+      return result;
+    }
+  }
+
+  /**
+   Schedule a task to run at the given date-time, in the time zone passed to the constructor.
+   <P>Requires year-month-day to be present; if not, a runtime exception is thrown. Absent time units are taken as 0.
+  */
+  public Timeout schedule(DateTime aDeadline, Runnable aTask){
+    return schedule(epochNanos(PackedDateTime.pack(aDeadline), PackedDateTime.nanosOf(aDeadline), fTimeZone), aTask);
+  }
+
+  /**
+   Advance the wheel to the given time, and hand all tasks whose deadlines have passed to the executor.
+   The wheel never moves backwards; an earlier time only runs tasks scheduled since the last advance with deadlines already passed.
+   @param aNowNanos nanoseconds since the Java epoch.
+  */
+  public void advanceTo(long aNowNanos){
+    List<Runnable> expired = new ArrayList<Runnable>();
+    synchronized(this){
+      long target = Buckets.floorDiv(aNowNanos - fOriginNanos, fTickNanos);
+      //the tasks at the current tick were placed after it was processed; they run only once the time has reached that tick
+      if(target >= fTick){
+        expire(fBuckets[0][(int)(fTick & MASK)], expired);
+      }
+      while(fTick < target){
+        if(fNumWaiting == 0){
+          fTick = target; //nothing to move or run; skip straight to the end
+          break;
+        }
+        //below the lowest level holding tasks, nothing is run or moved until that level's next bucket is moved down
+        int level = lowestLevelWaiting();
+        if(level > 0){
+          long lastBeforeMove = fTick | ((1L << (level * WHEEL_BITS)) - 1);
+          fTick = Math.min(target, lastBeforeMove);
+          if(fTick == target){
+            break;
+          }
+        }
+        ++fTick;
+        cascade();
+        expire(fBuckets[0][(int)(fTick & MASK)], expired);
+      }
+    }
+    for(Runnable task : expired){
+      fExecutor.execute(task);
+    }
+  }
+
+  /** The number of tasks waiting to run. */
+  public synchronized int size(){
+    return fNumWaiting;
+  }
+
+  /** Start a daemon thread, which advances this wheel to the current time once per tick (but no more than once per millisecond). */
+  public synchronized void start(){
+    if(fThread != null){
+      throw new IllegalStateException("Already started.");
+    }
+    final long sleepMillis = Math.max(1, fTickNanos / NANOS_PER_MILLI);
+    fThread = new Thread(new Runnable(){
+      public void run(){
+        try {
+          while(! Thread.currentThread().isInterrupted()){
+            advanceTo(currentNanos());
+            Thread.sleep(sleepMillis);
+          }
+        }
+        catch(InterruptedException ex){
+          //stopped
+        }
+      }
+    }, "jfat-timing-wheel");
+    fThread.setDaemon(true);
+    fThread.start();
+  }
+
+  /** Stop the thread started by {@link #start()}. Waiting tasks are kept, and do not run unless the wheel is advanced again. */
+  public synchronized void stop(){
+    if(fThread != null){
+      fThread.interrupt();
+      fThread = null;
+    }
+  }
+
+  /** Intended for debugging only. */
+  @Override public synchronized String toString(){
+    return "TimingWheel tick:" + fTickNanos + "ns waiting:" + fNumWaiting;
+  }
+
+  // PACKAGE-PRIVATE
+
+  /**
+   Return the instant of the given packed date-time, in the given time zone, as nanoseconds since the Java epoch.
+   Same as {@link DateTime#getNanosecondsInstant(TimeZone)}, except perhaps for local times that are skipped or repeated
+   when the offset changes.
+  */
+  static long epochNanos(long aPacked, int aNanos, TimeZone aTimeZone){
+    long localNanos = (PackedDateTime.checkedDayNumber(aPacked) - EPOCH_DAY_NUMBER) * Buckets.NANOS_PER_DAY + PackedDateTime.nanosOfDay(aPacked, aNanos);
+    long localMillis = Buckets.floorDiv(localNanos, NANOS_PER_MILLI);
+    //the offset depends on the instant, which depends on the offset; start from the raw offset, and correct once
+    int offset = aTimeZone.getOffset(localMillis - aTimeZone.getRawOffset());
+    int corrected = aTimeZone.getOffset(localMillis - offset);
+    return localNanos - corrected * NANOS_PER_MILLI;
+  }
+
+  // PRIVATE
+
+  private final long fTickNanos;
+  private final TimeZone fTimeZone;
+  private final Executor fExecutor;
+  /** The start of tick 0. */
+  private final long fOriginNanos;
+  /** For each level, the bucket sentinels. */
+  private final Timeout[][] fBuckets;
+  /** The last tick processed. */
+  private long fTick;
+  private int fNumWaiting;
+  /** The number of tasks in the buckets of each level. */
+  private final int[] fNumAtLevel = new int[NUM_LEVELS];
+  private Thread fThread;
+
+  private static final int WHEEL_BITS = 9;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  private static final long MASK = WHEEL_SIZE - 1;
+  /** Enough levels for any non-negative tick. */
+  private static final int NUM_LEVELS = (63 + WHEEL_BITS - 1) / WHEEL_BITS;
+  /** The Modified Julian Day number of 1970-01-01. */
+  private static final int EPOCH_DAY_NUMBER = DayNumbers.modifiedJulianDay(1970, 1, 1);
+
+  private static long currentNanos(){
+    return System.currentTimeMillis() * NANOS_PER_MILLI;
+  }
+
+  /**
+   Place the timeout in the lowest level at which its deadline tick and the current tick have the same higher digits.
+   Its bucket is its deadline's digit at that level. Deadlines at or before the current tick go in the current tick's bucket.
+  */
+  private void place(Timeout aTimeout){
+    long tick = Math.max(aTimeout.fDeadlineTick, fTick);
+    int level = 0;
+    while(level < NUM_LEVELS - 1 && (tick >>> ((level + 1) * WHEEL_BITS)) != (fTick >>> ((level + 1) * WHEEL_BITS))){
+      ++level;
+    }
+    aTimeout.linkBefore(fBuckets[level][(int)((tick >>> (level * WHEEL_BITS)) & MASK)]);
+    aTimeout.fLevel = level;
+    ++fNumAtLevel[level];
+  }
+
+  /** Call only when some task is waiting. */
+  private int lowestLevelWaiting(){
+    int result = 0;
+    while(fNumAtLevel[result] == 0){
+      ++result;
+    }
+    return result;
+  }
+
+  /** When the lower digits of the current tick have all turned to 0, move the tasks of the next bucket of each such level down. */
+  private void cascade(){
+    int highest = 0;
+    while(highest < NUM_LEVELS - 1 && (fTick & ((1L << ((highest + 1) * WHEEL_BITS)) - 1)) == 0){
+      ++highest;
+    }
+    for(int level = highest; level > 0; --level){
+      Timeout bucket = fBuckets[level][(int)((fTick >>> (level * WHEEL_BITS)) & MASK)];
+      while(bucket.fNext != bucket){
+        Timeout timeout = bucket.fNext;
+        timeout.unlink();
+        place(timeout);
+      }
+    }
+  }
+
+  private void expire(Timeout aBucket, List<Runnable> aExpired){
+    while(aBucket.fNext != aBucket){
+      Timeout timeout = aBucket.fNext;
+      timeout.unlink();
+      timeout.fState = Timeout.EXPIRED;
+      --fNumWaiting;
+      aExpired.add(timeout.fTask);
+    }
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2014 The Jfat Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.jfat.commons.date;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ Aggregate values over tumbling or sliding windows of time, from a stream of date-time stamped events.
+
+ <P>A <em>tumbling</em> window covers a fixed length of time, and the windows follow one another without overlapping :
+ for example, one window for each minute. A <em>sliding</em> window also covers a fixed length of time, but a new window
+ starts at a shorter, fixed interval (the <em>slide</em>), so the windows overlap : for example, the last 15 minutes,
+ once every minute. Windows are aligned to an origin, as in {@link DateTime#floor(long, TimeUnit, DateTime)}.
+
+ <P>Time is split into <em>panes</em>, one slide long, and each window is made of a whole number of panes.
+ The panes are held in a circular array of primitives, just large enough for the windows which may still change;
+ each event updates one pane, in constant time, and no objects are created per event.
+
+ <P>A window is not combined from all of its panes when it closes. As in a queue made of two stacks, the panes of the
+ window about to close are split in two : the older panes, each with the combination of itself and all later panes
+ up to a split point, and the newer panes, with one running combination. Closing a window combines one older pane with
+ the running combination, then adds one pane to it; when the older panes run out, the split point moves to the end of
+ the window, and the older panes are calculated again. So closing a window takes constant time, averaged over the
+ windows, and works for aggregations such as {@link #MIN} and {@link #MAX}, which cannot be undone. An event behind
+ the watermark, for a pane older than the split point, also updates the older panes up to its own, at a cost of up to
+ one step for each pane in a window; events in time order never do.
+
+ <h3>Late Events</h3>
+ Events may arrive out of order. The <em>watermark</em> is the latest event time seen so far, less an allowed lateness.
+ When the watermark passes the end of a window, the window is closed, and passed to the {@link Listener}.
+ An event arriving after all windows holding it have closed is dropped, and counted by {@link #getNumLateEvents()}.
+ For a stream with gaps, the watermark can also be moved by {@link #advanceWatermark(DateTime)}.
+
+ <P>Values are combined with an {@link Aggregation}, such as {@link #SUM}, {@link #MIN} or {@link #MAX}. For counts,
+ use {@link #SUM}, with a value of 1 for each event. A window with no events is not passed to the listener.
+
+ <P>For session windows, whose length depends on the gaps between events, see {@link SessionAggregator}.
+
+ <P>This class is not thread-safe.
+
+ <P>Example, for the number of requests in the last 5 minutes, once a minute :
+ <PRE>
+  WindowAggregator counts = WindowAggregator.sliding(5, 1, TimeUnit.MINUTES, 0, midnight, WindowAggregator.SUM, listener);
+  ...
+  counts.add(request.getWhen(), 1);
+ </PRE>
+*/
+public final class WindowAggregator {
+
+  /**
+   Combines values. Must be associative, and {@link #identity()} combined with any value must give that value.
+   Values are combined in no particular order, so the operation should also be commutative.
+  */
+  public interface Aggregation {
+    /** The value of an empty window. */
+    long identity();
+    /** Return the combination of the two values. */
+    long combine(long aOne, long aTwo);
+  }
+
+  /** Receives each window, as it closes. */
+  public interface Listener {
+    /**
+     Called once for each window with at least one event, in order of window end.
+     @param aStart start of the window, inclusive.
+     @param aEnd end of the window, exclusive.
+     @param aValue the combination of the values of the window's events.
+     @param aNumEvents the number of events in the window.
+    */
+    void windowClosed(DateTime aStart, DateTime aEnd, long aValue, long aNumEvents);
+  }
+
+  /** Sum of the values. */
+  public static final Aggregation SUM = new Aggregation(){
+    public long identity(){ return 0; }
+    public long combine(long aOne, long aTwo){ return aOne + aTwo; }
+  };
+
+  /** Least of the values. */
+  public static final Aggregation MIN = new Aggregation(){
+    public long identity(){ return Long.MAX_VALUE; }
+    public long combine(long aOne, long aTwo){ return Math.min(aOne, aTwo); }
+  };
+
+  /** Greatest of the values. */
+  public static final Aggregation MAX = new Aggregation(){
+    public long identity(){ return Long.MIN_VALUE; }
+    public long combine(long aOne, long aTwo){ return Math.max(aOne, aTwo); }
+  };
+
+  /**
+   Return an aggregator for tumbling windows.
+   @param aSize length of each window, in units of <tt>aUnit</tt>; 1 or more.
+   @param aAllowedLateness how far behind the latest event an event may be, and still be counted, in units of <tt>aUnit</tt>; 0 or more.
+   @param aOrigin the start of a window; requires year-month-day.
+  */
+  public static WindowAggregator tumbling(long aSize, TimeUnit aUnit, long aAllowedLateness, DateTime aOrigin, Aggregation aAggregation, Listener aListener){
+    return sliding(aSize, aSize, aUnit, aAllowedLateness, aOrigin, aAggregation, aListener);
+  }
+
+  /**
+   Return an aggregator for sliding windows.
+   @param aSize length of each window, in units of <tt>aUnit</tt>; a multiple of the slide.
+   @param aSlide time from the start of one window to the start of the next, in units of <tt>aUnit</tt>; 1 or more.
+   @param aAllowedLateness how far behind the latest event an event may be, and still be counted, in units of <tt>aUnit</tt>; 0 or more.
+   @param aOrigin the start of a window; requires year-month-day.
+  */
+  public static WindowAggregator sliding(long aSize, long aSlide, TimeUnit aUnit, long aAllowedLateness, DateTime aOrigin, Aggregation aAggregation, Listener aListener){
+    if(aSlide < 1 || aSize < aSlide || aSize % aSlide != 0){
+      throw new IllegalArgumentException("Window size " + aSize + " must be a positive multiple of the slide " + aSlide);
+    }
+    if(aAllowedLateness < 0){
+      throw new IllegalArgumentException("Allowed lateness cannot be negative: " + aAllowedLateness);
+    }
+    return new WindowAggregator(aUnit.toNanos(aSlide), (int)(aSize / aSlide), aUnit.toNanos(aAllowedLateness), aOrigin, aAggregation, aListener);
+  }
+
+  /** Add an event. Requires year-month-day to be present; absent time units are taken as 0. */
+  public void add(DateTime aWhen, long aValue){
+    add(PackedDateTime.pack(aWhen), PackedDateTime.nanosOf(aWhen), aValue);
+  }
+
+  /** Add an event, with its date-time in primitive form. See {@link #add(DateTime, long)}. */
+  public void add(long aPacked, int aNanos, long aValue){
+    long when = PackedDateTime.bucketIndex(aPacked, aNanos, 1, fOriginPacked, fOriginNanos);
+    long pane = Buckets.floorDiv(when, fPaneNanos);
+    if(pane + fPanesPerWindow <= fClosedEnd || pane <= fHighestPane - fNumPanes){
+      ++fNumLateEvents;
+      return;
+    }
+    if(fNumEvents == 0 || when > fLatest){
+      fLatest = when;
+      closeUpTo(fLatest - fAllowedLatenessNanos);
+    }
+    if(pane > fHighestPane){
+      //reuse the slots of panes which have dropped out of the array
+      for(long next = Math.max(fHighestPane + 1, pane - fNumPanes + 1); next <= pane; ++next){
+        fValues[slotOf(next)] = fAggregation.identity();
+        fCounts[slotOf(next)] = 0;
+      }
+      fHighestPane = pane;
+    }
+    int slot = slotOf(pane);
+    fValues[slot] = fAggregation.combine(fValues[slot], aValue);
+    ++fCounts[slot];
+    ++fNumEvents;
+    addToPartials(pane, aValue);
+  }
+
+  /** Close all windows ending at or before the given date-time, even if no event has yet moved the watermark that far. */
+  public void advanceWatermark(DateTime aWatermark){
+    closeUpTo(PackedDateTime.bucketIndex(PackedDateTime.pack(aWatermark), PackedDateTime.nanosOf(aWatermark), 1, fOriginPacked, fOriginNanos));
+  }
+
+  /** Close all windows holding any events, as at the end of a stream. */
+  public void flush(){
+    if(fNumEvents > 0){
+      closeWindowsEndingBy(fHighestPane + fPanesPerWindow);
+    }
+  }
+
+  /** The number of events dropped because they arrived too late. */
+  public long getNumLateEvents(){
+    return fNumLateEvents;
+  }
+
+  /** Intended for debugging only. */
+  @Override public String toString(){
+    return "WindowAggregator pane:" + fPaneNanos + "ns panes-per-window:" + fPanesPerWindow + " events:" + fNumEvents + " late:" + fNumLateEvents;
+  }
+
+  // PRIVATE
+
+  private final long fPaneNanos;
+  private final int fPanesPerWindow;
+  private final long fAllowedLatenessNanos;
+  private final long fOriginPacked;
+  private final int fOriginNanos;
+  private final DateTime fOrigin;
+  private final Aggregation fAggregation;
+  private final Listener fListener;
+  /** Circular : pane p is held in slot p mod fNumPanes, while p is among the last fNumPanes panes. */
+  private final int fNumPanes;
+  private final long[] fValues;
+  private final long[] fCounts;
+  private long fHighestPane = Long.MIN_VALUE / 2;
+  /** All windows ending at or before this pane have been closed. */
+  private long fClosedEnd = Long.MIN_VALUE / 2;
+  /**
+   Partial results for the windows still open, as in a queue made of two stacks. The older panes, from the start of the
+   next window to close, up to fSplit, are held at pane mod fPanesPerWindow, each combined with all later panes up to fSplit.
+   The newer panes, from fSplit up to fNewerEnd, are combined in fNewerValue.
+  */
+  private final long[] fOlderValues;
+  private final long[] fOlderCounts;
+  private long fSplit = Long.MIN_VALUE / 2;
+  private long fNewerEnd = Long.MIN_VALUE / 2;
+  private long fNewerValue;
+  private long fNewerCount;
+  /** The end of the window which the partial results are for. */
+  private long fNextEnd = Long.MIN_VALUE / 2;
+  /** Latest event, as nanoseconds from the origin. */
+  private long fLatest;
+  private long fNumEvents;
+  private long fNumLateEvents;
+
+  private WindowAggregator(long aPaneNanos, int aPanesPerWindow, long aAllowedLatenessNanos, DateTime aOrigin, Aggregation aAggregation, Listener aListener){
+    fPaneNanos = aPaneNanos;
+    fPanesPerWindow = aPanesPerWindow;
+    fAllowedLatenessNanos = aAllowedLatenessNanos;
+    fOrigin = aOrigin;
+    fOriginPacked = PackedDateTime.pack(aOrigin);
+    fOriginNanos = PackedDateTime.nanosOf(aOrigin);
+    fAggregation = aAggregation;
+    fListener = aListener;
+    //the panes of the oldest open window, through to the pane of the latest event
+    long numPanes = aPanesPerWindow + (aAllowedLatenessNanos + aPaneNanos - 1) / aPaneNanos + 2;
+    if(numPanes > MAX_PANES){
+      throw new IllegalArgumentException("Too many panes: " + numPanes + ". Use a longer slide, or a shorter allowed lateness.");
+    }
+    fNumPanes = (int)numPanes;
+    fValues = new long[fNumPanes];
+    fCounts = new long[fNumPanes];
+    fOlderValues = new long[aPanesPerWindow];
+    fOlderCounts = new long[aPanesPerWindow];
+    fNewerValue = aAggregation.identity();
+  }
+
+  private static final long MAX_PANES = 1 << 24;
+
+  private int slotOf(long aPane){
+    return mod(aPane, fNumPanes);
+  }
+
+  private int olderSlotOf(long aPane){
+    return mod(aPane, fPanesPerWindow);
+  }
+
+  private static int mod(long aValue, int aDivisor){
+    return (int)(aValue - Buckets.floorDiv(aValue, aDivisor) * aDivisor);
+  }
+
+  /** True only if the pane is still in the circular array; panes not in the array are empty. */
+  private boolean isHeld(long aPane){
+    return aPane > fHighestPane - fNumPanes && aPane <= fHighestPane;
+  }
+
+  /** Add an event's value to the partial results which already include its pane. */
+  private void addToPartials(long aPane, long aValue){
+    long start = fNextEnd - fPanesPerWindow;
+    if(aPane >= start && aPane < fNewerEnd){
+      if(aPane >= fSplit){
+        fNewerValue = fAggregation.combine(fNewerValue, aValue);
+        ++fNewerCount;
+      }
+      else {
+        for(long pane = start; pane <= aPane; ++pane){
+          int slot = olderSlotOf(pane);
+          fOlderValues[slot] = fAggregation.combine(fOlderValues[slot], aValue);
+          ++fOlderCounts[slot];
+        }
+      }
+    }
+  }
+
+  /** Close the windows ending at or before the given time, in nanoseconds from the origin. */
+  private void closeUpTo(long aWatermark){
+    if(fNumEvents > 0){
+      closeWindowsEndingBy(Buckets.floorDiv(aWatermark, fPaneNanos));
+    }
+  }
+
+  /** Close the windows ending at or before the start of the given pane. */
+  private void closeWindowsEndingBy(long aPane){
+    //past the last pane with data, all windows are empty
+    long last = Math.min(aPane, fHighestPane + fPanesPerWindow);
+    for(long end = Math.max(fClosedEnd + 1, fHighestPane - fNumPanes + 1); end <= last; ++end){
+      closeWindow(end);
+    }
+    fClosedEnd = Math.max(fClosedEnd, aPane);
+  }
+
+  /** Close the window ending at the start of the given pane, from the partial results. */
+  private void closeWindow(long aEnd){
+    long start = aEnd - fPanesPerWindow;
+    if(aEnd != fNextEnd || start >= fSplit){
+      //the older panes have run out, or windows were skipped : split at the end of this window
+      long value = fAggregation.identity();
+      long count = 0;
+      for(long pane = aEnd - 1; pane >= start; --pane){
+        if(isHeld(pane)){
+          value = fAggregation.combine(fValues[slotOf(pane)], value);
+          count = count + fCounts[slotOf(pane)];
+        }
+        fOlderValues[olderSlotOf(pane)] = value;
+        fOlderCounts[olderSlotOf(pane)] = count;
+      }
+      fSplit = aEnd;
+      fNewerEnd = aEnd;
+      fNewerValue = fAggregation.identity();
+      fNewerCount = 0;
+    }
+    else {
+      for(; fNewerEnd < aEnd; ++fNewerEnd){
+        if(isHeld(fNewerEnd)){
+          fNewerValue = fAggregation.combine(fNewerValue, fValues[slotOf(fNewerEnd)]);
+          fNewerCount = fNewerCount + fCounts[slotOf(fNewerEnd)];
+        }
+      }
+    }
+    fNextEnd = aEnd + 1;
+    long value = fAggregation.combine(fOlderValues[olderSlotOf(start)], fNewerValue);
+    long count = fOlderCounts[olderSlotOf(start)] + fNewerCount;
+    if(count > 0){
+      fListener.windowClosed(
+        DateTime.startOfBucket(start, fPaneNanos, fOrigin), DateTime.startOfBucket(aEnd, fPaneNanos, fOrigin), value, count
+      );
+    }
+  }
+}